@@ -15,22 +15,22 @@
  */
 package com.android.tools.adtui.model;
 
-import com.intellij.util.containers.ContainerUtil;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 
 public class DefaultDataSeries<E> implements DataSeries<E> {
+  private static final Comparator<SeriesData<?>> X_COMPARATOR = Comparator.comparingLong(data -> data.x);
+
   @NotNull protected final List<SeriesData<E>> mSeriesList = new ArrayList<>();
 
   @NotNull
   private List<SeriesData<E>> getDataSubList(final int fromIndex, final int toIndex) {
-    return IntStream.range(fromIndex, toIndex).mapToObj(index -> mSeriesList.get(index)).collect(Collectors.toList());
+    return new ArrayList<>(mSeriesList.subList(fromIndex, toIndex));
   }
 
   @Override
@@ -72,7 +72,7 @@ public class DefaultDataSeries<E> implements DataSeries<E> {
   }
 
   public int getNearestXIndex(long x) {
-    int index = Collections.binarySearch(ContainerUtil.map(mSeriesList, data -> data.x), x);
+    int index = Collections.binarySearch(mSeriesList, new SeriesData<>(x, null), X_COMPARATOR);
 
     if (index < 0) {
       // No exact match, returns position to the left of the insertion point.
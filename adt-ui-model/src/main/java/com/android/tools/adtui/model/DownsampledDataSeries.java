@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.List;
+
+/**
+ * A {@link DataSeries} that can summarize its data, so charts can request no more points than they can display.
+ */
+public interface DownsampledDataSeries<E> extends DataSeries<E> {
+  /**
+   * Same as {@link #getDataForRange(Range)}, but returns a downsampled subset of roughly {@code maxPoints} points when the range contains
+   * more than that. The minimum and maximum values within the range must be preserved, so the result can also be used to scale an axis.
+   */
+  List<SeriesData<E>> getDataForRange(Range range, int maxPoints);
+}
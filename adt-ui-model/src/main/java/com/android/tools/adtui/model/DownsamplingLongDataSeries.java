@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link LongDataSeries} that maintains a multi-resolution min/max index over its data, so a chart can fetch a bounded number of points
+ * for any zoom level instead of every point in the visible range.
+ * <p>
+ * Level k of the index splits the data into buckets of {@code FAN_OUT^(k+1)} consecutive points and records the index of the minimum and
+ * maximum value of each bucket. Only complete buckets are indexed, and each one is computed from the level below when it fills up, so the
+ * index costs amortized O(1) per added point and about {@code 2 / (FAN_OUT - 1)} ints of memory per point.
+ * <p>
+ * {@link #getDataForRange(Range, int)} picks the finest level that fits the requested number of points and returns the min and max point
+ * of each bucket, in x order, which preserves the visual envelope of the line. The first and last points of the range are always
+ * returned as is so the line reaches the edges of the chart.
+ */
+public class DownsamplingLongDataSeries extends LongDataSeries implements DownsampledDataSeries<Long> {
+  private static final int FAN_OUT = 4;
+
+  /**
+   * Indices of the minimum and maximum points of each complete bucket, per level. Replaced as a whole when a level is added, and each
+   * level is grown before the data point completing its new buckets is published, so readers always see the buckets they expect.
+   */
+  private int[][] myMinIndices = new int[0][];
+  private int[][] myMaxIndices = new int[0][];
+
+  @Override
+  public List<SeriesData<Long>> getDataForRange(Range range, int maxPoints) {
+    int size = size();
+    if (size == 0 || range.isEmpty()) {
+      return getDataForRange(range);
+    }
+    int fromIndex = getNearestXIndex((long)range.getMin(), size);
+    int toIndex = getNearestXIndex((long)range.getMax(), size) + 1;
+    int count = toIndex - fromIndex;
+    if (count <= maxPoints) {
+      return createView(fromIndex, toIndex);
+    }
+
+    int[][] minIndices = myMinIndices;
+    int[][] maxIndices = myMaxIndices;
+    // Each bucket contributes up to two points, so pick the finest level with at most maxPoints / 2 buckets in the range.
+    int level = 0;
+    while (level < minIndices.length - 1 && count / getBucketSize(level) > maxPoints / 2) {
+      level++;
+    }
+    if (level >= minIndices.length) {
+      // Not enough data to complete a single bucket.
+      return createView(fromIndex, toIndex);
+    }
+
+    List<SeriesData<Long>> result = new ArrayList<>(Math.min(count, maxPoints + 4 * FAN_OUT * (level + 1)));
+    addPoint(result, fromIndex);
+    addRange(result, minIndices, maxIndices, size, level, fromIndex + 1, toIndex - 1);
+    addPoint(result, toIndex - 1);
+    return result;
+  }
+
+  @Override
+  protected void onDataAdded(int index) {
+    int count = index + 1;
+    for (int level = 0; ; level++) {
+      long bucketSize = getBucketSize(level);
+      if (bucketSize > Integer.MAX_VALUE || count % bucketSize != 0) {
+        break;
+      }
+      if (level == myMinIndices.length) {
+        myMinIndices = Arrays.copyOf(myMinIndices, level + 1);
+        myMaxIndices = Arrays.copyOf(myMaxIndices, level + 1);
+        myMinIndices[level] = new int[16];
+        myMaxIndices[level] = new int[16];
+      }
+      int bucket = (int)(count / bucketSize) - 1;
+      if (bucket == myMinIndices[level].length) {
+        myMinIndices[level] = Arrays.copyOf(myMinIndices[level], bucket * 2);
+        myMaxIndices[level] = Arrays.copyOf(myMaxIndices[level], bucket * 2);
+      }
+
+      int minIndex;
+      int maxIndex;
+      if (level == 0) {
+        // Summarize the raw data points of the bucket.
+        minIndex = maxIndex = bucket * FAN_OUT;
+        for (int i = minIndex + 1; i < (bucket + 1) * FAN_OUT; i++) {
+          minIndex = getLongY(i) < getLongY(minIndex) ? i : minIndex;
+          maxIndex = getLongY(i) > getLongY(maxIndex) ? i : maxIndex;
+        }
+      }
+      else {
+        // Summarize the buckets of the level below.
+        int[] lowerMin = myMinIndices[level - 1];
+        int[] lowerMax = myMaxIndices[level - 1];
+        minIndex = lowerMin[bucket * FAN_OUT];
+        maxIndex = lowerMax[bucket * FAN_OUT];
+        for (int i = bucket * FAN_OUT + 1; i < (bucket + 1) * FAN_OUT; i++) {
+          minIndex = getLongY(lowerMin[i]) < getLongY(minIndex) ? lowerMin[i] : minIndex;
+          maxIndex = getLongY(lowerMax[i]) > getLongY(maxIndex) ? lowerMax[i] : maxIndex;
+        }
+      }
+      myMinIndices[level][bucket] = minIndex;
+      myMaxIndices[level][bucket] = maxIndex;
+    }
+  }
+
+  /**
+   * Adds the summary of the data points in [fromIndex, toIndex) to the result, using the complete buckets of the given level and finer
+   * levels for the partial buckets at both ends.
+   */
+  private void addRange(@NotNull List<SeriesData<Long>> result,
+                        @NotNull int[][] minIndices,
+                        @NotNull int[][] maxIndices,
+                        int size,
+                        int level,
+                        int fromIndex,
+                        int toIndex) {
+    if (fromIndex >= toIndex) {
+      return;
+    }
+    if (level < 0) {
+      for (int i = fromIndex; i < toIndex; i++) {
+        addPoint(result, i);
+      }
+      return;
+    }
+
+    int bucketSize = (int)getBucketSize(level);
+    int firstBucket = (fromIndex + bucketSize - 1) / bucketSize;
+    int lastBucket = Math.min(toIndex, size) / bucketSize;
+    if (firstBucket >= lastBucket) {
+      addRange(result, minIndices, maxIndices, size, level - 1, fromIndex, toIndex);
+      return;
+    }
+
+    addRange(result, minIndices, maxIndices, size, level - 1, fromIndex, firstBucket * bucketSize);
+    for (int bucket = firstBucket; bucket < lastBucket; bucket++) {
+      int minIndex = minIndices[level][bucket];
+      int maxIndex = maxIndices[level][bucket];
+      addPoint(result, Math.min(minIndex, maxIndex));
+      if (minIndex != maxIndex) {
+        addPoint(result, Math.max(minIndex, maxIndex));
+      }
+    }
+    addRange(result, minIndices, maxIndices, size, level - 1, lastBucket * bucketSize, toIndex);
+  }
+
+  private void addPoint(@NotNull List<SeriesData<Long>> result, int index) {
+    result.add(new SeriesData<>(getX(index), getLongY(index)));
+  }
+
+  private static long getBucketSize(int level) {
+    long bucketSize = FAN_OUT;
+    for (int i = 0; i < level; i++) {
+      bucketSize *= FAN_OUT;
+    }
+    return bucketSize;
+  }
+}
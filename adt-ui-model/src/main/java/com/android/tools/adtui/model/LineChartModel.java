@@ -30,6 +30,11 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
     LINE_CHART
   }
 
+  /**
+   * Downsampled series preserve their min and max values, so the y range can be computed from a small number of points.
+   */
+  private static final int Y_RANGE_MAX_POINTS = 1024;
+
   @NotNull
   private final List<RangedContinuousSeries> mySeries = new ArrayList<>();
 
@@ -47,7 +52,7 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
       Range range = ranged.getYRange();
       double yMax = -Double.MAX_VALUE;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      List<SeriesData<Long>> seriesList = ranged.getSeries(Y_RANGE_MAX_POINTS);
       if (seriesList.isEmpty()) {
         continue;
       }
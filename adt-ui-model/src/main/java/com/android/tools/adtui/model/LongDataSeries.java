@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link PrimitiveDataSeries} with long y values, e.g. for counters and memory sizes. Can be used wherever a {@code DataSeries<Long>} is
+ * expected, such as {@link RangedContinuousSeries}.
+ */
+public class LongDataSeries extends PrimitiveDataSeries<Long> {
+  private long[] myYs = new long[64];
+
+  public void add(long x, long y) {
+    int index = beginAdd(x);
+    myYs[index] = y;
+    commitAdd();
+  }
+
+  /**
+   * Returns the value of Y at a given index without boxing it.
+   */
+  public long getLongY(int index) {
+    return myYs[index];
+  }
+
+  @NotNull
+  @Override
+  public Long getY(int index) {
+    return myYs[index];
+  }
+
+  @Override
+  protected void growYStorage(int capacity) {
+    myYs = Arrays.copyOf(myYs, capacity);
+  }
+}
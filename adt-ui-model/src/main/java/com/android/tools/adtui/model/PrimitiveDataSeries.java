@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Base class of {@link DataSeries} implementations that keep their x values in a growable primitive array instead of a list of boxed
+ * {@link SeriesData}. Looking up an x value is a binary search over that array, and {@link #getDataForRange(Range)} returns a read-only
+ * view over the matching indices rather than a copy, so querying a long timeline does not allocate in proportion to its length.
+ * <p>
+ * Data must be added in increasing x order. A single thread may add data while others read it: readers see a consistent prefix of the
+ * series, and views returned by {@link #getDataForRange(Range)} are not affected by data added afterwards.
+ */
+public abstract class PrimitiveDataSeries<E> implements DataSeries<E> {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private long[] myXs = new long[INITIAL_CAPACITY];
+  /**
+   * Written after the arrays, so readers that read the size first always see arrays at least that large.
+   */
+  private volatile int mySize;
+
+  /**
+   * @return the number of data points in this series.
+   */
+  public int size() {
+    return mySize;
+  }
+
+  public long getX(int index) {
+    return myXs[index];
+  }
+
+  /**
+   * Returns the value of Y at a given index, boxed.
+   */
+  @NotNull
+  public abstract E getY(int index);
+
+  @Override
+  public List<SeriesData<E>> getDataForRange(Range range) {
+    int size = mySize;
+    if (size == 0 || range.isEmpty()) {
+      return createView(0, 0);
+    }
+    int fromIndex = getNearestXIndex((long)range.getMin(), size);
+    int toIndex = getNearestXIndex((long)range.getMax(), size) + 1;
+    return createView(fromIndex, toIndex);
+  }
+
+  @NotNull
+  public List<SeriesData<E>> getAllData() {
+    return createView(0, mySize);
+  }
+
+  /**
+   * @return a read-only view over the data points in [fromIndex, toIndex).
+   */
+  @NotNull
+  protected List<SeriesData<E>> createView(int fromIndex, int toIndex) {
+    return new View<>(this, fromIndex, toIndex);
+  }
+
+  /**
+   * Same semantics as {@link DefaultDataSeries#getNearestXIndex(long)}: the index of the last point whose x is less than or equal to the
+   * given value, clamped to the valid indices.
+   */
+  public int getNearestXIndex(long x) {
+    return getNearestXIndex(x, mySize);
+  }
+
+  /**
+   * Same as {@link #getNearestXIndex(long)}, but only considers the first {@code size} data points. Useful to answer a query against a
+   * consistent snapshot of the series while data is being added.
+   */
+  protected int getNearestXIndex(long x, int size) {
+    long[] xs = myXs;
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midX = xs[mid];
+      if (midX < x) {
+        low = mid + 1;
+      }
+      else if (midX > x) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    // No exact match, use the position to the left of the insertion point.
+    return Math.max(0, Math.min(low - 1, size - 1));
+  }
+
+  /**
+   * Appends x to the series, growing the storage if needed.
+   *
+   * @return the index at which the subclass must store the matching y value before calling {@link #commitAdd()}.
+   */
+  protected int beginAdd(long x) {
+    int size = mySize;
+    assert size == 0 || myXs[size - 1] <= x : "Data must be added in increasing x order";
+    if (size == myXs.length) {
+      int capacity = size + (size >> 1);
+      growYStorage(capacity);
+      myXs = Arrays.copyOf(myXs, capacity);
+    }
+    myXs[size] = x;
+    return size;
+  }
+
+  /**
+   * Publishes the data point started by {@link #beginAdd(long)} to readers.
+   */
+  protected void commitAdd() {
+    int size = mySize;
+    onDataAdded(size);
+    mySize = size + 1;
+  }
+
+  /**
+   * Called once the data point at the given index has been written, before it becomes visible to readers. Subclasses can override this
+   * to maintain additional indices over the data.
+   */
+  protected void onDataAdded(int index) {
+  }
+
+  /**
+   * Grows the y storage to the given capacity, preserving existing values.
+   */
+  protected abstract void growYStorage(int capacity);
+
+  /**
+   * Read-only view over a range of indices. The bounds are fixed at creation, so later additions to the series are not visible.
+   */
+  private static final class View<E> extends AbstractList<SeriesData<E>> implements RandomAccess {
+    @NotNull private final PrimitiveDataSeries<E> mySeries;
+    private final int myFromIndex;
+    private final int mySize;
+
+    View(@NotNull PrimitiveDataSeries<E> series, int fromIndex, int toIndex) {
+      mySeries = series;
+      myFromIndex = fromIndex;
+      mySize = toIndex - fromIndex;
+    }
+
+    @Override
+    public SeriesData<E> get(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+      int seriesIndex = myFromIndex + index;
+      return new SeriesData<>(mySeries.getX(seriesIndex), mySeries.getY(seriesIndex));
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+}
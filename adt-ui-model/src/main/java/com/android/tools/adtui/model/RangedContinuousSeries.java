@@ -16,7 +16,9 @@
 
 package com.android.tools.adtui.model;
 
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class adds a name and an additional range to RangedSeries. This additional range represents
@@ -30,6 +32,12 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   @NotNull
   private final Range myYRange;
 
+  /**
+   * Min/max index over the data fetched in incremental fetch mode, see {@link #getSeries(int)}. Null until a query needs downsampling.
+   */
+  @Nullable
+  private DownsamplingLongDataSeries myWindowIndex;
+
   /**
    * Creates a RangedContinuousSeries with the {@link DataSeries} object scoped by the default and intersecting {@link Range} objects.
    */
@@ -47,6 +55,48 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
     this(name, xRange, yRange, series, new Range(-Double.MAX_VALUE, Double.MAX_VALUE));
   }
 
+  /**
+   * In incremental fetch mode, the data fetched for the range is kept in memory, so it is also indexed by a
+   * {@link DownsamplingLongDataSeries} as it comes in, and downsampled to roughly {@code maxPoints} points when the range holds more than
+   * that, e.g. when a long session is zoomed out. Otherwise, same as {@link RangedSeries#getSeries(int)}.
+   */
+  @NotNull
+  @Override
+  public List<SeriesData<Long>> getSeries(int maxPoints) {
+    if (maxPoints == Integer.MAX_VALUE || !isIncrementalFetch() || mySeries instanceof DownsampledDataSeries) {
+      return super.getSeries(maxPoints);
+    }
+    List<SeriesData<Long>> window = getSeries();
+    if (window.size() <= maxPoints) {
+      return window;
+    }
+    return indexWindow(window).getDataForRange(getIntersection(), maxPoints);
+  }
+
+  /**
+   * Adds the points of the window that are after the last indexed one to {@link #myWindowIndex}. The index is rebuilt when the window
+   * starts before it, or when it holds twice as many points as the window, so it does not grow past the data that scrolled out of the range
+   * and its amortized cost stays constant per point.
+   */
+  @NotNull
+  private DownsamplingLongDataSeries indexWindow(@NotNull List<SeriesData<Long>> window) {
+    DownsamplingLongDataSeries index = myWindowIndex;
+    if (index == null || index.size() == 0 || window.get(0).x < index.getX(0) || index.size() > 2 * window.size()) {
+      index = new DownsamplingLongDataSeries();
+      myWindowIndex = index;
+    }
+    long lastIndexedX = index.size() == 0 ? Long.MIN_VALUE : index.getX(index.size() - 1);
+    // The window is in x order, so only its tail can be new.
+    int firstNew = window.size();
+    while (firstNew > 0 && window.get(firstNew - 1).x > lastIndexedX) {
+      firstNew--;
+    }
+    for (SeriesData<Long> point : window.subList(firstNew, window.size())) {
+      index.add(point.x, point.value);
+    }
+    return index;
+  }
+
   @NotNull
   public Range getYRange() {
     return myYRange;
@@ -15,10 +15,11 @@
  */
 package com.android.tools.adtui.model;
 
-import java.util.Collections;
-import org.jetbrains.annotations.NotNull;
-
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class is the default implementation of a ranged series. It provides access to the DataSeries
@@ -37,8 +38,28 @@ public class RangedSeries<E> {
   @NotNull
   protected final Range myIntersectRange;
 
-  @NotNull private Range myLastQueriedRange = new Range();
-  @NotNull private List<SeriesData<E>> myLastQueriedSeries = Collections.emptyList();
+  /**
+   * Maximum number of point limits whose last query is cached. A chart and its model typically query the same series with different
+   * limits in the same frame, e.g. the chart's width and a fixed limit for the y range, so a single entry would miss every time.
+   */
+  private static final int MAX_CACHED_QUERIES = 4;
+
+  /**
+   * The last queried range and result for each point limit, see {@link #getSeries(int)}.
+   */
+  @NotNull private final Map<Integer, CachedQuery<E>> myLastQueries = new LinkedHashMap<Integer, CachedQuery<E>>(8, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, CachedQuery<E>> eldest) {
+      return size() > MAX_CACHED_QUERIES;
+    }
+  };
+
+  private boolean myIsIncrementalFetch;
+
+  /**
+   * Data fetched so far while in incremental fetch mode, null until the first query or after a query that could not reuse it.
+   */
+  @Nullable private SeriesDataWindow<E> myWindow;
 
   /**
    * Creates a new RangedSeries with the {@link DataSeries} object scoped by view and data {@link Range} objects. getSeries will return
@@ -69,23 +90,86 @@ public class RangedSeries<E> {
    * query range is determined to not have changed to avoid hitting the Datastore redundantly. If the query range's max value is
    * Long.MAX_VALUE or Double.MAX_VALUE, however, then the cache is bypassed since there might be new data that are still streaming in.
    *
+   * In incremental fetch mode, see {@link #setIncrementalFetch(boolean)}, only the data after the last fetched point is queried when the
+   * range moves forward.
+   *
    * @return A new, immutable {@link SeriesDataList} consisting of items in the DataStore scoped to the range(s) that the RangedSeries was
    * initialized with.
    */
   @NotNull
   public List<SeriesData<E>> getSeries() {
+    return getSeries(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Same as {@link #getSeries()}, but if the underlying series is a {@link DownsampledDataSeries}, the data is downsampled to roughly
+   * {@code maxPoints} points, e.g. the number of points a chart can actually display. See also
+   * {@link RangedContinuousSeries#getSeries(int)}, which downsamples the data fetched in incremental fetch mode.
+   */
+  @NotNull
+  public List<SeriesData<E>> getSeries(int maxPoints) {
+    if (!(mySeries instanceof DownsampledDataSeries)) {
+      // Share the cached result with getSeries() since the data would be the same.
+      maxPoints = Integer.MAX_VALUE;
+    }
     Range queryRange = myRange.getIntersection(myIntersectRange);
-    if (queryRange.getMax() == Long.MAX_VALUE || queryRange.getMax() == Double.MAX_VALUE) {
-      return getSeriesForRange(queryRange);
+    if (myIsIncrementalFetch && maxPoints == Integer.MAX_VALUE) {
+      return getSeriesIncrementally(queryRange);
+    }
+    if (isStreaming(queryRange)) {
+      return getSeriesForRange(queryRange, maxPoints);
+    }
+
+    CachedQuery<E> lastQuery = myLastQueries.get(maxPoints);
+    if (lastQuery != null && lastQuery.myRange.isSameAs(queryRange)) {
+      return lastQuery.mySeries;
+    }
+
+    List<SeriesData<E>> series = getSeriesForRange(queryRange, maxPoints);
+    myLastQueries.put(maxPoints, new CachedQuery<>(queryRange, series));
+    return series;
+  }
+
+  /**
+   * Enables or disables incremental fetch mode, meant for series whose range follows live data. In this mode, when the query range slides
+   * forward, only the data after the last fetched point is requested from the underlying {@link DataSeries}, and the data that scrolled
+   * out of the range is dropped, so the cost of a query is proportional to the new data rather than to the size of the range.
+   * <p>
+   * This assumes data is added to the underlying series in x order, which holds for sampled data such as CPU or memory usage.
+   */
+  public void setIncrementalFetch(boolean enabled) {
+    myIsIncrementalFetch = enabled;
+    myWindow = null;
+  }
+
+  protected boolean isIncrementalFetch() {
+    return myIsIncrementalFetch;
+  }
+
+  @NotNull
+  private List<SeriesData<E>> getSeriesIncrementally(@NotNull Range queryRange) {
+    SeriesDataWindow<E> window = myWindow;
+    if (window != null && !isStreaming(queryRange) && window.getRange().isSameAs(queryRange)) {
+      return window.asList();
     }
 
-    if (myLastQueriedRange.isSameAs(queryRange)) {
-      return myLastQueriedSeries;
+    Range lastRange = window == null ? null : window.getRange();
+    if (window == null || window.isEmpty() || queryRange.isEmpty() ||
+        queryRange.getMin() < lastRange.getMin() || queryRange.getMax() < lastRange.getMax() || queryRange.getMin() > lastRange.getMax()) {
+      // The range did not slide forward, the whole range has to be fetched again.
+      window = new SeriesDataWindow<>(queryRange, getSeriesForRange(queryRange));
+    }
+    else {
+      window.append(getSeriesForRange(new Range(window.getLastX(), queryRange.getMax())));
+      window.trimBefore(queryRange.getMin());
+      window.setRange(queryRange);
     }
+    myWindow = window;
+    return window.asList();
+  }
 
-    myLastQueriedSeries = getSeriesForRange(queryRange);
-    myLastQueriedRange = queryRange;
-    return myLastQueriedSeries;
+  private static boolean isStreaming(@NotNull Range queryRange) {
+    return queryRange.getMax() == Long.MAX_VALUE || queryRange.getMax() == Double.MAX_VALUE;
   }
 
   /**
@@ -97,6 +181,14 @@ public class RangedSeries<E> {
     return mySeries.getDataForRange(range);
   }
 
+  @NotNull
+  private List<SeriesData<E>> getSeriesForRange(Range range, int maxPoints) {
+    if (maxPoints == Integer.MAX_VALUE) {
+      return getSeriesForRange(range);
+    }
+    return ((DownsampledDataSeries<E>)mySeries).getDataForRange(range, maxPoints);
+  }
+
   /**
    * @return A new range object that represents the intersection between the default and intersect ranges.
    */
@@ -111,4 +203,14 @@ public class RangedSeries<E> {
   public Range getXRange() {
     return myRange;
   }
+
+  private static final class CachedQuery<E> {
+    @NotNull private final Range myRange;
+    @NotNull private final List<SeriesData<E>> mySeries;
+
+    private CachedQuery(@NotNull Range range, @NotNull List<SeriesData<E>> series) {
+      myRange = range;
+      mySeries = series;
+    }
+  }
 }
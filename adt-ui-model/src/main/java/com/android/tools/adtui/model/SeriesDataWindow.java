@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sliding window over the data of a {@link DataSeries}, used by {@link RangedSeries} to fetch only new data while the view follows live
+ * data. Data is appended at the tail and trimmed at the head in amortized O(1) per point.
+ * <p>
+ * Lists returned by {@link #asList()} are snapshots: the slots they cover are never modified, and compaction copies into a new array, so
+ * they stay valid after the window moves.
+ */
+final class SeriesDataWindow<E> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  @NotNull private SeriesData<E>[] myData;
+  private int myStart;
+  private int myEnd;
+
+  /**
+   * The range of the last query answered by this window.
+   */
+  @NotNull private Range myRange;
+
+  @SuppressWarnings("unchecked")
+  SeriesDataWindow(@NotNull Range range, @NotNull List<SeriesData<E>> data) {
+    myData = (SeriesData<E>[])new SeriesData[Math.max(INITIAL_CAPACITY, data.size() * 2)];
+    myRange = range;
+    append(data);
+  }
+
+  @NotNull
+  Range getRange() {
+    return myRange;
+  }
+
+  void setRange(@NotNull Range range) {
+    myRange = range;
+  }
+
+  boolean isEmpty() {
+    return myStart == myEnd;
+  }
+
+  long getLastX() {
+    assert !isEmpty();
+    return myData[myEnd - 1].x;
+  }
+
+  /**
+   * Appends the data points that are after the current tail, ignoring those that are already in the window.
+   */
+  void append(@NotNull List<SeriesData<E>> data) {
+    for (SeriesData<E> point : data) {
+      if (!isEmpty() && point.x <= getLastX()) {
+        continue;
+      }
+      if (myEnd == myData.length) {
+        // Always copy into a new array, as lists previously returned by asList() may still reference the current one.
+        myData = Arrays.copyOfRange(myData, myStart, myStart + Math.max(INITIAL_CAPACITY, (myEnd - myStart) * 2));
+        myEnd -= myStart;
+        myStart = 0;
+      }
+      myData[myEnd++] = point;
+    }
+  }
+
+  /**
+   * Drops the points at the head of the window that are before {@code min}, keeping the last of them so lines still reach the left edge of
+   * the range.
+   */
+  void trimBefore(double min) {
+    while (myEnd - myStart > 1 && myData[myStart + 1].x <= min) {
+      myStart++;
+    }
+  }
+
+  @NotNull
+  List<SeriesData<E>> asList() {
+    return new View<>(myData, myStart, myEnd);
+  }
+
+  private static final class View<E> extends AbstractList<SeriesData<E>> implements RandomAccess {
+    @NotNull private final SeriesData<E>[] myData;
+    private final int myStart;
+    private final int mySize;
+
+    View(@NotNull SeriesData<E>[] data, int start, int end) {
+      myData = data;
+      myStart = start;
+      mySize = end - start;
+    }
+
+    @Override
+    public SeriesData<E> get(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+      return myData[myStart + index];
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class DownsamplingLongDataSeriesTest {
+  private int myQueryCount;
+
+
+  @Test
+  public void testSmallRangeReturnsAllData() {
+    DownsamplingLongDataSeries series = new DownsamplingLongDataSeries();
+    for (int i = 0; i < 100; i++) {
+      series.add(i, i);
+    }
+    Range range = new Range(10, 20);
+    assertThat(series.getDataForRange(range, 100)).containsExactlyElementsIn(series.getDataForRange(range)).inOrder();
+  }
+
+  @Test
+  public void testDownsampledDataKeepsEnvelope() {
+    DownsamplingLongDataSeries series = new DownsamplingLongDataSeries();
+    Random random = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      series.add(i * 10, random.nextInt(1000));
+    }
+    // Spikes in the middle of the data must survive downsampling.
+    series.add(1000000, 5000);
+    series.add(1000010, -5000);
+    for (int i = 0; i < 1000; i++) {
+      series.add(1000020 + i * 10, random.nextInt(1000));
+    }
+
+    Range range = new Range(123, 1005000);
+    List<SeriesData<Long>> all = series.getDataForRange(range);
+    List<SeriesData<Long>> downsampled = series.getDataForRange(range, 200);
+
+    assertThat(downsampled.size()).isAtMost(200 + 32);
+    assertThat(all).containsAllIn(downsampled);
+    assertThat(downsampled.get(0)).isEqualTo(all.get(0));
+    assertThat(downsampled.get(downsampled.size() - 1)).isEqualTo(all.get(all.size() - 1));
+    assertThat(downsampled).contains(new SeriesData<>(1000000, 5000L));
+    assertThat(downsampled).contains(new SeriesData<>(1000010, -5000L));
+    for (int i = 1; i < downsampled.size(); i++) {
+      assertThat(downsampled.get(i).x).isGreaterThan(downsampled.get(i - 1).x);
+    }
+  }
+
+  @Test
+  public void testIndexIsUpdatedAsDataIsAdded() {
+    DownsamplingLongDataSeries series = new DownsamplingLongDataSeries();
+    Range range = new Range(0, Long.MAX_VALUE);
+    for (int i = 0; i < 5000; i++) {
+      series.add(i, i % 100 == 0 ? 1000 : 0);
+      List<SeriesData<Long>> downsampled = series.getDataForRange(range, 50);
+      assertThat(downsampled.size()).isAtMost(50 + 32);
+      assertThat(downsampled.get(downsampled.size() - 1).x).isEqualTo(i);
+      assertThat(downsampled.stream().anyMatch(data -> data.value == 1000)).isTrue();
+      if (i > 0) {
+        assertThat(downsampled.stream().anyMatch(data -> data.value == 0)).isTrue();
+      }
+    }
+  }
+
+  @Test
+  public void testRangedSeriesPassesMaxPoints() {
+    DownsamplingLongDataSeries series = new DownsamplingLongDataSeries();
+    for (int i = 0; i < 10000; i++) {
+      series.add(i, i % 2);
+    }
+    RangedSeries<Long> rangedSeries = new RangedSeries<>(new Range(0, 10000), series);
+    assertThat(rangedSeries.getSeries()).hasSize(10000);
+    assertThat(rangedSeries.getSeries(100).size()).isAtMost(100 + 32);
+    // Changing the number of points bypasses the cached result.
+    assertThat(rangedSeries.getSeries()).hasSize(10000);
+  }
+
+  @Test
+  public void testRangedSeriesCachesEachMaxPoints() {
+    DownsamplingLongDataSeries series = new DownsamplingLongDataSeries() {
+      @Override
+      public List<SeriesData<Long>> getDataForRange(Range range, int maxPoints) {
+        myQueryCount++;
+        return super.getDataForRange(range, maxPoints);
+      }
+    };
+    for (int i = 0; i < 10000; i++) {
+      series.add(i, i % 2);
+    }
+    RangedSeries<Long> rangedSeries = new RangedSeries<>(new Range(0, 10000), series);
+    // A chart and its model alternate between limits every frame, both results stay cached.
+    List<SeriesData<Long>> small = rangedSeries.getSeries(100);
+    List<SeriesData<Long>> large = rangedSeries.getSeries(1000);
+    assertThat(myQueryCount).isEqualTo(2);
+    assertThat(rangedSeries.getSeries(100)).isSameAs(small);
+    assertThat(rangedSeries.getSeries(1000)).isSameAs(large);
+    assertThat(myQueryCount).isEqualTo(2);
+  }
+}
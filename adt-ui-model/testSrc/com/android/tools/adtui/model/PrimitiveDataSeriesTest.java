@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+
+public class PrimitiveDataSeriesTest {
+
+  @Test
+  public void testGetDataForRangeMatchesDefaultDataSeries() {
+    LongDataSeries primitiveSeries = new LongDataSeries();
+    DefaultDataSeries<Long> defaultSeries = new DefaultDataSeries<>();
+    // Enough points to grow the backing arrays a few times, with gaps and duplicated x values.
+    for (int i = 0; i < 500; i++) {
+      long x = i * 3 - (i % 7 == 0 ? 3 : 0);
+      primitiveSeries.add(x, i * 10L);
+      defaultSeries.add(x, i * 10L);
+    }
+
+    assertThat(primitiveSeries.size()).isEqualTo(500);
+    for (long min = -5; min < 1510; min += 7) {
+      for (long max = min; max < 1510; max += 97) {
+        Range range = new Range(min, max);
+        assertThat(primitiveSeries.getDataForRange(range)).containsExactlyElementsIn(defaultSeries.getDataForRange(range)).inOrder();
+      }
+    }
+  }
+
+  @Test
+  public void testGetNearestXIndex() {
+    LongDataSeries series = new LongDataSeries();
+    for (int i = 0; i < 5; i++) {
+      series.add(i * 10, i);
+    }
+    assertThat(series.getNearestXIndex(-1)).isEqualTo(0);
+    assertThat(series.getNearestXIndex(0)).isEqualTo(0);
+    assertThat(series.getNearestXIndex(25)).isEqualTo(2);
+    assertThat(series.getNearestXIndex(30)).isEqualTo(3);
+    assertThat(series.getNearestXIndex(100)).isEqualTo(4);
+  }
+
+  @Test
+  public void testEmptySeries() {
+    LongDataSeries series = new LongDataSeries();
+    assertThat(series.getDataForRange(new Range(0, 100))).isEmpty();
+    assertThat(series.getAllData()).isEmpty();
+
+    series.add(10, 1);
+    assertThat(series.getDataForRange(new Range())).isEmpty();
+  }
+
+  @Test
+  public void testViewIsNotAffectedByLaterData() {
+    LongDataSeries series = new LongDataSeries();
+    for (int i = 0; i < 50; i++) {
+      series.add(i, i);
+    }
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(10, Long.MAX_VALUE));
+    assertThat(data).hasSize(40);
+
+    for (int i = 50; i < 200; i++) {
+      series.add(i, i);
+    }
+    assertThat(data).hasSize(40);
+    assertThat(data.get(39).x).isEqualTo(49);
+    assertThat(series.getDataForRange(new Range(10, Long.MAX_VALUE))).hasSize(190);
+  }
+
+  @Test
+  public void testUsableAsContinuousSeries() {
+    LongDataSeries series = new LongDataSeries();
+    for (int i = 0; i < 50; i++) {
+      series.add(i, (long)i);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("Test", new Range(0, 100), new Range(0, 100), series);
+    assertThat(rangedSeries.getSeries()).hasSize(50);
+  }
+}
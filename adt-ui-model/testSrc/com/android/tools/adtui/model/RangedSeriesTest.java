@@ -17,6 +17,8 @@ package com.android.tools.adtui.model;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 
 public class RangedSeriesTest {
@@ -67,4 +69,100 @@ public class RangedSeriesTest {
     }
     assertThat(rangedSeries.getSeries()).hasSize(100);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testIncrementalFetchOnlyQueriesNewData() {
+    Range viewRange = new Range(0, 100);
+    RecordingDataSeries testSeries = new RecordingDataSeries();
+    for (int i = 0; i < 100; i++) {
+      testSeries.add(i, (long)i);
+    }
+    RangedSeries<Long> rangedSeries = new RangedSeries<>(viewRange, testSeries);
+    rangedSeries.setIncrementalFetch(true);
+
+    assertThat(rangedSeries.getSeries()).hasSize(100);
+    assertThat(testSeries.myQueriedRanges).hasSize(1);
+
+    // Slide the range forward, only the data after the last fetched point should be queried.
+    for (int i = 100; i < 150; i++) {
+      testSeries.add(i, (long)i);
+    }
+    viewRange.set(40, 150);
+    List<SeriesData<Long>> series = rangedSeries.getSeries();
+    assertThat(testSeries.myQueriedRanges).hasSize(2);
+    assertThat(testSeries.myQueriedRanges.get(1).getMin()).isWithin(0).of(99);
+    // The points that scrolled out of the range are dropped.
+    assertThat(series).containsExactlyElementsIn(testSeries.getAllData().subList(40, 150)).inOrder();
+
+    // Querying the same range again is served from the window.
+    assertThat(rangedSeries.getSeries()).containsExactlyElementsIn(series).inOrder();
+    assertThat(testSeries.myQueriedRanges).hasSize(2);
+
+    // Moving backward fetches the whole range again.
+    viewRange.set(10, 60);
+    assertThat(rangedSeries.getSeries()).containsExactlyElementsIn(testSeries.getAllData().subList(10, 61)).inOrder();
+    assertThat(testSeries.myQueriedRanges).hasSize(3);
+    assertThat(testSeries.myQueriedRanges.get(2).getMin()).isWithin(0).of(10);
+  }
+
+  @Test
+  public void testIncrementalFetchWhileStreaming() {
+    Range viewRange = new Range(0, Long.MAX_VALUE);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    RangedSeries<Long> rangedSeries = new RangedSeries<>(viewRange, testSeries);
+    rangedSeries.setIncrementalFetch(true);
+
+    List<List<SeriesData<Long>>> snapshots = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      testSeries.add(i, (long)i);
+      snapshots.add(rangedSeries.getSeries());
+    }
+    for (int i = 0; i < 100; i++) {
+      // Previously returned lists are not affected by later queries.
+      assertThat(snapshots.get(i)).hasSize(i + 1);
+    }
+    assertThat(rangedSeries.getSeries()).containsExactlyElementsIn(testSeries.getAllData()).inOrder();
+  }
+
+  @Test
+  public void testIncrementalFetchIsDownsampled() {
+    Range viewRange = new Range(0, 9999);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 10000; i++) {
+      testSeries.add(i, i == 5000 ? 1000L : i % 100);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", viewRange, new Range(0, 1000), testSeries);
+    rangedSeries.setIncrementalFetch(true);
+
+    // The window is downsampled, keeping the first and last points and the extremes.
+    List<SeriesData<Long>> series = rangedSeries.getSeries(200);
+    assertThat(series.size()).isAtMost(300);
+    assertThat(series.get(0).x).isEqualTo(0);
+    assertThat(series.get(series.size() - 1).x).isEqualTo(9999);
+    assertThat(series.stream().mapToLong(data -> data.value).max().getAsLong()).isEqualTo(1000);
+
+    // New points are indexed as the range slides forward.
+    for (int i = 10000; i < 20000; i++) {
+      testSeries.add(i, i == 15000 ? -1L : i % 100);
+    }
+    viewRange.set(10000, 19999);
+    series = rangedSeries.getSeries(200);
+    assertThat(series.size()).isAtMost(300);
+    assertThat(series.get(0).x).isAtMost(10000);
+    assertThat(series.get(series.size() - 1).x).isEqualTo(19999);
+    assertThat(series.stream().mapToLong(data -> data.value).min().getAsLong()).isEqualTo(-1);
+
+    // Small enough windows are returned as is.
+    assertThat(rangedSeries.getSeries(Integer.MAX_VALUE)).containsExactlyElementsIn(rangedSeries.getSeries()).inOrder();
+  }
+
+  private static final class RecordingDataSeries extends DefaultDataSeries<Long> {
+    private final List<Range> myQueriedRanges = new ArrayList<>();
+
+    @Override
+    public List<SeriesData<Long>> getDataForRange(Range range) {
+      myQueriedRanges.add(new Range(range));
+      return super.getDataForRange(range);
+    }
+  }
+}
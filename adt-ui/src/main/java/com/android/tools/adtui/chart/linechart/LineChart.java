@@ -63,6 +63,13 @@ public class LineChart extends AnimatedComponent {
    */
   private static final double BUCKET_BAR_PERCENTAGE = 0.7;
 
+  /**
+   * Number of points per pixel column requested from series that support downsampling, see
+   * {@link com.android.tools.adtui.model.RangedSeries#getSeries(int)}. Series summarize each chunk of data
+   * with its min and max points, so this is one chunk per pixel column.
+   */
+  private static final int MAX_POINTS_PER_PIXEL = 2;
+
   @NotNull final LineChartModel myModel;
 
   /**
@@ -194,7 +201,10 @@ public class LineChart extends AnimatedComponent {
       }
       final LineConfig config = getLineConfig(ranged);
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      // Stacked series need aligned x values and bars need every bucket, so only plain lines can be downsampled to the chart's width.
+      boolean canDownsample = !config.isStacked() && config.getDataBucketInterval() == 0;
+      List<SeriesData<Long>> seriesList =
+        canDownsample ? ranged.getSeries(MAX_POINTS_PER_PIXEL * Math.max(1, dim.width)) : ranged.getSeries();
       if (config.isStacked()) {
         if (lastStackedSeries == null) {
           // Create a new list of SeriesData to prevent modifying the backing data series, which could be cached.
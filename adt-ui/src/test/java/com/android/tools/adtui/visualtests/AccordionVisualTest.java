@@ -60,7 +60,7 @@ public class AccordionVisualTest extends VisualTest {
 
   private ArrayList<RangedContinuousSeries> mRangedData;
 
-  private ArrayList<DefaultDataSeries<Long>> mData;
+  private ArrayList<LongDataSeries> mData;
 
   @Override
   protected List<Updatable> createModelList() {
@@ -89,7 +89,7 @@ public class AccordionVisualTest extends VisualTest {
       if (i % 2 == 0) {
         yRange = new Range(0.0, 100.0);
       }
-      DefaultDataSeries<Long> series = new DefaultDataSeries<>();
+      LongDataSeries series = new LongDataSeries();
       RangedContinuousSeries ranged = new RangedContinuousSeries("Widgets #" + i, timeGlobalRangeUs, yRange, series);
       mRangedData.add(ranged);
       mData.add(series);
@@ -118,9 +118,8 @@ public class AccordionVisualTest extends VisualTest {
       try {
         while (true) {
           long nowUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime()) - mStartTimeUs;
-          for (DefaultDataSeries<Long> series : mData) {
-            List<SeriesData<Long>> data = series.getAllData();
-            long last = data.isEmpty() ? 0 : data.get(data.size() - 1).value;
+          for (LongDataSeries series : mData) {
+            long last = series.size() == 0 ? 0 : series.getLongY(series.size() - 1);
             float delta = 10 * ((float)Math.random() - 0.45f);
             series.add(nowUs, last + (long)delta);
           }
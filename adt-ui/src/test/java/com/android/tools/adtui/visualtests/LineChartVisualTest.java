@@ -31,6 +31,7 @@ import com.android.tools.adtui.model.DefaultDurationData;
 import com.android.tools.adtui.model.DurationDataModel;
 import com.android.tools.adtui.model.Interpolatable;
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangeSelectionModel;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -73,7 +74,7 @@ public class LineChartVisualTest extends VisualTest {
 
   private List<RangedContinuousSeries> mRangedData;
 
-  private List<DefaultDataSeries<Long>> mData;
+  private List<LongDataSeries> mData;
 
   private AnimatedTimeRange mAnimatedTimeRange;
 
@@ -114,7 +115,7 @@ public class LineChartVisualTest extends VisualTest {
       if (i % 2 == 0) {
         yRange = new Range(0.0, 100.0);
       }
-      DefaultDataSeries<Long> series = new DefaultDataSeries<>();
+      LongDataSeries series = new LongDataSeries();
       RangedContinuousSeries ranged =
         new RangedContinuousSeries("Widgets #" + i, timeGlobalRangeUs, yRange, series);
       mRangedData.add(ranged);
@@ -193,9 +194,8 @@ public class LineChartVisualTest extends VisualTest {
           while (true) {
             int v = variance.get();
             long nowUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime());
-            for (DefaultDataSeries<Long> series : mData) {
-              List<SeriesData<Long>> data = series.getAllData();
-              long last = data.isEmpty() ? 0 : data.get(data.size() - 1).value;
+            for (LongDataSeries series : mData) {
+              long last = series.size() == 0 ? 0 : series.getLongY(series.size() - 1);
               float delta = ((float)Math.random() - 0.45f) * v;
               // Make sure not to add negative numbers.
               long current = Math.max(last + (long)delta, 0);
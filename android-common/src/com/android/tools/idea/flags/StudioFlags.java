@@ -131,6 +131,18 @@ public final class StudioFlags {
     "For Android O or newer, supports single-point selection which shows a snapshot of the heap at the specific time.",
     true);
 
+  public static final Flag<Boolean> PROFILER_MAPPED_HEAP_DUMP_LOADING = Flag.create(
+    PROFILER, "memory.heapdump.mapped", "Load heap dumps from a memory-mapped file",
+    "Spill heap dumps to a temporary file and map it instead of keeping the hprof in memory, and compute retained sizes in the " +
+    "background after the class list is shown.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PARALLEL_HEAP_DOMINATORS = Flag.create(
+    PROFILER, "memory.heapdump.dominators.parallel", "Compute heap dump retained sizes in parallel",
+    "Compute the dominator tree of heap dumps with an int-indexed graph and accumulate retained sizes on multiple threads, in the " +
+    "background after the class list is shown.",
+    false);
+
   public static final Flag<Boolean> PROFILER_SAMPLE_LIVE_ALLOCATIONS = Flag.create(
     PROFILER, "memory.livealloc.sampled", "Enable Sampled Live Allocation Tracking",
     "For Android O or newer, allows users to configure the sampling mode of live allocation tracking",
@@ -167,6 +179,32 @@ public final class StudioFlags {
     PROFILER, "perfetto.traceprocessor", "Enable TraceProcessorDaemon",
     "Use TraceProcessor to parse Perfetto captures instead of Trebuchet/Atrace backend.",
     false);
+
+  public static final Flag<Boolean> PROFILER_DATASTORE_WRITE_BEHIND = Flag.create(
+    PROFILER, "datastore.write.behind", "Enable batched datastore writes",
+    "Queues event and allocation inserts and applies them in batches on a dedicated writer thread.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_RESUME_SESSIONS = Flag.create(
+    PROFILER, "datastore.resume.sessions", "Keep profiling sessions across restarts",
+    "Keeps the datastore database of the previous Studio run, when its schema version is supported, so its sessions can be reopened.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_SEGMENTED_EVENT_STORE = Flag.create(
+    PROFILER, "datastore.segmented.events", "Enable in-memory segmented event store",
+    "Stores unified pipeline events in memory, indexed by stream, kind, group and timestamp, instead of the SQLite events table.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_BYTES_FILE_STORE = Flag.create(
+    PROFILER, "datastore.bytes.files", "Store large profiler artifacts in files",
+    "Keeps large bytes such as heap dumps and CPU traces in content-addressed files next to the database instead of as database BLOBs, " +
+    "and serves them as memory mapped buffers.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_INCREMENTAL_SERIES_FETCH = Flag.create(
+    PROFILER, "monitor.incremental.fetch", "Fetch only new data in live monitors",
+    "When the CPU, memory, network and energy monitors follow live data, only query the samples added since the last frame.",
+    false);
   //endregion
 
   //region ML
@@ -346,6 +384,11 @@ public final class StudioFlags {
     "Enable the new transition panel in the motion editor",
     true);
 
+  public static final Flag<Boolean> NELE_RENDER_RESULT_CACHE = Flag.create(
+    NELE, "render.result.cache", "Cache renders on disk",
+    "Show the last render of a layout from a disk cache when it is opened, while it is rendered again in the background",
+    false);
+
   //endregion
 
   //region Navigation Editor
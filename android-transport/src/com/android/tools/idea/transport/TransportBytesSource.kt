@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.transport
+
+import com.android.tools.profiler.proto.Transport
+import java.nio.channels.FileChannel
+
+/**
+ * Gives in-process readers access to the files the datastore keeps large bytes in, so they can stream or map them instead of receiving
+ * them in a single [Transport.BytesResponse].
+ */
+interface TransportBytesSource {
+  /**
+   * Returns a channel to read the bytes matching [request] from, to be closed by the caller, or null if they are not kept in a file, in
+   * which case they can still be fetched with a [Transport.BytesRequest].
+   */
+  fun openBytes(request: Transport.BytesRequest): FileChannel?
+}
@@ -36,6 +36,7 @@ import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Transport;
 import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
 import com.google.wireless.android.sdk.stats.AndroidProfilerEvent;
 import com.google.wireless.android.sdk.stats.AndroidStudioEvent;
 import com.google.wireless.android.sdk.stats.PerfdCrashInfo;
@@ -538,6 +539,12 @@ public final class TransportDeviceManager implements AndroidDebugBridge.IDebugBr
       myContext = context;
     }
 
+    @NotNull
+    @Override
+    public Set<Common.Event.Kind> getPreprocessedKinds() {
+      return Sets.immutableEnumSet(Common.Event.Kind.AGENT, Common.Event.Kind.PROCESS);
+    }
+
     @Override
     public boolean shouldPreprocess(Common.Event event) {
       switch (event.getKind()) {
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.transport;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.intellij.openapi.diagnostic.Logger;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Moves the events of a {@link TransportServiceProxy} from its event queue to a gRPC observer in batches.
+ * <p>
+ * Each wakeup drains up to {@link #MAX_BATCH_SIZE} events. The events of a batch are routed by {@link Event.Kind} to the preprocessors
+ * that handle them, see {@link TransportEventPreprocessor#getPreprocessedKinds()}, and each preprocessor runs on its own worker thread, so a slow preprocessor only holds up the events of the batch it is working on instead of
+ * every other preprocessor as well. Preprocessors still see their events one at a time and in order. Once all the preprocessors are done
+ * with the batch, it is emitted in the same order as if the preprocessors had run inline: the events generated for an event, followed by
+ * the event itself.
+ * <p>
+ * This class is not thread-safe, {@link #drain(BlockingQueue, List)} and {@link #process(List)} are expected to be called from a single
+ * listener thread. The {@link StageStats} can be read from any thread, and are logged every {@link #REPORT_PERIOD_NS}.
+ */
+final class TransportEventPipeline {
+  static final int MAX_BATCH_SIZE = 256;
+  private static final long REPORT_PERIOD_NS = TimeUnit.HOURS.toNanos(1);
+
+  private static Logger getLog() {
+    return Logger.getInstance(TransportEventPipeline.class);
+  }
+
+  enum Stage {
+    /**
+     * Waiting for and draining events from the queue. The queue depth is the size of the queue on wakeup.
+     */
+    DRAIN,
+    /**
+     * Running the preprocessors on a batch. The queue depth is the number of events routed to a preprocessor.
+     */
+    PREPROCESS,
+    /**
+     * Forwarding a batch and its generated events to the observer. The queue depth is the number of events emitted.
+     */
+    EMIT
+  }
+
+  @NotNull private final List<TransportEventPreprocessor> myPreprocessors;
+  // The kinds of events routed to each preprocessor, or null for the preprocessors that accept events of any kind.
+  @NotNull private final List<Set<Event.Kind>> myPreprocessedKinds = new ArrayList<>();
+  @NotNull private final StreamObserver<Event> myObserver;
+  // One single-threaded worker per preprocessor, as preprocessors keep state between events.
+  @NotNull private final List<ExecutorService> myWorkers = new ArrayList<>();
+  @NotNull private final Map<Stage, StageStats> myStats = new EnumMap<>(Stage.class);
+  private long myLastReportNs = System.nanoTime();
+
+  TransportEventPipeline(@NotNull List<TransportEventPreprocessor> preprocessors, @NotNull StreamObserver<Event> observer) {
+    myPreprocessors = new ArrayList<>(preprocessors);
+    myObserver = observer;
+    for (int i = 0; i < myPreprocessors.size(); i++) {
+      myPreprocessedKinds.add(myPreprocessors.get(i).getPreprocessedKinds());
+      myWorkers.add(Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("TransportEventPreprocessor-" + i + "-%d").setDaemon(true).build()));
+    }
+    for (Stage stage : Stage.values()) {
+      myStats.put(stage, new StageStats());
+    }
+  }
+
+  /**
+   * Waits for an event and adds it to the batch, along with as many of the events already in the queue as fit in a batch.
+   */
+  void drain(@NotNull BlockingQueue<Event> queue, @NotNull List<Event> batch) throws InterruptedException {
+    batch.add(queue.take());
+    long startNs = System.nanoTime();
+    int depth = queue.size() + 1;
+    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+    myStats.get(Stage.DRAIN).record(batch.size(), depth, System.nanoTime() - startNs);
+  }
+
+  /**
+   * Runs the preprocessors on the batch and forwards everything to the observer. This waits for the preprocessors even if the calling thread
+   * is interrupted, so no event of the batch is dropped, and then restores the interrupted status.
+   */
+  void process(@NotNull List<Event> batch) {
+    List<List<Iterable<Event>>> generatedEvents = preprocess(batch);
+    long preprocessedNs = System.nanoTime();
+
+    int emitted = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      for (List<Iterable<Event>> generatedByPreprocessor : generatedEvents) {
+        Iterable<Event> generated = generatedByPreprocessor.get(i);
+        if (generated != null) {
+          for (Event event : generated) {
+            myObserver.onNext(event);
+            emitted++;
+          }
+        }
+      }
+      myObserver.onNext(batch.get(i));
+      emitted++;
+    }
+    long emittedNs = System.nanoTime();
+    myStats.get(Stage.EMIT).record(batch.size(), emitted, emittedNs - preprocessedNs);
+
+    if (emittedNs - myLastReportNs >= REPORT_PERIOD_NS) {
+      myLastReportNs = emittedNs;
+      logStats();
+    }
+  }
+
+  /**
+   * Stops the preprocessor workers. Events that are already in a batch are still processed.
+   */
+  void shutdown() {
+    myWorkers.forEach(ExecutorService::shutdown);
+    logStats();
+  }
+
+  private void logStats() {
+    myStats.forEach((stage, stats) -> getLog().info(String.format("Event pipeline stats for %s: %s", stage, stats)));
+  }
+
+  @NotNull
+  StageStats getStats(@NotNull Stage stage) {
+    return myStats.get(stage);
+  }
+
+  /**
+   * @return for each preprocessor, the events it generated for each event of the batch, or null for the events it does not handle.
+   */
+  @NotNull
+  private List<List<Iterable<Event>>> preprocess(@NotNull List<Event> batch) {
+    long startNs = System.nanoTime();
+    List<Future<List<Iterable<Event>>>> futures = new ArrayList<>(myPreprocessors.size());
+    for (int i = 0; i < myPreprocessors.size(); i++) {
+      TransportEventPreprocessor preprocessor = myPreprocessors.get(i);
+      List<Integer> routedIndices = route(myPreprocessedKinds.get(i), batch);
+      // Preprocessors that none of the events are routed to are not woken up at all
+      futures.add(routedIndices.isEmpty() ? null : myWorkers.get(i).submit(() -> preprocessBatch(preprocessor, batch, routedIndices)));
+    }
+
+    List<List<Iterable<Event>>> generatedEvents = new ArrayList<>(futures.size());
+    for (Future<List<Iterable<Event>>> future : futures) {
+      if (future == null) {
+        generatedEvents.add(Collections.nCopies(batch.size(), null));
+        continue;
+      }
+      try {
+        generatedEvents.add(Uninterruptibles.getUninterruptibly(future));
+      }
+      catch (ExecutionException e) {
+        // Preprocessors are not expected to throw. Keep forwarding the batch without the events of the failed preprocessor.
+        getLog().warn("Unable to preprocess events", e.getCause());
+        generatedEvents.add(Collections.nCopies(batch.size(), null));
+      }
+    }
+
+    int routed = 0;
+    for (List<Iterable<Event>> generatedByPreprocessor : generatedEvents) {
+      for (Iterable<Event> generated : generatedByPreprocessor) {
+        if (generated != null) {
+          routed++;
+        }
+      }
+    }
+    myStats.get(Stage.PREPROCESS).record(batch.size(), routed, System.nanoTime() - startNs);
+    return generatedEvents;
+  }
+
+  /**
+   * @return the indices of the events of the batch whose kind is one of the given kinds, or of all of them if the kinds are null.
+   */
+  @NotNull
+  private static List<Integer> route(@Nullable Set<Event.Kind> kinds, @NotNull List<Event> batch) {
+    List<Integer> indices = new ArrayList<>();
+    for (int i = 0; i < batch.size(); i++) {
+      if (kinds == null || kinds.contains(batch.get(i).getKind())) {
+        indices.add(i);
+      }
+    }
+    return indices;
+  }
+
+  @NotNull
+  private static List<Iterable<Event>> preprocessBatch(@NotNull TransportEventPreprocessor preprocessor,
+                                                       @NotNull List<Event> batch,
+                                                       @NotNull List<Integer> routedIndices) {
+    List<Iterable<Event>> generated = new ArrayList<>(Collections.nCopies(batch.size(), null));
+    for (int index : routedIndices) {
+      Event event = batch.get(index);
+      if (preprocessor.shouldPreprocess(event)) {
+        generated.set(index, preprocessor.preprocessEvent(event));
+      }
+    }
+    return generated;
+  }
+
+  /**
+   * Counters of a {@link Stage}, updated once per batch.
+   */
+  static final class StageStats {
+    private final AtomicLong myBatchCount = new AtomicLong();
+    private final AtomicLong myEventCount = new AtomicLong();
+    private final AtomicLong myLastQueueDepth = new AtomicLong();
+    private final AtomicLong myMaxQueueDepth = new AtomicLong();
+    private final AtomicLong myTotalLatencyNs = new AtomicLong();
+    private final AtomicLong myMaxLatencyNs = new AtomicLong();
+
+    private void record(int eventCount, long queueDepth, long latencyNs) {
+      myBatchCount.incrementAndGet();
+      myEventCount.addAndGet(eventCount);
+      myLastQueueDepth.set(queueDepth);
+      myMaxQueueDepth.accumulateAndGet(queueDepth, Math::max);
+      myTotalLatencyNs.addAndGet(latencyNs);
+      myMaxLatencyNs.accumulateAndGet(latencyNs, Math::max);
+    }
+
+    long getBatchCount() {
+      return myBatchCount.get();
+    }
+
+    long getEventCount() {
+      return myEventCount.get();
+    }
+
+    long getLastQueueDepth() {
+      return myLastQueueDepth.get();
+    }
+
+    long getMaxQueueDepth() {
+      return myMaxQueueDepth.get();
+    }
+
+    long getTotalLatencyNs() {
+      return myTotalLatencyNs.get();
+    }
+
+    long getMaxLatencyNs() {
+      return myMaxLatencyNs.get();
+    }
+
+    @Override
+    public String toString() {
+      long batchCount = getBatchCount();
+      return String.format("%d batches, %d events, queue depth %d (max %d), latency avg %dus (max %dus)",
+                           batchCount, getEventCount(), getLastQueueDepth(), getMaxQueueDepth(),
+                           batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(getTotalLatencyNs() / batchCount),
+                           TimeUnit.NANOSECONDS.toMicros(getMaxLatencyNs()));
+    }
+  }
+}
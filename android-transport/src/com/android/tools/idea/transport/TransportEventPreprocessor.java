@@ -16,7 +16,9 @@
 package com.android.tools.idea.transport;
 
 import com.android.tools.profiler.proto.Common;
+import java.util.Set;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Interface for preprocessing transport events before they are inserted into the data store. Does not modify the event.
@@ -29,6 +31,15 @@ public interface TransportEventPreprocessor {
    */
   boolean shouldPreprocess(Common.Event event);
 
+  /**
+   * @return the kinds of the events that {@link #shouldPreprocess(Common.Event)} can accept, or null if it can accept events of any kind.
+   * Events of other kinds are not passed to this preprocessor at all.
+   */
+  @Nullable
+  default Set<Common.Event.Kind> getPreprocessedKinds() {
+    return null;
+  }
+
   /**
    * Preprocess the event. Only applies if {@link #shouldPreprocess(Common.Event)} returns true.
    *
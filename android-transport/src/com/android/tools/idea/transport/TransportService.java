@@ -18,7 +18,9 @@ package com.android.tools.idea.transport;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LogService;
 import com.android.tools.idea.diagnostics.crash.exception.NoPiiException;
+import com.android.tools.idea.transport.poller.TransportEventSource;
 import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.Transport;
 import com.google.common.annotations.VisibleForTesting;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
@@ -28,18 +30,20 @@ import com.intellij.util.messages.MessageBus;
 import io.grpc.ManagedChannel;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import java.io.File;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * An application-level service for establishing a connection to a device, which can then be used to retrieve Android system and app data.
  * The service is application-level because devices/processes are accessible through multiple projects, and we want the pipeline to work
  * across project where users can use different client features in multiple studio instances.
  */
-public class TransportService implements Disposable {
+public class TransportService implements Disposable, TransportEventSource, TransportBytesSource {
   public static TransportService getInstance() {
     return ApplicationManager.getApplication().getService(TransportService.class);
   }
@@ -91,6 +95,18 @@ public class TransportService implements Disposable {
     return myMessageBus;
   }
 
+  @NotNull
+  @Override
+  public AutoCloseable subscribe(@NotNull Transport.GetEventGroupsRequest filter, @NotNull TransportEventSource.Subscriber subscriber) {
+    return myDataStoreService.subscribeToEvents(filter, subscriber::onEvent);
+  }
+
+  @Nullable
+  @Override
+  public FileChannel openBytes(@NotNull Transport.BytesRequest request) {
+    return myDataStoreService.openBytes(request);
+  }
+
   /**
    * @return The {@link Common.Stream} instance that was created for the server.
    */
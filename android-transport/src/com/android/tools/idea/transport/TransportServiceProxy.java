@@ -111,6 +111,7 @@ public class TransportServiceProxy extends ServiceProxy
   // the proxy lost connection with the device.
   private long myLatestEventTimestampNs = Long.MIN_VALUE;
   @Nullable private CountDownLatch myEventStreamingLatch = null;
+  @Nullable private volatile TransportEventPipeline myEventPipeline = null;
 
   /**
    * @param ddmlibDevice    the {@link IDevice} for retrieving process informatino.
@@ -301,44 +302,47 @@ public class TransportServiceProxy extends ServiceProxy
 
     // This loop runs on a GRPC thread, it should not exit until the grpc is terminated killing the thread.
     myEventStreamingLatch = new CountDownLatch(1);
+    TransportEventPipeline pipeline = new TransportEventPipeline(myEventPreprocessors, responseObserver);
+    myEventPipeline = pipeline;
     myEventsListenerThread = new Thread(() -> {
       Map<Event.Kind, Long2ObjectMap<Event>> ongoingEventGroups = new HashMap<>();
+      List<Event> batch = new ArrayList<>(TransportEventPipeline.MAX_BATCH_SIZE);
       // The loop keeps running if the queue is not emptied, to make sure we pipe through all the existing
       // events that are already in the queue.
       while (!Thread.currentThread().isInterrupted() || !myEventQueue.isEmpty()) {
         try {
-          Event event = myEventQueue.take();
-          myLatestEventTimestampNs = Math.max(myLatestEventTimestampNs, event.getTimestamp());
-
-          // Run registered preprocessors.
-          for (TransportEventPreprocessor preprocessor : myEventPreprocessors) {
-            if (preprocessor.shouldPreprocess(event)) {
-              preprocessor.preprocessEvent(event).forEach(generatedEvent -> responseObserver.onNext(generatedEvent));
+          pipeline.drain(myEventQueue, batch);
+          for (Event event : batch) {
+            myLatestEventTimestampNs = Math.max(myLatestEventTimestampNs, event.getTimestamp());
+
+            // Update the event cache: remove an event group if it has ended, otherwise cache the latest opened event for that group.
+            if (event.getIsEnded()) {
+              ongoingEventGroups.computeIfPresent(event.getKind(), (kind, map) -> {
+                map.remove(event.getGroupId());
+                return map.isEmpty() ? null : map;
+              });
+            }
+            else if (event.getGroupId() != 0) {
+              ongoingEventGroups.compute(event.getKind(), (kind, map) -> {
+                if (map == null) {
+                  map = new Long2ObjectOpenHashMap<>();
+                }
+                map.put(event.getGroupId(), event);
+                return map;
+              });
             }
           }
-
-          // Update the event cache: remove an event group if it has ended, otherwise cache the latest opened event for that group.
-          if (event.getIsEnded()) {
-            ongoingEventGroups.computeIfPresent(event.getKind(), (kind, map) -> {
-              map.remove(event.getGroupId());
-              return map.isEmpty() ? null : map;
-            });
-          }
-          else if (event.getGroupId() != 0) {
-            ongoingEventGroups.compute(event.getKind(), (kind, map) -> {
-              if (map == null) {
-                map = new Long2ObjectOpenHashMap<>();
-              }
-              map.put(event.getGroupId(), event);
-              return map;
-            });
-          }
-          responseObserver.onNext(event);
+          // Run registered preprocessors and forward the batch.
+          pipeline.process(batch);
         }
         catch (InterruptedException exception) {
           Thread.currentThread().interrupt();
         }
+        finally {
+          batch.clear();
+        }
       }
+      pipeline.shutdown();
 
       // Create a generic end event with the input kind and group id.
       // Note - We will revisit this logic if it turns out we need to insert domain-specific data with the end event.
@@ -581,6 +585,15 @@ public class TransportServiceProxy extends ServiceProxy
     }
   }
 
+  /**
+   * @return the queue depth and latency counters of a stage of the event pipeline, or null if {@link #getEvents} has not been called.
+   */
+  @Nullable
+  TransportEventPipeline.StageStats getEventPipelineStats(@NotNull TransportEventPipeline.Stage stage) {
+    TransportEventPipeline pipeline = myEventPipeline;
+    return pipeline == null ? null : pipeline.getStats(stage);
+  }
+
   @TestOnly
   @NotNull
   Map<Client, Common.Process> getCachedProcesses() {
@@ -47,7 +47,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
@@ -132,7 +131,7 @@ public class TransportPipelineDialog extends DialogWrapper {
     myStreamIdMap = new HashMap<>();
     myProcessIdMap = new HashMap<>();
 
-    myTransportEventPoller = TransportEventPoller.createPoller(myClient.getTransportStub(), TimeUnit.MILLISECONDS.toNanos(250));
+    myTransportEventPoller = TransportEventPoller.createPushPoller(myClient.getTransportStub(), TransportService.getInstance());
 
     // Register the event listeners with myTransportEventPoller
     initializeEventListeners();
@@ -21,6 +21,7 @@ import com.android.tools.profiler.proto.TransportServiceGrpc
 import com.intellij.openapi.diagnostic.Logger
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.ScheduledFuture
@@ -30,14 +31,26 @@ import kotlin.math.max
 /**
  * Encapsulates most of the polling functionality that Transport Pipeline subscribers would need to implement
  * to listen for updates and Events coming in from the pipeline
+ *
+ * When an [eventSource] is given, each listener is also subscribed to the events of its kind as they arrive in the datastore. A listener
+ * is polled once when it is registered, to catch up with the events already stored, and is then only woken up by new events, so the
+ * poller does not need to be polled periodically. A pushing poller should not also be polled periodically, as a pushed event could then be
+ * delivered twice.
  */
-class TransportEventPoller(
+class TransportEventPoller @JvmOverloads constructor(
   private val transportClient: TransportServiceGrpc.TransportServiceBlockingStub,
-  private val sortOrder: Comparator<Common.Event> = Comparator.comparing(Common.Event::getTimestamp)
+  private val sortOrder: Comparator<Common.Event> = Comparator.comparing(Common.Event::getTimestamp),
+  private val eventSource: TransportEventSource? = null
 ) {
   private val writeLock = Object()
   private val eventListeners: MutableList<TransportEventListener> = CopyOnWriteArrayList() // Used to preserve insertion order
   private val listenersToLastTimestamp = ConcurrentHashMap<TransportEventListener, Long>()
+  private val listenersToSubscriptions = ConcurrentHashMap<TransportEventListener, AutoCloseable>()
+
+  // Catches up listeners and handles pushed events one at a time, in the order they were inserted.
+  private val pushExecutor: ExecutorService by lazy {
+    Executors.newSingleThreadExecutor { runnable -> Thread(runnable, "TransportEventPoller").apply { isDaemon = true } }
+  }
 
   /**
    * Adds a listener to the list to poll for and be notified of changes. Listeners are polled in insertion order.
@@ -47,6 +60,7 @@ class TransportEventPoller(
       eventListeners.add(listener)
       listenersToLastTimestamp[listener] = Long.MIN_VALUE
     }
+    eventSource?.let { subscribe(listener, it) }
   }
 
   /**
@@ -57,6 +71,7 @@ class TransportEventPoller(
       eventListeners.remove(listener)
       listenersToLastTimestamp.remove(listener)
     }
+    listenersToSubscriptions.remove(listener)?.close()
   }
 
   fun poll() {
@@ -64,46 +79,123 @@ class TransportEventPoller(
     val listeners = mutableListOf<TransportEventListener>().apply { addAll(eventListeners) }
     // Poll for each listener
     for (eventListener in listeners) {
-      // Use start/end time if available
-      val startTimestamp = listenersToLastTimestamp[eventListener] ?: eventListener.startTime?.invoke() ?: Long.MIN_VALUE
-      val endTimestamp = eventListener.endTime()
-
-      val builder = Transport.GetEventGroupsRequest.newBuilder()
-        .setKind(eventListener.eventKind)
-        .setFromTimestamp(startTimestamp)
-        .setToTimestamp(endTimestamp)
-      eventListener.streamId?.invoke()?.let { builder.streamId = it }
-      eventListener.processId?.invoke()?.let { builder.pid = it }
-      eventListener.groupId?.invoke()?.let { builder.groupId = it }
-
-      val request = builder.build()
-
-      // Order by timestamp
-      val response = transportClient.getEventGroups(request)
-      if (response != Transport.GetEventGroupsResponse.getDefaultInstance()) {
-        val filtered = response.groupsList
-          .flatMap { group -> group.eventsList }
-          .sortedWith(sortOrder)
-          .filter { event -> event.timestamp >= startTimestamp && eventListener.filter(event) }
-        filtered.forEach { event ->
-          eventListener.executor.execute {
-            if (eventListener.callback(event)) {
-              // Previous code collected the flag and unregistered once in the main thread,
-              // but there was a concurrency bug if the main thread finishes before the listeners.
-              // We unregister from here instead. Unregistering the same listener multiple times is harmless.
-              unregisterListener(eventListener)
-            }
-          }
+      poll(eventListener)
+    }
+  }
+
+  /**
+   * Closes the subscriptions of a pushing poller. The listeners are no longer notified of new events.
+   */
+  fun stop() {
+    listenersToSubscriptions.values.forEach { it.close() }
+    listenersToSubscriptions.clear()
+    if (eventSource != null) {
+      pushExecutor.shutdown()
+    }
+  }
+
+  private fun poll(eventListener: TransportEventListener) {
+    // Use start/end time if available
+    val startTimestamp = listenersToLastTimestamp[eventListener] ?: eventListener.startTime?.invoke() ?: Long.MIN_VALUE
+    val endTimestamp = eventListener.endTime()
+
+    val builder = Transport.GetEventGroupsRequest.newBuilder()
+      .setKind(eventListener.eventKind)
+      .setFromTimestamp(startTimestamp)
+      .setToTimestamp(endTimestamp)
+    eventListener.streamId?.invoke()?.let { builder.streamId = it }
+    eventListener.processId?.invoke()?.let { builder.pid = it }
+    eventListener.groupId?.invoke()?.let { builder.groupId = it }
+
+    val request = builder.build()
+
+    // Order by timestamp
+    val response = transportClient.getEventGroups(request)
+    if (response != Transport.GetEventGroupsResponse.getDefaultInstance()) {
+      val filtered = response.groupsList
+        .flatMap { group -> group.eventsList }
+        .sortedWith(sortOrder)
+        .filter { event -> event.timestamp >= startTimestamp && eventListener.filter(event) }
+      filtered.forEach { event -> notifyListener(eventListener, event) }
+      val maxTimeEvent = filtered.maxBy { it.timestamp }
+      // Update last timestamp per listener
+      synchronized(writeLock) {
+        // Make sure the listener is still registered before adding a new timestamp
+        if (maxTimeEvent != null && listenersToLastTimestamp.containsKey(eventListener)) {
+          listenersToLastTimestamp[eventListener] = max(startTimestamp, maxTimeEvent.timestamp + 1)
         }
-        val maxTimeEvent = filtered.maxBy { it.timestamp }
-        // Update last timestamp per listener
-        synchronized(writeLock) {
-          // Make sure the listener is still registered before adding a new timestamp
-          if (maxTimeEvent != null && listenersToLastTimestamp.containsKey(eventListener)) {
-            listenersToLastTimestamp[eventListener] = max(startTimestamp, maxTimeEvent.timestamp + 1)
+      }
+    }
+  }
+
+  private fun subscribe(listener: TransportEventListener, source: TransportEventSource) {
+    // Only accessed on the push executor.
+    val pendingEvents = mutableListOf<Pair<Long, Common.Event>>()
+    var caughtUp = false
+
+    val filter = Transport.GetEventGroupsRequest.newBuilder().setKind(listener.eventKind).build()
+    listenersToSubscriptions[listener] = source.subscribe(filter, object : TransportEventSource.Subscriber {
+      override fun onEvent(streamId: Long, event: Common.Event) {
+        pushExecutor.execute {
+          if (caughtUp) {
+            onEventPushed(listener, streamId, event)
+          }
+          else {
+            pendingEvents.add(streamId to event)
           }
         }
       }
+    })
+    if (!listenersToLastTimestamp.containsKey(listener)) {
+      // Unregistered while subscribing.
+      listenersToSubscriptions.remove(listener)?.close()
+      return
+    }
+    // Events pushed while catching up are handled afterwards, and are dropped if the poll returned them already.
+    pushExecutor.execute {
+      if (listenersToLastTimestamp.containsKey(listener)) {
+        poll(listener)
+      }
+      caughtUp = true
+      pendingEvents.forEach { (streamId, event) -> onEventPushed(listener, streamId, event) }
+      pendingEvents.clear()
+    }
+  }
+
+  /**
+   * Applies the same filters to a pushed event as [poll] would.
+   */
+  private fun onEventPushed(listener: TransportEventListener, streamId: Long, event: Common.Event) {
+    val startTimestamp = listenersToLastTimestamp[listener] ?: return
+    if (event.timestamp < startTimestamp || event.timestamp > listener.endTime()) {
+      return
+    }
+    val listenerStreamId = listener.streamId?.invoke() ?: 0L
+    val listenerPid = listener.processId?.invoke() ?: 0
+    val listenerGroupId = listener.groupId?.invoke() ?: 0L
+    if ((listenerStreamId != 0L && listenerStreamId != streamId) ||
+        (listenerPid != 0 && listenerPid != event.pid) ||
+        (listenerGroupId != 0L && listenerGroupId != event.groupId) ||
+        !listener.filter(event)) {
+      return
+    }
+
+    notifyListener(listener, event)
+    synchronized(writeLock) {
+      if (listenersToLastTimestamp.containsKey(listener)) {
+        listenersToLastTimestamp[listener] = max(startTimestamp, event.timestamp + 1)
+      }
+    }
+  }
+
+  private fun notifyListener(eventListener: TransportEventListener, event: Common.Event) {
+    eventListener.executor.execute {
+      if (eventListener.callback(event)) {
+        // Previous code collected the flag and unregistered once in the main thread,
+        // but there was a concurrency bug if the main thread finishes before the listeners.
+        // We unregister from here instead. Unregistering the same listener multiple times is harmless.
+        unregisterListener(eventListener)
+      }
     }
   }
 
@@ -133,9 +225,22 @@ class TransportEventPoller(
       return poller
     }
 
+    /**
+     * Creates a poller that notifies its listeners of the events pushed by [eventSource] as they arrive, instead of polling periodically.
+     */
+    @JvmOverloads
+    @JvmStatic
+    fun createPushPoller(transportClient: TransportServiceGrpc.TransportServiceBlockingStub,
+                         eventSource: TransportEventSource,
+                         sortOrder: java.util.Comparator<Common.Event> = Comparator.comparing(Common.Event::getTimestamp)
+    ): TransportEventPoller {
+      return TransportEventPoller(transportClient, sortOrder, eventSource)
+    }
+
     @JvmStatic
     fun stopPoller(poller: TransportEventPoller) {
       myScheduledFutures.remove(poller)?.cancel(false)
+      poller.stop()
     }
 
   }
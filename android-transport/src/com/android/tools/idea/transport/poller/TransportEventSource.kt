@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.transport.poller
+
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport
+
+/**
+ * Pushes the events stored in the datastore as they arrive, so a [TransportEventPoller] can be woken up by new data instead of polling.
+ */
+interface TransportEventSource {
+  /**
+   * Receives the events pushed by a [TransportEventSource].
+   */
+  interface Subscriber {
+    /**
+     * Called once [event] is stored and can be queried, on the thread that stored it, so implementations should hand off any real work.
+     * Events the datastore drops as duplicates are not pushed.
+     */
+    fun onEvent(streamId: Long, event: Common.Event)
+  }
+
+  /**
+   * Calls [subscriber] for each event matching [filter] that is stored from now on, until the returned subscription is closed. The filter
+   * matches on kind, and on stream id, pid, group id and command id when they are set.
+   */
+  fun subscribe(filter: Transport.GetEventGroupsRequest, subscriber: Subscriber): AutoCloseable
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.transport;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profiler.proto.Common;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Test;
+
+public class TransportEventPipelineTest {
+  private final List<Common.Event> myReceivedEvents = new ArrayList<>();
+  private TransportEventPipeline myPipeline;
+
+  @After
+  public void tearDown() {
+    if (myPipeline != null) {
+      myPipeline.shutdown();
+    }
+  }
+
+  @Test
+  public void generatedEventsPrecedeTheirSource() throws Exception {
+    Common.Event echo = event(Common.Event.Kind.ECHO, 1);
+    Common.Event process = event(Common.Event.Kind.PROCESS, 2);
+    Common.Event echoGenerated = event(Common.Event.Kind.ECHO, 10);
+    Common.Event echoAndProcessGenerated = event(Common.Event.Kind.ECHO, 20);
+    Common.Event processGenerated = event(Common.Event.Kind.PROCESS, 30);
+    myPipeline = new TransportEventPipeline(
+      Arrays.asList(new FakePreprocessor(Common.Event.Kind.ECHO, echoGenerated),
+                    new FakePreprocessor(null, echoAndProcessGenerated),
+                    new FakePreprocessor(Common.Event.Kind.PROCESS, processGenerated)),
+      new CollectingObserver());
+
+    LinkedBlockingDeque<Common.Event> queue = new LinkedBlockingDeque<>(Arrays.asList(echo, process));
+    List<Common.Event> batch = new ArrayList<>();
+    myPipeline.drain(queue, batch);
+    myPipeline.process(batch);
+
+    assertThat(myReceivedEvents)
+      .containsExactly(echoGenerated, echoAndProcessGenerated, echo, echoAndProcessGenerated, processGenerated, process).inOrder();
+  }
+
+  @Test
+  public void batchesAreBounded() throws Exception {
+    myPipeline = new TransportEventPipeline(Collections.emptyList(), new CollectingObserver());
+    LinkedBlockingDeque<Common.Event> queue = new LinkedBlockingDeque<>();
+    for (int i = 0; i < TransportEventPipeline.MAX_BATCH_SIZE + 10; i++) {
+      queue.offer(event(Common.Event.Kind.ECHO, i));
+    }
+
+    List<Common.Event> batch = new ArrayList<>();
+    myPipeline.drain(queue, batch);
+    assertThat(batch).hasSize(TransportEventPipeline.MAX_BATCH_SIZE);
+    myPipeline.process(batch);
+    batch.clear();
+    myPipeline.drain(queue, batch);
+    assertThat(batch).hasSize(10);
+    myPipeline.process(batch);
+
+    assertThat(myReceivedEvents).hasSize(TransportEventPipeline.MAX_BATCH_SIZE + 10);
+    for (int i = 0; i < myReceivedEvents.size(); i++) {
+      assertThat(myReceivedEvents.get(i).getTimestamp()).isEqualTo(i);
+    }
+
+    TransportEventPipeline.StageStats drainStats = myPipeline.getStats(TransportEventPipeline.Stage.DRAIN);
+    assertThat(drainStats.getBatchCount()).isEqualTo(2);
+    assertThat(drainStats.getEventCount()).isEqualTo(TransportEventPipeline.MAX_BATCH_SIZE + 10);
+    assertThat(drainStats.getMaxQueueDepth()).isEqualTo(TransportEventPipeline.MAX_BATCH_SIZE + 10);
+    assertThat(drainStats.getLastQueueDepth()).isEqualTo(10);
+    assertThat(myPipeline.getStats(TransportEventPipeline.Stage.EMIT).getEventCount()).isEqualTo(TransportEventPipeline.MAX_BATCH_SIZE + 10);
+  }
+
+  @Test
+  public void failingPreprocessorDoesNotDropEvents() throws Exception {
+    Common.Event echo = event(Common.Event.Kind.ECHO, 1);
+    Common.Event generated = event(Common.Event.Kind.ECHO, 2);
+    myPipeline = new TransportEventPipeline(
+      Arrays.asList(new TransportEventPreprocessor() {
+                      @Override
+                      public boolean shouldPreprocess(Common.Event event) {
+                        return true;
+                      }
+
+                      @NotNull
+                      @Override
+                      public Iterable<Common.Event> preprocessEvent(Common.Event event) {
+                        throw new IllegalStateException();
+                      }
+                    },
+                    new FakePreprocessor(null, generated)),
+      new CollectingObserver());
+
+    myPipeline.process(Collections.singletonList(echo));
+    assertThat(myReceivedEvents).containsExactly(generated, echo).inOrder();
+    assertThat(myPipeline.getStats(TransportEventPipeline.Stage.PREPROCESS).getLastQueueDepth()).isEqualTo(1);
+  }
+
+  @Test
+  public void eventsAreOnlyRoutedToThePreprocessorsOfTheirKind() throws Exception {
+    List<Common.Event> checkedEvents = Collections.synchronizedList(new ArrayList<>());
+    Common.Event echo = event(Common.Event.Kind.ECHO, 1);
+    Common.Event process = event(Common.Event.Kind.PROCESS, 2);
+    Common.Event generated = event(Common.Event.Kind.PROCESS, 3);
+    myPipeline = new TransportEventPipeline(
+      Collections.singletonList(new FakePreprocessor(Common.Event.Kind.PROCESS, generated) {
+        @Override
+        public boolean shouldPreprocess(Common.Event event) {
+          checkedEvents.add(event);
+          return super.shouldPreprocess(event);
+        }
+      }),
+      new CollectingObserver());
+
+    myPipeline.process(Collections.singletonList(echo));
+    assertThat(checkedEvents).isEmpty();
+    assertThat(myPipeline.getStats(TransportEventPipeline.Stage.PREPROCESS).getLastQueueDepth()).isEqualTo(0);
+
+    myPipeline.process(Arrays.asList(echo, process));
+    assertThat(checkedEvents).containsExactly(process);
+    assertThat(myReceivedEvents).containsExactly(echo, echo, generated, process).inOrder();
+  }
+
+  @NotNull
+  private static Common.Event event(@NotNull Common.Event.Kind kind, long timestamp) {
+    return Common.Event.newBuilder().setKind(kind).setTimestamp(timestamp).build();
+  }
+
+  /**
+   * Generates one event for each event of a kind, or for every event if the kind is null.
+   */
+  private static class FakePreprocessor implements TransportEventPreprocessor {
+    private final Common.Event.Kind myKind;
+    private final Common.Event myGeneratedEvent;
+
+    FakePreprocessor(Common.Event.Kind kind, @NotNull Common.Event generatedEvent) {
+      myKind = kind;
+      myGeneratedEvent = generatedEvent;
+    }
+
+    @Override
+    public boolean shouldPreprocess(Common.Event event) {
+      return myKind == null || event.getKind() == myKind;
+    }
+
+    @Nullable
+    @Override
+    public Set<Common.Event.Kind> getPreprocessedKinds() {
+      return myKind == null ? null : EnumSet.of(myKind);
+    }
+
+    @NotNull
+    @Override
+    public Iterable<Common.Event> preprocessEvent(Common.Event event) {
+      return Collections.singletonList(myGeneratedEvent);
+    }
+  }
+
+  private class CollectingObserver implements StreamObserver<Common.Event> {
+    @Override
+    public void onNext(Common.Event event) {
+      myReceivedEvents.add(event);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      assert false;
+    }
+
+    @Override
+    public void onCompleted() {}
+  }
+}
@@ -21,6 +21,7 @@ import com.android.tools.idea.transport.faketransport.FakeGrpcServer
 import com.android.tools.idea.transport.faketransport.FakeTransportService
 import com.android.tools.pipeline.example.proto.Echo
 import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport
 import com.google.common.truth.Truth.assertThat
 import com.google.common.util.concurrent.MoreExecutors
 import org.junit.After
@@ -28,6 +29,9 @@ import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
 import java.util.ArrayList
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.LinkedBlockingDeque
+import java.util.concurrent.TimeUnit
 
 class TransportEventPollerTest {
 
@@ -448,4 +452,52 @@ class TransportEventPollerTest {
     assertThat(events[0]).isEqualTo(event2)
     assertThat(events[1]).isEqualTo(event1)
   }
+
+  /**
+   * Tests that a pushing poller catches up with the stored events, then only notifies listeners of the pushed events they have not seen.
+   */
+  @Test
+  fun testPushedEvents() {
+    val eventSource = FakeEventSource()
+    transportEventPoller = TransportEventPoller.createPushPoller(transportClient!!.transportStub, eventSource)
+    val storedEvent = generateEchoEvent(1)
+    transportService.addEventToStream(FakeTransportService.FAKE_DEVICE_ID, storedEvent)
+
+    val receivedEvents = LinkedBlockingDeque<Common.Event>()
+    val listener = TransportEventListener(eventKind = Common.Event.Kind.ECHO,
+                                          streamId = { FakeTransportService.FAKE_DEVICE_ID },
+                                          callback = { event ->
+                                            receivedEvents.add(event)
+                                            false
+                                          },
+                                          executor = MoreExecutors.directExecutor())
+    transportEventPoller!!.registerListener(listener)
+    assertThat(receivedEvents.poll(5, TimeUnit.SECONDS)).isEqualTo(storedEvent)
+
+    // Already received while catching up.
+    eventSource.push(FakeTransportService.FAKE_DEVICE_ID, storedEvent)
+    // From another stream.
+    eventSource.push(FakeTransportService.FAKE_DEVICE_ID + 1, generateEchoEvent(2))
+    val pushedEvent = generateEchoEvent(3)
+    eventSource.push(FakeTransportService.FAKE_DEVICE_ID, pushedEvent)
+    // Pushed events are handled in order, so the ones before have been dropped by now.
+    assertThat(receivedEvents.poll(5, TimeUnit.SECONDS)).isEqualTo(pushedEvent)
+    assertThat(receivedEvents).isEmpty()
+
+    transportEventPoller!!.unregisterListener(listener)
+    assertThat(eventSource.subscribers).isEmpty()
+  }
+
+  private class FakeEventSource : TransportEventSource {
+    val subscribers = CopyOnWriteArrayList<TransportEventSource.Subscriber>()
+
+    override fun subscribe(filter: Transport.GetEventGroupsRequest, subscriber: TransportEventSource.Subscriber): AutoCloseable {
+      subscribers.add(subscriber)
+      return AutoCloseable { subscribers.remove(subscriber) }
+    }
+
+    fun push(streamId: Long, event: Common.Event) {
+      subscribers.forEach { it.onEvent(streamId, event) }
+    }
+  }
 }
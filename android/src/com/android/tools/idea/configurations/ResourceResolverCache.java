@@ -35,11 +35,13 @@ import com.android.tools.idea.res.LocalResourceRepository;
 import com.android.tools.idea.res.ResourceRepositoryManager;
 import com.android.utils.SparseArray;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Table;
 import com.intellij.openapi.application.ReadAction;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import org.jetbrains.android.sdk.AndroidPlatform;
@@ -100,14 +102,22 @@ public class ResourceResolverCache {
       return ResourceResolver.create(Collections.emptyMap(), null);
     }
     LocalResourceRepository resources = repositoryManager.getAppResources();
-    if (myCachedGeneration != resources.getModificationCount()) {
+    // Read the modification count before looking at the changes. This ensures that if there is any modification of resources while the
+    // resolver is being created, it will be picked up subsequently.
+    long generation = resources.getModificationCount();
+    if (myCachedGeneration != generation) {
+      // The resolvers refer to the configured maps they were created with, so they are recreated. This is cheap compared to configuring
+      // the app resources, which is only redone for the resource types that changed, unless it's not known what changed.
       myResolverMap.clear();
-      myAppResourceMap.clear();
+      Set<ResourceType> changedTypes = myCachedGeneration == 0 ? null : resources.getChangedResourceTypes(myCachedGeneration);
+      if (changedTypes == null) {
+        myAppResourceMap.clear();
+      }
+      else if (!changedTypes.isEmpty()) {
+        updateConfiguredAppResources(resources, changedTypes);
+      }
     }
-
-    // Store the modification count as soon as possible. This ensures that if there is any modification of resources while the
-    // resolver is being created, it will be cleared subsequently.
-    myCachedGeneration = resources.getModificationCount();
+    myCachedGeneration = generation;
 
     // When looking up the configured project and framework resources, the theme doesn't matter, so we look up only
     // by the configuration qualifiers; for example, here's a sample key:
@@ -170,6 +180,32 @@ public class ResourceResolverCache {
     return resolver;
   }
 
+  /**
+   * Reconfigures the given types of app resources in all cached configurations. The cached tables are replaced rather than modified, since
+   * resolvers created from them may still be in use.
+   */
+  private void updateConfiguredAppResources(@NotNull LocalResourceRepository resources, @NotNull Set<ResourceType> changedTypes) {
+    for (Iterator<Map.Entry<String, Table<ResourceNamespace, ResourceType, ResourceValueMap>>> iterator =
+         myAppResourceMap.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<String, Table<ResourceNamespace, ResourceType, ResourceValueMap>> entry = iterator.next();
+      FolderConfiguration configuration = FolderConfiguration.getConfigForQualifierString(entry.getKey());
+      if (configuration == null) {
+        iterator.remove();
+        continue;
+      }
+
+      Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppRes = HashBasedTable.create(entry.getValue());
+      ReadAction.run(() -> {
+        for (ResourceNamespace namespace : resources.getNamespaces()) {
+          for (ResourceType type : changedTypes) {
+            configuredAppRes.put(namespace, type, ResourceRepositoryUtil.getConfiguredResources(resources, namespace, type, configuration));
+          }
+        }
+      });
+      entry.setValue(configuredAppRes);
+    }
+  }
+
   public Map<ResourceType, ResourceValueMap> getConfiguredFrameworkResources(@NotNull IAndroidTarget target,
                                                                              @NotNull FolderConfiguration fullConfiguration) {
     ResourceRepository resourceRepository = getFrameworkResources(fullConfiguration, target);
@@ -18,15 +18,19 @@ package com.android.tools.idea.rendering
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.Logger
 import org.jetbrains.annotations.TestOnly
+import java.util.Collections
+import java.util.WeakHashMap
 import java.util.concurrent.Callable
 import java.util.concurrent.CompletableFuture
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.FutureTask
+import java.util.concurrent.PriorityBlockingQueue
 import java.util.concurrent.ThreadFactory
 import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.atomic.AtomicReference
 import java.util.function.Supplier
 
@@ -35,44 +39,156 @@ private val DEFAULT_RENDER_THREAD_TIMEOUT_MS = java.lang.Long.getLong("layoutlib
                                                                       TimeUnit.SECONDS.toMillis(
                                                                         if (ApplicationManager.getApplication().isUnitTestMode) 60 else 6.toLong()))
 
+/**
+ * Number of render threads, set with the layoutlib.render.workers property. Defaults to one since layoutlib serializes most of the
+ * rendering work internally. Actions that touch the views of a session must be submitted with the module of the session as the key so
+ * they run on the thread that owns the session.
+ */
+private val DEFAULT_RENDER_WORKER_COUNT = Integer.getInteger("layoutlib.render.workers", 1).coerceIn(1, 8)
+
+/**
+ * Number of render actions that a [RenderingPriority.LOW] action lets go ahead of it. Once that many actions submitted after it have run,
+ * the action runs as if it had [RenderingPriority.NORMAL] priority, so that a steady stream of renders can't starve it.
+ */
+private const val LOW_PRIORITY_DELAY = 16L
+
+/**
+ * Priority of a render action. [NORMAL] actions run before [LOW] actions queued on the same render thread, up to [LOW_PRIORITY_DELAY]
+ * of them. Actions with the same priority run in the order they were submitted.
+ */
+enum class RenderingPriority {
+  /** The default priority, also used for the renders of previews that are visible on the screen. */
+  NORMAL,
+  /** Renders that nobody is looking at yet, like previews scrolled out of view, palette previews or thumbnails. */
+  LOW
+}
+
 /**
  * Intended to be used for executing render tasks of layoutlib [RenderSession].
- * Currently, all calls to the layoutlib should be done from the same thread.
- * This executor guarantees that unit of work passed to [runAction] or [runAsyncAction]
- * will be executed sequentially from the same thread.
+ * Layoutlib keeps per-thread state, so all the calls related to a [RenderSession] should be done from the same thread.
+ * This executor has [workerCount] render threads, and guarantees that units of work passed to [runAction] or [runAsyncAction]
+ * with the same key, usually a module, are executed sequentially from the same thread. Work without a key is executed on the
+ * first render thread. Each render thread runs its queued work in the order of [RenderingPriority].
+ */
+class RenderExecutor @JvmOverloads constructor(private val workerCount: Int = DEFAULT_RENDER_WORKER_COUNT) {
+  private val workers = List(workerCount) { RenderWorker(if (it == 0) "Layoutlib Render Thread" else "Layoutlib Render Thread $it") }
+  /** The worker assigned to each key. Keys are assigned to workers in a round-robin fashion on first use. */
+  private val workerByKey: MutableMap<Any, RenderWorker> = Collections.synchronizedMap(WeakHashMap())
+  private val nextWorker = AtomicInteger(0)
+
+  fun shutdown() {
+    workers.forEach { it.shutdown() }
+  }
+
+  @Throws(Exception::class)
+  fun <T> runAction(callable: Callable<T>): T = runAction(null, callable)
+
+  /**
+   * Runs the [callable] on the render thread of the given [key] and waits for the result. Throws a [TimeoutException] with the stack
+   * trace of the render thread if the action doesn't complete in time.
+   */
+  @Throws(Exception::class)
+  fun <T> runAction(key: Any?, callable: Callable<T>): T = getWorker(key).runAction(callable)
+
+  fun <T> runAsyncAction(callable: Supplier<T>): CompletableFuture<T> = runAsyncAction(null, RenderingPriority.NORMAL, callable)
+
+  fun <T> runAsyncAction(key: Any?, priority: RenderingPriority, callable: Supplier<T>): CompletableFuture<T> {
+    val worker = getWorker(key)
+    return CompletableFuture.supplyAsync(callable, Executor { worker.execute(priority, it) })
+  }
+
+  fun runAsyncAction(runnable: Runnable) {
+    runAsyncAction(null, RenderingPriority.NORMAL, runnable)
+  }
+
+  fun runAsyncAction(key: Any?, priority: RenderingPriority, runnable: Runnable) {
+    getWorker(key).execute(priority, FutureTask(runnable, null))
+  }
+
+  /**
+   * Runs the [runnable] once on every render thread, e.g. to clear thread local state.
+   */
+  fun runAsyncActionOnAllThreads(runnable: Runnable) {
+    workers.forEach { it.execute(RenderingPriority.NORMAL, FutureTask(runnable, null)) }
+  }
+
+  private fun getWorker(key: Any?): RenderWorker {
+    if (key == null || workerCount == 1) {
+      return workers[0]
+    }
+    return workerByKey.computeIfAbsent(key) { workers[Math.floorMod(nextWorker.getAndIncrement(), workerCount)] }
+  }
+
+  @TestOnly
+  fun shutdown(timeoutSeconds: Long) {
+    if (timeoutSeconds > 0) {
+      try {
+        workers.forEach { it.awaitTermination(timeoutSeconds) }
+      }
+      catch (ignored: InterruptedException) {
+        Logger.getInstance(RenderExecutor::class.java).warn("The RenderExecutor does not shutdown after $timeoutSeconds seconds")
+      }
+    }
+
+    shutdown()
+  }
+}
+
+/**
+ * A render action queued on a [RenderWorker]. Actions run in the order of their [rank], which is their [sequence] number delayed by
+ * [LOW_PRIORITY_DELAY] for [RenderingPriority.LOW] actions.
+ */
+private class PrioritizedRunnable(val priority: RenderingPriority, val sequence: Long, runnable: Runnable) : Runnable by runnable {
+  val rank = if (priority == RenderingPriority.LOW) sequence + LOW_PRIORITY_DELAY else sequence
+}
+
+private val PRIORITY_COMPARATOR = compareBy<Runnable>({ (it as PrioritizedRunnable).rank }, { (it as PrioritizedRunnable).sequence })
+
+/**
+ * A single render thread with its queue of render actions.
  */
-class RenderExecutor {
+private class RenderWorker(threadName: String) {
   private val renderingThread = AtomicReference<Thread?>()
-  private val renderingExecutor: ExecutorService
+  private val sequence = AtomicLong(0)
+  private val renderingExecutor: ThreadPoolExecutor
   private val timeoutExceptionCounter = AtomicInteger(0)
 
+  @Volatile
   private var isFirstCall = true
 
   init {
     renderingExecutor = ThreadPoolExecutor(1, 1,
                                            0, TimeUnit.MILLISECONDS,
-                                           LinkedBlockingQueue(),
+                                           PriorityBlockingQueue(11, PRIORITY_COMPARATOR),
                                            ThreadFactory {
                                              val renderingThread =
-                                               Thread(null, it, "Layoutlib Render Thread")
+                                               Thread(null, it, threadName)
                                                  .apply { isDaemon = true }
                                              this.renderingThread.set(renderingThread)
                                              renderingThread
                                            })
   }
 
+  fun execute(priority: RenderingPriority, runnable: Runnable) {
+    renderingExecutor.execute(PrioritizedRunnable(priority, sequence.getAndIncrement(), runnable))
+  }
+
   fun shutdown() {
     renderingExecutor.shutdownNow()
     val currentThread = renderingThread.getAndSet(null)
     currentThread?.interrupt()
   }
 
+  fun awaitTermination(timeoutSeconds: Long) {
+    renderingExecutor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)
+  }
+
   @Throws(Exception::class)
   fun <T> runAction(callable: Callable<T>): T {
     return try { // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (timeoutExceptionCounter.get() > 3) {
-        renderingExecutor.submit { timeoutExceptionCounter.set(0) }.get(50, TimeUnit.MILLISECONDS)
+        submit(RenderingPriority.NORMAL, Callable { timeoutExceptionCounter.set(0) }).get(50, TimeUnit.MILLISECONDS)
       }
       var timeout = DEFAULT_RENDER_THREAD_TIMEOUT_MS
       if (isFirstCall) { // The initial call might be significantly slower since there is a lot of initialization done on the resource management side.
@@ -80,7 +196,7 @@ class RenderExecutor {
         isFirstCall = false
         timeout *= 2
       }
-      val result = renderingExecutor.submit(callable).get(timeout, TimeUnit.MILLISECONDS)
+      val result = submit(RenderingPriority.NORMAL, callable).get(timeout, TimeUnit.MILLISECONDS)
       // The executor seems to be taking tasks so reset the counter
       timeoutExceptionCounter.set(0)
       result
@@ -100,24 +216,9 @@ This typically happens when there is an infinite loop or unbounded recursion in
     }
   }
 
-  fun <T> runAsyncAction(callable: Supplier<T>): CompletableFuture<T> =
-    CompletableFuture.supplyAsync(callable, renderingExecutor)
-
-  fun runAsyncAction(runnable: Runnable) {
-    renderingExecutor.submit(runnable)
-  }
-
-  @TestOnly
-  fun shutdown(timeoutSeconds: Long) {
-    if (timeoutSeconds > 0) {
-      try {
-        renderingExecutor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)
-      }
-      catch (ignored: InterruptedException) {
-        Logger.getInstance(RenderExecutor::class.java).warn("The RenderExecutor does not shutdown after $timeoutSeconds seconds")
-      }
-    }
-
-    shutdown()
+  private fun <T> submit(priority: RenderingPriority, callable: Callable<T>): FutureTask<T> {
+    val task = FutureTask(callable)
+    execute(priority, task)
+    return task
   }
-}
\ No newline at end of file
+}
@@ -146,6 +146,36 @@ public class RenderResult {
     return result;
   }
 
+  /**
+   * Creates a {@link RenderResult} from a previous render of the file, e.g. restored from the {@link RenderResultFileCache}.
+   * The result has no {@link RenderTask} and no default properties or styles.
+   */
+  @NotNull
+  public static RenderResult createCachedResult(@NotNull PsiFile file,
+                                                @NotNull Module module,
+                                                @NotNull ImagePool.Image image,
+                                                @NotNull ImmutableList<ViewInfo> rootViews,
+                                                @NotNull ImmutableList<ViewInfo> systemRootViews) {
+    RenderResult result = new RenderResult(
+      file,
+      module,
+      new RenderLogger(null, module),
+      null,
+      Result.Status.SUCCESS.createResult(),
+      rootViews,
+      systemRootViews,
+      image,
+      ImmutableMap.of(),
+      ImmutableMap.of(),
+      null);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(result.toString());
+    }
+
+    return result;
+  }
+
   /**
    * Creates a new blank {@link RenderResult}
    *
@@ -0,0 +1,627 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.android.tools.idea.res.AndroidPluginVersion.getAndroidPluginVersion;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.rendering.imagepool.ImagePoolFactory;
+import com.android.tools.idea.rendering.parsers.TagSnapshot;
+import com.android.tools.idea.res.ResourceRepositoryManager;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.ide.caches.CachesInvalidator;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectUtil;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.android.facet.ResourceFolderManager;
+import org.jetbrains.android.util.AndroidUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Disk cache of the rendered image and view hierarchy of layouts, used to show a preview immediately when a file is opened while the
+ * first render is still running.
+ * <p>
+ * Entries are keyed by a hash of everything a render depends on: the contents of the file, the configuration, the resource files of the
+ * module and its dependencies and the classes in the module classpath. Since resource repository generations are not stable across IDE
+ * sessions, the resources and classes are fingerprinted from their file timestamps and sizes instead. That fingerprint is kept for each
+ * module until the VFS or the project roots change, so that computing a key doesn't walk the files every time.
+ * <p>
+ * The views are stored with the position of their tag in the file instead of the layoutlib cookies, and are bound again to the tags of
+ * the file when the entry is read.
+ */
+public class RenderResultFileCache {
+  private static final String CACHE_DIRECTORY = "caches/render_results";
+  private static final String ENTRY_EXTENSION = ".dat";
+  /** Version of the format of the cache entries. Increase it when the format or the contents of the key change. */
+  private static final int CACHE_VERSION = 2;
+  /** Maximum number of entries kept for a project. The least recently used entries are deleted first. */
+  private static final int MAX_PROJECT_ENTRIES = 100;
+
+  @NotNull private final Path myRootDir;
+  /** Entries are written on a single background thread so writing does not delay disposing the previews. */
+  @NotNull private final ExecutorService myWriteExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("RenderResultFileCache", 1);
+
+  public RenderResultFileCache() {
+    this(Paths.get(PathManager.getSystemPath()));
+  }
+
+  @VisibleForTesting
+  RenderResultFileCache(@NotNull Path rootDirParent) {
+    myRootDir = rootDirParent.resolve(CACHE_DIRECTORY);
+  }
+
+  @NotNull
+  public static RenderResultFileCache getInstance() {
+    return ApplicationManager.getApplication().getService(RenderResultFileCache.class);
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(RenderResultFileCache.class);
+  }
+
+  /**
+   * Inputs of the key of a render, captured when the render starts. The strings that describe the render are kept as they are, while
+   * the file and the dependencies of the module are only identified by their modification counts: their contents are only read when
+   * the key is computed, after checking that they have not changed since the render.
+   */
+  public static final class KeyInputs {
+    @NotNull private final AndroidFacet myFacet;
+    @NotNull private final PsiFile myFile;
+    @NotNull private final String myRenderOptions;
+    @NotNull private final String myQualifiers;
+    @Nullable private final String myTheme;
+    @Nullable private final String myDeviceId;
+    @Nullable private final String myTargetHash;
+    private final long myFileModificationStamp;
+    private final long myResourcesModificationCount;
+    private final long myVfsModificationCount;
+    private final long myRootsModificationCount;
+
+    private KeyInputs(@NotNull AndroidFacet facet,
+                      @NotNull PsiFile file,
+                      @NotNull String renderOptions,
+                      @NotNull Configuration configuration) {
+      myFacet = facet;
+      myFile = file;
+      myRenderOptions = renderOptions;
+      myQualifiers = configuration.getFullConfig().getQualifierString();
+      myTheme = configuration.getTheme();
+      Device device = configuration.getDevice();
+      myDeviceId = device != null ? device.getId() : null;
+      IAndroidTarget target = configuration.getTarget();
+      myTargetHash = target != null ? target.hashString() : null;
+      myFileModificationStamp = file.getModificationStamp();
+      myResourcesModificationCount = getResourcesModificationCount(facet);
+      myVfsModificationCount = VirtualFileManager.getInstance().getModificationCount();
+      myRootsModificationCount = ProjectRootManager.getInstance(file.getProject()).getModificationCount();
+    }
+
+    /**
+     * Returns whether the file, the resources and the classpath of the module are still the ones that were captured.
+     */
+    private boolean isUpToDate() {
+      return !myFacet.isDisposed() &&
+             myFile.isValid() &&
+             myFileModificationStamp == myFile.getModificationStamp() &&
+             myResourcesModificationCount == getResourcesModificationCount(myFacet) &&
+             myVfsModificationCount == VirtualFileManager.getInstance().getModificationCount() &&
+             myRootsModificationCount == ProjectRootManager.getInstance(myFile.getProject()).getModificationCount();
+    }
+
+    private static long getResourcesModificationCount(@NotNull AndroidFacet facet) {
+      return ResourceRepositoryManager.getAppResources(facet).getModificationCount();
+    }
+  }
+
+  /**
+   * Captures the inputs of the key of a render of the given file with the given configuration. This is meant to be called when the
+   * render starts, so the key computed later from these inputs describes what was actually rendered.
+   *
+   * @param renderOptions additional options of the render that affect the result, like the use of decorations
+   * @return the inputs, or null if the render can not be cached
+   */
+  @Nullable
+  public KeyInputs captureKeyInputs(@NotNull AndroidFacet facet,
+                                    @NotNull Configuration configuration,
+                                    @NotNull PsiFile file,
+                                    @NotNull String renderOptions) {
+    return ReadAction.compute(
+      () -> facet.isDisposed() || !file.isValid() ? null : new KeyInputs(facet, file, renderOptions, configuration));
+  }
+
+  /**
+   * Computes the key of a render from its captured inputs.
+   *
+   * @return the key, or null if the render can not be cached or if the file or the dependencies of the module changed since the inputs
+   *     were captured, in which case the key would not describe the rendered state anymore
+   */
+  @Nullable
+  public String computeKey(@NotNull KeyInputs inputs) {
+    String pluginVersion = getAndroidPluginVersion();
+    if (pluginVersion == null) {
+      return null;
+    }
+    // The text and the fingerprint are read in the same read action as the check, so no change can happen in between
+    String[] contents = ReadAction.compute(() -> {
+      if (!inputs.isUpToDate()) {
+        return null;
+      }
+      String dependenciesFingerprint = getDependenciesFingerprint(inputs.myFacet.getModule());
+      return dependenciesFingerprint != null ? new String[]{inputs.myFile.getText(), dependenciesFingerprint} : null;
+    });
+    if (contents == null) {
+      return null;
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(CACHE_VERSION);
+    putString(hasher, pluginVersion);
+    putString(hasher, contents[0]);
+    putString(hasher, inputs.myRenderOptions);
+    putString(hasher, inputs.myQualifiers);
+    putString(hasher, inputs.myTheme);
+    putString(hasher, inputs.myDeviceId);
+    putString(hasher, inputs.myTargetHash);
+    putString(hasher, contents[1]);
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns a fingerprint of the resource files of the given module and its Android dependencies, and of the module classpath.
+   * Walking these files is expensive, so the fingerprint is only recomputed after a change in the VFS or in the project roots.
+   */
+  @Nullable
+  private static String getDependenciesFingerprint(@NotNull Module module) {
+    Project project = module.getProject();
+    return CachedValuesManager.getManager(project).getCachedValue(module, () -> {
+      AndroidFacet facet = AndroidFacet.getInstance(module);
+      String fingerprint = null;
+      if (facet != null) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putResourcesFingerprint(hasher, facet);
+        for (AndroidFacet dependency : AndroidUtils.getAllAndroidDependencies(module, true)) {
+          putResourcesFingerprint(hasher, dependency);
+        }
+        putClasspathFingerprint(hasher, module);
+        fingerprint = hasher.hash().toString();
+      }
+      return CachedValueProvider.Result.create(fingerprint, VirtualFileManager.getInstance(), ProjectRootManager.getInstance(project));
+    });
+  }
+
+  private static void putString(@NotNull Hasher hasher, @Nullable String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    }
+    else {
+      hasher.putInt(value.length());
+      hasher.putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static void putResourcesFingerprint(@NotNull Hasher hasher, @NotNull AndroidFacet facet) {
+    for (VirtualFile folder : ResourceFolderManager.getInstance(facet).getFolders()) {
+      putFilesFingerprint(hasher, folder);
+    }
+  }
+
+  private static void putClasspathFingerprint(@NotNull Hasher hasher, @NotNull Module module) {
+    for (VirtualFile root : OrderEnumerator.orderEntries(module).recursively().withoutSdk().classes().getRoots()) {
+      VirtualFile jarFile = JarFileSystem.getInstance().getVirtualFileForJar(root);
+      putFilesFingerprint(hasher, jarFile != null ? jarFile : root);
+    }
+  }
+
+  private static void putFilesFingerprint(@NotNull Hasher hasher, @NotNull VirtualFile root) {
+    VfsUtilCore.iterateChildrenRecursively(root, null, file -> {
+      if (!file.isDirectory()) {
+        putString(hasher, file.getPath());
+        hasher.putLong(file.getTimeStamp());
+        hasher.putLong(file.getLength());
+      }
+      return true;
+    });
+  }
+
+  /**
+   * Returns the cached result of the render of the given file with the given key, or null if there is no such entry.
+   * The returned result is owned by the caller that must dispose it.
+   */
+  @Nullable
+  public RenderResult get(@NotNull Project project, @NotNull String key, @NotNull PsiFile file) {
+    Path entryFile = getEntryFile(project, key);
+    if (entryFile == null) {
+      return null;
+    }
+
+    CachedRenderResult cached;
+    try {
+      cached = readEntry(entryFile);
+      // Keep track of the recently used entries so they are the last to be pruned.
+      Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException e) {
+      getLogger().debug("Failed to read render cache entry " + entryFile, e);
+      return null;
+    }
+    if (cached == null) {
+      return null;
+    }
+
+    return ReadAction.compute(() -> {
+      Module module = file.isValid() ? ModuleUtilCore.findModuleForPsiElement(file) : null;
+      if (module == null) {
+        return null;
+      }
+      XmlTag rootTag = file instanceof XmlFile ? ((XmlFile)file).getRootTag() : null;
+      return RenderResult.createCachedResult(file,
+                                             module,
+                                             ImagePoolFactory.getNonPooledPool().copyOf(cached.image),
+                                             toViewInfos(cached.rootViews, rootTag),
+                                             toViewInfos(cached.systemRootViews, rootTag));
+    });
+  }
+
+  /**
+   * Stores the given successful render result with the key computed from the given inputs, captured when the render started. The image
+   * and the view hierarchy are copied before this method returns so the result can be disposed right after this call; the key is
+   * computed and the entry is written in the background, and nothing is written if the inputs changed since the render.
+   */
+  public void put(@NotNull Project project, @NotNull KeyInputs keyInputs, @NotNull RenderResult result) {
+    if (!result.getRenderResult().isSuccess() || !result.getRenderedImage().isValid()) {
+      return;
+    }
+    BufferedImage image = result.getRenderedImage().getCopy();
+    if (image == null) {
+      return;
+    }
+    PsiFile file = result.getFile();
+    CachedRenderResult cached = ReadAction.compute(
+      () -> new CachedRenderResult(toCachedViews(result.getRootViews(), file), toCachedViews(result.getSystemRootViews(), file), image));
+
+    myWriteExecutor.execute(() -> {
+      if (project.isDisposed()) {
+        return;
+      }
+      String key;
+      try {
+        key = computeKey(keyInputs);
+      }
+      catch (ProcessCanceledException e) {
+        return;
+      }
+      catch (RuntimeException e) {
+        getLogger().warn("Failed to compute render cache key", e);
+        return;
+      }
+      Path entryFile = key != null ? getEntryFile(project, key) : null;
+      if (entryFile == null) {
+        return;
+      }
+      try {
+        writeEntry(entryFile, cached);
+        pruneEntries(entryFile.getParent(), MAX_PROJECT_ENTRIES);
+      }
+      catch (IOException e) {
+        getLogger().debug("Failed to write render cache entry " + entryFile, e);
+      }
+    });
+  }
+
+  /**
+   * Deletes all the cache entries.
+   */
+  public void clear() {
+    if (!FileUtil.delete(myRootDir.toFile())) {
+      getLogger().warn("Failed to delete " + myRootDir);
+    }
+  }
+
+  @Nullable
+  private Path getEntryFile(@NotNull Project project, @NotNull String key) {
+    try {
+      Files.createDirectories(myRootDir);
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to create cache root directory " + myRootDir, e);
+      return null;
+    }
+    return ProjectUtil.getProjectCachePath(project, myRootDir).resolve(key + ENTRY_EXTENSION);
+  }
+
+  @VisibleForTesting
+  static void writeEntry(@NotNull Path entryFile, @NotNull CachedRenderResult cached) throws IOException {
+    Files.createDirectories(entryFile.getParent());
+    // Write to a temporary file first so readers never see a partially written entry.
+    Path tempFile = Files.createTempFile(entryFile.getParent(), entryFile.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        stream.writeInt(CACHE_VERSION);
+        writeViews(stream, cached.rootViews);
+        writeViews(stream, cached.systemRootViews);
+        if (!ImageIO.write(cached.image, "png", stream)) {
+          throw new IOException("No image writer for the rendered image");
+        }
+      }
+      Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  @VisibleForTesting
+  @Nullable
+  static CachedRenderResult readEntry(@NotNull Path entryFile) throws IOException {
+    try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+      if (stream.readInt() != CACHE_VERSION) {
+        return null;
+      }
+      List<CachedView> rootViews = readViews(stream);
+      List<CachedView> systemRootViews = readViews(stream);
+      BufferedImage image = ImageIO.read(stream);
+      return image != null ? new CachedRenderResult(rootViews, systemRootViews, image) : null;
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries of the given project directory so at most {@code maxEntries} remain.
+   */
+  @VisibleForTesting
+  static void pruneEntries(@NotNull Path projectDir, int maxEntries) throws IOException {
+    List<Path> entries;
+    try (Stream<Path> stream = Files.list(projectDir)) {
+      entries = stream.filter(path -> path.getFileName().toString().endsWith(ENTRY_EXTENSION)).collect(Collectors.toList());
+    }
+    if (entries.size() <= maxEntries) {
+      return;
+    }
+
+    List<Path> sortedEntries = new ArrayList<>(entries);
+    sortedEntries.sort(Comparator.comparing(RenderResultFileCache::getLastModifiedTime).reversed());
+    for (Path entry : sortedEntries.subList(maxEntries, sortedEntries.size())) {
+      Files.deleteIfExists(entry);
+    }
+  }
+
+  @NotNull
+  private static FileTime getLastModifiedTime(@NotNull Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    }
+    catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static void writeViews(@NotNull DataOutputStream stream, @NotNull List<CachedView> views) throws IOException {
+    stream.writeInt(views.size());
+    for (CachedView view : views) {
+      stream.writeUTF(view.className);
+      stream.writeInt(view.left);
+      stream.writeInt(view.top);
+      stream.writeInt(view.right);
+      stream.writeInt(view.bottom);
+      if (view.tagPath == null) {
+        stream.writeInt(-1);
+      }
+      else {
+        stream.writeInt(view.tagPath.length);
+        for (int index : view.tagPath) {
+          stream.writeInt(index);
+        }
+      }
+      writeViews(stream, view.children);
+    }
+  }
+
+  @NotNull
+  private static List<CachedView> readViews(@NotNull DataInputStream stream) throws IOException {
+    int size = stream.readInt();
+    List<CachedView> views = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String className = stream.readUTF();
+      int left = stream.readInt();
+      int top = stream.readInt();
+      int right = stream.readInt();
+      int bottom = stream.readInt();
+      int tagPathLength = stream.readInt();
+      int[] tagPath = null;
+      if (tagPathLength >= 0) {
+        tagPath = new int[tagPathLength];
+        for (int j = 0; j < tagPathLength; j++) {
+          tagPath[j] = stream.readInt();
+        }
+      }
+      views.add(new CachedView(className, left, top, right, bottom, tagPath, readViews(stream)));
+    }
+    return views;
+  }
+
+  @NotNull
+  private static List<CachedView> toCachedViews(@NotNull List<ViewInfo> views, @NotNull PsiFile file) {
+    List<CachedView> cachedViews = new ArrayList<>(views.size());
+    for (ViewInfo view : views) {
+      cachedViews.add(new CachedView(Strings.nullToEmpty(view.getClassName()),
+                                     view.getLeft(),
+                                     view.getTop(),
+                                     view.getRight(),
+                                     view.getBottom(),
+                                     getTagPath(view.getCookie(), file),
+                                     toCachedViews(view.getChildren(), file)));
+    }
+    return cachedViews;
+  }
+
+  /**
+   * Returns the indexes of the sub tags to follow from the root tag of the file to find the tag of the given view cookie, or null if the
+   * cookie does not correspond to a tag of the given file, e.g. for views of included layouts.
+   */
+  @Nullable
+  private static int[] getTagPath(@Nullable Object cookie, @NotNull PsiFile file) {
+    XmlTag tag = cookie instanceof TagSnapshot ? ((TagSnapshot)cookie).tag : null;
+    if (tag == null || !tag.isValid() || tag.getContainingFile() != file) {
+      return null;
+    }
+
+    List<Integer> path = new ArrayList<>();
+    for (XmlTag parent = tag.getParentTag(); parent != null; tag = parent, parent = parent.getParentTag()) {
+      int index = Arrays.asList(parent.getSubTags()).indexOf(tag);
+      if (index < 0) {
+        return null;
+      }
+      path.add(0, index);
+    }
+    return path.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  @NotNull
+  private static ImmutableList<ViewInfo> toViewInfos(@NotNull List<CachedView> views, @Nullable XmlTag rootTag) {
+    ImmutableList.Builder<ViewInfo> viewInfos = ImmutableList.builder();
+    for (CachedView view : views) {
+      XmlTag tag = findTag(rootTag, view.tagPath);
+      ViewInfo viewInfo = new ViewInfo(view.className,
+                                       tag != null ? TagSnapshot.createTagSnapshotWithoutChildren(tag) : null,
+                                       view.left,
+                                       view.top,
+                                       view.right,
+                                       view.bottom);
+      viewInfo.setChildren(toViewInfos(view.children, rootTag));
+      viewInfos.add(viewInfo);
+    }
+    return viewInfos.build();
+  }
+
+  @Nullable
+  private static XmlTag findTag(@Nullable XmlTag rootTag, @Nullable int[] tagPath) {
+    if (rootTag == null || tagPath == null) {
+      return null;
+    }
+    XmlTag tag = rootTag;
+    for (int index : tagPath) {
+      XmlTag[] subTags = tag.getSubTags();
+      if (index >= subTags.length) {
+        return null;
+      }
+      tag = subTags[index];
+    }
+    return tag;
+  }
+
+  /**
+   * The contents of a cache entry.
+   */
+  @VisibleForTesting
+  static class CachedRenderResult {
+    @NotNull final List<CachedView> rootViews;
+    @NotNull final List<CachedView> systemRootViews;
+    @NotNull final BufferedImage image;
+
+    CachedRenderResult(@NotNull List<CachedView> rootViews, @NotNull List<CachedView> systemRootViews, @NotNull BufferedImage image) {
+      this.rootViews = rootViews;
+      this.systemRootViews = systemRootViews;
+      this.image = image;
+    }
+  }
+
+  /**
+   * A {@link ViewInfo} that refers to its tag by its position in the file.
+   */
+  @VisibleForTesting
+  static class CachedView {
+    @NotNull final String className;
+    final int left;
+    final int top;
+    final int right;
+    final int bottom;
+    @Nullable final int[] tagPath;
+    @NotNull final List<CachedView> children;
+
+    CachedView(@NotNull String className, int left, int top, int right, int bottom, @Nullable int[] tagPath,
+               @NotNull List<CachedView> children) {
+      this.className = className;
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+      this.tagPath = tagPath;
+      this.children = children;
+    }
+  }
+
+  /**
+   * Hook to delete the cached renders when the caches are invalidated.
+   */
+  public static class CacheInvalidator extends CachesInvalidator {
+    @Override
+    public void invalidateCaches() {
+      getInstance().clear();
+    }
+  }
+}
@@ -259,6 +259,55 @@ public class RenderService implements Disposable {
     ourExecutor.runAsyncAction(runnable);
   }
 
+  /**
+   * Runs a action that requires the rendering lock on the render thread used for the given module. All the actions touching
+   * the render sessions of a module, or the views they inflated, should be run on the same thread.
+   *
+   * @see #runRenderAction(Runnable)
+   */
+  public static void runRenderAction(@Nullable Module module, @NotNull Runnable runnable) throws Exception {
+    runRenderAction(module, Executors.callable(runnable));
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread used for the given module. All the actions touching
+   * the render sessions of a module, or the views they inflated, should be run on the same thread.
+   *
+   * @see #runRenderAction(Callable)
+   */
+  public static <T> T runRenderAction(@Nullable Module module, @NotNull Callable<T> callable) throws Exception {
+    return ourExecutor.runAction(module, callable);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock asynchronously on the render thread used for the given module. Actions with
+   * {@link RenderingPriority#LOW} priority let a limited number of later {@link RenderingPriority#NORMAL} actions run before them.
+   *
+   * @see #runAsyncRenderAction(Supplier)
+   */
+  @NotNull
+  public static <T> CompletableFuture<T> runAsyncRenderAction(@Nullable Module module,
+                                                              @NotNull RenderingPriority priority,
+                                                              @NotNull Supplier<T> callable) {
+    return ourExecutor.runAsyncAction(module, priority, callable);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock asynchronously on the render thread used for the given module.
+   *
+   * @see #runAsyncRenderAction(Module, RenderingPriority, Supplier)
+   */
+  public static void runAsyncRenderAction(@Nullable Module module, @NotNull RenderingPriority priority, @NotNull Runnable runnable) {
+    ourExecutor.runAsyncAction(module, priority, runnable);
+  }
+
+  /**
+   * Runs the action once on every render thread. Used to clean up thread local state left behind by the rendered code.
+   */
+  public static void runAsyncRenderActionOnAllThreads(@NotNull Runnable runnable) {
+    ourExecutor.runAsyncActionOnAllThreads(runnable);
+  }
+
   /**
    * Given a {@link ViewInfo} from a layoutlib rendering, checks that the view info provides
    * valid bounds. This is normally the case. However, there are known scenarios, where
@@ -362,6 +411,7 @@ public class RenderService implements Disposable {
     private boolean enableLayoutValidator = false;
     private SessionParams.RenderingMode myRenderingMode = null;
     private boolean useTransparentBackground = false;
+    @NotNull private RenderingPriority myPriority = RenderingPriority.NORMAL;
     @NotNull private Function<Module, MergedManifestSnapshot> myManifestProvider =
       module -> {
         try {
@@ -519,6 +569,15 @@ public class RenderService implements Disposable {
       return this;
     }
 
+    /**
+     * @see RenderTask#setPriority(RenderingPriority)
+     */
+    @NotNull
+    public RenderTaskBuilder withPriority(@NotNull RenderingPriority priority) {
+      myPriority = priority;
+      return this;
+    }
+
     /**
      * Sets the {@link MergedManifestSnapshot} provider
      */
@@ -612,6 +671,8 @@ public class RenderService implements Disposable {
             task.setRenderingMode(myRenderingMode);
           }
 
+          task.setPriority(myPriority);
+
           return task;
         } catch (IllegalStateException | IncorrectOperationException | AssertionError e) {
           // Ignore the exception if it was generated when the facet is being disposed (project is being closed)
@@ -96,6 +96,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -179,6 +180,8 @@ public class RenderTask {
   private final boolean isSecurityManagerEnabled;
   @NotNull private CrashReporter myCrashReporter;
   private final List<CompletableFuture<?>> myRunningFutures = new LinkedList<>();
+  /** The priority of the render actions of this task. Only changes while {@link #myRunningFutures} is empty. */
+  @NotNull private volatile RenderingPriority myPriority = RenderingPriority.NORMAL;
   @NotNull private final AtomicBoolean isDisposed = new AtomicBoolean(false);
   @Nullable private XmlFile myXmlFile;
   @NotNull private final Function<Module, MergedManifestSnapshot> myManifestProvider;
@@ -316,8 +319,8 @@ public class RenderTask {
       Field gapWorkerField = gapWorkerClass.getDeclaredField("sGapWorker");
       gapWorkerField.setAccessible(true);
 
-      // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
-      RenderService.runAsyncRenderAction(() -> {
+      // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread of this module
+      RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, () -> {
         try {
           ThreadLocal<?> gapWorkerFieldValue = (ThreadLocal<?>)gapWorkerField.get(null);
           gapWorkerFieldValue.set(null);
@@ -410,8 +413,9 @@ public class RenderTask {
         // Wait for all current running operations to complete
         CompletableFuture.allOf(currentRunningFutures).get(5, TimeUnit.SECONDS);
       }
-      catch (InterruptedException | ExecutionException e) {
-        // We do not care about these exceptions since we are disposing the task anyway
+      catch (InterruptedException | ExecutionException | TimeoutException e) {
+        // We do not care about these exceptions since we are disposing the task anyway. The session is disposed by a render action
+        // with the priority of this task, so it still runs after the actions we stopped waiting for.
         LOG.debug(e);
       }
       myLayoutlibCallback.setLogger(IRenderLogger.NULL_LOGGER);
@@ -482,6 +486,24 @@ public class RenderTask {
     return this;
   }
 
+  /**
+   * Sets the priority of the render actions of this task, e.g. {@link RenderingPriority#LOW} while the preview is not visible.
+   * The priority is only changed when there are no pending render actions for this task, so that the actions of the task keep
+   * running in the order they were requested.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderingPriority priority) {
+    synchronized (myRunningFutures) {
+      if (myRunningFutures.isEmpty()) {
+        myPriority = priority;
+      }
+    }
+    return this;
+  }
+
   @SuppressWarnings("UnusedReturnValue")
   @NotNull
   public RenderTask setTimeout(long timeout) {
@@ -801,7 +823,7 @@ public class RenderTask {
   /**
    * Executes the passed {@link Callable} as an async render action and keeps track of it. If {@link #dispose()} is called, the call will
    * wait until all the async actions have finished running.
-   * See {@link RenderService#runAsyncRenderAction(Supplier)}.
+   * See {@link RenderService#runAsyncRenderAction(Module, RenderingPriority, Supplier)}.
    */
   @VisibleForTesting
   @NotNull
@@ -811,7 +833,7 @@ public class RenderTask {
     }
 
     synchronized (myRunningFutures) {
-      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, callable);
       myRunningFutures.add(newFuture);
       newFuture
         .whenCompleteAsync((result, ex) -> {
@@ -1120,7 +1142,7 @@ public class RenderTask {
     params.setFlag(RenderParamsFlags.FLAG_KEY_RENDER_ALL_DRAWABLE_STATES, Boolean.TRUE);
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = RenderService.runRenderAction(module, () -> myLayoutLib.renderDrawable(params));
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -1173,7 +1195,7 @@ public class RenderTask {
   public CompletableFuture<Map<XmlTag, ViewInfo>> measureChildren(@NotNull XmlTag parent, @Nullable AttributeFilter filter) {
     ILayoutPullParser modelParser = LayoutPsiPullParser.create(filter, parent, myLogger);
     Map<XmlTag, ViewInfo> map = new HashMap<>();
-    return RenderService.runAsyncRenderAction(() -> measure(modelParser))
+    return RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, () -> measure(modelParser))
         .thenComposeAsync(session -> {
           if (session != null) {
             try {
@@ -1321,7 +1343,7 @@ public class RenderTask {
     }
     disposeMethod.ifPresent(m -> m.setAccessible(true));
     Optional<Method> finalDisposeMethod = disposeMethod;
-    RenderService.runAsyncRenderAction(() -> {
+    RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, () -> {
       finalDisposeMethod.ifPresent(m -> renderSession.getRootViews().forEach(v -> disposeIfCompose(v, m)));
       renderSession.dispose();
     });
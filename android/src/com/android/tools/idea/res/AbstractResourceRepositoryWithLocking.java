@@ -22,11 +22,12 @@ import com.android.ide.common.resources.ResourceItem;
 import com.android.ide.common.resources.ResourceTable;
 import com.android.resources.ResourceType;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -36,91 +37,106 @@ import org.jetbrains.annotations.Nullable;
  * <ul>
  *   <li>May compute cells in the table on-demand.
  *   <li>May change in the background, if underlying files or other sources of data have changed.
- *       Because of that access should be synchronized on the {@code ITEM_MAP_LOCK} object.
+ *       Because of that access to the table should be guarded by {@link #myItemMapLock}.
  * </ul>
+ *
+ * <p>Readers don't take the lock. Each cell of the table is exposed to them as an immutable snapshot, created on first access and
+ * published until the cell changes. Writers take the write lock of their own repository only, and call {@link #invalidateSnapshots()}
+ * or {@link #invalidateSnapshots(ResourceNamespace, ResourceType...)} once they have changed the table, after which readers see the
+ * changes.
  */
 public abstract class AbstractResourceRepositoryWithLocking extends AbstractResourceRepository {
   /**
-   * The lock used to protect map access.
+   * The lock used to protect map access of this repository.
    *
    * <p>In the IDE, this needs to be obtained <b>AFTER</b> the IDE read/write lock, to avoid
    * deadlocks (most readers of the repository system execute in a read action, so obtaining the
    * locks in opposite order results in deadlocks).
+   *
+   * <p>A repository may take the locks of the repositories it contains while holding its own lock, e.g. to create its snapshots, but never
+   * the other way around: the repositories containing this one have to be notified of changes after releasing this lock.
    */
-  public static final Object ITEM_MAP_LOCK = new Object();
+  protected final ReentrantReadWriteLock myItemMapLock = new ReentrantReadWriteLock();
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  /** Immutable copies of the maps returned by {@link #getMap}, keyed by namespace and resource type. */
+  private final Map<ResourceNamespace, Map<ResourceType, ListMultimap<String, ResourceItem>>> mySnapshots = new ConcurrentHashMap<>();
+  /** Incremented before snapshots are dropped, so that snapshots created concurrently with a change are not published. */
+  private final AtomicLong mySnapshotInvalidations = new AtomicLong();
+
+  @GuardedBy("myItemMapLock")
   @Nullable
   protected abstract ListMultimap<String, ResourceItem> getMap(
       @NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType);
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
   @Override
   @NotNull
   protected ListMultimap<String, ResourceItem> getResourcesInternal(
       @NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
-    ListMultimap<String, ResourceItem> map = getMap(namespace, resourceType);
-    return map == null ? ImmutableListMultimap.of() : map;
+    return getSnapshot(namespace, resourceType);
   }
 
-  @Override
+  /**
+   * Returns an immutable copy of the resources of the given namespace and type, without locking unless the resources changed since the
+   * last call.
+   */
   @NotNull
-  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
-                                         @NotNull ResourceType resourceType,
-                                         @NotNull String resourceName) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResources(namespace, resourceType, resourceName);
+  protected final ListMultimap<String, ResourceItem> getSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    Map<ResourceType, ListMultimap<String, ResourceItem>> snapshotsByType =
+        mySnapshots.computeIfAbsent(namespace, n -> new ConcurrentHashMap<>());
+    ListMultimap<String, ResourceItem> snapshot = snapshotsByType.get(type);
+    if (snapshot != null) {
+      return snapshot;
     }
-  }
 
-  @Override
-  @NotNull
-  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
-                                         @NotNull ResourceType resourceType,
-                                         @NotNull Predicate<ResourceItem> filter) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResources(namespace, resourceType, filter);
-    }
+    long invalidations = mySnapshotInvalidations.get();
+    ListMultimap<String, ResourceItem> newSnapshot = createSnapshot(namespace, type);
+    // The snapshot is only published if no writer incremented the counter since it was created. The check and the publication are atomic
+    // with respect to the removal of the cell by invalidateSnapshots, so a snapshot that may be stale is never visible to other readers,
+    // e.g. to a repository containing this one that creates its own snapshot after being notified of the change.
+    snapshotsByType.compute(type, (t, current) -> mySnapshotInvalidations.get() == invalidations ? newSnapshot : current);
+    return newSnapshot;
   }
 
-  @Override
+  /**
+   * Creates an immutable copy of the map returned by {@link #getMap}. Called without holding {@link #myItemMapLock}. The default
+   * implementation holds the write lock, since {@link #getMap} may compute cells on demand.
+   */
   @NotNull
-  public ListMultimap<String, ResourceItem> getResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResources(namespace, resourceType);
+  protected ListMultimap<String, ResourceItem> createSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    myItemMapLock.writeLock().lock();
+    try {
+      ListMultimap<String, ResourceItem> map = getMap(namespace, type);
+      return map == null ? ImmutableListMultimap.of() : ImmutableListMultimap.copyOf(map);
     }
-  }
-
-  @Override
-  @NotNull
-  public Set<String> getResourceNames(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
-    synchronized (ITEM_MAP_LOCK) {
-      ListMultimap<String, ResourceItem> map = getMap(namespace, resourceType);
-      return map == null ? ImmutableSet.of() : ImmutableSet.copyOf(map.keySet());
+    finally {
+      myItemMapLock.writeLock().unlock();
     }
   }
 
-  @Override
-  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType, @NotNull String resourceName) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.hasResources(namespace, resourceType, resourceName);
-    }
+  /**
+   * Drops all snapshots, to be called after the resources of this repository changed.
+   */
+  protected final void invalidateSnapshots() {
+    mySnapshotInvalidations.incrementAndGet();
+    mySnapshots.clear();
   }
 
-  @Override
-  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.hasResources(namespace, resourceType);
+  /**
+   * Drops the snapshots of the given namespace and types, to be called after these resources changed.
+   */
+  protected final void invalidateSnapshots(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
+    mySnapshotInvalidations.incrementAndGet();
+    Map<ResourceType, ListMultimap<String, ResourceItem>> snapshotsByType = mySnapshots.get(namespace);
+    if (snapshotsByType != null) {
+      for (ResourceType type : types) {
+        snapshotsByType.remove(type);
+      }
     }
   }
 
   @Override
   @NotNull
-  public Set<ResourceType> getResourceTypes(@NotNull ResourceNamespace namespace) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResourceTypes(namespace);
-    }
+  public Set<String> getResourceNames(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    return getSnapshot(namespace, resourceType).keySet();
   }
 }
@@ -58,8 +58,7 @@ public class DynamicValueResourceRepository extends LocalResourceRepository
     implements Disposable, BuildVariantView.BuildVariantSelectionChangeListener, SingleNamespaceResourceRepository {
   private final AndroidFacet myFacet;
   @NotNull private final ResourceNamespace myNamespace;
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @NotNull private final Map<ResourceType, ListMultimap<String, ResourceItem>> myResourceTable = new EnumMap<>(ResourceType.class);
 
   private DynamicValueResourceRepository(@NotNull AndroidFacet facet, @NotNull ResourceNamespace namespace) {
@@ -116,22 +115,30 @@ public class DynamicValueResourceRepository extends LocalResourceRepository
                                                              @NotNull ResourceNamespace namespace,
                                                              @NotNull Map<String, DynamicResourceValue> values) {
     DynamicValueResourceRepository repository = new DynamicValueResourceRepository(facet, namespace);
-    synchronized (ITEM_MAP_LOCK) {
+    repository.myItemMapLock.writeLock().lock();
+    try {
       repository.addValues(values);
     }
+    finally {
+      repository.myItemMapLock.writeLock().unlock();
+    }
     Disposer.register(facet, repository);
     return repository;
   }
 
   private void notifyProjectSynced() {
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       myResourceTable.clear(); // Computed lazily in getMap.
-      invalidateParentCaches(this, ResourceType.values());
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    invalidateSnapshots();
+    invalidateParentCaches(this, ResourceType.values());
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   private void addValues(@NotNull Map<String, DynamicResourceValue> resValues) {
     for (Map.Entry<String, DynamicResourceValue> entry : resValues.entrySet()) {
       DynamicResourceValue field = entry.getValue();
@@ -152,8 +159,7 @@ public class DynamicValueResourceRepository extends LocalResourceRepository
     }
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @Override
   @Nullable
   protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
@@ -174,18 +180,21 @@ public class DynamicValueResourceRepository extends LocalResourceRepository
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
     if (visitor.shouldVisitNamespace(myNamespace)) {
-      synchronized (ITEM_MAP_LOCK) {
+      myItemMapLock.readLock().lock();
+      try {
         if (acceptByResources(myResourceTable, visitor) == ResourceVisitor.VisitResult.ABORT) {
           return ResourceVisitor.VisitResult.ABORT;
         }
       }
+      finally {
+        myItemMapLock.readLock().unlock();
+      }
     }
 
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @NonNull
   private Map<ResourceType, ListMultimap<String, ResourceItem>> getResourceTable() {
     if (myResourceTable.isEmpty()) {
@@ -28,11 +28,13 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -126,17 +128,25 @@ import org.jetbrains.annotations.Nullable;
  * See also the {@code README.md} file in this package.
  * </p>
  */
-@SuppressWarnings("InstanceGuardedByStatic") // TODO: The whole locking scheme for resource repositories needs to be reworked.
 public abstract class LocalResourceRepository extends AbstractResourceRepositoryWithLocking implements ModificationTracker {
   protected static final AtomicLong ourModificationCounter = new AtomicLong();
 
+  /** The number of most recent changes remembered by {@link #getChangedResourceTypes(long)}. */
+  private static final int MAX_RECORDED_CHANGES = 64;
+
   private final String myDisplayName;
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  @Nullable private List<MultiResourceRepository> myParents;
+  @NotNull private final List<MultiResourceRepository> myParents = new CopyOnWriteArrayList<>();
 
   private volatile long myGeneration;
 
+  private final Object CHANGES_LOCK = new Object();
+  @GuardedBy("CHANGES_LOCK")
+  private final ArrayDeque<Change> myRecentChanges = new ArrayDeque<>();
+  /** The highest modification count of the changes that were dropped from {@link #myRecentChanges}. */
+  @GuardedBy("CHANGES_LOCK")
+  private long myForgottenModificationCount;
+
   private final Object RESOURCE_DIRS_LOCK = new Object();
   @Nullable private Set<VirtualFile> myResourceDirs;
 
@@ -157,37 +167,32 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
   }
 
   public void addParent(@NotNull MultiResourceRepository parent) {
-    synchronized (ITEM_MAP_LOCK) {
-      if (myParents == null) {
-        myParents = new ArrayList<>(2); // Don't expect many parents
-      }
-      myParents.add(parent);
-    }
+    myParents.add(parent);
   }
 
   public void removeParent(@NotNull MultiResourceRepository parent) {
-    synchronized (ITEM_MAP_LOCK) {
-      if (myParents != null) {
-        myParents.remove(parent);
-      }
-    }
+    myParents.remove(parent);
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  /**
+   * Notifies the parents of this repository that all their caches are no longer valid. Since parents take their own locks, this must not
+   * be called while holding {@link #myItemMapLock}.
+   */
   protected void invalidateParentCaches() {
-    if (myParents != null) {
-      for (MultiResourceRepository parent : myParents) {
-        parent.invalidateCache();
-      }
+    assert !myItemMapLock.isWriteLockedByCurrentThread() && myItemMapLock.getReadHoldCount() == 0;
+    for (MultiResourceRepository parent : myParents) {
+      parent.invalidateCache();
     }
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  /**
+   * Notifies the parents of this repository that the given resources changed. Since parents take their own locks, this must not be
+   * called while holding {@link #myItemMapLock}.
+   */
   protected void invalidateParentCaches(@NotNull SingleNamespaceResourceRepository repository, @NotNull ResourceType... types) {
-    if (myParents != null) {
-      for (MultiResourceRepository parent : myParents) {
-        parent.invalidateCache(repository, types);
-      }
+    assert !myItemMapLock.isWriteLockedByCurrentThread() && myItemMapLock.getReadHoldCount() == 0;
+    for (MultiResourceRepository parent : myParents) {
+      parent.invalidateCache(repository, types);
     }
   }
 
@@ -213,8 +218,59 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     return myGeneration;
   }
 
+  /**
+   * Sets the modification count, recording a change that may affect any resources.
+   */
   protected void setModificationCount(long count) {
-    myGeneration = count;
+    recordChange(count, null);
+  }
+
+  /**
+   * Sets the modification count, recording a change that affects only resources of the given types. Passing no types records a change
+   * that doesn't affect any resources, e.g. noticing the changes of other repositories.
+   */
+  protected void setModificationCount(long count, @NotNull ResourceType... changedTypes) {
+    Set<ResourceType> types = EnumSet.noneOf(ResourceType.class);
+    Collections.addAll(types, changedTypes);
+    recordChange(count, types);
+  }
+
+  private void recordChange(long count, @Nullable Set<ResourceType> changedTypes) {
+    synchronized (CHANGES_LOCK) {
+      if (myRecentChanges.size() == MAX_RECORDED_CHANGES) {
+        myForgottenModificationCount = Math.max(myForgottenModificationCount, myRecentChanges.removeFirst().myModificationCount);
+      }
+      myRecentChanges.addLast(new Change(count, changedTypes));
+      myGeneration = count;
+    }
+  }
+
+  /**
+   * Returns the types of the resources that changed since this repository had the given modification count, so that caches of
+   * resource values can be updated instead of rebuilt. Returns null if that is not known, e.g. because the set of resource directories
+   * changed or the change is too old.
+   *
+   * @param modificationCount a value previously returned by {@link #getModificationCount()}
+   * @return a new set of resource types, or null if all resources should be considered changed
+   */
+  @Nullable
+  public Set<ResourceType> getChangedResourceTypes(long modificationCount) {
+    synchronized (CHANGES_LOCK) {
+      // Modification counts come from ourModificationCounter, so changes made after modificationCount was returned have higher counts.
+      if (myForgottenModificationCount > modificationCount) {
+        return null;
+      }
+      Set<ResourceType> result = EnumSet.noneOf(ResourceType.class);
+      for (Change change : myRecentChanges) {
+        if (change.myModificationCount > modificationCount) {
+          if (change.myTypes == null) {
+            return null;
+          }
+          result.addAll(change.myTypes);
+        }
+      }
+      return result;
+    }
   }
 
   boolean isScanPending(@NotNull PsiFile psiFile) {
@@ -246,12 +302,8 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     synchronized (RESOURCE_DIRS_LOCK) {
       myResourceDirs = null;
     }
-    synchronized (ITEM_MAP_LOCK) {
-      if (myParents != null) {
-        for (LocalResourceRepository parent : myParents) {
-          parent.invalidateResourceDirs();
-        }
-      }
+    for (LocalResourceRepository parent : myParents) {
+      parent.invalidateResourceDirs();
     }
   }
 
@@ -262,14 +314,15 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     throw new UnsupportedOperationException("Not implemented yet");
   }
 
-  /**
-   * Package accessible version of {@link #getMap(ResourceNamespace, ResourceType)}.
-   * Do not call outside of {@link MultiResourceRepository}.
-   */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @Nullable
-  ListMultimap<String, ResourceItem> getMapPackageAccessible(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
-    return getMap(namespace, type);
+  private static final class Change {
+    private final long myModificationCount;
+    /** The changed resource types, or null if any resources may have changed. */
+    @Nullable private final Set<ResourceType> myTypes;
+
+    Change(long modificationCount, @Nullable Set<ResourceType> types) {
+      myModificationCount = modificationCount;
+      myTypes = types;
+    }
   }
 
   public static final class EmptyRepository extends LocalResourceRepository implements SingleNamespaceResourceRepository {
@@ -286,7 +339,6 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
       return Collections.emptySet();
     }
 
-    @GuardedBy("ITEM_MAP_LOCK")
     @Override
     @Nullable
     protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
@@ -47,6 +47,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -67,44 +68,41 @@ import org.jetbrains.annotations.Nullable;
  * replace/hide any subsequent definitions of the same resource.
  *
  * <p>In the resource repository hierarchy, MultiResourceRepository is an internal node, never a leaf.
+ *
+ * <p>The merged maps are built from the snapshots of the children, so merging only takes the lock of this repository, and of children
+ * whose snapshots are out of date. The list of children is immutable and replaced as a whole, so it is read without locking.
  */
-@SuppressWarnings("InstanceGuardedByStatic") // TODO: The whole locking scheme for resource repositories needs to be reworked.
 public abstract class MultiResourceRepository extends LocalResourceRepository implements Disposable {
   private static final Logger LOG = Logger.getInstance(MultiResourceRepository.class);
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
+  @NotNull private volatile ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
+  @NotNull private volatile ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
   /** A concatenation of {@link #myLocalResources} and {@link #myLibraryResources}. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
+  @NotNull private volatile ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
   /** Leaf resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
       ImmutableListMultimap.of();
   /** Contained single-namespace resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
       ImmutableListMultimap.of();
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @NotNull private ResourceItemComparator myResourceComparator =
       new ResourceItemComparator(new ResourcePriorityComparator(ImmutableList.of()));
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   private long[] myModificationCounts;
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   private final ResourceTable myCachedMaps = new ResourceTable();
 
   /** Names of resources from local leaf repositories. */
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   private final Table<SingleNamespaceResourceRepository, ResourceType, Set<String>> myResourceNames =
       Tables.newCustomTable(new HashMap<>(), () -> Maps.newEnumMap(ResourceType.class));
 
   /** Describes groups of resources that are out of date in {@link #myCachedMaps}. */
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   private final Table<ResourceNamespace, ResourceType, Set<SingleNamespaceResourceRepository>> myUnreconciledResources =
       Tables.newCustomTable(new HashMap<>(), () -> Maps.newEnumMap(ResourceType.class));
 
@@ -115,7 +113,8 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   protected void setChildren(@NotNull List<? extends LocalResourceRepository> localResources,
                              @NotNull Collection<? extends AarResourceRepository> libraryResources,
                              @NotNull Collection<? extends ResourceRepository> otherResources) {
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       for (LocalResourceRepository child : myLocalResources) {
         child.removeParent(this);
       }
@@ -149,12 +148,16 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
         myModificationCounts[i++] = child.getModificationCount();
       }
       myCachedMaps.clear();
-
-      invalidateParentCaches();
+      myResourceNames.clear();
+      myUnreconciledResources.clear();
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    invalidateSnapshots();
+    invalidateParentCaches();
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
   private static void computeLeafs(@NotNull ResourceRepository repository,
                                    @NotNull ImmutableListMultimap.Builder<ResourceNamespace, SingleNamespaceResourceRepository> result) {
     if (repository instanceof MultiResourceRepository) {
@@ -168,7 +171,6 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     }
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
   private static void computeNamespaceMap(
       @NotNull ResourceRepository repository,
       @NotNull ImmutableListMultimap.Builder<ResourceNamespace, SingleNamespaceResourceRepository> result) {
@@ -185,22 +187,16 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   }
 
   public ImmutableList<LocalResourceRepository> getLocalResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLocalResources;
-    }
+    return myLocalResources;
   }
 
   public ImmutableList<AarResourceRepository> getLibraryResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLibraryResources;
-    }
+    return myLibraryResources;
   }
 
   @NotNull
   public final List<ResourceRepository> getChildren() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myChildren;
-    }
+    return myChildren;
   }
 
   /**
@@ -213,58 +209,90 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
    */
   @NotNull
   public final List<SingleNamespaceResourceRepository> getRepositoriesForNamespace(@NotNull ResourceNamespace namespace) {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.get(namespace);
-    }
+    return myRepositoriesByNamespace.get(namespace);
   }
 
   @Override
   public long getModificationCount() {
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       if (myLocalResources.size() == 1) {
         return myLocalResources.get(0).getModificationCount();
       }
 
-      // See if any of the delegates have changed.
+      // See if any of the delegates have changed. Their changes are recorded here, with a modification count of this repository, so
+      // a child change that happens while this runs is either recorded now or noticed by the next call, never lost in between.
       boolean changed = false;
+      Set<ResourceType> changedTypes = EnumSet.noneOf(ResourceType.class);
       for (int i = 0; i < myLocalResources.size(); i++) {
         LocalResourceRepository child = myLocalResources.get(i);
         long rev = child.getModificationCount();
         if (rev != myModificationCounts[i]) {
+          Set<ResourceType> changedChildTypes = changedTypes == null ? null : child.getChangedResourceTypes(myModificationCounts[i]);
+          if (changedChildTypes == null) {
+            changedTypes = null;
+          }
+          else {
+            changedTypes.addAll(changedChildTypes);
+          }
           myModificationCounts[i] = rev;
           changed = true;
         }
       }
 
       if (changed) {
-        setModificationCount(ourModificationCounter.incrementAndGet());
+        long modificationCount = ourModificationCounter.incrementAndGet();
+        if (changedTypes == null) {
+          setModificationCount(modificationCount);
+        }
+        else {
+          setModificationCount(modificationCount, changedTypes.toArray(new ResourceType[0]));
+        }
       }
 
       return super.getModificationCount();
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * The changes of the local children are recorded by {@link #getModificationCount()}, except when there is a single local child whose
+   * modification count is returned as is. Library repositories only change through {@link #setChildren}, which is recorded as a change of
+   * all resources.
+   */
+  @Override
+  @Nullable
+  public Set<ResourceType> getChangedResourceTypes(long modificationCount) {
+    Set<ResourceType> changedTypes = super.getChangedResourceTypes(modificationCount);
+    if (changedTypes == null || myLocalResources.size() != 1) {
+      return changedTypes;
+    }
+    Set<ResourceType> changedChildTypes = myLocalResources.get(0).getChangedResourceTypes(modificationCount);
+    if (changedChildTypes == null) {
+      return null;
+    }
+    changedTypes.addAll(changedChildTypes);
+    return changedTypes;
   }
 
   @Override
   @NotNull
   public Set<ResourceNamespace> getNamespaces() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.keySet();
-    }
+    return myRepositoriesByNamespace.keySet();
   }
 
   @Override
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
-    synchronized (ITEM_MAP_LOCK) {
-      for (ResourceNamespace namespace : getNamespaces()) {
-        if (visitor.shouldVisitNamespace(namespace)) {
-          for (ResourceType type : ResourceType.values()) {
-            if (visitor.shouldVisitResourceType(type)) {
-              ListMultimap<String, ResourceItem> map = getMap(namespace, type);
-              for (ResourceItem item : map.values()) {
-                if (visitor.visit(item) == ResourceVisitor.VisitResult.ABORT) {
-                  return ResourceVisitor.VisitResult.ABORT;
-                }
+    for (ResourceNamespace namespace : getNamespaces()) {
+      if (visitor.shouldVisitNamespace(namespace)) {
+        for (ResourceType type : ResourceType.values()) {
+          if (visitor.shouldVisitResourceType(type)) {
+            for (ResourceItem item : getSnapshot(namespace, type).values()) {
+              if (visitor.visit(item) == ResourceVisitor.VisitResult.ABORT) {
+                return ResourceVisitor.VisitResult.ABORT;
               }
             }
           }
@@ -275,14 +303,25 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  @Override
+  @NotNull
+  protected ListMultimap<String, ResourceItem> createSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    ImmutableList<SingleNamespaceResourceRepository> repositoriesForNamespace = myLeafsByNamespace.get(namespace);
+    if (repositoriesForNamespace.size() == 1) {
+      // Nothing to merge, the snapshot of the only repository is the snapshot of this one.
+      return getChildSnapshot(repositoriesForNamespace.get(0), namespace, type);
+    }
+    return super.createSnapshot(namespace, type);
+  }
+
+  @GuardedBy("myItemMapLock")
   @Override
   @NotNull
   protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
     ImmutableList<SingleNamespaceResourceRepository> repositoriesForNamespace = myLeafsByNamespace.get(namespace);
     if (repositoriesForNamespace.size() == 1) {
       SingleNamespaceResourceRepository repository = repositoriesForNamespace.get(0);
-      return getResourcesUnderLock(repository, namespace, type);
+      return getChildSnapshot(repository, namespace, type);
     }
 
     ListMultimap<String, ResourceItem> map = myCachedMaps.get(namespace, type);
@@ -305,7 +344,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
       map = type == ResourceType.STYLEABLE || type == ResourceType.ID ?
             ArrayListMultimap.create() : new PerConfigResourceMap(myResourceComparator);
       for (SingleNamespaceResourceRepository repository : repositoriesForNamespace) {
-        ListMultimap<String, ResourceItem> items = getResourcesUnderLock(repository, namespace, type);
+        ListMultimap<String, ResourceItem> items = getChildSnapshot(repository, namespace, type);
         map.putAll(items);
 
         if (repository instanceof LocalResourceRepository) {
@@ -333,7 +372,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
           }
         }
         // Add all resources from unreconciledRepository.
-        ListMultimap<String, ResourceItem> unreconciledResources = getResourcesUnderLock(unreconciledRepository, namespace, type);
+        ListMultimap<String, ResourceItem> unreconciledResources = getChildSnapshot(unreconciledRepository, namespace, type);
         map.putAll(unreconciledResources);
 
         assert unreconciledRepository instanceof LocalResourceRepository;
@@ -357,64 +396,67 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     return map;
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  /**
+   * Returns the snapshot of the given child, see {@link #getSnapshot(ResourceNamespace, ResourceType)}.
+   */
   @NotNull
-  private static ListMultimap<String, ResourceItem> getResourcesUnderLock(@NotNull SingleNamespaceResourceRepository repository,
-                                                                          @NotNull ResourceNamespace namespace,
-                                                                          @NotNull ResourceType type) {
-    ListMultimap<String, ResourceItem> map;
+  private static ListMultimap<String, ResourceItem> getChildSnapshot(@NotNull SingleNamespaceResourceRepository repository,
+                                                                     @NotNull ResourceNamespace namespace,
+                                                                     @NotNull ResourceType type) {
     if (repository instanceof LocalResourceRepository) {
-      map = ((LocalResourceRepository)repository).getMapPackageAccessible(namespace, type);
-      return map == null ? ImmutableListMultimap.of() : map;
+      return ((LocalResourceRepository)repository).getSnapshot(namespace, type);
     }
-    return repository.getResources(namespace, type);
+    return ImmutableListMultimap.copyOf(repository.getResources(namespace, type));
   }
 
   @Override
   public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
-    synchronized (ITEM_MAP_LOCK) {
-      if (myChildren.size() == 1) {
-        return myChildren.get(0).hasResources(namespace, type);
-      }
+    ImmutableList<ResourceRepository> children = myChildren;
+    if (children.size() == 1) {
+      return children.get(0).hasResources(namespace, type);
+    }
 
-      if (this instanceof SingleNamespaceResourceRepository) {
-        if (namespace.equals(((SingleNamespaceResourceRepository)this).getNamespace())) {
-          for (ResourceRepository child : myChildren) {
-            if (child.hasResources(namespace, type)) {
-              return true;
-            }
+    if (this instanceof SingleNamespaceResourceRepository) {
+      if (namespace.equals(((SingleNamespaceResourceRepository)this).getNamespace())) {
+        for (ResourceRepository child : children) {
+          if (child.hasResources(namespace, type)) {
+            return true;
           }
         }
-        return false;
       }
+      return false;
+    }
 
-      Collection<SingleNamespaceResourceRepository> repositories = myRepositoriesByNamespace.get(namespace);
-      for (ResourceRepository repository : repositories) {
-        if (repository.hasResources(namespace, type)) {
-          return true;
-        }
+    Collection<SingleNamespaceResourceRepository> repositories = myRepositoriesByNamespace.get(namespace);
+    for (ResourceRepository repository : repositories) {
+      if (repository.hasResources(namespace, type)) {
+        return true;
       }
-      return false;
     }
+    return false;
   }
 
   @Override
   public void dispose() {
-    synchronized (ITEM_MAP_LOCK) {
-      for (LocalResourceRepository child : myLocalResources) {
-        child.removeParent(this);
-      }
+    for (LocalResourceRepository child : myLocalResources) {
+      child.removeParent(this);
     }
   }
 
   /**
    * Notifies this repository that all its caches are no longer valid.
    */
-  @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache() {
-    myCachedMaps.clear();
-    myResourceNames.clear();
-    myUnreconciledResources.clear();
+    myItemMapLock.writeLock().lock();
+    try {
+      myCachedMaps.clear();
+      myResourceNames.clear();
+      myUnreconciledResources.clear();
+    }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    invalidateSnapshots();
     setModificationCount(ourModificationCounter.incrementAndGet());
 
     invalidateParentCaches();
@@ -424,7 +466,6 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
    * Notifies this delegating repository that the given dependent repository has invalidated
    * resources of the given types.
    */
-  @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache(@NotNull SingleNamespaceResourceRepository repository, @NotNull ResourceType... types) {
     ResourceNamespace namespace = repository.getNamespace();
 
@@ -435,36 +476,41 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     if (leafs != null && leafs.contains(repository)) {
       // Update myUnreconciledResources only if myCachedMaps is used for this namespace.
       if (leafs.size() != 1) {
-        for (ResourceType type : types) {
-          if (myCachedMaps.get(namespace, type) != null) {
-            Set<SingleNamespaceResourceRepository> repositories = myUnreconciledResources.get(namespace, type);
-            if (repositories == null) {
-              repositories = new HashSet<>();
-              myUnreconciledResources.put(namespace, type, repositories);
+        myItemMapLock.writeLock().lock();
+        try {
+          for (ResourceType type : types) {
+            if (myCachedMaps.get(namespace, type) != null) {
+              Set<SingleNamespaceResourceRepository> repositories = myUnreconciledResources.get(namespace, type);
+              if (repositories == null) {
+                repositories = new HashSet<>();
+                myUnreconciledResources.put(namespace, type, repositories);
+              }
+              repositories.add(repository);
             }
-            repositories.add(repository);
           }
         }
+        finally {
+          myItemMapLock.writeLock().unlock();
+        }
 
-        setModificationCount(ourModificationCounter.incrementAndGet());
+        setModificationCount(ourModificationCounter.incrementAndGet(), types);
       }
 
+      invalidateSnapshots(namespace, types);
       invalidateParentCaches(repository, types);
     }
   }
 
   @Override
   boolean isScanPending(@NotNull PsiFile psiFile) {
-    synchronized (ITEM_MAP_LOCK) {
-      assert ApplicationManager.getApplication().isUnitTestMode();
-      for (LocalResourceRepository child : myLocalResources) {
-        if (child.isScanPending(psiFile)) {
-          return true;
-        }
+    assert ApplicationManager.getApplication().isUnitTestMode();
+    for (LocalResourceRepository child : myLocalResources) {
+      if (child.isScanPending(psiFile)) {
+        return true;
       }
-
-      return false;
     }
+
+    return false;
   }
 
   @Override
@@ -479,21 +525,17 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   protected Set<VirtualFile> computeResourceDirs() {
-    synchronized (ITEM_MAP_LOCK) {
-      Set<VirtualFile> result = new HashSet<>();
-      for (LocalResourceRepository resourceRepository : myLocalResources) {
-        result.addAll(resourceRepository.computeResourceDirs());
-      }
-      return result;
+    Set<VirtualFile> result = new HashSet<>();
+    for (LocalResourceRepository resourceRepository : myLocalResources) {
+      result.addAll(resourceRepository.computeResourceDirs());
     }
+    return result;
   }
 
   @Override
   @NotNull
   public Collection<SingleNamespaceResourceRepository> getLeafResourceRepositories() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLeafsByNamespace.values();
-    }
+    return myLeafsByNamespace.values();
   }
 
   private static class ResourcePriorityComparator implements Comparator<ResourceItem> {
@@ -31,6 +31,7 @@ import com.android.tools.idea.resources.base.*;
 import com.android.tools.idea.util.FileExtensions;
 import com.android.utils.SdkUtils;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
@@ -73,6 +74,7 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static com.android.SdkConstants.*;
@@ -144,8 +146,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   private int myNumXmlFilesLoadedInitially; // Doesn't count files that were explicitly skipped.
   private int myNumXmlFilesLoadedInitiallyFromSources;
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @NotNull private final Map<ResourceType, ListMultimap<String, ResourceItem>> myResourceTable = new EnumMap<>(ResourceType.class);
 
   @NotNull private final Map<VirtualFile, ResourceItemSource<? extends ResourceItem>> mySources = new HashMap<>();
@@ -259,17 +260,22 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   }
 
   /**
-   * Inserts the given resources into this repository, while holding the global repository lock.
+   * Inserts the given resources into this repository, while holding the repository write lock.
    */
   private void commitToRepository(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> itemsByType) {
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       commitToRepositoryWithoutLock(itemsByType);
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    invalidateSnapshots(myNamespace, itemsByType.keySet().toArray(new ResourceType[0]));
   }
 
   /**
    * Inserts the given resources into this repository without acquiring any locks. Safe to call only while
-   * holding {@link #ITEM_MAP_LOCK} or during construction of ResourceFolderRepository.
+   * holding the write lock of {@link #myItemMapLock} or during construction of ResourceFolderRepository.
    */
   @SuppressWarnings("GuardedBy")
   private void commitToRepositoryWithoutLock(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> itemsByType) {
@@ -347,18 +353,21 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
     if (visitor.shouldVisitNamespace(myNamespace)) {
-      synchronized (ITEM_MAP_LOCK) {
+      myItemMapLock.readLock().lock();
+      try {
         if (acceptByResources(myResourceTable, visitor) == ResourceVisitor.VisitResult.ABORT) {
           return ResourceVisitor.VisitResult.ABORT;
         }
       }
+      finally {
+        myItemMapLock.readLock().unlock();
+      }
     }
 
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @Override
   @Nullable
   protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
@@ -368,8 +377,21 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     return myResourceTable.get(type);
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @Override
+  @NotNull
+  protected ListMultimap<String, ResourceItem> createSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    // getMap doesn't compute anything in this repository, so snapshots can be created concurrently.
+    myItemMapLock.readLock().lock();
+    try {
+      ListMultimap<String, ResourceItem> map = getMap(namespace, type);
+      return map == null ? ImmutableListMultimap.of() : ImmutableListMultimap.copyOf(map);
+    }
+    finally {
+      myItemMapLock.readLock().unlock();
+    }
+  }
+
+  @GuardedBy("myItemMapLock")
   @NotNull
   private ListMultimap<String, ResourceItem> getOrCreateMap(@NotNull ResourceType type) {
     ListMultimap<String, ResourceItem> multimap = myResourceTable.get(type);
@@ -679,8 +701,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       // First delete out the previous items.
       ResourceItemSource<? extends ResourceItem> source = this.mySources.remove(file.getVirtualFile());
       boolean removed = false;
+      Set<ResourceType> changedTypes = EnumSet.noneOf(ResourceType.class);
       if (source != null) {
         removed = removeItemsFromSource(source);
+        for (ResourceItem item : source) {
+          changedTypes.add(item.getType());
+        }
       }
 
       file = ensureValid(file);
@@ -698,11 +724,14 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
       }
 
+      commitToRepository(result);
       if (added || removed) {
         // TODO: Consider doing a deeper diff of the changes to the resource items
         //       to determine if the removed and added items actually differ.
-        setModificationCount(ourModificationCounter.incrementAndGet());
-        invalidateParentCaches(this, ResourceType.values());
+        changedTypes.addAll(result.keySet());
+        ResourceType[] types = changedTypes.toArray(new ResourceType[0]);
+        setModificationCount(ourModificationCounter.incrementAndGet(), types);
+        invalidateParentCaches(this, types);
       }
     } else if (checkResourceFilename(file, folderType)) {
       ResourceItemSource<? extends ResourceItem> source = mySources.get(file.getVirtualFile());
@@ -720,7 +749,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           // file itself (e.g. @layout/foo from layout-land/foo.xml). However, we may have
           // to update the id's:
           Set<String> idsBefore = new HashSet<>();
-          synchronized (ITEM_MAP_LOCK) {
+          myItemMapLock.writeLock().lock();
+          try {
             ListMultimap<String, ResourceItem> idMultimap = myResourceTable.get(ResourceType.ID);
             if (idMultimap != null) {
               List<PsiResourceItem> idItems = new ArrayList<>();
@@ -752,6 +782,10 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
               }
             }
           }
+          finally {
+            myItemMapLock.writeLock().unlock();
+          }
+          invalidateSnapshots(myNamespace, ResourceType.ID);
 
           // Add items for this file.
           List<PsiResourceItem> idItems = new ArrayList<>();
@@ -765,8 +799,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             }
           }
 
+          commitToRepository(result);
           // Identities may have changed even if the ids are the same, so update maps.
-          setModificationCount(ourModificationCounter.incrementAndGet());
+          setModificationCount(ourModificationCounter.incrementAndGet(), ResourceType.ID);
           invalidateParentCaches(this, ResourceType.ID);
         }
       } else {
@@ -797,13 +832,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
               scanFileResourceFileAsPsi(result, folderType, folderConfiguration, type, idGeneratingFile, file);
             }
           }
+          commitToRepository(result);
           setModificationCount(ourModificationCounter.incrementAndGet());
           invalidateParentCaches(this, ResourceType.values());
         }
       }
     }
-
-    commitToRepository(result);
   }
 
   private void scan(@NotNull VirtualFile file) {
@@ -843,7 +877,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                                     @NotNull ResourceType resourceType) {
     boolean changed = false;
 
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       for (Iterator<PsiResourceItem> sourceIter = source.iterator(); sourceIter.hasNext();) {
         PsiResourceItem item = sourceIter.next();
         if (item.wasTag(xmlTag)) {
@@ -860,9 +895,14 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           sourceIter.remove();
         }
       }
-
-      return changed;
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    if (changed) {
+      invalidateSnapshots(myNamespace, resourceType);
+    }
+    return changed;
   }
 
   /**
@@ -873,7 +913,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   private boolean removeItemsFromSource(@NotNull ResourceItemSource<? extends ResourceItem> source) {
     boolean changed = false;
 
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       for (ResourceItem item : source) {
         ListMultimap<String, ResourceItem> map = myResourceTable.get(item.getType());
         List<ResourceItem> items = map.get(item.getName());
@@ -890,6 +931,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
       }
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    if (changed) {
+      invalidateSnapshots();
+    }
     return changed;
   }
 
@@ -996,13 +1043,18 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     }
                     if (type != null) {
                       PsiResourceItem item = PsiResourceItem.forXmlTag(name, type, ResourceFolderRepository.this, tag, true);
-                      synchronized (ITEM_MAP_LOCK) {
+                      myItemMapLock.writeLock().lock();
+                      try {
                         getOrCreateMap(type).put(name, item);
                         psiResourceFile.addItem(item);
-                        setModificationCount(ourModificationCounter.incrementAndGet());
-                        invalidateParentCaches(ResourceFolderRepository.this, type);
-                        return;
                       }
+                      finally {
+                        myItemMapLock.writeLock().unlock();
+                      }
+                      invalidateSnapshots(myNamespace, type);
+                      setModificationCount(ourModificationCounter.incrementAndGet(), type);
+                      invalidateParentCaches(ResourceFolderRepository.this, type);
+                      return;
                     }
                   }
                 }
@@ -1018,7 +1070,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 ResourceItem parentItem = findValueResourceItem(parentTag, psiFile);
                 if (parentItem instanceof PsiResourceItem) {
                   if (((PsiResourceItem)parentItem).recomputeValue()) {
-                    setModificationCount(ourModificationCounter.incrementAndGet());
+                    setModificationCount(ourModificationCounter.incrementAndGet(), parentItem.getType());
                   }
                   return;
                 }
@@ -1065,7 +1117,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     for (PsiResourceItem id : ids) {
                       psiResourceFile.addItem(id);
                     }
-                    setModificationCount(ourModificationCounter.incrementAndGet());
+                    setModificationCount(ourModificationCounter.incrementAndGet(), ResourceType.ID);
                     invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
                   }
                 }
@@ -1080,18 +1132,27 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     return;
                   }
 
-                  synchronized (ITEM_MAP_LOCK) {
+                  boolean added = false;
+                  myItemMapLock.writeLock().lock();
+                  try {
                     ResourceItemSource<? extends ResourceItem> resFile = mySources.get(psiFile.getVirtualFile());
                     if (resFile != null) {
                       assert resFile instanceof PsiResourceFile;
                       PsiResourceFile psiResourceFile = (PsiResourceFile)resFile;
                       psiResourceFile.addItem(newIdResource);
                       getOrCreateMap(ResourceType.ID).put(newIdResource.getName(), newIdResource);
-                      setModificationCount(ourModificationCounter.incrementAndGet());
-                      invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
-                      return;
+                      added = true;
                     }
                   }
+                  finally {
+                    myItemMapLock.writeLock().unlock();
+                  }
+                  if (added) {
+                    invalidateSnapshots(myNamespace, ResourceType.ID);
+                    setModificationCount(ourModificationCounter.incrementAndGet(), ResourceType.ID);
+                    invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
+                    return;
+                  }
                 }
               }
             }
@@ -1132,7 +1193,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                   if (resourceItem instanceof PsiResourceItem) {
                     if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                      setModificationCount(ourModificationCounter.incrementAndGet());
+                      setModificationCount(ourModificationCounter.incrementAndGet(), resourceItem.getType());
                     }
 
                     if (resourceItem.getType() == ResourceType.ATTR) {
@@ -1141,7 +1202,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         ResourceItem declareStyleable = findValueResourceItem(parentTag, psiFile);
                         if (declareStyleable instanceof PsiResourceItem) {
                           if (((PsiResourceItem)declareStyleable).recomputeValue()) {
-                            setModificationCount(ourModificationCounter.incrementAndGet());
+                            setModificationCount(ourModificationCounter.incrementAndGet(), declareStyleable.getType());
                           }
                         }
                       }
@@ -1174,12 +1235,10 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   if (name != null) {
                     ResourceType type = getResourceTypeForResourceTag(tag);
                     if (type != null) {
-                      synchronized (ITEM_MAP_LOCK) {
-                        boolean removed = removeItemsForTag(resourceFile, tag, type);
-                        if (removed) {
-                          setModificationCount(ourModificationCounter.incrementAndGet());
-                          invalidateParentCaches(ResourceFolderRepository.this, type);
-                        }
+                      boolean removed = removeItemsForTag(resourceFile, tag, type);
+                      if (removed) {
+                        setModificationCount(ourModificationCounter.incrementAndGet(), type);
+                        invalidateParentCaches(ResourceFolderRepository.this, type);
                       }
                     }
                   }
@@ -1350,7 +1409,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                   if (resourceItem instanceof PsiResourceItem) {
                     if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                      setModificationCount(ourModificationCounter.incrementAndGet());
+                      setModificationCount(ourModificationCounter.incrementAndGet(), resourceItem.getType());
                     }
                     return;
                   }
@@ -1401,7 +1460,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     }
                     ResourceItem item = findResourceItem(type, psiFile, oldName, xmlTag);
                     if (item != null) {
-                      synchronized (ITEM_MAP_LOCK) {
+                      boolean replaced = false;
+                      myItemMapLock.writeLock().lock();
+                      try {
                         ListMultimap<String, ResourceItem> map = myResourceTable.get(item.getType());
                         if (map != null) {
                           // Found the relevant item: delete it and create a new one in a new location.
@@ -1420,10 +1481,17 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                               assert false : item;
                             }
                           }
-                          setModificationCount(ourModificationCounter.incrementAndGet());
-                          invalidateParentCaches(ResourceFolderRepository.this, type);
+                          replaced = true;
                         }
                       }
+                      finally {
+                        myItemMapLock.writeLock().unlock();
+                      }
+                      if (replaced) {
+                        invalidateSnapshots(myNamespace, type);
+                        setModificationCount(ourModificationCounter.incrementAndGet(), type);
+                        invalidateParentCaches(ResourceFolderRepository.this, type);
+                      }
 
                       // Invalidate surrounding declare styleable if any
                       if (type == ResourceType.ATTR) {
@@ -1449,7 +1517,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                       ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                       if (resourceItem instanceof PsiResourceItem) {
                         if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                          setModificationCount(ourModificationCounter.incrementAndGet());
+                          setModificationCount(ourModificationCounter.incrementAndGet(), resourceItem.getType());
                         }
                         return;
                       }
@@ -1517,17 +1585,22 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       }
       PsiResourceFile psiResourceFile = (PsiResourceFile)resFile;
 
-      synchronized (ITEM_MAP_LOCK) {
+      // Hold the write lock across the removal and the addition, so that readers don't see the ids of the tag missing.
+      myItemMapLock.writeLock().lock();
+      try {
         removeItemsForTag(psiResourceFile, xmlTag, ResourceType.ID);
         Map<ResourceType, ListMultimap<String, ResourceItem>> result = new HashMap<>();
         ArrayList<PsiResourceItem> ids = new ArrayList<>();
         addIds(result, ids, xmlTag, true);
         commitToRepository(result);
         ids.forEach(psiResourceFile::addItem);
-        setModificationCount(ourModificationCounter.incrementAndGet());
-        invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
-        return true;
       }
+      finally {
+        myItemMapLock.writeLock().unlock();
+      }
+      setModificationCount(ourModificationCounter.incrementAndGet(), ResourceType.ID);
+      invalidateParentCaches(ResourceFolderRepository.this, ResourceType.ID);
+      return true;
     }
 
     private void handleValueXmlTextEdit(@Nullable PsiElement parent, @NotNull PsiFile psiFile) {
@@ -1556,7 +1629,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           if (item instanceof PsiResourceItem) {
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
-              setModificationCount(ourModificationCounter.incrementAndGet());
+              setModificationCount(ourModificationCounter.incrementAndGet(), item.getType());
             }
           }
           return;
@@ -1576,7 +1649,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             // Edited XML value.
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
-              setModificationCount(ourModificationCounter.incrementAndGet());
+              setModificationCount(ourModificationCounter.incrementAndGet(), item.getType());
             }
           }
           break;
@@ -1722,9 +1795,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       return null;
     }
     String name = tag.getAttributeValue(ATTR_NAME);
-    synchronized (ITEM_MAP_LOCK) {
-      return name != null ? findValueResourceItem(tag, file, name) : null;
-    }
+    return name != null ? findValueResourceItem(tag, file, name) : null;
   }
 
   @Nullable
@@ -1742,7 +1813,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     // Do IO work before obtaining the lock:
     File ioFile = VfsUtilCore.virtualToIoFile(file.getVirtualFile());
 
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.readLock().lock();
+    try {
       ListMultimap<String, ResourceItem> map = myResourceTable.get(type);
       if (map == null) {
         return null;
@@ -1777,6 +1849,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
       }
     }
+    finally {
+      myItemMapLock.readLock().unlock();
+    }
 
     return null;
   }
@@ -1885,20 +1960,6 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     }
   }
 
-  @Override
-  protected void invalidateParentCaches() {
-    synchronized (ITEM_MAP_LOCK) {
-      super.invalidateParentCaches();
-    }
-  }
-
-  @Override
-  protected void invalidateParentCaches(@NotNull SingleNamespaceResourceRepository repository, @NotNull ResourceType... types) {
-    synchronized (ITEM_MAP_LOCK) {
-      super.invalidateParentCaches(repository, types);
-    }
-  }
-
   /**
    * Tracks state used by the initial scan, which may be used to save the state to a cache.
    * The file cache omits non-XML single-file items, since those are easily derived from the file path.
@@ -1911,9 +1972,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     @NotNull private final Map<ResourceType, ListMultimap<String, ResourceItem>> myResources = new EnumMap<>(ResourceType.class);
     @NotNull private final Map<VirtualFile, ResourceItemSource<BasicResourceItem>> mySources = new HashMap<>();
     @NotNull private final Map<VirtualFile, BasicFileResourceItem> myFileResources = new HashMap<>();
-    // The following two fields are used as a cache of size one for quick conversion from a PathString to a VirtualFile.
-    @Nullable private VirtualFile myLastVirtualFile;
-    @Nullable private PathString myLastPathString;
+    // Used for quick conversion from a PathString to a VirtualFile. Populated before parsing starts and only read
+    // afterwards, so that the files can be parsed concurrently.
+    @NotNull private final Map<PathString, VirtualFile> myVirtualFiles = new HashMap<>();
 
     @NotNull Set<VirtualFile> myFilesToReparseAsPsi = new HashSet<>();
     private final FileDocumentManager myFileDocumentManager;
@@ -1934,11 +1995,18 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         return;
       }
 
+      long startTime = System.nanoTime();
       loadFromPersistentCache();
 
       ApplicationManager.getApplication().runReadAction(this::getPsiDirsForListener);
 
       scanResFolder();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Loaded resources of module %s from %s in %d ms, %d of %d XML files were parsed",
+                                myRepository.myFacet.getModule().getName(), myResourceDir.getPath(),
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                                myRepository.myNumXmlFilesLoadedInitiallyFromSources, myRepository.myNumXmlFilesLoadedInitially));
+      }
 
       populateRepository();
 
@@ -2000,6 +2068,10 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     private void scanResFolder() {
       try {
+        // Files that are not up to date in the persistent cache are parsed concurrently. Their resources are then added in the order
+        // of the files, so that the contents of the repository don't depend on the order the files were parsed in.
+        List<ResourceFileToLoad> filesToLoad = new ArrayList<>();
+        List<XmlResourceFile> xmlFiles = new ArrayList<>();
         for (VirtualFile subDir : myResourceDir.getChildren()) {
           if (subDir.isValid() && subDir.isDirectory()) {
             String folderName = subDir.getName();
@@ -2025,23 +2097,32 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 }
 
                 PathString pathString = FileExtensions.toPathString(file);
-                myLastVirtualFile = file;
-                myLastPathString = pathString;
-                try {
-                  loadResourceFile(pathString, folderInfo, configuration);
-                  if (isParsableFile(file, folderInfo)) {
-                    countCacheMiss();
-                  }
-                }
-                catch (ParsingException e) {
-                  // Reparse the file as PSI. The PSI parser is more forgiving than KXmlParser because
-                  // it is designed to work with potentially malformed files in the middle of editing.
-                  myFilesToReparseAsPsi.add(file);
+                myVirtualFiles.put(pathString, file);
+                ResourceFileToLoad fileToLoad = new ResourceFileToLoad(file, pathString, folderInfo, configuration);
+                if (fileToLoad.xmlFile != null) {
+                  xmlFiles.add(fileToLoad.xmlFile);
                 }
+                filesToLoad.add(fileToLoad);
               }
             }
           }
         }
+
+        parseXmlFiles(xmlFiles);
+
+        for (ResourceFileToLoad fileToLoad : filesToLoad) {
+          try {
+            loadResourceFile(fileToLoad);
+            if (isParsableFile(fileToLoad.virtualFile, fileToLoad.folderInfo)) {
+              countCacheMiss();
+            }
+          }
+          catch (ParsingException e) {
+            // Reparse the file as PSI. The PSI parser is more forgiving than KXmlParser because
+            // it is designed to work with potentially malformed files in the middle of editing.
+            myFilesToReparseAsPsi.add(fileToLoad.virtualFile);
+          }
+        }
       }
       catch (Exception e) {
         LOG.error("Failed to load resources from " + myResourceDirectoryOrFile.toString(), e);
@@ -2069,19 +2150,15 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       }
     }
 
-    private void loadResourceFile(
-        @NotNull PathString file, @NotNull FolderInfo folderInfo, @NotNull RepositoryConfiguration configuration) {
-      if (folderInfo.resourceType == null) {
-        if (isXmlFile(file)) {
-          parseValueResourceFile(file, configuration);
-        }
+    private void loadResourceFile(@NotNull ResourceFileToLoad fileToLoad) {
+      if (fileToLoad.xmlFile != null) {
+        addParsedResources(fileToLoad.xmlFile);
       }
-      else if (myRepository.checkResourceFilename(file, folderInfo.folderType)) {
-        if (isXmlFile(file) && folderInfo.isIdGenerating) {
-          parseIdGeneratingResourceFile(file, configuration);
-        }
 
-        BasicFileResourceItem item = createFileResourceItem(file, folderInfo.resourceType, configuration, folderInfo.isIdGenerating);
+      FolderInfo folderInfo = fileToLoad.folderInfo;
+      if (folderInfo.resourceType != null && fileToLoad.hasValidName) {
+        BasicFileResourceItem item =
+            createFileResourceItem(fileToLoad.file, folderInfo.resourceType, fileToLoad.configuration, folderInfo.isIdGenerating);
         addResourceItem(item, (ResourceFolderRepository)item.getRepository());
       }
     }
@@ -2112,7 +2189,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     @Nullable
     private VirtualFile getVirtualFile(@NotNull PathString file) {
-      return file.equals(myLastPathString) ? myLastVirtualFile : FileExtensions.toVirtualFile(file);
+      VirtualFile virtualFile = myVirtualFiles.get(file);
+      return virtualFile != null ? virtualFile : FileExtensions.toVirtualFile(file);
     }
 
     /**
@@ -2220,6 +2298,38 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       ++myRepository.myNumXmlFilesLoadedInitially;
       ++myRepository.myNumXmlFilesLoadedInitiallyFromSources;
     }
+
+    /**
+     * A resource file found by {@link #scanResFolder()} that has to be loaded from disk.
+     */
+    private class ResourceFileToLoad {
+      @NotNull final VirtualFile virtualFile;
+      @NotNull final PathString file;
+      @NotNull final FolderInfo folderInfo;
+      @NotNull final RepositoryConfiguration configuration;
+      /** False for files in non-values folders with names that are not valid resource names. Such files are not loaded. */
+      final boolean hasValidName;
+      /** The XML file to parse, or null if the file doesn't need to be parsed. */
+      @Nullable final XmlResourceFile xmlFile;
+
+      ResourceFileToLoad(@NotNull VirtualFile virtualFile, @NotNull PathString file, @NotNull FolderInfo folderInfo,
+                         @NotNull RepositoryConfiguration configuration) {
+        this.virtualFile = virtualFile;
+        this.file = file;
+        this.folderInfo = folderInfo;
+        this.configuration = configuration;
+        hasValidName = folderInfo.resourceType == null || myRepository.checkResourceFilename(file, folderInfo.folderType);
+        if (!isXmlFile(file) || !hasValidName) {
+          xmlFile = null;
+        }
+        else if (folderInfo.resourceType == null) {
+          xmlFile = new XmlResourceFile(file, configuration, false);
+        }
+        else {
+          xmlFile = folderInfo.isIdGenerating ? new XmlResourceFile(file, configuration, true) : null;
+        }
+      }
+    }
   }
 
   private static class ParsingException extends RuntimeException {
@@ -101,8 +101,7 @@ public class SampleDataResourceRepository extends LocalResourceRepository implem
     loadItems();
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @Override
   @Nullable
   protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
@@ -128,11 +127,15 @@ public class SampleDataResourceRepository extends LocalResourceRepository implem
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
     if (visitor.shouldVisitNamespace(myNamespace)) {
-      synchronized (ITEM_MAP_LOCK) {
+      myItemMapLock.readLock().lock();
+      try {
         if (acceptByResources(myResourceTable, visitor) == ResourceVisitor.VisitResult.ABORT) {
           return ResourceVisitor.VisitResult.ABORT;
         }
       }
+      finally {
+        myItemMapLock.readLock().unlock();
+      }
     }
 
     return ResourceVisitor.VisitResult.CONTINUE;
@@ -171,7 +174,8 @@ public class SampleDataResourceRepository extends LocalResourceRepository implem
       items = items1;
     }
 
-    synchronized (ITEM_MAP_LOCK) {
+    myItemMapLock.writeLock().lock();
+    try {
       myResourceTable.clear();
       if (!items.isEmpty()) {
         ImmutableListMultimap.Builder<String, ResourceItem> mapBuilder = ImmutableListMultimap.builder();
@@ -181,9 +185,13 @@ public class SampleDataResourceRepository extends LocalResourceRepository implem
         }
         myResourceTable.put(ResourceType.SAMPLE_DATA, mapBuilder.build());
       }
-      setModificationCount(ourModificationCounter.incrementAndGet());
-      invalidateParentCaches(this, ResourceType.SAMPLE_DATA);
     }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    invalidateSnapshots();
+    setModificationCount(ourModificationCounter.incrementAndGet());
+    invalidateParentCaches(this, ResourceType.SAMPLE_DATA);
   }
 
   @NotNull
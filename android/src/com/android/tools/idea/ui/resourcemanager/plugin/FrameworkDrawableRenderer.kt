@@ -20,6 +20,7 @@ import com.android.tools.idea.configurations.Configuration
 import com.android.tools.idea.configurations.ConfigurationManager
 import com.android.tools.idea.rendering.RenderService
 import com.android.tools.idea.rendering.RenderTask
+import com.android.tools.idea.rendering.RenderingPriority
 import com.google.common.annotations.VisibleForTesting
 import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.util.Key
@@ -39,6 +40,7 @@ private fun createRenderTask(facet: AndroidFacet,
                              configuration: Configuration): CompletableFuture<RenderTask?> {
   return RenderService.getInstance(facet.module.project)
     .taskBuilder(facet, configuration)
+    .withPriority(RenderingPriority.LOW)
     .build()
 }
 
@@ -20,6 +20,7 @@ import com.android.tools.idea.layoutlib.RenderingException
 import com.android.tools.idea.rendering.RenderResult
 import com.android.tools.idea.rendering.RenderService
 import com.android.tools.idea.rendering.RenderTask
+import com.android.tools.idea.rendering.RenderingPriority
 import com.google.common.annotations.VisibleForTesting
 import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.util.Key
@@ -53,6 +54,7 @@ private fun createRenderTask(facet: AndroidFacet,
     .withMaxRenderSize(MAX_RENDER_WIDTH, MAX_RENDER_HEIGHT)
     .disableDecorations()
     .disableShadow()
+    .withPriority(RenderingPriority.LOW)
     .build()
 }
 
@@ -130,8 +130,8 @@ class ModuleClassLoaderManager {
 
         threadLocalFields.forEach { it.isAccessible = true }
 
-        // Because we are clearing-up ThreadLocals, the code must run on the Layoutlib Thread
-        RenderService.runAsyncRenderAction {
+        // Because we are clearing-up ThreadLocals, the code must run on every Layoutlib Thread
+        RenderService.runAsyncRenderActionOnAllThreads {
           threadLocalFields.forEach {
             try {
               (it[null] as ThreadLocal<*>).remove()
@@ -17,12 +17,16 @@ package com.android.tools.idea.configurations;
 
 import static com.android.tools.idea.res.ResourcesTestsUtil.checkIfScanPending;
 
+import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.ResourceResolver;
+import com.android.ide.common.resources.ResourceValueMap;
 import com.android.sdklib.devices.Device;
+import com.android.resources.ResourceType;
 import com.android.sdklib.devices.Screen;
 import com.android.tools.idea.res.LocalResourceRepository;
 import com.android.tools.idea.res.ResourceRepositoryManager;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Table;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.project.Project;
@@ -31,6 +35,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTagValue;
+import com.intellij.util.ui.UIUtil;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.android.facet.AndroidFacet;
 
@@ -95,6 +100,44 @@ public class ResourceResolverCacheTest extends AndroidTestCase {
     assertSame(cache, configuration2.getConfigurationManager().getResolverCache());
   }
 
+  public void testIncrementalUpdate() {
+    VirtualFile layoutFile = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
+    VirtualFile stringsFile = myFixture.copyFileToProject("javadoc/strings/strings.xml", "res/values/strings.xml");
+    PsiFile psiStrings = PsiManager.getInstance(getProject()).findFile(stringsFile);
+    assertNotNull(psiStrings);
+    ConfigurationManager configurationManager = ConfigurationManager.getOrCreateInstance(myModule);
+    Configuration configuration = configurationManager.getConfiguration(layoutFile);
+    ResourceResolverCache cache = configurationManager.getResolverCache();
+    ResourceNamespace namespace = ResourceRepositoryManager.getInstance(myFacet).getNamespace();
+
+    ResourceResolver resolver = configuration.getResourceResolver();
+    assertEquals("Cancel", resolver.findResValue("@string/cancel", false).getValue());
+    Table<ResourceNamespace, ResourceType, ResourceValueMap> appResources = Iterables.getOnlyElement(cache.myAppResourceMap.values());
+    ResourceValueMap layouts = appResources.get(namespace, ResourceType.LAYOUT);
+    ResourceValueMap strings = appResources.get(namespace, ResourceType.STRING);
+    assertNotNull(layouts);
+    assertNotNull(strings);
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      //noinspection ConstantConditions
+      XmlTagValue value = ((XmlFile)psiStrings).getRootTag().getSubTags()[1].getValue();
+      assertEquals("Cancel", value.getTrimmedText());
+      value.setText("\"FooBar\"");
+    });
+    ResourceRepositoryManager.getAppResources(myFacet).sync();
+    UIUtil.dispatchAllInvocationEvents();
+
+    ResourceResolver updatedResolver = configuration.getResourceResolver();
+    assertNotSame(resolver, updatedResolver);
+    assertEquals("FooBar", updatedResolver.findResValue("@string/cancel", false).getValue());
+
+    // Only the string values were configured again, the maps of the other types are reused.
+    Table<ResourceNamespace, ResourceType, ResourceValueMap> updatedAppResources =
+      Iterables.getOnlyElement(cache.myAppResourceMap.values());
+    assertSame(layouts, updatedAppResources.get(namespace, ResourceType.LAYOUT));
+    assertNotSame(strings, updatedAppResources.get(namespace, ResourceType.STRING));
+  }
+
   public void testCustomConfiguration() {
     VirtualFile file1 = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
     ConfigurationManager configurationManager = ConfigurationManager.getOrCreateInstance(myModule);
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.rendering.RenderResultFileCache.CachedRenderResult;
+import com.android.tools.idea.rendering.RenderResultFileCache.CachedView;
+import com.intellij.openapi.util.io.FileUtil;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+
+public class RenderResultFileCacheTest extends TestCase {
+  private Path myCacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheDir = Files.createTempDirectory("renderResultFileCache");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myCacheDir.toFile());
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testWriteAndReadEntry() throws IOException {
+    BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(3, 4, 0xFF00FF00);
+    CachedView child = new CachedView("android.widget.Button", 2, 3, 12, 8, new int[]{0}, Collections.emptyList());
+    CachedView root = new CachedView("android.widget.LinearLayout", 0, 0, 20, 10, new int[0], Collections.singletonList(child));
+    CachedView decoration = new CachedView("android.widget.FrameLayout", 0, 0, 20, 10, null, Collections.singletonList(root));
+
+    Path entryFile = myCacheDir.resolve("project").resolve("key.dat");
+    RenderResultFileCache.writeEntry(entryFile, new CachedRenderResult(Collections.singletonList(root),
+                                                                       Collections.singletonList(decoration),
+                                                                       image));
+    CachedRenderResult cached = RenderResultFileCache.readEntry(entryFile);
+
+    assertNotNull(cached);
+    assertEquals(20, cached.image.getWidth());
+    assertEquals(10, cached.image.getHeight());
+    assertEquals(0xFF00FF00, cached.image.getRGB(3, 4));
+
+    assertEquals(1, cached.rootViews.size());
+    CachedView cachedRoot = cached.rootViews.get(0);
+    assertEquals("android.widget.LinearLayout", cachedRoot.className);
+    assertNotNull(cachedRoot.tagPath);
+    assertEquals(0, cachedRoot.tagPath.length);
+    assertEquals(1, cachedRoot.children.size());
+    CachedView cachedChild = cachedRoot.children.get(0);
+    assertEquals("android.widget.Button", cachedChild.className);
+    assertEquals(Arrays.asList(2, 3, 12, 8), Arrays.asList(cachedChild.left, cachedChild.top, cachedChild.right, cachedChild.bottom));
+    assertTrue(Arrays.equals(new int[]{0}, cachedChild.tagPath));
+
+    assertEquals(1, cached.systemRootViews.size());
+    assertNull(cached.systemRootViews.get(0).tagPath);
+    assertEquals("android.widget.LinearLayout", cached.systemRootViews.get(0).children.get(0).className);
+  }
+
+  public void testPruneEntries() throws IOException {
+    BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+    CachedRenderResult cached = new CachedRenderResult(Collections.emptyList(), Collections.emptyList(), image);
+    for (int i = 0; i < 4; i++) {
+      Path entryFile = myCacheDir.resolve("entry" + i + ".dat");
+      RenderResultFileCache.writeEntry(entryFile, cached);
+      Files.setLastModifiedTime(entryFile, FileTime.fromMillis(1000L * (i + 1)));
+    }
+
+    RenderResultFileCache.pruneEntries(myCacheDir, 2);
+
+    assertFalse(Files.exists(myCacheDir.resolve("entry0.dat")));
+    assertFalse(Files.exists(myCacheDir.resolve("entry1.dat")));
+    assertTrue(Files.exists(myCacheDir.resolve("entry2.dat")));
+    assertTrue(Files.exists(myCacheDir.resolve("entry3.dat")));
+  }
+}
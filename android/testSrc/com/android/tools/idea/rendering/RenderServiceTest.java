@@ -20,6 +20,10 @@ import com.google.common.util.concurrent.ListenableFuture;
 import java.util.concurrent.CompletableFuture;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -84,4 +88,72 @@ public class RenderServiceTest extends TestCase {
     future.get();
     assertTrue(called.get());
   }
+
+  public void testLowPriorityRenderActionsRunLast() throws ExecutionException, InterruptedException {
+    CountDownLatch countDownLatch = new CountDownLatch(1);
+    List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    CompletableFuture<Void> blockingFuture = RenderService.runAsyncRenderAction(null, RenderingPriority.NORMAL, () -> {
+      try {
+        countDownLatch.await();
+      }
+      catch (InterruptedException ignore) {
+      }
+
+      return null;
+    });
+    CompletableFuture<Boolean> lowFuture = RenderService.runAsyncRenderAction(null, RenderingPriority.LOW, () -> calls.add("low"));
+    CompletableFuture<Boolean> normalFuture = RenderService.runAsyncRenderAction(null, RenderingPriority.NORMAL, () -> calls.add("normal"));
+
+    countDownLatch.countDown();
+    CompletableFuture.allOf(blockingFuture, lowFuture, normalFuture).get();
+    assertEquals(Arrays.asList("normal", "low"), calls);
+  }
+
+  public void testLowPriorityRenderActionsAreNotStarved() throws Exception {
+    RenderExecutor executor = new RenderExecutor();
+    try {
+      CountDownLatch countDownLatch = new CountDownLatch(1);
+      List<String> calls = Collections.synchronizedList(new ArrayList<>());
+      List<CompletableFuture<?>> futures = new ArrayList<>();
+      futures.add(executor.runAsyncAction(null, RenderingPriority.NORMAL, () -> {
+        try {
+          countDownLatch.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+
+        return null;
+      }));
+      futures.add(executor.runAsyncAction(null, RenderingPriority.LOW, () -> calls.add("low")));
+      for (int i = 0; i < 100; i++) {
+        String call = "normal" + i;
+        futures.add(executor.runAsyncAction(null, RenderingPriority.NORMAL, () -> calls.add(call)));
+      }
+
+      countDownLatch.countDown();
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+      int lowIndex = calls.indexOf("low");
+      assertTrue(lowIndex > 0);
+      assertTrue(lowIndex < 50);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testRenderActionsWithTheSameKeyRunOnTheSameThread() throws Exception {
+    RenderExecutor executor = new RenderExecutor(2);
+    try {
+      Object key1 = new Object();
+      Object key2 = new Object();
+      Thread thread1 = executor.runAction(key1, Thread::currentThread);
+      Thread thread2 = executor.runAction(key2, Thread::currentThread);
+      assertNotSame(thread1, thread2);
+      assertSame(thread1, executor.runAsyncAction(key1, RenderingPriority.LOW, Thread::currentThread).get());
+      assertSame(thread2, executor.runAsyncAction(key2, RenderingPriority.NORMAL, Thread::currentThread).get());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
 }
\ No newline at end of file
@@ -16,7 +16,11 @@
 package com.android.tools.idea.res;
 
 import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.ide.common.resources.ResourceItem;
+import com.android.ide.common.resources.ResourceMergerItem;
 import com.android.resources.ResourceType;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
@@ -24,6 +28,7 @@ import com.intellij.psi.PsiManager;
 import org.jetbrains.android.AndroidTestCase;
 
 import java.util.Collection;
+import java.util.EnumSet;
 
 import static com.android.ide.common.rendering.api.ResourceNamespace.RES_AUTO;
 
@@ -99,4 +104,44 @@ public class LocalResourceRepositoryTest extends AndroidTestCase {
     assertEquals(generation + 1, resources.getModificationCount());
     */
   }
+
+  public void testSnapshotsFollowChanges() {
+    TestLocalResourceRepository resources = new TestLocalResourceRepository(RES_AUTO);
+    assertTrue(resources.getResources(RES_AUTO, ResourceType.ID).isEmpty());
+
+    ListMultimap<String, ResourceItem> ids = ArrayListMultimap.create();
+    ids.put("foo", new ResourceMergerItem("foo", null, ResourceType.ID, null, null, null));
+    resources.addResources(RES_AUTO, ResourceType.ID, ids);
+    ListMultimap<String, ResourceItem> snapshot = resources.getResources(RES_AUTO, ResourceType.ID);
+    assertEquals(1, snapshot.size());
+    assertTrue(resources.hasResources(RES_AUTO, ResourceType.ID, "foo"));
+
+    ids = ArrayListMultimap.create(ids);
+    ids.put("bar", new ResourceMergerItem("bar", null, ResourceType.ID, null, null, null));
+    resources.addResources(RES_AUTO, ResourceType.ID, ids);
+    // Snapshots handed out earlier don't change.
+    assertEquals(1, snapshot.size());
+    assertEquals(2, resources.getResources(RES_AUTO, ResourceType.ID).size());
+    assertTrue(resources.getResourceNames(RES_AUTO, ResourceType.ID).contains("bar"));
+  }
+
+  public void testChangedResourceTypes() {
+    TestLocalResourceRepository resources = new TestLocalResourceRepository(RES_AUTO);
+    long generation = resources.getModificationCount();
+    // Anything may have changed before the repository was created.
+    assertNull(resources.getChangedResourceTypes(generation - 1));
+    assertEquals(EnumSet.noneOf(ResourceType.class), resources.getChangedResourceTypes(generation));
+
+    resources.addResources(RES_AUTO, ResourceType.STRING, ArrayListMultimap.create());
+    resources.addResources(RES_AUTO, ResourceType.COLOR, ArrayListMultimap.create());
+    assertTrue(generation < resources.getModificationCount());
+    assertEquals(EnumSet.of(ResourceType.STRING, ResourceType.COLOR), resources.getChangedResourceTypes(generation));
+    assertEquals(EnumSet.noneOf(ResourceType.class), resources.getChangedResourceTypes(resources.getModificationCount()));
+
+    // Changes that are no longer remembered make the answer unknown.
+    for (int i = 0; i < 100; i++) {
+      resources.addResources(RES_AUTO, ResourceType.DIMEN, ArrayListMultimap.create());
+    }
+    assertNull(resources.getChangedResourceTypes(generation));
+  }
 }
@@ -39,8 +39,7 @@ public class TestLocalResourceRepository extends LocalResourceRepository impleme
     myNamespace = namespace;
   }
 
-  @SuppressWarnings("InstanceGuardedByStatic")
-  @GuardedBy("ITEM_MAP_LOCK")
+  @GuardedBy("myItemMapLock")
   @Override
   @Nullable
   protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
@@ -81,6 +80,14 @@ public class TestLocalResourceRepository extends LocalResourceRepository impleme
 
   public void addResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType,
                            @NotNull ListMultimap<String, ResourceItem> resources) {
-    myResourceTable.put(namespace, resourceType, resources);
+    myItemMapLock.writeLock().lock();
+    try {
+      myResourceTable.put(namespace, resourceType, resources);
+    }
+    finally {
+      myItemMapLock.writeLock().unlock();
+    }
+    invalidateSnapshots(namespace, resourceType);
+    setModificationCount(ourModificationCounter.incrementAndGet(), resourceType);
   }
 }
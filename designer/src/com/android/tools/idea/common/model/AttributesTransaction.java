@@ -19,11 +19,13 @@ import android.view.View;
 import com.android.ide.common.rendering.api.ViewInfo;
 import com.android.tools.idea.rendering.parsers.AttributeSnapshot;
 import com.android.tools.idea.rendering.RenderService;
+import com.android.tools.idea.rendering.RenderingPriority;
 import com.android.tools.idea.uibuilder.handlers.constraint.ComponentModification;
 import com.android.tools.idea.uibuilder.model.LayoutParamsManager;
 import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.google.common.collect.Maps;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -103,14 +105,14 @@ public class AttributesTransaction implements NlAttributesHolder {
   }
 
   /**
-   * Triggers a re-layout of the given {@link View}. This might happen asynchronously.
+   * Triggers a re-layout of the given {@link View} on the render thread of the given module. This might happen asynchronously.
    */
-  private static void triggerViewRelayout(@NotNull View view) {
+  private static void triggerViewRelayout(@NotNull Module module, @NotNull View view) {
     try {
       // We run the re-layout as a render action to avoid a render happening at the same time as the re-layout since that
       // might cause problems.
       // TODO: Investigate a more lightweight solution for this.
-      RenderService.runAsyncRenderAction(() -> {
+      RenderService.runAsyncRenderAction(module, RenderingPriority.NORMAL, () -> {
         view.setLayoutParams(view.getLayoutParams());
         view.forceLayout();
       });
@@ -206,7 +208,7 @@ public class AttributesTransaction implements NlAttributesHolder {
       applyAllPendingAttributesToView(viewInfo);
       if (hasPendingRelayout) {
         hasLayoutAttributeChanged = true;
-        triggerViewRelayout((View)viewInfo.getViewObject());
+        triggerViewRelayout(myModel.getModule(), (View)viewInfo.getViewObject());
       }
     }
   }
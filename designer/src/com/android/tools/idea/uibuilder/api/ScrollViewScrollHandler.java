@@ -18,8 +18,11 @@ package com.android.tools.idea.uibuilder.api;
 import android.view.View;
 import android.view.ViewGroup;
 import com.android.tools.idea.rendering.RenderService;
+import com.android.tools.idea.rendering.RenderingPriority;
+import com.intellij.openapi.module.Module;
 import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.IntConsumer;
 import java.util.function.IntSupplier;
@@ -48,13 +51,15 @@ public final class ScrollViewScrollHandler implements ScrollHandler {
 
   /**
    * Creates a new {@link ScrollViewScrollHandler}
+   * @param module The module whose render thread owns the views
    * @param viewGroup The scrollable {@link android.view.ViewGroup}
    * @param maxScrollableSize The maximum number of pixels the viewGroup can be scrolled
    * @param scrollUnitSize The number of pixels to scroll in every scroll step
    * @param orientation The scroll orientation
    */
   @NotNull
-  public static ScrollViewScrollHandler createHandler(@NotNull ViewGroup viewGroup,
+  public static ScrollViewScrollHandler createHandler(@Nullable Module module,
+                                                      @NotNull ViewGroup viewGroup,
                                                       int maxScrollableSize,
                                                       int scrollUnitSize,
                                                       @NotNull Orientation orientation) {
@@ -63,17 +68,17 @@ public final class ScrollViewScrollHandler implements ScrollHandler {
       scrollUnitSize,
       orientation == Orientation.VERTICAL ? viewGroup::setScrollY : viewGroup::setScrollX,
       orientation == Orientation.VERTICAL ? viewGroup::getScrollY : viewGroup::getScrollX,
-      () -> handleScrolling(viewGroup)
+      () -> handleScrolling(module, viewGroup)
     );
   }
 
   /**
    * Set the scroll position on all the components with the "scrollX" and "scrollY" attribute. If
    * the component supports nested scrolling attempt that first, then use the unconsumed scroll
-   * part to scroll the content in the component.
+   * part to scroll the content in the component. This runs on the render thread of the given module, which owns the views.
    */
-  private static void handleScrolling(@NotNull View view) {
-    RenderService.runAsyncRenderAction(() -> {
+  private static void handleScrolling(@Nullable Module module, @NotNull View view) {
+    RenderService.runAsyncRenderAction(module, RenderingPriority.NORMAL, () -> {
       int scrollPosX = view.getScrollX();
       int scrollPosY = view.getScrollY();
       if (scrollPosX != 0 || scrollPosY != 0) {
@@ -103,7 +108,7 @@ public final class ScrollViewScrollHandler implements ScrollHandler {
       ViewGroup group = (ViewGroup)view;
       for (int i = 0; i < group.getChildCount(); i++) {
         View child = group.getChildAt(i);
-        handleScrolling(child);
+        handleScrolling(module, child);
       }
     });
   }
@@ -86,7 +86,7 @@ public class NestedScrollViewHandler extends ScrollViewHandler {
     if (maxScrollableHeight > 0) {
       // There is something to scroll
       return ScrollViewScrollHandler
-        .createHandler(viewGroup, maxScrollableHeight, 10,
+        .createHandler(component.getModel().getModule(), viewGroup, maxScrollableHeight, 10,
                        ScrollViewScrollHandler.Orientation.VERTICAL);
     }
 
@@ -30,6 +30,7 @@ import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.android.tools.idea.uibuilder.scene.LayoutlibSceneManager;
 import com.android.tools.idea.common.scene.SceneComponent;
 import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.module.Module;
 import icons.StudioIcons;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -91,12 +92,12 @@ public class ScrollViewHandler extends ViewGroupHandler {
   }
 
   @Nullable
-  public static ScrollHandler createScrollHandler(@NotNull ViewGroup viewGroup) {
+  public static ScrollHandler createScrollHandler(@Nullable Module module, @NotNull ViewGroup viewGroup) {
     int maxScrollableHeight = ScrollViewScrollHandler.getMaxScrollable(viewGroup, ViewGroup::getHeight, View::getMeasuredHeight);
 
     if (maxScrollableHeight > 0) {
       // There is something to scroll
-      return ScrollViewScrollHandler.createHandler(viewGroup, maxScrollableHeight, 10, ScrollViewScrollHandler.Orientation.VERTICAL);
+      return ScrollViewScrollHandler.createHandler(module, viewGroup, maxScrollableHeight, 10, ScrollViewScrollHandler.Orientation.VERTICAL);
     }
 
     return null;
@@ -109,7 +110,7 @@ public class ScrollViewHandler extends ViewGroupHandler {
     if (viewGroup == null) {
       return null;
     }
-    return createScrollHandler(viewGroup);
+    return createScrollHandler(component.getModel().getModule(), viewGroup);
   }
 
   /**
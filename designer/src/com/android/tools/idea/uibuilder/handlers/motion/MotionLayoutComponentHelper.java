@@ -29,6 +29,7 @@ import com.android.tools.idea.res.ResourceIdManager;
 import com.android.tools.idea.uibuilder.handlers.constraint.ComponentModification;
 import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.android.utils.Pair;
+import com.intellij.openapi.module.Module;
 import com.intellij.util.ArrayUtil;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -74,6 +75,8 @@ public class MotionLayoutComponentHelper {
 
   private final Object myDesignTool;
   private final NlComponent myMotionLayoutComponent;
+  // The views of the MotionLayout belong to the render sessions of this module, so they are only touched from its render thread
+  private final Module myModule;
   private final boolean DEBUG = false;
   private static boolean mShowPaths = true;
 
@@ -97,6 +100,7 @@ public class MotionLayoutComponentHelper {
   }
 
   private MotionLayoutComponentHelper(@NotNull NlComponent component) {
+    myModule = component.getModel().getModule();
     component = MotionUtils.getMotionLayoutAncestor(component);
     ViewInfo info = component != null ? NlComponentHelperKt.getViewInfo(component) : null;
     if (info == null) {
@@ -115,7 +119,7 @@ public class MotionLayoutComponentHelper {
       Method accessor = instance.getClass().getMethod("getDesignTool");
       if (accessor != null) {
         try {
-          designInstance = RenderService.runRenderAction(() -> accessor.invoke(instance));
+          designInstance = RenderService.runRenderAction(myModule, () -> accessor.invoke(instance));
         }
         catch (Exception e) {
           if (DEBUG) {
@@ -155,7 +159,7 @@ public class MotionLayoutComponentHelper {
     if (myGetAnimationPathMethod != null) {
       try {
 
-        return (Integer)RenderService.runRenderAction(() -> {
+        return (Integer)RenderService.runRenderAction(myModule, () -> {
           try {
             ViewInfo info = NlComponentHelperKt.getViewInfo(nlComponent);
             if (info == null) {
@@ -205,7 +209,7 @@ public class MotionLayoutComponentHelper {
 
     if (myGetKeyframeAtLocationMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return myGetKeyframeAtLocationMethod.invoke(myDesignTool, view, x, y);
           }
@@ -261,7 +265,7 @@ public class MotionLayoutComponentHelper {
     public T invoke(Object... parameters) {
       if (myMethod != null) {
         try {
-          return RenderService.runRenderAction(() -> {
+          return RenderService.runRenderAction(myModule, () -> {
             try {
               T result = (T) myMethod.invoke(myDesignTool, parameters);
               return result;
@@ -302,7 +306,7 @@ public class MotionLayoutComponentHelper {
 
     if (myGetPositionKeyframeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return myGetPositionKeyframeMethod.invoke(myDesignTool, keyframe, view, x, y, attributes, values);
           }
@@ -343,7 +347,7 @@ public class MotionLayoutComponentHelper {
 
     if (myGetKeyframeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return myGetKeyframeMethod.invoke(myDesignTool, type, target, position);
           }
@@ -384,7 +388,7 @@ public class MotionLayoutComponentHelper {
 
     if (mySetKeyframeMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             mySetKeyframeMethod.invoke(myDesignTool, keyframe, tag, value);
           }
@@ -421,7 +425,7 @@ public class MotionLayoutComponentHelper {
     }
     if (mySetAttributesMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             mySetAttributesMethod.invoke(myDesignTool, dpiValue, constraintSetId, view, attributes);
           }
@@ -459,7 +463,7 @@ public class MotionLayoutComponentHelper {
     final boolean[] didUpdate = {false};
     if (mySetKeyframePositionMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             didUpdate[0] = (boolean)mySetKeyframePositionMethod.invoke(myDesignTool, view, Integer.valueOf(position),
                                                                        Integer.valueOf(type), Float.valueOf(x), Float.valueOf(y));
@@ -501,7 +505,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallSetTransitionPosition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallSetTransitionPosition.invoke(myDesignTool, Float.valueOf(position));
           }
@@ -558,7 +562,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallSetTransition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallSetTransition.invoke(myDesignTool, start, end);
           }
@@ -601,7 +605,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallSetState != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallSetState.invoke(myDesignTool, state);
           }
@@ -645,7 +649,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallDisableAutoTransition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallDisableAutoTransition.invoke(myDesignTool, disable);
           }
@@ -684,7 +688,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallGetState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myModule, () -> {
           try {
             return (String)myCallGetState.invoke(myDesignTool);
           }
@@ -725,7 +729,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallGetStartState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myModule, () -> {
           try {
             return (String)myCallGetStartState.invoke(myDesignTool);
           }
@@ -766,7 +770,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallGetEndState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myModule, () -> {
           try {
             return (String)myCallGetEndState.invoke(myDesignTool);
           }
@@ -807,7 +811,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallGetProgress != null) {
       try {
-        progress = RenderService.runRenderAction(() -> {
+        progress = RenderService.runRenderAction(myModule, () -> {
           try {
             return (Float)myCallGetProgress.invoke(myDesignTool);
           }
@@ -848,7 +852,7 @@ public class MotionLayoutComponentHelper {
     }
     if (myCallIsInTransition != null) {
       try {
-        isInTransition = RenderService.runRenderAction(() -> {
+        isInTransition = RenderService.runRenderAction(myModule, () -> {
           try {
             return (Boolean)myCallIsInTransition.invoke(myDesignTool);
           }
@@ -887,7 +891,7 @@ public class MotionLayoutComponentHelper {
 
     if (myGetMaxTimeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return (long)myGetMaxTimeMethod.invoke(myDesignTool);
           }
@@ -1045,7 +1049,7 @@ public class MotionLayoutComponentHelper {
 
     if (myGetKeyFramePositionsMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return (Integer)myGetKeyFramePositionsMethod.invoke(myDesignTool, info.getViewObject(), type, pos);
           }
@@ -1220,7 +1224,7 @@ public class MotionLayoutComponentHelper {
 
     if (myGetKeyFrameInfoMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return (Integer)myGetKeyFrameInfoMethod.invoke(myDesignTool, info.getViewObject(), type, keyInfo);
           }
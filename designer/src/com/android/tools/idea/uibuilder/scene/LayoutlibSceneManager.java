@@ -27,6 +27,7 @@ import com.android.ide.common.rendering.api.ResourceReference;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.rendering.api.SessionParams;
 import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.tools.editor.PanZoomListener;
 import com.android.tools.idea.AndroidPsiUtils;
 import com.android.tools.idea.common.analytics.CommonUsageTracker;
 import com.android.tools.idea.common.diagnostics.NlDiagnosticsManager;
@@ -49,11 +50,14 @@ import com.android.tools.idea.common.surface.SceneView;
 import com.android.tools.idea.common.type.DesignerEditorFileType;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.configurations.ConfigurationListener;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.rendering.Locale;
 import com.android.tools.idea.rendering.RenderLogger;
 import com.android.tools.idea.rendering.RenderResult;
+import com.android.tools.idea.rendering.RenderResultFileCache;
 import com.android.tools.idea.rendering.RenderService;
 import com.android.tools.idea.rendering.RenderTask;
+import com.android.tools.idea.rendering.RenderingPriority;
 import com.android.tools.idea.rendering.imagepool.ImagePool;
 import com.android.tools.idea.rendering.parsers.LayoutPullParsers;
 import com.android.tools.idea.rendering.parsers.TagSnapshot;
@@ -82,6 +86,7 @@ import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.util.Alarm;
 import com.intellij.util.concurrency.AppExecutorUtil;
@@ -93,6 +98,7 @@ import com.intellij.util.ui.UIUtil;
 import com.intellij.util.ui.update.MergingUpdateQueue;
 import com.intellij.util.ui.update.Update;
 import java.awt.*;
+import java.awt.event.AdjustmentEvent;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -129,6 +135,10 @@ public class LayoutlibSceneManager extends SceneManager {
   private final SelectionChangeListener mySelectionChangeListener = new SelectionChangeListener();
   private final ModelChangeListener myModelChangeListener = new ModelChangeListener();
   private final ConfigurationListener myConfigurationChangeListener = new ConfigurationChangeListener();
+  private final PanZoomListener myPanZoomListener = new RenderingPriorityUpdater();
+  // Priority of the renders of this scene manager. It depends on Swing state, so it is computed on the EDT and only read from the
+  // render threads.
+  private volatile RenderingPriority myRenderingPriority = RenderingPriority.NORMAL;
   private final boolean myAreListenersRegistered;
   private final Object myProgressLock = new Object();
   @GuardedBy("myProgressLock")
@@ -147,6 +157,13 @@ public class LayoutlibSceneManager extends SceneManager {
   private final ReentrantReadWriteLock myRenderResultLock = new ReentrantReadWriteLock();
   @GuardedBy("myRenderResultLock")
   private RenderResult myRenderResult;
+  // Inputs of the cache key captured when myRenderResult was rendered, or null if the result should not be stored in the
+  // RenderResultFileCache
+  @GuardedBy("myRenderResultLock")
+  private RenderResultFileCache.KeyInputs myRenderResultKeyInputs;
+  // True while myRenderResult was restored from the RenderResultFileCache and has not been replaced by a render yet
+  @GuardedBy("myRenderResultLock")
+  private boolean myIsRenderResultFromCache;
   // Variables to track previous values of the configuration bar for tracking purposes
   private String myPreviousDeviceName;
   private Locale myPreviousLocale;
@@ -271,6 +288,7 @@ public class LayoutlibSceneManager extends SceneManager {
     updateTrackingConfiguration();
 
     getDesignSurface().getSelectionModel().addListener(mySelectionChangeListener);
+    getDesignSurface().addPanZoomListener(myPanZoomListener);
 
     Scene scene = getScene();
 
@@ -371,6 +389,7 @@ public class LayoutlibSceneManager extends SceneManager {
       if (myAreListenersRegistered) {
         NlModel model = getModel();
         getDesignSurface().getSelectionModel().removeListener(mySelectionChangeListener);
+        getDesignSurface().removePanZoomListener(myPanZoomListener);
         model.getConfiguration().removeListener(myConfigurationChangeListener);
         model.removeListener(myModelChangeListener);
       }
@@ -403,16 +422,31 @@ public class LayoutlibSceneManager extends SceneManager {
         Logger.getInstance(LayoutlibSceneManager.class).warn(t);
       }
     }
+    RenderResult renderResult;
+    RenderResultFileCache.KeyInputs keyInputs;
     myRenderResultLock.writeLock().lock();
     try {
-      if (myRenderResult != null) {
-        myRenderResult.dispose();
-      }
+      renderResult = myRenderResult;
+      keyInputs = myRenderResultKeyInputs;
       myRenderResult = null;
+      myRenderResultKeyInputs = null;
     }
     finally {
       myRenderResultLock.writeLock().unlock();
     }
+    if (renderResult != null) {
+      if (keyInputs != null) {
+        // Store the last render so it can be displayed immediately the next time the file is opened. The key is computed in the
+        // background from the inputs captured when the render started, and the entry is dropped if they changed since.
+        try {
+          RenderResultFileCache.getInstance().put(getModel().getProject(), keyInputs, renderResult);
+        }
+        catch (Throwable t) {
+          Logger.getInstance(LayoutlibSceneManager.class).warn(t);
+        }
+      }
+      renderResult.dispose();
+    }
   }
 
   private void stopProgressIndicator() {
@@ -604,6 +638,7 @@ public class LayoutlibSceneManager extends SceneManager {
     synchronized (myRenderFutures) {
       myRenderFutures.add(callback);
     }
+    UIUtil.invokeLaterIfNeeded(this::updateRenderingPriority);
 
     if (myIsCurrentlyRendering.get()) {
       return callback;
@@ -625,6 +660,21 @@ public class LayoutlibSceneManager extends SceneManager {
     return callback;
   }
 
+  /**
+   * Updates the rendering priority when the viewport of the surface changes.
+   */
+  private class RenderingPriorityUpdater implements PanZoomListener {
+    @Override
+    public void zoomChanged() {
+      updateRenderingPriority();
+    }
+
+    @Override
+    public void panningChanged(AdjustmentEvent adjustmentEvent) {
+      updateRenderingPriority();
+    }
+  }
+
   private class ConfigurationChangeListener implements ConfigurationListener {
     @Override
     public boolean changed(int flags) {
@@ -935,6 +985,7 @@ public class LayoutlibSceneManager extends SceneManager {
     RenderService.RenderTaskBuilder renderTaskBuilder = renderService.taskBuilder(facet, configuration)
       .withPsiFile(getModel().getFile())
       .withLayoutValidation(isLayoutValidationEnabled)
+      .withPriority(myRenderingPriority)
       .withLogger(logger);
     return setupRenderTaskBuilder(renderTaskBuilder).build()
       .thenCompose(newTask -> {
@@ -981,7 +1032,13 @@ public class LayoutlibSceneManager extends SceneManager {
               updateHierarchy(result);
               myRenderResultLock.writeLock().lock();
               try {
-                updateCachedRenderResult(result);
+                // Keep showing the result restored from the disk cache until the render that follows a successful inflate replaces it
+                if (myIsRenderResultFromCache && result.getRenderResult().isSuccess()) {
+                  result.dispose();
+                }
+                else {
+                  updateCachedRenderResult(result);
+                }
               }
               finally {
                 myRenderResultLock.writeLock().unlock();
@@ -1021,6 +1078,86 @@ public class LayoutlibSceneManager extends SceneManager {
       myRenderResult.dispose();
     }
     myRenderResult = result;
+    myRenderResultKeyInputs = null;
+    myIsRenderResultFromCache = false;
+  }
+
+  /**
+   * Returns whether the renders of this scene manager can be stored in and restored from the {@link RenderResultFileCache}.
+   */
+  private boolean isRenderResultCacheEnabled() {
+    // Interactive previews change over time so their renders can not be reused
+    return !isInteractive && StudioFlags.NELE_RENDER_RESULT_CACHE.get() && !ApplicationManager.getApplication().isUnitTestMode();
+  }
+
+  /**
+   * Captures the inputs of the key of the current state of the model in the {@link RenderResultFileCache}, or returns null if it can
+   * not be cached.
+   */
+  @Nullable
+  private RenderResultFileCache.KeyInputs captureRenderResultCacheKeyInputs() {
+    NlModel model = getModel();
+    DesignSurface surface = getDesignSurface();
+    AndroidFacet facet = model.getFacet();
+    Configuration configuration = model.getConfiguration();
+    PsiFile file = model.getFile();
+    String renderOptions = useTransparentRendering + ":" + useShrinkRendering + ":" + useShowDecorations + ":" + quality + ":" +
+                           myElapsedFrameTimeMs + ":" + surface.getPreviewWithToolsVisibilityAndPosition() + ":" +
+                           surface.getAdaptiveIconShape().getPathDescription();
+    return RenderResultFileCache.getInstance().captureKeyInputs(facet, configuration, file, renderOptions);
+  }
+
+  /**
+   * If nothing has been rendered yet, displays the result stored in the {@link RenderResultFileCache} for the current state of the
+   * model, if any, until the render in progress completes. The key is not computed when there is already a result to display.
+   */
+  private void showCachedRenderResult(@NotNull RenderResultFileCache.KeyInputs keyInputs) {
+    myRenderResultLock.readLock().lock();
+    try {
+      if (myRenderResult != null) {
+        return;
+      }
+    }
+    finally {
+      myRenderResultLock.readLock().unlock();
+    }
+
+    String cacheKey;
+    try {
+      cacheKey = RenderResultFileCache.getInstance().computeKey(keyInputs);
+    }
+    catch (Throwable t) {
+      Logger.getInstance(LayoutlibSceneManager.class).warn(t);
+      return;
+    }
+    if (cacheKey == null) {
+      return;
+    }
+    RenderResult result = RenderResultFileCache.getInstance().get(getModel().getProject(), cacheKey, getModel().getFile());
+    if (result == null) {
+      return;
+    }
+    myRenderResultLock.writeLock().lock();
+    try {
+      if (myRenderResult != null || isDisposed.get()) {
+        // A render completed in the meantime
+        result.dispose();
+        return;
+      }
+      myRenderResult = result;
+      myIsRenderResultFromCache = true;
+    }
+    finally {
+      myRenderResultLock.writeLock().unlock();
+    }
+
+    updateHierarchy(result);
+    UIUtil.invokeLaterIfNeeded(() -> {
+      if (!isDisposed.get()) {
+        update();
+      }
+    });
+    fireRenderListeners();
   }
 
   @VisibleForTesting
@@ -1128,6 +1265,19 @@ public class LayoutlibSceneManager extends SceneManager {
       getModel().resetLastChange();
 
       long renderStartTimeMs = System.currentTimeMillis();
+      RenderResultFileCache.KeyInputs keyInputs = null;
+      if (isRenderResultCacheEnabled()) {
+        try {
+          keyInputs = captureRenderResultCacheKeyInputs();
+        }
+        catch (Throwable t) {
+          Logger.getInstance(LayoutlibSceneManager.class).warn(t);
+        }
+        if (keyInputs != null) {
+          showCachedRenderResult(keyInputs);
+        }
+      }
+      RenderResultFileCache.KeyInputs renderKeyInputs = keyInputs;
       return renderImpl(trigger)
         .thenApply(result -> {
           if (result == null) {
@@ -1138,6 +1288,9 @@ public class LayoutlibSceneManager extends SceneManager {
           myRenderResultLock.writeLock().lock();
           try {
             updateCachedRenderResult(result);
+            if (result.getRenderResult().isSuccess()) {
+              myRenderResultKeyInputs = renderKeyInputs;
+            }
             // TODO(nro): this may not be ideal -- forcing direct results immediately
             if (!isDisposed.get()) {
               update();
@@ -1160,6 +1313,8 @@ public class LayoutlibSceneManager extends SceneManager {
           UIUtil.invokeLaterIfNeeded(() -> {
             if (!isDisposed.get()) {
               update();
+              // The size of the scene views may have changed with the new result
+              updateRenderingPriority();
             }
           });
           fireRenderListeners();
@@ -1215,6 +1370,7 @@ public class LayoutlibSceneManager extends SceneManager {
           if (elapsedFrameTimeMs != -1) {
             myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedFrameTimeMs));
           }
+          myRenderTask.setPriority(myRenderingPriority);
           return myRenderTask.render().thenApply(result -> {
             // When the layout was inflated in this same call, we do not have to update the hierarchy again
             if (result != null && !inflated) {
@@ -1229,6 +1385,36 @@ public class LayoutlibSceneManager extends SceneManager {
       });
   }
 
+  /**
+   * Recomputes the priority of the renders of this scene manager. Must be called on the EDT.
+   */
+  private void updateRenderingPriority() {
+    if (!isDisposed.get()) {
+      myRenderingPriority = computeRenderingPriority();
+    }
+  }
+
+  /**
+   * Returns {@link RenderingPriority#LOW} if the surface is showing but none of the scene views of this manager is in its viewport,
+   * so that the previews on the screen are rendered before the ones scrolled out of view.
+   */
+  @NotNull
+  private RenderingPriority computeRenderingPriority() {
+    DesignSurface surface = getDesignSurface();
+    if (!surface.isShowing()) {
+      return RenderingPriority.NORMAL;
+    }
+    Rectangle visibleArea = new Rectangle(surface.getScrollPosition(), surface.getExtentSize());
+    for (SceneView sceneView : getSceneViews()) {
+      Dimension size = sceneView.getScaledContentSize(null);
+      // Views that were not rendered yet have no size, count them as visible if their position is.
+      if (visibleArea.intersects(sceneView.getX(), sceneView.getY(), Math.max(1, size.width), Math.max(1, size.height))) {
+        return RenderingPriority.NORMAL;
+      }
+    }
+    return RenderingPriority.LOW;
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
@@ -37,61 +37,120 @@ import java.util.concurrent.*
  */
 class LlvmSymbolizer(private val symbolizerExe: String,
                      private val symLocator: SymbolFilesLocator,
-                     private val timeoutMsc: Long = 5000) : NativeSymbolizer {
+                     private val timeoutMsc: Long = 5000,
+                     processCount: Int = DEFAULT_PROCESS_COUNT,
+                     private val symbolCache: SymbolCache = SymbolCache()) : NativeSymbolizer {
 
-  private var procHolder : ProcessHolder? = null
-  private val executor : ExecutorService = Executors.newSingleThreadExecutor()
+  companion object {
+    /**
+     * Number of consecutive lookups sent to the same llvm-symbolizer process when sharding them, and the number of lookups each
+     * [timeoutMsc] applies to.
+     */
+    private const val BATCH_SIZE = 64
 
-  override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
-    val symFiles = symLocator.findSymbolFiles(abiArch, module)
+    private val DEFAULT_PROCESS_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))
+  }
 
-    for (symFile in symFiles) {
-      val request = formatRequest(symFile, offset)
+  private val workers = List(processCount) { Worker() }
+  private val symbolFileIds = ConcurrentHashMap<File, Pair<Long, String>>()
 
-      val holder = getProcHolder()
-      val future = executor.submit( Callable<List<String>> {
-        holder.stdin.write(request)
-        holder.stdin.flush()
+  override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
+    val request = SymbolRequest(abiArch, module, offset)
+    return symbolizeAll(listOf(request))[request]
+  }
 
-        val response: MutableList<String> = mutableListOf()
-        var responseLine: String?
-        while (true) {
-          responseLine = holder.stdout.readLine()
-          if (responseLine == null || responseLine.isEmpty()) {
-            break
+  override fun symbolizeAll(requests: Collection<SymbolRequest>): Map<SymbolRequest, Symbol> {
+    val result = HashMap<SymbolRequest, Symbol>()
+    val symFilesByModule = HashMap<Pair<String, String>, List<File>>()
+    var pending = requests.distinct().map { request ->
+      request to symFilesByModule.computeIfAbsent(Pair(request.abiArch, request.module)) {
+        symLocator.findSymbolFiles(request.abiArch, request.module)
+      }
+    }
+
+    // Each round looks the pending requests up in their next symbol file, until they are resolved or there are no more files to try.
+    var symFileIndex = 0
+    while (pending.isNotEmpty()) {
+      val lookups = LinkedHashMap<SymbolCache.Key, File>()
+      val nextPending = mutableListOf<Pair<SymbolRequest, List<File>>>()
+      val pendingKeys = mutableListOf<Pair<SymbolRequest, SymbolCache.Key>>()
+      for ((request, symFiles) in pending) {
+        if (symFileIndex >= symFiles.size) {
+          continue
+        }
+        val symFile = symFiles[symFileIndex]
+        val key = SymbolCache.Key(getSymbolFileIdCached(symFile), request.offset)
+        val cached = symbolCache[key]
+        when {
+          cached == null -> {
+            lookups.putIfAbsent(key, symFile)
+            pendingKeys.add(request to key)
+            nextPending.add(request to symFiles)
           }
-          response.add(responseLine)
+          cached === SymbolCache.UNRESOLVED -> nextPending.add(request to symFiles)
+          else -> result[request] = cached.copy(module = request.module)
         }
-        response
-      })
-      val response : List<String>
+      }
+
+      val resolved = lookUp(lookups)
+      val resolvedRequests = HashSet<SymbolRequest>()
+      for ((request, key) in pendingKeys) {
+        val symbol = resolved[key]
+        if (symbol != null && symbol !== SymbolCache.UNRESOLVED) {
+          result[request] = symbol.copy(module = request.module)
+          resolvedRequests.add(request)
+        }
+      }
+      pending = nextPending.filter { it.first !in resolvedRequests }
+      symFileIndex++
+    }
+    return result
+  }
+
+  /**
+   * Sends the lookups to the symbolizer processes and caches the responses.
+   *
+   * @return the symbols found, or [SymbolCache.UNRESOLVED] for the addresses that could not be resolved. Lookups whose process timed out
+   * or failed are not in the result.
+   */
+  private fun lookUp(lookups: Map<SymbolCache.Key, File>): Map<SymbolCache.Key, Symbol> {
+    if (lookups.isEmpty()) {
+      return emptyMap()
+    }
+    val resolved = ConcurrentHashMap<SymbolCache.Key, Symbol>()
+    // Shard the lookups across the processes, in runs of BATCH_SIZE lookups.
+    val workerCount = Math.min(workers.size, (lookups.size + BATCH_SIZE - 1) / BATCH_SIZE)
+    val shards = List(workerCount) { mutableListOf<Pair<SymbolCache.Key, String>>() }
+    lookups.entries.forEachIndexed { index, (key, symFile) ->
+      shards[index / BATCH_SIZE % workerCount].add(key to formatRequest(symFile, key.offset))
+    }
+    val futures = shards.mapIndexed { index, shard -> workers[index].submit(shard, resolved) }
+    for ((index, future) in futures.withIndex()) {
+      val batchCount = (shards[index].size + BATCH_SIZE - 1) / BATCH_SIZE
       try {
-        response = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
-      } catch (e: TimeoutException) {
+        future.get(timeoutMsc * batchCount, TimeUnit.MILLISECONDS)
+      }
+      catch (e: TimeoutException) {
         getLogger().warn("llvm-symbolizer timed out", e)
-        stop()
-        continue
-      } catch (e: ExecutionException) {
+        workers[index].stop()
+      }
+      catch (e: ExecutionException) {
         getLogger().warn("llvm-symbolizer communication failed", e)
-        stop()
-        continue
+        workers[index].stop()
       }
-
-      val result = parseResponse(response, module)
-      if (result != null)
-        return result
     }
-
-    return null
+    return resolved
   }
 
-  private fun getProcHolder() : ProcessHolder {
-    var holder = procHolder
-    if (holder == null || !holder.process.isAlive) {
-      start()
-      holder = procHolder!! // procHolder must't be null after start()
+  private fun getSymbolFileIdCached(symFile: File): String {
+    val lastModified = symFile.lastModified()
+    val cached = symbolFileIds[symFile]
+    if (cached != null && cached.first == lastModified) {
+      return cached.second
     }
-    return holder
+    val id = getSymbolFileId(symFile)
+    symbolFileIds[symFile] = lastModified to id
+    return id
   }
 
   private fun formatRequest(symFile: File, offset: Long): String {
@@ -126,24 +185,87 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return Symbol(name, module, sourceFile, lineNumber)
   }
 
-  private fun start() {
-    if (procHolder != null)
-      stop()
+  override fun stop() {
+    workers.forEach(Worker::stop)
+    symLocator.clearCache()
+    symbolFileIds.clear()
+    symbolCache.save()
+  }
+
+  /**
+   * Owns a llvm-symbolizer process and the threads talking to it.
+   */
+  private inner class Worker {
+    private var procHolder: ProcessHolder? = null
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor()
+    private val writer: ExecutorService = Executors.newSingleThreadExecutor()
 
-    val builder = ProcessBuilder(symbolizerExe)
-    val process = builder.start()
-    if (!process.isAlive) {
-      throw IOException("Symbolizer process is not alive. Executable: $symbolizerExe")
+    /**
+     * Writes the requests and reads their responses, adding them to [resolved] and to the cache.
+     *
+     * Requests are written on their own thread while the responses are read, so neither side can fill a pipe the other one is not
+     * draining, whatever the size of the pipe buffers.
+     */
+    fun submit(requests: List<Pair<SymbolCache.Key, String>>, resolved: MutableMap<SymbolCache.Key, Symbol>): Future<*> {
+      val holder = getProcHolder()
+      val writing = writer.submit(Runnable {
+        for ((_, request) in requests) {
+          holder.stdin.write(request)
+        }
+        holder.stdin.flush()
+      })
+      return executor.submit(Runnable {
+        for ((key, _) in requests) {
+          val symbol = parseResponse(readResponse(holder), "") ?: SymbolCache.UNRESOLVED
+          symbolCache[key] = symbol
+          resolved[key] = symbol
+        }
+        // Surfaces write failures that did not already show up as a closed output.
+        writing.get()
+      })
     }
 
-    val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
-    val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
-    procHolder = ProcessHolder(process, stdout, stdin)
-  }
+    private fun readResponse(holder: ProcessHolder): List<String> {
+      val response: MutableList<String> = mutableListOf()
+      while (true) {
+        val responseLine = holder.stdout.readLine() ?: throw IOException("llvm-symbolizer closed its output")
+        if (responseLine.isEmpty()) {
+          return response
+        }
+        response.add(responseLine)
+      }
+    }
 
-  override fun stop() {
-    procHolder?.dispose()
-    procHolder = null
+    @Synchronized
+    private fun getProcHolder(): ProcessHolder {
+      var holder = procHolder
+      if (holder == null || !holder.process.isAlive) {
+        start()
+        holder = procHolder!! // procHolder must't be null after start()
+      }
+      return holder
+    }
+
+    private fun start() {
+      if (procHolder != null)
+        stop()
+
+      val builder = ProcessBuilder(symbolizerExe)
+      val process = builder.start()
+      if (!process.isAlive) {
+        throw IOException("Symbolizer process is not alive. Executable: $symbolizerExe")
+      }
+
+      val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
+      val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
+      procHolder = ProcessHolder(process, stdout, stdin)
+    }
+
+    @Synchronized
+    fun stop() {
+      procHolder?.dispose()
+      procHolder = null
+    }
   }
 
   private class ProcessHolder(val process: Process,
@@ -153,4 +275,4 @@ class LlvmSymbolizer(private val symbolizerExe: String,
       process.destroy()
     }
   }
-}
\ No newline at end of file
+}
@@ -25,6 +25,11 @@ import java.nio.file.Paths
 
 data class Symbol(val name: String, val module: String, val sourceFile: String = "", val lineNumber: Int = 0)
 
+/**
+ * An offset in a native module to symbolize, see [NativeSymbolizer.symbolizeAll].
+ */
+data class SymbolRequest(val abiArch: String, val module: String, val offset: Long)
+
 /**
  * Components that can fetch information about native symbols by a module and an offset.
  */
@@ -39,6 +44,15 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: String, offset: Long): Symbol?
+
+  /**
+   * Obtains the symbols of many offsets at once, which is much faster than calling [symbolize] for each of them.
+   * Duplicated requests are only resolved once.
+   * @return symbols for the requests that could be resolved
+   */
+  @Throws(IOException::class)
+  fun symbolizeAll(requests: Collection<SymbolRequest>): Map<SymbolRequest, Symbol>
+
   fun stop()
 }
 
@@ -51,7 +65,8 @@ fun createNativeSymbolizer(project: Project): NativeSymbolizer {
     log.debug("Native symbolizer paths for $arch is [$dirs]")
   }
   val symLocator = SymbolFilesLocator(symDirMap)
-  return LlvmSymbolizer(symbolizerPath, symLocator)
+  val symbolCache = SymbolCache(Paths.get(PathManager.getSystemPath(), "native-symbolizer", "symbols.cache").toFile())
+  return LlvmSymbolizer(symbolizerPath, symLocator, symbolCache = symbolCache)
 }
 
 /**
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.intellij.openapi.util.io.FileUtil
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Symbols resolved by [LlvmSymbolizer], keyed by the identity of a symbol file and an offset in it.
+ *
+ * The most recently used entries are kept in memory. If a cache file is given, it is read on first use and written back by [save],
+ * so the symbols of libraries that haven't been rebuilt are available right away in later sessions.
+ *
+ * Cached symbols have an empty module, callers fill in the module they asked for.
+ */
+class SymbolCache(private val cacheFile: File? = null, private val maxEntries: Int = DEFAULT_MAX_ENTRIES) {
+
+  data class Key(val symbolFileId: String, val offset: Long)
+
+  companion object {
+    const val DEFAULT_MAX_ENTRIES = 500_000
+
+    /**
+     * Marks an address llvm-symbolizer could not resolve, so it isn't looked up again.
+     */
+    @JvmField
+    val UNRESOLVED = Symbol("??", "")
+
+    private const val FILE_VERSION = 1
+
+    /**
+     * Symbols whose name or source file are longer than this are not written to the cache file.
+     */
+    private const val MAX_PERSISTED_STRING_LENGTH = 4096
+  }
+
+  private val entries = object : LinkedHashMap<Key, Symbol>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Symbol>) = size > maxEntries
+  }
+  private var isLoaded = false
+  private var isDirty = false
+
+  /**
+   * @return the cached symbol, [UNRESOLVED] if the address is known not to resolve, or null if it hasn't been looked up.
+   */
+  @Synchronized
+  operator fun get(key: Key): Symbol? {
+    ensureLoaded()
+    return entries[key]
+  }
+
+  @Synchronized
+  operator fun set(key: Key, symbol: Symbol) {
+    ensureLoaded()
+    entries[key] = symbol
+    isDirty = true
+  }
+
+  @Synchronized
+  fun size(): Int {
+    ensureLoaded()
+    return entries.size
+  }
+
+  /**
+   * Writes the entries to the cache file, if there is one and entries were added since it was read.
+   */
+  @Synchronized
+  fun save() {
+    if (cacheFile == null || !isDirty) {
+      return
+    }
+    try {
+      FileUtil.createParentDirs(cacheFile)
+      val tempFile = File(cacheFile.path + ".tmp")
+      DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { out ->
+        val persisted = entries.filter { (_, symbol) ->
+          symbol.name.length <= MAX_PERSISTED_STRING_LENGTH && symbol.sourceFile.length <= MAX_PERSISTED_STRING_LENGTH
+        }
+        out.writeInt(FILE_VERSION)
+        out.writeInt(persisted.size)
+        // Entries are written from the least to the most recently used, so reading them back keeps the LRU order.
+        for ((key, symbol) in persisted) {
+          out.writeUTF(key.symbolFileId)
+          out.writeLong(key.offset)
+          out.writeUTF(symbol.name)
+          out.writeUTF(symbol.sourceFile)
+          out.writeInt(symbol.lineNumber)
+        }
+      }
+      FileUtil.rename(tempFile, cacheFile)
+      isDirty = false
+    }
+    catch (e: IOException) {
+      getLogger().warn("Unable to write the native symbols cache", e)
+    }
+  }
+
+  private fun ensureLoaded() {
+    if (isLoaded) {
+      return
+    }
+    isLoaded = true
+    if (cacheFile == null || !cacheFile.isFile) {
+      return
+    }
+    try {
+      DataInputStream(BufferedInputStream(FileInputStream(cacheFile))).use { input ->
+        if (input.readInt() != FILE_VERSION) {
+          return
+        }
+        repeat(input.readInt()) {
+          val key = Key(input.readUTF(), input.readLong())
+          val name = input.readUTF()
+          val sourceFile = input.readUTF()
+          val lineNumber = input.readInt()
+          entries[key] = if (name == UNRESOLVED.name && sourceFile.isEmpty()) UNRESOLVED else Symbol(name, "", sourceFile, lineNumber)
+        }
+      }
+    }
+    catch (e: IOException) {
+      getLogger().warn("Unable to read the native symbols cache", e)
+      entries.clear()
+    }
+  }
+}
+
+private const val PT_NOTE = 4
+private const val NT_GNU_BUILD_ID = 3
+private const val MAX_NOTES_SIZE = 1 shl 16
+
+/**
+ * Identifies the content of a symbol file: its GNU build ID if it's an ELF file that has one, otherwise its path, size and modification
+ * time.
+ */
+internal fun getSymbolFileId(file: File): String {
+  val buildId = readElfBuildId(file)
+  return if (buildId != null) "build-id:$buildId" else "file:${file.absolutePath}:${file.length()}:${file.lastModified()}"
+}
+
+/**
+ * Reads the build ID note from the program headers of an ELF file.
+ *
+ * @return the build ID as a hex string, or null if the file isn't an ELF file or has no build ID.
+ */
+internal fun readElfBuildId(file: File): String? {
+  try {
+    RandomAccessFile(file, "r").use { raf ->
+      if (raf.length() < 64) {
+        return null
+      }
+      val header = ByteArray(64)
+      raf.readFully(header)
+      if (header[0] != 0x7f.toByte() || header[1] != 'E'.toByte() || header[2] != 'L'.toByte() || header[3] != 'F'.toByte()) {
+        return null
+      }
+      val is64Bit = header[4] == 2.toByte()
+      val order = if (header[5] == 2.toByte()) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN
+      val elfHeader = ByteBuffer.wrap(header).order(order)
+      val programHeaderOffset = if (is64Bit) elfHeader.getLong(0x20) else elfHeader.getInt(0x1C).toUnsignedLong()
+      val programHeaderSize = elfHeader.getShort(if (is64Bit) 0x36 else 0x2A).toInt() and 0xffff
+      val programHeaderCount = elfHeader.getShort(if (is64Bit) 0x38 else 0x2C).toInt() and 0xffff
+
+      val programHeader = ByteBuffer.allocate(programHeaderSize).order(order)
+      for (i in 0 until programHeaderCount) {
+        raf.seek(programHeaderOffset + i.toLong() * programHeaderSize)
+        raf.readFully(programHeader.array())
+        if (programHeader.getInt(0) != PT_NOTE) {
+          continue
+        }
+        val notesOffset = if (is64Bit) programHeader.getLong(0x08) else programHeader.getInt(0x04).toUnsignedLong()
+        val notesSize = if (is64Bit) programHeader.getLong(0x20) else programHeader.getInt(0x10).toUnsignedLong()
+        if (notesSize <= 0 || notesSize > MAX_NOTES_SIZE || notesOffset + notesSize > raf.length()) {
+          continue
+        }
+        val notes = ByteBuffer.allocate(notesSize.toInt()).order(order)
+        raf.seek(notesOffset)
+        raf.readFully(notes.array())
+        findBuildIdNote(notes)?.let { return it }
+      }
+    }
+  }
+  catch (e: IOException) {
+    getLogger().debug("Unable to read the build ID of $file", e)
+  }
+  return null
+}
+
+private fun findBuildIdNote(notes: ByteBuffer): String? {
+  while (notes.remaining() >= 12) {
+    val nameSize = notes.int
+    val descriptorSize = notes.int
+    val type = notes.int
+    val nameStart = notes.position()
+    val descriptorStart = nameStart + align4(nameSize)
+    if (nameSize < 0 || descriptorSize < 0 || descriptorStart + descriptorSize > notes.limit()) {
+      return null
+    }
+    if (type == NT_GNU_BUILD_ID && nameSize == 4 && notes.get(nameStart) == 'G'.toByte() && notes.get(nameStart + 1) == 'N'.toByte() &&
+        notes.get(nameStart + 2) == 'U'.toByte()) {
+      return (descriptorStart until descriptorStart + descriptorSize).joinToString("") { String.format("%02x", notes.get(it)) }
+    }
+    if (descriptorStart + align4(descriptorSize) > notes.limit()) {
+      return null
+    }
+    notes.position(descriptorStart + align4(descriptorSize))
+  }
+  return null
+}
+
+private fun align4(size: Int) = (size + 3) and 3.inv()
+
+private fun Int.toUnsignedLong() = toLong() and 0xffffffffL
@@ -26,6 +26,7 @@ import com.intellij.openapi.module.ModuleManager
 import com.intellij.openapi.project.Project
 import java.io.File
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Given a map of possible symbols locations finds symbol files
@@ -33,12 +34,31 @@ import java.util.*
  */
 class SymbolFilesLocator(private val cpuToSymbolDirs: Map<String, Set<File>>) {
 
+  /**
+   * Symbol files found for a (CPU arch, module base name) pair, until [clearCache] is called. Modules without symbol files are not
+   * cached, so symbols built while profiling are found on the next lookup.
+   */
+  private val cache = ConcurrentHashMap<Pair<String, String>, List<File>>()
+
   fun findSymbolFiles(cpuArch: String, module: String): List<File> {
-    // TODO (ezemetsov): Add a cache
+    val baseModuleName = File(File(module).name).nameWithoutExtension
+    val key = Pair(cpuArch, baseModuleName)
+    cache[key]?.let { return it }
+    val files = findSymbolFilesInDirs(cpuArch, baseModuleName)
+    if (files.isNotEmpty()) {
+      cache[key] = files
+    }
+    return files
+  }
+
+  fun clearCache() {
+    cache.clear()
+  }
+
+  private fun findSymbolFilesInDirs(cpuArch: String, baseModuleName: String): List<File> {
     // Just look in all dirs from the map and find files with the same
     // basename as a given device module.
     val symDirs = cpuToSymbolDirs.getOrDefault(cpuArch, setOf<File>()).toList()
-    val baseModuleName = File(File(module).name).nameWithoutExtension
     val symNameCandidates = arrayListOf(baseModuleName + ".so", baseModuleName + ".dwo")
     val result = mutableListOf<File>()
     for (dir in symDirs) {
@@ -168,6 +168,90 @@ class LlvmSymbolizerTest {
     Assert.assertNull(sym)
   }
 
+  @Test
+  fun testSymbolizeAllInBatch() {
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), processCount = 2)
+    val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/" + LIB_FILE_NAME
+    val expectedNames = mutableMapOf<SymbolRequest, String>()
+    for (arch in architectures) {
+      for (line in Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines()) {
+        val symParts = line.split('|')
+        expectedNames[SymbolRequest(arch, module, symParts[0].toLong(16) + 1)] = symParts[1]
+      }
+    }
+    val unknownRequest = SymbolRequest("arm", "/p/libnotexists.so", 12345)
+    // Duplicated requests are resolved once.
+    val requests = expectedNames.keys.toList() + expectedNames.keys.toList() + unknownRequest
+
+    val symbols = symbolizer.symbolizeAll(requests)
+    Assert.assertEquals(expectedNames.size, symbols.size)
+    for ((request, name) in expectedNames) {
+      val symbol = symbols[request]!!
+      Assert.assertEquals(name, symbol.name)
+      Assert.assertEquals(module, symbol.module)
+      Assert.assertEquals(symbolizer.symbolize(request.abiArch, request.module, request.offset), symbol)
+    }
+    Assert.assertNull(symbols[unknownRequest])
+    symbolizer.stop()
+  }
+
+  @Test
+  fun testManyRequestsToOneProcess() {
+    // Far more responses than fit in a pipe buffer, which must not block the symbolizer while the requests are being written.
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), processCount = 1)
+    val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/" + LIB_FILE_NAME
+    val expectedNames = Paths.get(testDataDir, "arm64", EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().associate { line ->
+      val symParts = line.split('|')
+      SymbolRequest("arm64", module, symParts[0].toLong(16) + 1) to symParts[1]
+    }
+    val requests = expectedNames.keys + (1L..5000L).map { SymbolRequest("arm64", module, it * 4) }
+
+    val symbols = symbolizer.symbolizeAll(requests)
+    for ((request, name) in expectedNames) {
+      Assert.assertEquals(name, symbols[request]!!.name)
+    }
+    symbolizer.stop()
+  }
+
+  @Test
+  fun testSymbolFilesAddedLaterAreFound() {
+    val symbolDir = FileUtil.createTempDirectory("llvm-symbolizer", "late-symbols", true)
+    val symLocator = SymbolFilesLocator(mapOf(Pair("arm64", setOf(symbolDir))))
+    Assert.assertTrue(symLocator.findSymbolFiles("arm64", LIB_FILE_NAME).isEmpty())
+
+    FileUtil.copy(Paths.get(testDataDir, "arm64", LIB_FILE_NAME).toFile(), File(symbolDir, LIB_FILE_NAME))
+    Assert.assertEquals(listOf(File(symbolDir, LIB_FILE_NAME)), symLocator.findSymbolFiles("arm64", LIB_FILE_NAME))
+  }
+
+  @Test
+  fun testSymbolCacheIsPersisted() {
+    val cacheFile = File(FileUtil.createTempDirectory("llvm-symbolizer", "cache-test", true), "symbols.cache")
+    val arch = "arm64"
+    val line = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().first().split('|')
+    val offset = line[0].toLong(16) + 1
+
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), symbolCache = SymbolCache(cacheFile))
+    val symbol = symbolizer.symbolize(arch, LIB_FILE_NAME, offset)!!
+    Assert.assertEquals(line[1], symbol.name)
+    Assert.assertNull(symbolizer.symbolize(arch, LIB_FILE_NAME, 0xffffffffff))
+    symbolizer.stop()
+    Assert.assertTrue(cacheFile.exists())
+
+    // A symbolizer that cannot start llvm-symbolizer still finds the symbols in the cache of the previous session.
+    val notExistingPath = getLlvmSymbolizerPath().replace("llvm-symbolizer", "not-llvm-symbolizer")
+    val cachedSymbolizer = LlvmSymbolizer(notExistingPath, SymbolFilesLocator(getSymDirMap()), symbolCache = SymbolCache(cacheFile))
+    Assert.assertEquals(symbol, cachedSymbolizer.symbolize(arch, LIB_FILE_NAME, offset))
+    Assert.assertNull(cachedSymbolizer.symbolize(arch, LIB_FILE_NAME, 0xffffffffff))
+  }
+
+  @Test
+  fun testReadElfBuildId() {
+    Assert.assertEquals("463de9a467d1bc1453c0e1f494308df8a8616b48", readElfBuildId(Paths.get(testDataDir, "arm", LIB_FILE_NAME).toFile()))
+    Assert.assertEquals("415446799bd7b2495e1056857fc6dfc724ffc002",
+                        readElfBuildId(Paths.get(testDataDir, "x86_64", LIB_FILE_NAME).toFile()))
+    Assert.assertNull(readElfBuildId(Paths.get(testDataDir, "arm", EXPECTED_SYMBOLS_FILE_NAME).toFile()))
+  }
+
   fun getSymDirMap(): Map<String, Set<File>> {
     val result: MutableMap<String, Set<File>> = hashMapOf()
     for (arch in architectures) {
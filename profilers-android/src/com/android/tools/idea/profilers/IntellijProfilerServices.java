@@ -28,6 +28,9 @@ import com.android.tools.idea.project.AndroidNotification;
 import com.android.tools.idea.run.AndroidRunConfigurationBase;
 import com.android.tools.idea.run.editor.ProfilerState;
 import com.android.tools.idea.run.profiler.CpuProfilerConfigsState;
+import com.android.tools.idea.transport.TransportBytesSource;
+import com.android.tools.idea.transport.TransportService;
+import com.android.tools.idea.transport.poller.TransportEventSource;
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.NativeSymbolizerKt;
 import com.android.tools.nativeSymbolizer.SymbolFilesLocatorKt;
@@ -261,6 +264,11 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_ENERGY_PROFILER_ENABLED.get();
       }
 
+      @Override
+      public boolean isIncrementalSeriesFetchEnabled() {
+        return StudioFlags.PROFILER_INCREMENTAL_SERIES_FETCH.get();
+      }
+
       @Override
       public boolean isJniReferenceTrackingEnabled() {
         return StudioFlags.PROFILER_TRACK_JNI_REFS.get();
@@ -276,11 +284,21 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_SAMPLE_LIVE_ALLOCATIONS.get();
       }
 
+      @Override
+      public boolean isMappedHeapDumpLoadingEnabled() {
+        return StudioFlags.PROFILER_MAPPED_HEAP_DUMP_LOADING.get();
+      }
+
       @Override
       public boolean isMemorySnapshotEnabled() {
         return StudioFlags.PROFILER_MEMORY_SNAPSHOT.get();
       }
 
+      @Override
+      public boolean isParallelHeapDominatorsEnabled() {
+        return StudioFlags.PROFILER_PARALLEL_HEAP_DOMINATORS.get();
+      }
+
       @Override
       public boolean isPerformanceMonitoringEnabled() {
         return StudioFlags.PROFILER_PERFORMANCE_MONITORING.get();
@@ -453,4 +471,16 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
   public TraceProcessorService getTraceProcessorService() {
     return TraceProcessorServiceImpl.getInstance();
   }
+
+  @NotNull
+  @Override
+  public TransportEventSource getTransportEventSource() {
+    return TransportService.getInstance();
+  }
+
+  @NotNull
+  @Override
+  public TransportBytesSource getTransportBytesSource() {
+    return TransportService.getInstance();
+  }
 }
@@ -25,9 +25,11 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profiler.proto.Network;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -38,6 +40,9 @@ import org.jetbrains.annotations.Nullable;
  */
 public class EnergyUsagePreprocessor implements TransportEventPreprocessor {
   private static final long DEFAULT_SAMPLE_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(200);
+  private static final Set<Common.Event.Kind> PREPROCESSED_KINDS = Sets.immutableEnumSet(
+    Common.Event.Kind.CPU_CORE_CONFIG, Common.Event.Kind.CPU_USAGE, Common.Event.Kind.NETWORK_TYPE, Common.Event.Kind.NETWORK_SPEED,
+    Common.Event.Kind.ENERGY_EVENT);
 
   @NotNull private final LogService myLogService;
   @NotNull private final BatteryModel myBatteryModel;
@@ -61,6 +66,12 @@ public class EnergyUsagePreprocessor implements TransportEventPreprocessor {
     mySampleInterval = sampleInterval;
   }
 
+  @NotNull
+  @Override
+  public Set<Common.Event.Kind> getPreprocessedKinds() {
+    return PREPROCESSED_KINDS;
+  }
+
   @Override
   public boolean shouldPreprocess(Common.Event event) {
     switch (event.getKind()) {
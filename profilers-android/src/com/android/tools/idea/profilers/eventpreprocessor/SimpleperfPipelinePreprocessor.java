@@ -22,10 +22,12 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profiler.proto.Transport;
 import com.android.tools.profilers.cpu.TracePreProcessor;
+import com.google.common.collect.Sets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -40,6 +42,12 @@ public class SimpleperfPipelinePreprocessor implements TransportEventPreprocesso
     myPreProcessor = preProcessor;
   }
 
+  @NotNull
+  @Override
+  public Set<Common.Event.Kind> getPreprocessedKinds() {
+    return Sets.immutableEnumSet(Common.Event.Kind.CPU_TRACE);
+  }
+
   /**
    * Only run the preprocessor on CpuTraceEvents that are of type simple perf.
    */
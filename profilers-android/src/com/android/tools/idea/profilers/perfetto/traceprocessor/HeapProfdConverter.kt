@@ -41,24 +41,17 @@ class HeapProfdConverter(private val abi: String,
   }
 
   /**
-   * Given a {@link Memory.StackFrame} from the trace processor we attempt to gather symbolized data. If we cannot get symbolized data
-   * we return a frame with the original name if one was provided. If no name was found then we return {@link UNKNOWN_FRAME}
+   * Given a {@link Memory.StackFrame} from the trace processor and the frame returned for it by the symbolizer we attempt to gather
+   * symbolized data. If we cannot get symbolized data we return a frame with the original name if one was provided. If no name was found then we return {@link UNKNOWN_FRAME}
    * When we have a symbolized frame we return a frame with a method name in the form of
    * Symbol (File:Line) eg.. operator new (new.cpp:256)
    * The file name and line number are also populated if available.
    */
-  private fun toBestAvailableStackFrame(rawFrame: StackFrame): StackFrameInfo {
-    val module = String(Base64.decode(rawFrame.module))
-    val symbolizedFrame = symbolizer.symbolize(abi, Memory.NativeCallStack.NativeFrame.newBuilder()
-      .setModuleName(module)
-      // +1 because the common symbolizer does -1 accounting for an offset heapprofd does not have.
-      // see IntellijNativeFrameSymbolizer:getOffsetOfPreviousInstruction
-      .setModuleOffset(rawFrame.relPc + 1)
-      .build())
+  private fun toBestAvailableStackFrame(rawFrame: StackFrame, symbolizedFrame: Memory.NativeCallStack.NativeFrame): StackFrameInfo {
     val symbolName = symbolizedFrame.symbolName
     if (symbolName.startsWith("0x")) {
       val methodName = if (rawFrame.name.isNullOrBlank()) UNKNOWN_FRAME.methodName else String(Base64.decode(rawFrame.name))
-      return StackFrameInfo(name = methodName, moduleName = module)
+      return StackFrameInfo(name = methodName, moduleName = symbolizedFrame.moduleName)
     }
     val file = File(symbolizedFrame.fileName).name
     val formattedName = "${symbolName} (${file}:${symbolizedFrame.lineNumber})"
@@ -77,8 +70,18 @@ class HeapProfdConverter(private val abi: String,
     val frames: MutableMap<Long, Memory.AllocationStack.StackFrame> = HashMap()
     val classDb = ClassDb()
 
-    context.framesList.forEach {
-      frameIdToFrame[it.id] = toBestAvailableStackFrame(it)
+    // Symbolize all frames in one batch, so the symbolizer can deduplicate and pipeline the lookups.
+    val unsymbolizedFrames = context.framesList.map {
+      Memory.NativeCallStack.NativeFrame.newBuilder()
+        .setModuleName(String(Base64.decode(it.module)))
+        // +1 because the common symbolizer does -1 accounting for an offset heapprofd does not have.
+        // see IntellijNativeFrameSymbolizer:getOffsetOfPreviousInstruction
+        .setModuleOffset(it.relPc + 1)
+        .build()
+    }
+    val symbolizedFrames = symbolizer.symbolizeAll(abi, unsymbolizedFrames)
+    context.framesList.forEachIndexed { index, frame ->
+      frameIdToFrame[frame.id] = toBestAvailableStackFrame(frame, symbolizedFrames[index])
     }
     // Demangle in place is significantly faster than passing in names 1 by 1
     demangler.demangleInplace(frameIdToFrame.values)
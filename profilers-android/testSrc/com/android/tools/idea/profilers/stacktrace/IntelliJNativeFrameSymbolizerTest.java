@@ -20,7 +20,13 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.Symbol;
+import com.android.tools.nativeSymbolizer.SymbolRequest;
 import com.android.tools.profiler.proto.Memory.NativeCallStack;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Test;
@@ -58,6 +64,21 @@ public class IntelliJNativeFrameSymbolizerTest {
     assertThat(symbolizedFrame2).isEqualTo(expectedSymbolizedFrame2);
   }
 
+  @Test
+  public void testSymbolizeAllMatchesSymbolize() {
+    IntelliJNativeFrameSymbolizer frameSymbolizer = new IntelliJNativeFrameSymbolizer(new FakeNativeSymbolizer());
+    List<NativeCallStack.NativeFrame> frames = Arrays.asList(
+      NativeCallStack.NativeFrame.newBuilder().setModuleName("test").setModuleOffset(100).build(),
+      NativeCallStack.NativeFrame.newBuilder().setModuleName("test2").setModuleOffset(200).build(),
+      NativeCallStack.NativeFrame.newBuilder().setModuleName("test").setModuleOffset(100).build());
+
+    List<NativeCallStack.NativeFrame> symbolizedFrames = frameSymbolizer.symbolizeAll("arm", frames);
+    assertThat(symbolizedFrames).hasSize(3);
+    for (int i = 0; i < frames.size(); i++) {
+      assertThat(symbolizedFrames.get(i)).isEqualTo(frameSymbolizer.symbolize("arm", frames.get(i)));
+    }
+  }
+
   private static class FakeNativeSymbolizer implements NativeSymbolizer {
     @Nullable
     @Override
@@ -71,6 +92,19 @@ public class IntelliJNativeFrameSymbolizerTest {
       }
     }
 
+    @NotNull
+    @Override
+    public Map<SymbolRequest, Symbol> symbolizeAll(@NotNull Collection<SymbolRequest> requests) {
+      Map<SymbolRequest, Symbol> symbols = new HashMap<>();
+      for (SymbolRequest request : requests) {
+        Symbol symbol = symbolize(request.getAbiArch(), request.getModule(), request.getOffset());
+        if (symbol != null) {
+          symbols.put(request, symbol);
+        }
+      }
+      return symbols;
+    }
+
     @Override
     public void stop() {
     }
@@ -17,12 +17,39 @@ package com.android.tools.profilers.memory
 
 import com.android.tools.profilers.StageView
 import com.android.tools.profilers.StudioProfilersView
+import com.android.tools.profilers.stacktrace.LoadingPanel
+import javax.swing.Timer
 
 abstract class BaseMemoryProfilerStageView<T: BaseMemoryProfilerStage>(profilersView: StudioProfilersView,
                                                                        stage: T)
       : StageView<T>(profilersView, stage) {
 
-  fun makeLoadingPanel() = profilersView.ideProfilerComponents.createLoadingPanel(-1).apply {
-    setLoadingText("Fetching results")
+  /**
+   * Creates the panel shown while a capture loads. Its text includes the progress of the loading step, for captures that report it.
+   */
+  fun makeLoadingPanel(): LoadingPanel {
+    val panel = profilersView.ideProfilerComponents.createLoadingPanel(-1).apply {
+      setLoadingText(LOADING_TEXT)
+    }
+    val progressTimer = Timer(PROGRESS_UPDATE_INTERVAL_MS) {
+      val progress = stage.captureSelection.selectedCapture?.loadingProgress ?: -1.0
+      panel.setLoadingText(if (progress < 0) LOADING_TEXT else "$LOADING_TEXT (${(progress * 100).toInt()}%)")
+    }
+    return object : LoadingPanel by panel {
+      override fun startLoading() {
+        panel.startLoading()
+        progressTimer.start()
+      }
+
+      override fun stopLoading() {
+        progressTimer.stop()
+        panel.stopLoading()
+      }
+    }
+  }
+
+  private companion object {
+    const val LOADING_TEXT = "Fetching results"
+    const val PROGRESS_UPDATE_INTERVAL_MS = 250
   }
-}
\ No newline at end of file
+}
@@ -69,6 +69,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.function.ToLongFunction;
@@ -179,7 +180,8 @@ public final class MemoryClassifierView extends AspectObserver implements Captur
       makeColumn("Shallow Size", 120, ClassifierSet::getTotalShallowSize, Comparator.comparing(ClassifierSet::getName)));
     myAttributeColumns.put(
       ClassifierAttribute.RETAINED_SIZE,
-      makeColumn("Retained Size", 130, ClassifierSet::getTotalRetainedSize));
+      makeColumn("Retained Size", 130, ClassifierSet::getTotalRetainedSize,
+                 Comparator.comparingLong(ClassifierSet::getTotalRetainedSize), this::isComputingRetainedSizes));
     myAttributeColumns.put(
       ClassifierAttribute.ALLOCATIONS_SIZE,
       makeColumn("Allocations Size", 160, ClassifierSet::getAllocationSize));
@@ -198,9 +200,21 @@ public final class MemoryClassifierView extends AspectObserver implements Captur
                                                     int width,
                                                     @NotNull ToLongFunction<ClassifierSet> prop,
                                                     @NotNull Comparator<ClassifierSet> comp) {
+    return makeColumn(name, width, prop, comp, () -> false);
+  }
+
+  /**
+   * Make right-aligned, descending column displaying integer property with custom order for non-ClassSet values, or "-" while the
+   * property is still being computed.
+   */
+  private AttributeColumn<ClassifierSet> makeColumn(@NotNull String name,
+                                                    int width,
+                                                    @NotNull ToLongFunction<ClassifierSet> prop,
+                                                    @NotNull Comparator<ClassifierSet> comp,
+                                                    @NotNull BooleanSupplier isComputing) {
 
     Function<MemoryObjectTreeNode<ClassifierSet>, String> textGetter = node ->
-      NumberFormatter.formatInteger(prop.applyAsLong(node.getAdapter()));
+      isComputing.getAsBoolean() ? "-" : NumberFormatter.formatInteger(prop.applyAsLong(node.getAdapter()));
     final Supplier<ColoredTreeCellRenderer> renderer;
     if (mySelection.getIdeServices().getFeatureConfig().isSeparateHeapDumpUiEnabled()) {
       // Progress-bar style background that reflects percentage contribution
@@ -208,7 +222,7 @@ public final class MemoryClassifierView extends AspectObserver implements Captur
         textGetter, v -> null, SwingConstants.RIGHT,
         node -> {
           MemoryObjectTreeNode<ClassifierSet> parent = node.myParent;
-          if (parent == null) {
+          if (parent == null || isComputing.getAsBoolean()) {
             return 0;
           }
           else {
@@ -248,6 +262,10 @@ public final class MemoryClassifierView extends AspectObserver implements Captur
     return makeColumn(name, width, prop, Comparator.comparingLong(prop));
   }
 
+  private boolean isComputingRetainedSizes() {
+    return myCaptureObject != null && !myCaptureObject.hasRetainedSizes();
+  }
+
   @NotNull
   @Override
   public JComponent getComponent() {
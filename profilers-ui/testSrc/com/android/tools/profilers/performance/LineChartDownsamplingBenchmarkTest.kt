@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.chart.linechart.LineChart
+import com.android.tools.adtui.model.DownsamplingLongDataSeries
+import com.android.tools.adtui.model.LineChartModel
+import com.android.tools.adtui.model.LongDataSeries
+import com.android.tools.adtui.model.Range
+import com.android.tools.adtui.model.RangedContinuousSeries
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.time.Instant
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the time it takes a [LineChart] to redraw a long, zoomed out series when every point in the visible range goes through the
+ * default reducer, against a [DownsamplingLongDataSeries] that only returns a few points per pixel column.
+ */
+class LineChartDownsamplingBenchmarkTest {
+  companion object {
+    private const val POINT_COUNT = 2_000_000
+    private const val X_INTERVAL = 10L
+    private const val CHART_WIDTH = 1000
+    private const val CHART_HEIGHT = 200
+    private const val WARM_UP_COUNT = 5
+    private const val SAMPLE_COUNT = 20
+  }
+
+  private val benchmark = Benchmark.Builder("LineChart Redraw Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runBenchmark() {
+    measureRedraw("LineChart-Full-Series", LongDataSeries())
+    measureRedraw("LineChart-Downsampled-Series", DownsamplingLongDataSeries())
+  }
+
+  private fun measureRedraw(name: String, series: LongDataSeries) {
+    val random = Random(0)
+    for (i in 0 until POINT_COUNT) {
+      series.add(i * X_INTERVAL, random.nextInt(1000).toLong())
+    }
+    val xRange = Range(0.0, (POINT_COUNT * X_INTERVAL).toDouble())
+    val model = LineChartModel()
+    model.add(RangedContinuousSeries(name, xRange, Range(0.0, 1000.0), series))
+    val chart = LineChart(model)
+    chart.setSize(CHART_WIDTH, CHART_HEIGHT)
+    val image = BufferedImage(CHART_WIDTH, CHART_HEIGHT, BufferedImage.TYPE_INT_ARGB)
+
+    val metric = Metric(name)
+    repeat(WARM_UP_COUNT + SAMPLE_COUNT) { iteration ->
+      val graphics = image.createGraphics()
+      val startTime = System.nanoTime()
+      // Shifting the range forces the chart to query and redraw the series, like scrolling during live streaming does.
+      xRange.shift(X_INTERVAL.toDouble())
+      model.update(TimeUnit.SECONDS.toNanos(1))
+      chart.paint(graphics)
+      val elapsed = System.nanoTime() - startTime
+      graphics.dispose()
+      if (iteration >= WARM_UP_COUNT) {
+        metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
@@ -26,11 +26,14 @@ public interface FeatureConfig {
   boolean isCpuNewRecordingWorkflowEnabled();
   boolean isCustomEventVisualizationEnabled();
   boolean isEnergyProfilerEnabled();
+  boolean isIncrementalSeriesFetchEnabled();
   boolean isJniReferenceTrackingEnabled();
   boolean isLiveAllocationsEnabled();
   boolean isLiveAllocationsSamplingEnabled();
+  boolean isMappedHeapDumpLoadingEnabled();
   boolean isMemorySnapshotEnabled();
   boolean isNativeMemorySampleEnabled(); // Added in 4.1.
+  boolean isParallelHeapDominatorsEnabled();
   boolean isPerformanceMonitoringEnabled();
   boolean isSeparateHeapDumpUiEnabled();
   boolean isStartupCpuProfilingEnabled();
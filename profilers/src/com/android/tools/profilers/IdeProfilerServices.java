@@ -15,6 +15,8 @@
  */
 package com.android.tools.profilers;
 
+import com.android.tools.idea.transport.TransportBytesSource;
+import com.android.tools.idea.transport.poller.TransportEventSource;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.cpu.ProfilingConfiguration;
 import com.android.tools.profilers.cpu.TracePreProcessor;
@@ -182,4 +184,18 @@ public interface IdeProfilerServices {
    * parse and query Perfetto traces.
    */
   @NotNull TraceProcessorService getTraceProcessorService();
+
+  /**
+   * Returns the source pushing the events stored in the datastore the profilers read from, or null if the profilers should poll for new
+   * events instead.
+   */
+  @Nullable
+  TransportEventSource getTransportEventSource();
+
+  /**
+   * Returns the source giving direct access to the files the datastore keeps large bytes in, or null if the profilers can only fetch them
+   * with a {@link com.android.tools.profiler.proto.Transport.BytesRequest}.
+   */
+  @Nullable
+  TransportBytesSource getTransportBytesSource();
 }
@@ -27,6 +27,7 @@ import com.android.tools.adtui.model.formatter.TimeAxisFormatter;
 import com.android.tools.adtui.model.updater.Updatable;
 import com.android.tools.adtui.model.updater.Updater;
 import com.android.tools.idea.transport.poller.TransportEventPoller;
+import com.android.tools.idea.transport.poller.TransportEventSource;
 import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Common.AgentData;
@@ -187,6 +188,10 @@ public class StudioProfilers extends AspectModel<ProfilerAspect> implements Upda
   public final Map<Long, Integer> mySessionIdToAgentStatusRetryMap = new HashMap<>();
 
   private TransportEventPoller myTransportPoller;
+  /**
+   * Whether {@link #myTransportPoller} is woken up by the events pushed from the datastore, instead of being polled on updates.
+   */
+  private boolean myIsTransportPollerPushing;
 
   public StudioProfilers(@NotNull ProfilerClient client, @NotNull IdeProfilerServices ideServices) {
     this(client, ideServices, new FpsTimer(PROFILERS_UPDATE_RATE));
@@ -272,10 +277,18 @@ public class StudioProfilers extends AspectModel<ProfilerAspect> implements Upda
     myViewAxis = new ResizingAxisComponentModel.Builder(myTimeline.getViewRange(), TimeAxisFormatter.DEFAULT)
       .setGlobalRange(myTimeline.getDataRange()).build();
 
-    // Manage our own poll interval with the poller instead of using the ScheduledExecutorService helper provided in TransportEventPoller.
-    // The rest of the Studio code runs on its own updater and assumes all UI-related code (e.g. Aspect) be handled via the updating
-    // thread. Using the ScheduleExecutorService would violate that assumption and cause concurrency issues.
-    myTransportPoller = new TransportEventPoller(myClient.getTransportClient(), Comparator.comparing(Common.Event::getTimestamp));
+    TransportEventSource eventSource = myIdeServices.getTransportEventSource();
+    if (eventSource != null) {
+      // Listeners are notified of the pushed events through their own executors, so this does not break the assumption below.
+      myTransportPoller = TransportEventPoller.createPushPoller(myClient.getTransportClient(), eventSource);
+      myIsTransportPollerPushing = true;
+    }
+    else {
+      // Manage our own poll interval with the poller instead of using the ScheduledExecutorService helper provided in
+      // TransportEventPoller. The rest of the Studio code runs on its own updater and assumes all UI-related code (e.g. Aspect) be handled
+      // via the updating thread. Using the ScheduleExecutorService would violate that assumption and cause concurrency issues.
+      myTransportPoller = new TransportEventPoller(myClient.getTransportClient(), Comparator.comparing(Common.Event::getTimestamp));
+    }
 
     myUpdater.register(this);
   }
@@ -294,6 +307,9 @@ public class StudioProfilers extends AspectModel<ProfilerAspect> implements Upda
     }
     // The following line can't throw an exception, will stop the updater's timer and guarantees future calls to isStopped() return true.
     myUpdater.stop();
+    if (myIsTransportPollerPushing) {
+      TransportEventPoller.stopPoller(myTransportPoller);
+    }
     // The following lines trigger aspect changes and, therefore, can make many models to update. That might cause an exception to be thrown
     // and make some models inconsistent. In this case, we want future calls to this method to return early, as we can only make the
     // inconsistency worse if we call these lines again.
@@ -433,10 +449,12 @@ public class StudioProfilers extends AspectModel<ProfilerAspect> implements Upda
 
   @Override
   public void update(long elapsedNs) {
-    myEventPollingInternvalNs += elapsedNs;
-    if (myEventPollingInternvalNs >= TRANSPORT_POLLER_INTERVAL_NS) {
-      myTransportPoller.poll();
-      myEventPollingInternvalNs = 0;
+    if (!myIsTransportPollerPushing) {
+      myEventPollingInternvalNs += elapsedNs;
+      if (myEventPollingInternvalNs >= TRANSPORT_POLLER_INTERVAL_NS) {
+        myTransportPoller.poll();
+        myEventPollingInternvalNs = 0;
+      }
     }
 
     myRefreshDevices += elapsedNs;
@@ -330,8 +330,8 @@ public class CpuCaptureParser {
     private final IdeProfilerServices services;
 
     // Parsers used by parseToCapture
-    private static final Supplier<TraceParser> ART_PARSER_SUPPLIER = () -> new ArtTraceParser();
-    private static final Supplier<TraceParser> SIMPLEPERF_PARSER_SUPPLIER = () -> new SimpleperfTraceParser();
+    private final Supplier<TraceParser> ART_PARSER_SUPPLIER = () -> new ArtTraceParser(services.getPoolExecutor());
+    private final Supplier<TraceParser> SIMPLEPERF_PARSER_SUPPLIER = () -> new SimpleperfTraceParser(services.getPoolExecutor());
     private final Supplier<TraceParser> ATRACE_PARSER_SUPPLIER = () -> new AtraceParser(getMainProcessSelector());
     private final Supplier<TraceParser> PERFETTO_PARSER_SUPPLIER = () -> new PerfettoParser(getMainProcessSelector(), getProfilerServices());
 
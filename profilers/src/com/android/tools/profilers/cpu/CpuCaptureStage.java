@@ -97,7 +97,7 @@ public class CpuCaptureStage extends Stage<Timeline> {
     try {
       File trace = FileUtil.createTempFile(String.format(Locale.US, "cpu_trace_%d", traceId), ".trace", true);
       try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(data.toByteArray());
+        data.writeTo(out);
       }
       return trace;
     }
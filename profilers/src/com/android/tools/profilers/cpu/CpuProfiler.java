@@ -42,7 +42,6 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -213,12 +212,12 @@ public class CpuProfiler extends StudioProfiler {
       if (info.getConfiguration().getUserOptions().getTraceType() == CpuTraceType.ATRACE) {
         File trace = FileUtil.createTempFile(String.format("cpu_trace_%d", info.getTraceId()), ".trace", true);
         try (FileOutputStream out = new FileOutputStream(trace)) {
-          out.write(traceResponse.getContents().toByteArray());
+          traceResponse.getContents().writeTo(out);
         }
         AtraceExporter.export(trace, outputStream);
       }
       else {
-        FileUtil.copy(new ByteArrayInputStream(traceResponse.getContents().toByteArray()), outputStream);
+        traceResponse.getContents().writeTo(outputStream);
       }
     }
     catch (IOException exception) {
@@ -68,6 +68,7 @@ public class CpuUsage extends LineChartModel {
       series = new LegacyCpuUsageDataSeries(profilers.getClient().getCpuClient(), profilers.getSession(), false);
     }
     myCpuSeries = new RangedContinuousSeries(getCpuSeriesLabel(), viewRange, myCpuRange, series, dataRange);
+    myCpuSeries.setIncrementalFetch(profilers.getIdeServices().getFeatureConfig().isIncrementalSeriesFetchEnabled());
     add(myCpuSeries);
   }
 
@@ -23,16 +23,34 @@ import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Builds the call tree of each thread of an ART method trace.
+ * <p>
+ * {@link com.android.tools.perflib.vmtrace.VmTraceParser} reports the method entries and exits of all the threads interleaved, one at a
+ * time. Instead of growing the call trees as they are reported, the handler only resolves the method of each action, from the method
+ * table shared by all threads, and appends it to a compact per-thread table. Once the trace is parsed, the tree of each thread is built
+ * from its table by a separate task on the given executor.
+ */
 public class ArtTraceHandler implements VmTraceHandler {
   private static final String MAIN_THREAD_NAME = "main";
   private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+  private static final TraceAction[] TRACE_ACTIONS = TraceAction.values();
   private long myStartTimeUs;
   private long myElapsedTimeUs;
 
@@ -47,13 +65,29 @@ public class ArtTraceHandler implements VmTraceHandler {
   private final Map<Long, CaptureNodeModel> myMethods = new HashMap<>();
 
   /**
-   * Map from thread id to per thread stack call constructor.
+   * Map from thread id to the method actions of the thread, in the order they were reported.
    */
-  private final Map<Integer, CaptureNodeConstructor> myNodeConstructors = new HashMap<>();
+  private final Map<Integer, ThreadActions> myThreadActions = new LinkedHashMap<>();
+
+  /**
+   * Executor used to build the call trees of the threads in parallel.
+   */
+  @NotNull private final Executor myExecutor;
 
   @Nullable
   private Map<CpuThreadInfo, CaptureNode> myThreadsGraph;
 
+  public ArtTraceHandler() {
+    this(MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param executor executor used to build the call trees of the threads in parallel, e.g. the profiler pool executor.
+   */
+  public ArtTraceHandler(@NotNull Executor executor) {
+    myExecutor = executor;
+  }
+
   @Override
   public void addThread(int id, String name) {
     myThreads.put(id, name);
@@ -77,13 +111,12 @@ public class ArtTraceHandler implements VmTraceHandler {
       myMethods.put(methodId, new SingleNameModel("unknown"));
     }
 
-    CaptureNodeConstructor constructor = myNodeConstructors.get(threadId);
-    if (constructor == null) {
-      CaptureNodeModel topLevelModel = createUniqueMethodForThread(threadId);
-      constructor = new CaptureNodeConstructor(topLevelModel);
-      myNodeConstructors.put(threadId, constructor);
+    ThreadActions actions = myThreadActions.get(threadId);
+    if (actions == null) {
+      actions = new ThreadActions(createUniqueMethodForThread(threadId));
+      myThreadActions.put(threadId, actions);
     }
-    constructor.addTraceAction(myMethods.get(methodId), methodAction, threadTime, globalTime);
+    actions.add(myMethods.get(methodId), methodAction, threadTime, globalTime);
   }
 
   private CaptureNodeModel createUniqueMethodForThread(int threadId) {
@@ -102,30 +135,65 @@ public class ArtTraceHandler implements VmTraceHandler {
     return myThreadsGraph;
   }
 
+  /**
+   * Builds the tree of each thread from {@link #myThreadActions}. Each thread is built by a separate task on {@link #myExecutor}, and the
+   * calling thread runs the tasks that have not been picked up yet.
+   */
   @NotNull
   private Map<CpuThreadInfo, CaptureNode> createThreadsGraph() {
     Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(myThreads.size());
 
-    for (Map.Entry<Integer, String> entry : myThreads.entrySet()) {
-      final int id = entry.getKey();
-      final String name = entry.getValue();
+    List<CpuThreadInfo> threads = new ArrayList<>(myThreadActions.size());
+    List<FutureTask<CaptureNode>> tasks = new ArrayList<>(myThreadActions.size());
+    for (Map.Entry<Integer, ThreadActions> entry : myThreadActions.entrySet()) {
+      int id = entry.getKey();
+      String name = myThreads.get(id);
+      ThreadActions actions = entry.getValue();
+      threads.add(new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME)));
+      FutureTask<CaptureNode> task = new FutureTask<>(() -> buildThreadTree(actions));
+      tasks.add(task);
+      myExecutor.execute(task);
+    }
 
-      CaptureNodeConstructor constructor = myNodeConstructors.get(id);
-      if (constructor == null) {
-        continue;
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        FutureTask<CaptureNode> task = tasks.get(i);
+        // Run the task on this thread if the executor has not started it yet. This is a no-op otherwise.
+        task.run();
+        threadsGraph.put(threads.get(i), task.get());
       }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while building the call trees.", e);
+    }
+    catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+    // The trees hold everything needed from now on.
+    myThreadActions.clear();
 
-      CaptureNode topLevelCall = constructor.getTopLevel();
-      assert topLevelCall != null;
-      CpuThreadInfo info = new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME));
-
-      long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
-      adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+    return threadsGraph;
+  }
 
-      threadsGraph.put(info, topLevelCall);
+  /**
+   * Replays the actions of a thread into its call tree. This only reads the method models of the actions, so threads can be built
+   * concurrently.
+   */
+  @NotNull
+  private CaptureNode buildThreadTree(@NotNull ThreadActions actions) {
+    CaptureNodeConstructor constructor = new CaptureNodeConstructor(actions.myTopLevelModel);
+    for (int i = 0; i < actions.mySize; i++) {
+      constructor.addTraceAction(actions.myMethods[i], TRACE_ACTIONS[actions.myActions[i]], actions.myThreadTimes[i],
+                                 actions.myGlobalTimes[i]);
     }
 
-    return threadsGraph;
+    CaptureNode topLevelCall = constructor.getTopLevel();
+    assert topLevelCall != null;
+    long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
+    adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+    return topLevelCall;
   }
 
   /**
@@ -178,4 +246,37 @@ public class ArtTraceHandler implements VmTraceHandler {
   public void setVersion(int version) {
     // We don't need this information
   }
+
+  /**
+   * The method actions of a thread, stored as parallel arrays instead of one object per action.
+   */
+  private static final class ThreadActions {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @NotNull private final CaptureNodeModel myTopLevelModel;
+    @NotNull private CaptureNodeModel[] myMethods = new CaptureNodeModel[INITIAL_CAPACITY];
+    @NotNull private byte[] myActions = new byte[INITIAL_CAPACITY];
+    @NotNull private int[] myThreadTimes = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myGlobalTimes = new int[INITIAL_CAPACITY];
+    private int mySize;
+
+    private ThreadActions(@NotNull CaptureNodeModel topLevelModel) {
+      myTopLevelModel = topLevelModel;
+    }
+
+    private void add(@NotNull CaptureNodeModel method, @NotNull TraceAction action, int threadTime, int globalTime) {
+      if (mySize == myMethods.length) {
+        int capacity = mySize * 2;
+        myMethods = Arrays.copyOf(myMethods, capacity);
+        myActions = Arrays.copyOf(myActions, capacity);
+        myThreadTimes = Arrays.copyOf(myThreadTimes, capacity);
+        myGlobalTimes = Arrays.copyOf(myGlobalTimes, capacity);
+      }
+      myMethods[mySize] = method;
+      myActions[mySize] = (byte)action.ordinal();
+      myThreadTimes[mySize] = threadTime;
+      myGlobalTimes[mySize] = globalTime;
+      mySize++;
+    }
+  }
 }
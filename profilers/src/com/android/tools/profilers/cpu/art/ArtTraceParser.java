@@ -21,8 +21,10 @@ import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profilers.cpu.BaseCpuCapture;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.TraceParser;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -30,7 +32,18 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ArtTraceParser implements TraceParser {
 
-  private final ArtTraceHandler myTraceHandler = new ArtTraceHandler();
+  private final ArtTraceHandler myTraceHandler;
+
+  public ArtTraceParser() {
+    this(MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param executor executor used to build the call trees of the threads in parallel, e.g. the profiler pool executor.
+   */
+  public ArtTraceParser(@NotNull Executor executor) {
+    myTraceHandler = new ArtTraceHandler(executor);
+  }
 
   @Override
   public CpuCapture parse(@NotNull File trace, long traceId) throws IOException {
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class takes the Atrace lines converted from {@link PerfettoTrace.FtraceEventBundle} and returns them sorted by timestamp.
+ * The bundles come in out of order, as well as the lines within a bundle, but the events of a single CPU are mostly sorted already.
+ * <p>
+ * Lines are buffered per CPU. When the buffered lines exceed the memory budget, each CPU buffer is sorted, which is close to linear for
+ * mostly sorted input, and they are merged into a sorted run written to a temporary file. Once all lines have been added, the iterator
+ * does a k-way merge of the runs on disk and the CPU buffers still in memory.
+ * <p>
+ * Lines with the same timestamp are returned in the order they were added if they come from the same CPU.
+ */
+public class PerfettoPacketSorter implements Iterator<String> {
+  /**
+   * Used by {@link #addLine(long, String)} for lines that don't come from a specific CPU.
+   */
+  private static final int NO_CPU = -1;
+
+  private static final long DEFAULT_MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+
+  /**
+   * Estimated memory used by a buffered line, in addition to its characters: the String and its array headers, plus the slots in the
+   * buffer arrays.
+   */
+  private static final int LINE_OVERHEAD_BYTES = 64;
+
+  private static final Comparator<Run> RUN_COMPARATOR =
+    Comparator.<Run>comparingLong(run -> run.myTimestamp).thenComparingInt(run -> run.myIndex);
+
+  private final long myMaxBufferedBytes;
+  @NotNull private final Map<Integer, LineBuffer> myCpuBuffers = new HashMap<>();
+  @NotNull private final List<File> myRunFiles = new ArrayList<>();
+  private long myBufferedBytes;
+
+  /**
+   * Runs being merged, ordered by the timestamp of their current line. Null until {@link #resetForIterator()} is called.
+   */
+  @Nullable private PriorityQueue<Run> myMerge;
+
+  private static Logger getLogger() {
+    return Logger.getInstance(PerfettoPacketSorter.class);
+  }
+
+  public PerfettoPacketSorter() {
+    this(DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  @VisibleForTesting
+  public PerfettoPacketSorter(long maxBufferedBytes) {
+    myMaxBufferedBytes = maxBufferedBytes;
+  }
+
+  public void addLine(long timestamp, @NotNull String line) {
+    addLine(NO_CPU, timestamp, line);
+  }
+
+  /**
+   * As a trace file is loaded each line converted from a FtraceEventBundle event should be added to the sorter, along with the CPU of the
+   * bundle.
+   */
+  public void addLine(int cpu, long timestamp, @NotNull String line) {
+    myCpuBuffers.computeIfAbsent(cpu, key -> new LineBuffer()).add(timestamp, line);
+    myBufferedBytes += LINE_OVERHEAD_BYTES + 2L * line.length();
+    if (myBufferedBytes > myMaxBufferedBytes) {
+      spill();
+    }
+  }
+
+  /**
+   * This function should be called when we want to finalize this class for writing and enable it for reading.
+   * The runs written to disk and the lines still buffered are merged as the lines are iterated.
+   */
+  public void resetForIterator() {
+    PriorityQueue<Run> merge = new PriorityQueue<>(RUN_COMPARATOR);
+    int index = 0;
+    for (File file : myRunFiles) {
+      try {
+        addToMerge(merge, new FileRun(index++, file));
+      }
+      catch (IOException ex) {
+        getLogger().error(ex);
+      }
+    }
+    for (LineBuffer buffer : myCpuBuffers.values()) {
+      buffer.sort();
+      addToMerge(merge, new BufferRun(index++, buffer));
+    }
+    myCpuBuffers.clear();
+    myBufferedBytes = 0;
+    myMerge = merge;
+  }
+
+  /**
+   * Deletes the runs written to disk and free resources.
+   */
+  public void close() {
+    if (myMerge != null) {
+      myMerge.forEach(Run::close);
+      myMerge = null;
+    }
+    for (File file : myRunFiles) {
+      FileUtil.delete(file);
+    }
+    myRunFiles.clear();
+    myCpuBuffers.clear();
+    myBufferedBytes = 0;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return myMerge != null && !myMerge.isEmpty();
+  }
+
+  @Override
+  @NotNull
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Run run = myMerge.poll();
+    String line = run.myLine;
+    addToMerge(myMerge, run);
+    return line;
+  }
+
+  /**
+   * Moves the run to its next line and puts it back in the merge, unless it is exhausted.
+   */
+  private static void addToMerge(@NotNull PriorityQueue<Run> merge, @NotNull Run run) {
+    try {
+      if (run.advance()) {
+        merge.add(run);
+        return;
+      }
+    }
+    catch (IOException ex) {
+      getLogger().error(ex);
+    }
+    run.close();
+  }
+
+  /**
+   * Sorts the CPU buffers and writes them, merged, as a single sorted run to a temporary file.
+   */
+  private void spill() {
+    PriorityQueue<Run> merge = new PriorityQueue<>(RUN_COMPARATOR);
+    int index = 0;
+    for (LineBuffer buffer : myCpuBuffers.values()) {
+      buffer.sort();
+      addToMerge(merge, new BufferRun(index++, buffer));
+    }
+    myCpuBuffers.clear();
+    myBufferedBytes = 0;
+
+    try {
+      File file = FileUtil.createTempFile("perfetto", ".run", true);
+      myRunFiles.add(file);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+        while (!merge.isEmpty()) {
+          Run run = merge.poll();
+          byte[] bytes = run.myLine.getBytes(StandardCharsets.UTF_8);
+          out.writeLong(run.myTimestamp);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+          addToMerge(merge, run);
+        }
+      }
+    }
+    catch (IOException ex) {
+      // The lines that could not be written are lost, as the previous implementation did when an insert failed.
+      getLogger().warn(ex);
+    }
+  }
+
+  /**
+   * Lines of a single CPU in the order they were added, until {@link #sort()} is called.
+   */
+  private static final class LineBuffer {
+    private long[] myTimestamps = new long[1024];
+    private String[] myLines = new String[1024];
+    private int mySize;
+
+    void add(long timestamp, @NotNull String line) {
+      if (mySize == myTimestamps.length) {
+        myTimestamps = Arrays.copyOf(myTimestamps, mySize * 2);
+        myLines = Arrays.copyOf(myLines, mySize * 2);
+      }
+      myTimestamps[mySize] = timestamp;
+      myLines[mySize] = line;
+      mySize++;
+    }
+
+    /**
+     * Stable sort by timestamp. Skipped if the lines are already sorted, which is common for a single CPU.
+     */
+    void sort() {
+      boolean isSorted = true;
+      for (int i = 1; i < mySize && isSorted; i++) {
+        isSorted = myTimestamps[i - 1] <= myTimestamps[i];
+      }
+      if (isSorted) {
+        return;
+      }
+      Integer[] order = new Integer[mySize];
+      for (int i = 0; i < mySize; i++) {
+        order[i] = i;
+      }
+      // Arrays.sort on objects is a merge sort, which is stable and close to linear on mostly sorted input.
+      long[] timestamps = myTimestamps;
+      Arrays.sort(order, Comparator.comparingLong(i -> timestamps[i]));
+      long[] sortedTimestamps = new long[mySize];
+      String[] sortedLines = new String[mySize];
+      for (int i = 0; i < mySize; i++) {
+        sortedTimestamps[i] = myTimestamps[order[i]];
+        sortedLines[i] = myLines[order[i]];
+      }
+      myTimestamps = sortedTimestamps;
+      myLines = sortedLines;
+    }
+  }
+
+  /**
+   * A sorted sequence of lines taking part in a merge. {@link #myTimestamp} and {@link #myLine} hold its current line.
+   */
+  private abstract static class Run {
+    /**
+     * Breaks timestamp ties between runs, so runs created first come first.
+     */
+    final int myIndex;
+    long myTimestamp;
+    String myLine;
+
+    Run(int index) {
+      myIndex = index;
+    }
+
+    /**
+     * @return false if the run has no more lines.
+     */
+    abstract boolean advance() throws IOException;
+
+    void close() {
+    }
+  }
+
+  private static final class BufferRun extends Run {
+    @NotNull private final LineBuffer myBuffer;
+    private int myPosition;
+
+    BufferRun(int index, @NotNull LineBuffer buffer) {
+      super(index);
+      myBuffer = buffer;
+    }
+
+    @Override
+    boolean advance() {
+      if (myPosition == myBuffer.mySize) {
+        return false;
+      }
+      myTimestamp = myBuffer.myTimestamps[myPosition];
+      myLine = myBuffer.myLines[myPosition];
+      // Release the line as soon as it has been read.
+      myBuffer.myLines[myPosition] = null;
+      myPosition++;
+      return true;
+    }
+  }
+
+  private static final class FileRun extends Run {
+    @NotNull private final DataInputStream myInput;
+
+    FileRun(int index, @NotNull File file) throws IOException {
+      super(index);
+      myInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    @Override
+    boolean advance() throws IOException {
+      try {
+        myTimestamp = myInput.readLong();
+      }
+      catch (EOFException ex) {
+        return false;
+      }
+      byte[] bytes = new byte[myInput.readInt()];
+      myInput.readFully(bytes);
+      myLine = new String(bytes, StandardCharsets.UTF_8);
+      return true;
+    }
+
+    @Override
+    void close() {
+      try {
+        myInput.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+}
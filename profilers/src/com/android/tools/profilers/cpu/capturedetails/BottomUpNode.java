@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
@@ -33,6 +34,13 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   private final boolean myIsRoot;
   private boolean myChildrenBuilt;
 
+  /**
+   * Sums of the nodes counted in {@link #getGlobalTotal()}, see {@link #update(Range)}, or null until they are needed. They depend on the
+   * clock type of the nodes, {@link #myOuterSumsClockType}, and are dropped whenever a node is added.
+   */
+  @Nullable private IntervalSums myOuterSums;
+  @Nullable private ClockType myOuterSumsClockType;
+
   private BottomUpNode(String id) {
     super(id);
     myIsRoot = false;
@@ -94,6 +102,12 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     myPathNodes.add(node);
   }
 
+  @Override
+  protected void addNode(@NotNull CaptureNode node) {
+    super.addNode(node);
+    myOuterSums = null;
+  }
+
   public boolean buildChildren() {
     if (myChildrenBuilt) {
       return false;
@@ -132,6 +146,15 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
   @Override
   public void update(@NotNull Range range) {
+    NodeSums sums = getNodeSums();
+    if (sums != null) {
+      myGlobalTotal = getOuterSums().getIntersectionLength(range.getMin(), range.getMax());
+      double self = sums.myGlobal.getIntersectionLength(range.getMin(), range.getMax()) -
+                    sums.myChildrenGlobal.getIntersectionLength(range.getMin(), range.getMax());
+      myGlobalChildrenTotal = myGlobalTotal - self;
+      return;
+    }
+
     // how much time was spent in this call stack path, and in the functions it called
     myGlobalTotal = 0;
     // how much time was spent doing work directly in this call stack path
@@ -174,6 +197,34 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     myGlobalChildrenTotal = myGlobalTotal - self;
   }
 
+  /**
+   * @return the sums of the nodes that are at the top of the call stack, i.e. the nodes {@link #update(Range)} adds to the total. Which
+   * nodes these are does not depend on the range, so they are only found once per clock type.
+   */
+  @NotNull
+  private IntervalSums getOuterSums() {
+    ClockType clockType = myNodes.get(0).getClockType();
+    if (myOuterSums != null && myOuterSumsClockType == clockType) {
+      return myOuterSums;
+    }
+    List<CaptureNode> outerNodes = new ArrayList<>();
+    Map<CaptureNode, CaptureNode> outerSoFarByParent = new HashMap<>();
+    for (CaptureNode node : myNodes) {
+      CaptureNode root = node.findRootNode();
+      CaptureNode outerSoFar = outerSoFarByParent.get(root);
+      if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
+        if (outerSoFar != null) {
+          outerNodes.add(outerSoFar);
+        }
+        outerSoFarByParent.put(root, node);
+      }
+    }
+    outerNodes.addAll(outerSoFarByParent.values());
+    myOuterSums = createSums(outerNodes, ClockType.GLOBAL);
+    myOuterSumsClockType = clockType;
+    return myOuterSums;
+  }
+
   @NotNull
   @Override
   public CaptureNodeModel getMethodModel() {
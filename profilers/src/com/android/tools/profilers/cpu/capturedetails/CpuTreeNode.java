@@ -22,8 +22,16 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import java.util.ArrayList;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class CpuTreeNode<T extends CpuTreeNode> {
+  /**
+   * Nodes with at least this many {@link CaptureNode}s answer {@link #update(Range)} and {@link #inRange(Range)} from
+   * {@link IntervalSums} built on first use, instead of going over all of their nodes on every range change. Below that, going over the
+   * nodes is cheaper than building the sums.
+   */
+  static final int INTERVAL_SUMS_MIN_NODES = 32;
+
   /**
    * References to {@link CaptureNode} that are used to extract information from to represent this CpuTreeNode,
    * such as {@link #getGlobalTotal()}, {@link #getGlobalChildrenTotal()}, etc...
@@ -37,6 +45,11 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myThreadTotal = 0;
   protected double myThreadChildrenTotal = 0;
 
+  /**
+   * Sums of {@link #myNodes} and of their children, or null until they are needed. Dropped whenever a node is added.
+   */
+  @Nullable private NodeSums myNodeSums;
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -47,6 +60,7 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    myNodeSums = null;
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -88,6 +102,15 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
     myThreadTotal = 0.0;
     myThreadChildrenTotal = 0;
 
+    NodeSums sums = getNodeSums();
+    if (sums != null) {
+      myGlobalTotal = sums.myGlobal.getIntersectionLength(range.getMin(), range.getMax());
+      myThreadTotal = sums.myThread.getIntersectionLength(range.getMin(), range.getMax());
+      myGlobalChildrenTotal = sums.myChildrenGlobal.getIntersectionLength(range.getMin(), range.getMax());
+      myThreadChildrenTotal = sums.myChildrenThread.getIntersectionLength(range.getMin(), range.getMax());
+      return;
+    }
+
     for (CaptureNode node : myNodes) {
       myGlobalTotal += getIntersection(range, node, ClockType.GLOBAL);
       myThreadTotal += getIntersection(range, node, ClockType.THREAD);
@@ -105,9 +128,29 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public boolean inRange(Range range) {
+    NodeSums sums = getNodeSums();
+    if (sums != null && range.getMin() < range.getMax()) {
+      // getStart() and getEnd() follow the clock type of the nodes.
+      IntervalSums current = myNodes.get(0).getClockType() == ClockType.THREAD ? sums.myThread : sums.myGlobal;
+      return current.overlaps(range.getMin(), range.getMax());
+    }
     return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
   }
 
+  /**
+   * @return the sums of {@link #myNodes} and of their children, or null if there are too few nodes for them to pay off.
+   */
+  @Nullable
+  protected NodeSums getNodeSums() {
+    if (myNodes.size() < INTERVAL_SUMS_MIN_NODES) {
+      return null;
+    }
+    if (myNodeSums == null) {
+      myNodeSums = new NodeSums(myNodes);
+    }
+    return myNodeSums;
+  }
+
   public void reset() {
     myGlobalTotal = 0;
     myGlobalChildrenTotal = 0;
@@ -123,4 +166,37 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   public boolean isUnmatched() {
     return getFilterType() == CaptureNode.FilterType.UNMATCH;
   }
+
+  /**
+   * {@link IntervalSums} of a list of {@link CaptureNode}s, and of all their children, for both clocks.
+   */
+  protected static final class NodeSums {
+    @NotNull final IntervalSums myGlobal;
+    @NotNull final IntervalSums myThread;
+    @NotNull final IntervalSums myChildrenGlobal;
+    @NotNull final IntervalSums myChildrenThread;
+
+    private NodeSums(@NotNull List<CaptureNode> nodes) {
+      myGlobal = createSums(nodes, ClockType.GLOBAL);
+      myThread = createSums(nodes, ClockType.THREAD);
+      List<CaptureNode> children = new ArrayList<>();
+      for (CaptureNode node : nodes) {
+        children.addAll(node.getChildren());
+      }
+      myChildrenGlobal = createSums(children, ClockType.GLOBAL);
+      myChildrenThread = createSums(children, ClockType.THREAD);
+    }
+  }
+
+  @NotNull
+  static IntervalSums createSums(@NotNull List<CaptureNode> nodes, @NotNull ClockType type) {
+    long[] starts = new long[nodes.size()];
+    long[] ends = new long[nodes.size()];
+    for (int i = 0; i < nodes.size(); i++) {
+      CaptureNode node = nodes.get(i);
+      starts[i] = type == ClockType.GLOBAL ? node.getStartGlobal() : node.getStartThread();
+      ends[i] = type == ClockType.GLOBAL ? node.getEndGlobal() : node.getEndThread();
+    }
+    return new IntervalSums(starts, ends);
+  }
 }
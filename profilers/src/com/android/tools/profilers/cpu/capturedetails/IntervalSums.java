@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Answers, in logarithmic time, how much of a set of intervals falls within a range, and whether any interval overlaps the range.
+ * <p>
+ * The length of [s, e] within [a, b] is {@code clamp(e) - clamp(s)}, where {@code clamp(x) = min(max(x, a), b)}. Summed over all the
+ * intervals, this is the sum of the clamped ends minus the sum of the clamped starts. The ends and the starts are kept sorted, each with
+ * prefix sums, so each sum is two binary searches: the values below a count as a, the values above b count as b, and the values in
+ * between are read from the prefix sums. The intervals may overlap or nest.
+ * <p>
+ * Values are stored relative to the smallest start, so the prefix sums of long traces with absolute timestamps fit in a long.
+ */
+final class IntervalSums {
+  private final long myBase;
+  @NotNull private final long[] myStarts;
+  @NotNull private final long[] myEnds;
+  @NotNull private final long[] myStartPrefixSums;
+  @NotNull private final long[] myEndPrefixSums;
+
+  /**
+   * @param starts the starts of the intervals.
+   * @param ends   the ends of the intervals, in the same order as the starts. Intervals that end before they start, e.g. nodes that never
+   *               got an end, are left out: they don't add to any length and are not considered to overlap anything.
+   */
+  IntervalSums(@NotNull long[] starts, @NotNull long[] ends) {
+    assert starts.length == ends.length;
+    int size = 0;
+    for (int i = 0; i < starts.length; i++) {
+      if (starts[i] <= ends[i]) {
+        starts[size] = starts[i];
+        ends[size] = ends[i];
+        size++;
+      }
+    }
+    if (size < starts.length) {
+      starts = Arrays.copyOf(starts, size);
+      ends = Arrays.copyOf(ends, size);
+    }
+    Arrays.sort(starts);
+    Arrays.sort(ends);
+    myBase = starts.length == 0 ? 0 : starts[0];
+    myStarts = starts;
+    myEnds = ends;
+    myStartPrefixSums = prefixSums(starts, myBase);
+    myEndPrefixSums = prefixSums(ends, myBase);
+  }
+
+  int size() {
+    return myStarts.length;
+  }
+
+  /**
+   * @return the sum of the lengths of the intervals within [min, max], the same as summing {@link
+   * com.android.tools.adtui.model.Range#getIntersectionLength(double, double)} over the intervals.
+   */
+  double getIntersectionLength(double min, double max) {
+    if (min >= max || myStarts.length == 0) {
+      return 0;
+    }
+    return clampedSum(myEnds, myEndPrefixSums, min, max) - clampedSum(myStarts, myStartPrefixSums, min, max);
+  }
+
+  /**
+   * @return whether an interval starts before max and ends after min. Requires min < max.
+   */
+  boolean overlaps(double min, double max) {
+    assert min < max;
+    // Every interval ending at or before min also starts before max, so these are the intervals starting before max minus the intervals
+    // that are done by min.
+    return countBelow(myStarts, max) > countAtMost(myEnds, min);
+  }
+
+  private double clampedSum(@NotNull long[] values, @NotNull long[] prefixSums, double min, double max) {
+    int belowMin = countBelow(values, min);
+    int atMostMax = countAtMost(values, max);
+    double relativeMin = min - myBase;
+    double relativeMax = max - myBase;
+    return relativeMin * belowMin + (prefixSums[atMostMax] - prefixSums[belowMin]) + relativeMax * (values.length - atMostMax);
+  }
+
+  @NotNull
+  private static long[] prefixSums(@NotNull long[] values, long base) {
+    long[] sums = new long[values.length + 1];
+    for (int i = 0; i < values.length; i++) {
+      sums[i + 1] = sums[i] + (values[i] - base);
+    }
+    return sums;
+  }
+
+  /**
+   * @return the number of sorted values strictly less than the threshold.
+   */
+  private static int countBelow(@NotNull long[] sorted, double threshold) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < threshold) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the number of sorted values less than or equal to the threshold.
+   */
+  private static int countAtMost(@NotNull long[] sorted, double threshold) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] <= threshold) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
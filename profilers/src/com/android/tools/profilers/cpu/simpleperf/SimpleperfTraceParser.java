@@ -15,11 +15,10 @@
  */
 package com.android.tools.profilers.cpu.simpleperf;
 
-import com.android.tools.profilers.cpu.BaseCpuCapture;
-import com.google.common.annotations.VisibleForTesting;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profiler.proto.SimpleperfReport;
+import com.android.tools.profilers.cpu.BaseCpuCapture;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
@@ -28,7 +27,8 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.File;
 import java.io.FileInputStream;
@@ -38,15 +38,23 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Parses a trace file obtained using simpleperf to a map threadId -> {@link CaptureNode}.
+ * <p>
+ * Records are decoded in a single pass over the file. Samples are not kept: each one is routed to the {@link ThreadTreeBuilder} of its
+ * thread, which only records the call chain entries that differ from the previous sample of that thread, so memory is bounded by the size
+ * of the call trees rather than by the number of samples. Since the symbol files are only known at the end of the trace, the
+ * {@link CaptureNode} trees are then built from the builders, one task per thread.
  */
 public class SimpleperfTraceParser implements TraceParser {
 
@@ -83,15 +91,20 @@ public class SimpleperfTraceParser implements TraceParser {
   private final Map<Integer, SimpleperfReport.Thread> myThreads;
 
   /**
-   * List of samples containing method trace data.
+   * Maps a thread id to the builder of its call tree, fed with the thread's samples while the trace file is read.
    */
-  @VisibleForTesting final List<SimpleperfReport.Sample> mySamples;
+  private final Map<Integer, ThreadTreeBuilder> myThreadBuilders;
 
   /**
    * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
    */
   private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees;
 
+  /**
+   * Executor used to build the call trees of the threads in parallel.
+   */
+  @NotNull private final Executor myExecutor;
+
   /**
    * Number of samples read from trace file.
    */
@@ -102,6 +115,17 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private long myLostSampleCount;
 
+  /**
+   * Number of sample records actually present in the trace file.
+   */
+  private long mySamplesRead;
+
+  /**
+   * Timestamps, in nanoseconds, of the first and last samples of the trace file.
+   */
+  private long myFirstSampleTimestamp;
+  private long myLastSampleTimestamp;
+
   /**
    * Capture range in absolute time, measured in microseconds.
    */
@@ -121,10 +145,18 @@ public class SimpleperfTraceParser implements TraceParser {
   private String myAppDataFolderPrefix;
 
   public SimpleperfTraceParser() {
+    this(MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param executor executor used to build the call trees of the threads in parallel, e.g. the profiler pool executor.
+   */
+  public SimpleperfTraceParser(@NotNull Executor executor) {
     myFiles = new HashMap<>();
-    mySamples = new ArrayList<>();
+    myThreadBuilders = new HashMap<>();
     myCaptureTrees = new HashMap<>();
     myThreads = new HashMap<>();
+    myExecutor = executor;
   }
 
   /**
@@ -135,20 +167,6 @@ public class SimpleperfTraceParser implements TraceParser {
     return splitPath[splitPath.length - 1];
   }
 
-  private static boolean equals(SimpleperfReport.Sample.CallChainEntry c1, SimpleperfReport.Sample.CallChainEntry c2) {
-    boolean isSameFileAndSymbolId = c1.getFileId() == c2.getFileId() && c1.getSymbolId() == c2.getSymbolId();
-    if (!isSameFileAndSymbolId) {
-      // Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal.
-      return false;
-    }
-    if (c1.getSymbolId() == -1) {
-      // Symbol is invalid, fallback to vaddress
-      return c1.getVaddrInFile() == c2.getVaddrInFile();
-    }
-    // Both file and symbol id match, and symbol is valid
-    return true;
-  }
-
   private static Logger getLog() {
     return Logger.getInstance(SimpleperfTraceParser.class);
   }
@@ -201,7 +219,7 @@ public class SimpleperfTraceParser implements TraceParser {
    * message Record(record_N) (having record_size_N bytes)
    * LittleEndian32(0)
    * <p>
-   * Parsed data is stored in {@link #myFiles} and {@link #mySamples}.
+   * Parsed data is stored in {@link #myFiles} and {@link #myThreads}, and samples are fed to {@link #myThreadBuilders}.
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
@@ -214,10 +232,11 @@ public class SimpleperfTraceParser implements TraceParser {
 
     // 0 is used to indicate the end of the trace
     while (recordSize != 0) {
-      // The next recordSize bytes should represent the record
-      byte[] recordBytes = new byte[recordSize];
-      buffer.get(recordBytes);
-      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      // The next recordSize bytes should represent the record. Decode it directly from the mapped file instead of copying it first.
+      ByteBuffer recordBuffer = buffer.slice();
+      recordBuffer.limit(recordSize);
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBuffer);
+      buffer.position(buffer.position() + recordSize);
 
       switch (record.getRecordDataCase()) {
         case FILE:
@@ -231,8 +250,7 @@ public class SimpleperfTraceParser implements TraceParser {
           myLostSampleCount = situation.getLostCount();
           break;
         case SAMPLE:
-          SimpleperfReport.Sample sample = record.getSample();
-          mySamples.add(sample);
+          addSample(record.getSample());
           break;
         case THREAD:
           SimpleperfReport.Thread thread = record.getThread();
@@ -252,12 +270,21 @@ public class SimpleperfTraceParser implements TraceParser {
       recordSize = buffer.getInt();
     }
 
-    if (mySamples.size() != mySampleCount) {
+    if (mySamplesRead != mySampleCount) {
       // TODO: create a trace file to test this exception is thrown when it should.
       throw new IllegalStateException("Samples count doesn't match the number of samples read.");
     }
   }
 
+  private void addSample(@NotNull SimpleperfReport.Sample sample) {
+    if (mySamplesRead == 0) {
+      myFirstSampleTimestamp = sample.getTime();
+    }
+    myLastSampleTimestamp = sample.getTime();
+    mySamplesRead++;
+    myThreadBuilders.computeIfAbsent(sample.getThreadId(), threadId -> new ThreadTreeBuilder(threadId, sample.getTime())).addSample(sample);
+  }
+
   /**
    * Parses the next 16-bit number of the given {@link ByteBuffer} as the trace version.
    */
@@ -278,39 +305,46 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the data from {@link #mySamples} into a map of tid -> {@link CaptureNode}.
+   * Builds the {@link CaptureNode} tree of each thread from {@link #myThreadBuilders} into {@link #myCaptureTrees}. Each thread is built
+   * by a separate task on {@link #myExecutor}, and the calling thread runs the tasks that have not been picked up yet.
    */
   private void parseSampleData() {
-    if (mySamples.isEmpty()) {
+    if (mySamplesRead == 0) {
       return;
     }
     // Set the capture range
-    long startTimestamp = mySamples.get(0).getTime();
-    long endTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(startTimestamp), TimeUnit.NANOSECONDS.toMicros(endTimestamp));
-
-    // Split the samples per thread.
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
+    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(myFirstSampleTimestamp), TimeUnit.NANOSECONDS.toMicros(myLastSampleTimestamp));
 
-    // Process the samples for each thread
-    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+    List<ThreadTreeBuilder> builders = new ArrayList<>(myThreadBuilders.values());
+    List<FutureTask<CaptureNode>> tasks = new ArrayList<>(builders.size());
+    for (ThreadTreeBuilder builder : builders) {
+      if (!myThreads.containsKey(builder.myThreadId)) {
+        throw new IllegalStateException("Malformed trace file: thread with id " + builder.myThreadId + " not found.");
+      }
+      FutureTask<CaptureNode> task = new FutureTask<>(() -> buildThreadTree(builder));
+      tasks.add(task);
+      myExecutor.execute(task);
     }
-  }
 
-  /**
-   * Group the samples collected by thread.
-   */
-  private Map<Integer, List<SimpleperfReport.Sample>> splitSamplesPerThread() {
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = new HashMap<>();
-    for (SimpleperfReport.Sample sample : mySamples) {
-      int threadId = sample.getThreadId();
-      if (!threadSamples.containsKey(threadId)) {
-        threadSamples.put(threadId, new ArrayList<>());
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        FutureTask<CaptureNode> task = tasks.get(i);
+        // Run the task on this thread if the executor has not started it yet. This is a no-op otherwise.
+        task.run();
+        SimpleperfReport.Thread thread = myThreads.get(builders.get(i).myThreadId);
+        myCaptureTrees.put(new CpuThreadInfo(thread.getThreadId(), thread.getThreadName(), thread.getThreadId() == thread.getProcessId()),
+                           task.get());
       }
-      threadSamples.get(threadId).add(sample);
     }
-    return threadSamples;
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while building the call trees.", e);
+    }
+    catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+    myThreadBuilders.clear();
   }
 
   // TODO: support thread time
@@ -326,143 +360,165 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the list of samples of a thread into a {@link CaptureNode} tree.
+   * Converts the nodes recorded by a {@link ThreadTreeBuilder} into a {@link CaptureNode} tree. Only reads state that is not modified
+   * anymore once the trace file has been read, so it can be called concurrently for different threads.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
-    if (threadSamples.isEmpty()) {
-      getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
-      return;
-    }
-
-    if (!myThreads.containsKey(threadId)) {
-      throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
-    }
+  @NotNull
+  private CaptureNode buildThreadTree(@NotNull ThreadTreeBuilder builder) {
+    // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
+    // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
+    builder.finish(myLastSampleTimestamp);
 
     // Add a root node to represent the thread itself.
-    long firstTimestamp = threadSamples.get(0).getTime();
-    SimpleperfReport.Thread thread = myThreads.get(threadId);
-    CaptureNode root = createCaptureNode(new SingleNameModel(thread.getThreadName()), firstTimestamp);
-    root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), root);
-
-    // Parse the first call chain so we have a value for lastCallchain
-    List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
-    // Node used to traverse the tree. In the first traversal we pass an empty list as previous call chain and root as last visited node.
-    CaptureNode lastVisitedNode = parseCallChain(previousCallChain, Collections.emptyList(), threadSamples.get(0).getTime(), root);
-
-    // Now parse all the rest of the samples collected for this thread
-    for (int i = 1; i < threadSamples.size(); i++) {
-      SimpleperfReport.Sample sample = threadSamples.get(i);
-      // Reverse the call chain order because simpleperf returns the call chains ordered from leaf to root,
-      // so reversing it makes the traversal easier.
-      List<SimpleperfReport.Sample.CallChainEntry> callChain = Lists.reverse(sample.getCallchainList());
-      // TODO: when --trace-offcpu is supported, we will need to call updateAncestorsEndTime if sample has a "schedule" out event.
-      lastVisitedNode = parseCallChain(callChain, previousCallChain, sample.getTime(), lastVisitedNode);
-      previousCallChain = callChain;
+    SimpleperfReport.Thread thread = myThreads.get(builder.myThreadId);
+    CaptureNode[] nodes = new CaptureNode[builder.myNodeCount];
+    nodes[0] = createCaptureNode(new SingleNameModel(thread.getThreadName()), builder.myStarts[0]);
+    setNodeEndTime(nodes[0], builder.myEnds[0]);
+
+    // Nodes are recorded in the order they were first seen, so parents always come before their children and siblings are in call order.
+    for (int i = 1; i < builder.myNodeCount; i++) {
+      int parentIndex = builder.myParents[i];
+      CaptureNodeModel model = methodModelFromCallchainEntry(builder.myFileIds[i], builder.mySymbolIds[i], builder.myVAddresses[i],
+                                                             builder.myParentVAddresses[i]);
+      CaptureNode node = createCaptureNode(model, builder.myStarts[i]);
+      setNodeEndTime(node, builder.myEnds[i]);
+      CaptureNode parent = nodes[parentIndex];
+      parent.addChild(node);
+      node.setDepth(parent.getDepth() + 1);
+      nodes[i] = node;
     }
-
-    // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
-    // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
-    long lastTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    updateAncestorsEndTime(lastTimestamp, lastVisitedNode);
-    // update the root timestamp
-    setNodeEndTime(root, lastTimestamp);
+    return nodes[0];
   }
 
-  /**
-   * Updates the end timestamp of a node and all its ancestors except the root.
-   */
-  private static void updateAncestorsEndTime(long endTimestamp, CaptureNode lastVisited) {
-    CaptureNode node = lastVisited;
-    while (node.getParent() != null && node.getEnd() == 0) {
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
-      assert node != null;
+  private CaptureNodeModel methodModelFromCallchainEntry(int fileId, int symbolId, long vAddress, long parentVAddress) {
+    SimpleperfReport.File symbolFile = myFiles.get(fileId);
+    if (symbolFile == null) {
+      throw new IllegalStateException("Symbol file with id \"" + fileId + "\" not found.");
     }
+    if (symbolId == INVALID_SYMBOL_ID) {
+      // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
+      String hexAddress = "0x" + Long.toHexString(vAddress);
+      String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
+      return new NoSymbolModel(methodName);
+    }
+    // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel. User's code symbols come from
+    // files located inside the app's directory, therefore we check if the symbol path has the same prefix of such directory.
+    boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
+    return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten, symbolFile.getPath(), parentVAddress);
   }
 
   /**
-   * Given a {@link SimpleperfReport.Sample.CallChainEntry} and the previous one, add the new method calls as nodes to the tree and set
-   * their start time to the given timestamp. Also, check which methods are not on the call chain anymore and update their end time.
-   * Receives a {@link CaptureNode} as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
-   * last visited node.
+   * Builds the call tree of a single thread as samples are read, without resolving symbols. Nodes are stored in parallel arrays indexed
+   * by node id, node 0 being the thread itself, and the path from the root to the node of the last sample's leaf is kept in a stack.
    */
-  private CaptureNode parseCallChain(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain,
-                                     long sampleTimestamp, CaptureNode lastVisitedNode) {
-    // Node used to traverse the tree when adding new nodes or going up to find the divergent node ancestor.
-    CaptureNode traversalNode = lastVisitedNode;
-
-    // Find the node where the current call chain diverge from the previous one
-    int divergenceIndex = 0;
-    while (divergenceIndex < callChain.size() && divergenceIndex < previousCallChain.size() &&
-           equals(previousCallChain.get(divergenceIndex), callChain.get(divergenceIndex))) {
-      divergenceIndex++;
+  private static final class ThreadTreeBuilder {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int myThreadId;
+
+    private int myNodeCount = 1;
+    private int[] myParents = new int[INITIAL_CAPACITY];
+    private int[] myFileIds = new int[INITIAL_CAPACITY];
+    private int[] mySymbolIds = new int[INITIAL_CAPACITY];
+    private long[] myVAddresses = new long[INITIAL_CAPACITY];
+    /**
+     * The vAddress of the parent in the sample that created the node, or -1 for children of the thread root. It corresponds to the line
+     * of the parent function where the node's function is called, which may differ from the parent's own vAddress since nodes with the
+     * same symbol are merged.
+     */
+    private long[] myParentVAddresses = new long[INITIAL_CAPACITY];
+    private long[] myStarts = new long[INITIAL_CAPACITY];
+    /**
+     * End timestamps of the nodes, or 0 for the ones that are still in the stack.
+     */
+    private long[] myEnds = new long[INITIAL_CAPACITY];
+
+    private int[] myStack = new int[INITIAL_CAPACITY];
+    private int myStackSize = 1;
+
+    ThreadTreeBuilder(int threadId, long firstTimestamp) {
+      myThreadId = threadId;
+      myStarts[0] = firstTimestamp;
     }
 
-    // If there is a divergence, we update the end time of the traversal node and go up in the tree until we find the divergent node parent.
-    if (divergenceIndex < previousCallChain.size()) {
-      int divergenceCount = previousCallChain.size() - divergenceIndex;
-      traversalNode = findDivergenceAndUpdateEndTime(divergenceCount, sampleTimestamp, traversalNode);
-    }
-
-    // We add the new nodes (if any) present in the new call chain as descendants of the parent of the first divergent node.
-    if (divergenceIndex < callChain.size()) {
-      traversalNode = addNewNodes(callChain, traversalNode, divergenceIndex, sampleTimestamp);
-    }
+    /**
+     * Adds the nodes of the sample's call chain that differ from the previous sample, and sets the end time of the ones that are not on
+     * the call chain anymore.
+     */
+    void addSample(@NotNull SimpleperfReport.Sample sample) {
+      // simpleperf returns the call chains ordered from leaf to root, so we walk them backwards.
+      // TODO: when --trace-offcpu is supported, we will need to end the whole stack if sample has a "schedule" out event.
+      List<SimpleperfReport.Sample.CallChainEntry> callChain = sample.getCallchainList();
+      long timestamp = sample.getTime();
+
+      // Find the depth where the current call chain diverges from the previous one
+      int depth = 0;
+      while (depth < callChain.size() && depth + 1 < myStackSize &&
+             matches(myStack[depth + 1], callChain.get(callChain.size() - 1 - depth))) {
+        depth++;
+      }
 
-    // Finally, return the traversal node.
-    return traversalNode;
-  }
+      // The nodes of the previous call chain below the divergence are not being called anymore.
+      for (int i = myStackSize - 1; i > depth; i--) {
+        myEnds[myStack[i]] = timestamp;
+      }
+      myStackSize = depth + 1;
 
-  /**
-   * Updates the end timestamp of a given node and go up in the tree N times, where N is the divergence count passed as an argument.
-   * Returns the parent of the last visited node, meaning nodes that we have changed the end time.
-   */
-  private static CaptureNode findDivergenceAndUpdateEndTime(int divergenceCount, long endTimestamp, CaptureNode node) {
-    for (int i = 0; i < divergenceCount; i++) {
-      assert node != null;
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
+      // Add the new nodes as descendants of the last common node.
+      for (int i = depth; i < callChain.size(); i++) {
+        SimpleperfReport.Sample.CallChainEntry entry = callChain.get(callChain.size() - 1 - i);
+        long parentVAddress = i > 0 ? callChain.get(callChain.size() - i).getVaddrInFile() : -1;
+        push(addNode(myStack[myStackSize - 1], entry, parentVAddress, timestamp));
+      }
     }
 
-    return node;
-  }
+    /**
+     * Sets the end time of the thread root and of the nodes that are still being called at the end of the trace.
+     */
+    void finish(long lastTimestamp) {
+      for (int i = 0; i < myStackSize; i++) {
+        myEnds[myStack[i]] = lastTimestamp;
+      }
+      myStackSize = 1;
+    }
 
-  /**
-   * Given a list of call chain entries and a start index, convert them to {@link CaptureNode} and add them as descendants of a given node.
-   * Returns the last visited (added) node.
-   */
-  private CaptureNode addNewNodes(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                  CaptureNode node, int startIndex, long startTimestamp) {
-    assert node != null;
-    for (int i = startIndex; i < callChain.size(); i++) {
-      // Get the parent function vAddress. That corresponds to the line of the parent function where the current function is called.
-      long parentVAddress = i > 0 ? callChain.get(i - 1).getVaddrInFile() : -1;
-      CaptureNode child = createCaptureNode(methodModelFromCallchainEntry(callChain.get(i), parentVAddress), startTimestamp);
-      node.addChild(child);
-      child.setDepth(node.getDepth() + 1);
-      node = child;
+    /**
+     * Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal. If the symbol is
+     * invalid, fallback to vaddress.
+     */
+    private boolean matches(int node, @NotNull SimpleperfReport.Sample.CallChainEntry entry) {
+      if (myFileIds[node] != entry.getFileId() || mySymbolIds[node] != entry.getSymbolId()) {
+        return false;
+      }
+      return entry.getSymbolId() != INVALID_SYMBOL_ID || myVAddresses[node] == entry.getVaddrInFile();
     }
-    // Return the last added node, as it's the visited one
-    return node;
-  }
 
-  private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
-    int symbolId = callChainEntry.getSymbolId();
-    SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
-    if (symbolFile == null) {
-      throw new IllegalStateException("Symbol file with id \"" + callChainEntry.getFileId() + "\" not found.");
+    private int addNode(int parent, @NotNull SimpleperfReport.Sample.CallChainEntry entry, long parentVAddress, long startTimestamp) {
+      if (myNodeCount == myParents.length) {
+        int capacity = myNodeCount * 2;
+        myParents = Arrays.copyOf(myParents, capacity);
+        myFileIds = Arrays.copyOf(myFileIds, capacity);
+        mySymbolIds = Arrays.copyOf(mySymbolIds, capacity);
+        myVAddresses = Arrays.copyOf(myVAddresses, capacity);
+        myParentVAddresses = Arrays.copyOf(myParentVAddresses, capacity);
+        myStarts = Arrays.copyOf(myStarts, capacity);
+        myEnds = Arrays.copyOf(myEnds, capacity);
+      }
+      int node = myNodeCount++;
+      myParents[node] = parent;
+      myFileIds[node] = entry.getFileId();
+      mySymbolIds[node] = entry.getSymbolId();
+      myVAddresses[node] = entry.getVaddrInFile();
+      myParentVAddresses[node] = parentVAddress;
+      myStarts[node] = startTimestamp;
+      return node;
     }
-    if (symbolId == INVALID_SYMBOL_ID) {
-      // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
-      String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
-      String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
-      return new NoSymbolModel(methodName);
+
+    private void push(int node) {
+      if (myStackSize == myStack.length) {
+        myStack = Arrays.copyOf(myStack, myStackSize * 2);
+      }
+      myStack[myStackSize++] = node;
     }
-    // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel. User's code symbols come from
-    // files located inside the app's directory, therefore we check if the symbol path has the same prefix of such directory.
-    boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
-    return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten, symbolFile.getPath(), parentVAddress);
   }
 }
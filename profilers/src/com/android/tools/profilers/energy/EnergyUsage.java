@@ -45,6 +45,7 @@ public class EnergyUsage extends LineChartModel {
     }
     myTotalUsageDataSeries = new RangedContinuousSeries(getSeriesLabel(), profilers.getTimeline().getViewRange(), myUsageRange, dataSeries,
                                                         profilers.getTimeline().getDataRange());
+    myTotalUsageDataSeries.setIncrementalFetch(profilers.getIdeServices().getFeatureConfig().isIncrementalSeriesFetchEnabled());
     add(myTotalUsageDataSeries);
   }
 
@@ -19,6 +19,7 @@ import com.android.tools.profilers.ProfilerMode
 import com.android.tools.profilers.StreamingStage
 import com.android.tools.profilers.StudioProfilers
 import com.android.tools.profilers.memory.adapters.CaptureObject
+import com.android.tools.profilers.memory.adapters.HeapDumpCaptureObject
 import com.android.tools.profilers.memory.adapters.classifiers.HeapSet
 import com.google.common.util.concurrent.MoreExecutors
 import com.intellij.openapi.diagnostic.Logger
@@ -97,6 +98,14 @@ abstract class BaseMemoryProfilerStage(profilers: StudioProfilers, protected val
             }
             // Triggers the aspect to inform listeners that the heap content/filter has changed.
             captureSelection.refreshSelectedHeap()
+            // Retained sizes of a memory-mapped heap dump are computed after the class list is shown.
+            (loadedCaptureObject as? HeapDumpCaptureObject)?.retainedSizeComputation?.addListener(
+              Runnable {
+                if (captureSelection.selectedCapture === loadedCaptureObject) {
+                  captureSelection.refreshSelectedHeap()
+                }
+              },
+              joiner ?: MoreExecutors.directExecutor())
           }
           catch (exception: InterruptedException) {
             Thread.currentThread().interrupt()
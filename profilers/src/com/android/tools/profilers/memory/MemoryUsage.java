@@ -55,7 +55,10 @@ public class MemoryUsage extends LineChartModel {
                                                             @NotNull Function<MemorySample, Long> getter) {
     MemoryServiceGrpc.MemoryServiceBlockingStub client = profilers.getClient().getMemoryClient();
     MemoryDataSeries series = new MemoryDataSeries(client, profilers.getSession(), getter);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    RangedContinuousSeries rangedSeries =
+      new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    rangedSeries.setIncrementalFetch(profilers.getIdeServices().getFeatureConfig().isIncrementalSeriesFetchEnabled());
+    return rangedSeries;
   }
 
   protected RangedContinuousSeries createRangedSeries(@NotNull StudioProfilers profilers,
@@ -70,7 +73,10 @@ public class MemoryUsage extends LineChartModel {
                                                                        Common.Event.Kind.MEMORY_USAGE,
                                                                        groupId,
                                                                        dataExtractor);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    RangedContinuousSeries rangedSeries =
+      new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    rangedSeries.setIncrementalFetch(profilers.getIdeServices().getFeatureConfig().isIncrementalSeriesFetchEnabled());
+    return rangedSeries;
   }
 
   @NotNull
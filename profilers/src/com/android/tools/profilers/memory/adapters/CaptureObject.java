@@ -189,6 +189,21 @@ public interface CaptureObject extends MemoryObject {
 
   boolean isError();
 
+  /**
+   * @return the fraction of the current loading step that is done, from 0 to 1, or -1 if it is unknown.
+   */
+  default double getLoadingProgress() {
+    return -1;
+  }
+
+  /**
+   * @return false while the retained sizes of a loaded capture are still being computed. They read as
+   * {@link MemoryObject#INVALID_VALUE} until then.
+   */
+  default boolean hasRetainedSizes() {
+    return true;
+  }
+
   void unload();
 
   @NotNull
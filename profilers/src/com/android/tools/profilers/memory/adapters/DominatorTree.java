@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Dominators, distances from the root and retained sizes of the nodes of an object graph, where nodes are ints and node 0 is the root.
+ * <p>
+ * The graph is given as the predecessors of each node in compressed sparse row form: the predecessors of node {@code v} are
+ * {@code predecessors[predecessorStarts[v]]} to {@code predecessors[predecessorStarts[v + 1] - 1]}. Immediate dominators are computed with
+ * the semi-NCA algorithm, which is a variant of Lengauer-Tarjan that is simpler and faster in practice. Retained sizes are accumulated up
+ * the dominator tree one level at a time, with the nodes of large levels processed in parallel.
+ * <p>
+ * The computation checks for thread interruption and throws {@link CancellationException} when interrupted.
+ */
+public final class DominatorTree {
+  public static final int NO_NODE = -1;
+  public static final int UNREACHABLE_DEPTH = Integer.MAX_VALUE;
+
+  /**
+   * Levels of the dominator tree with fewer nodes than this are accumulated on the calling thread.
+   */
+  private static final int PARALLEL_LEVEL_MIN_NODES = 4096;
+  private static final int INTERRUPTION_CHECK_INTERVAL = 1 << 16;
+
+  @NotNull private final int[] myImmediateDominators;
+  @NotNull private final int[] myDepths;
+  @NotNull private final long[] myRetainedSizes;
+
+  private DominatorTree(@NotNull int[] immediateDominators, @NotNull int[] depths, @NotNull long[] retainedSizes) {
+    myImmediateDominators = immediateDominators;
+    myDepths = depths;
+    myRetainedSizes = retainedSizes;
+  }
+
+  /**
+   * @param sizes the shallow size of each node.
+   */
+  @NotNull
+  public static DominatorTree compute(@NotNull int[] predecessorStarts,
+                                      @NotNull int[] predecessors,
+                                      @NotNull long[] sizes) {
+    int nodeCount = sizes.length;
+    assert predecessorStarts.length == nodeCount + 1;
+
+    // Successors are needed to walk the graph from the root.
+    int[] successorStarts = new int[nodeCount + 1];
+    int[] successors = new int[predecessors.length];
+    for (int predecessor : predecessors) {
+      successorStarts[predecessor + 1]++;
+    }
+    for (int v = 0; v < nodeCount; v++) {
+      successorStarts[v + 1] += successorStarts[v];
+    }
+    int[] successorPositions = Arrays.copyOf(successorStarts, nodeCount);
+    for (int v = 0; v < nodeCount; v++) {
+      for (int i = predecessorStarts[v]; i < predecessorStarts[v + 1]; i++) {
+        successors[successorPositions[predecessors[i]]++] = v;
+      }
+    }
+
+    // Depth first search from the root, numbering the nodes in preorder. Only reachable nodes get a number.
+    int[] preorder = new int[nodeCount];
+    Arrays.fill(preorder, NO_NODE);
+    int[] nodes = new int[nodeCount];
+    int[] parents = new int[nodeCount];
+    int reachableCount = 0;
+    int[] stackNodes = new int[nodeCount];
+    int[] stackPositions = new int[nodeCount];
+    int stackSize = 0;
+    if (nodeCount > 0) {
+      preorder[0] = reachableCount;
+      nodes[reachableCount] = 0;
+      parents[reachableCount++] = NO_NODE;
+      stackNodes[0] = 0;
+      stackPositions[0] = successorStarts[0];
+      stackSize = 1;
+    }
+    while (stackSize > 0) {
+      int v = stackNodes[stackSize - 1];
+      int position = stackPositions[stackSize - 1];
+      if (position == successorStarts[v + 1]) {
+        stackSize--;
+        continue;
+      }
+      stackPositions[stackSize - 1]++;
+      int w = successors[position];
+      if (preorder[w] == NO_NODE) {
+        checkInterrupted(reachableCount);
+        preorder[w] = reachableCount;
+        nodes[reachableCount] = w;
+        parents[reachableCount++] = preorder[v];
+        stackNodes[stackSize] = w;
+        stackPositions[stackSize++] = successorStarts[w];
+      }
+    }
+    stackNodes = null;
+    stackPositions = null;
+
+    // Semidominators, in reverse preorder, using the link-eval forest with path compression. All arrays below are indexed by preorder
+    // number.
+    int[] semi = new int[reachableCount];
+    int[] labels = new int[reachableCount];
+    int[] ancestors = new int[reachableCount];
+    int[] compressionStack = new int[reachableCount];
+    for (int i = 0; i < reachableCount; i++) {
+      semi[i] = i;
+      labels[i] = i;
+      ancestors[i] = NO_NODE;
+    }
+    for (int w = reachableCount - 1; w > 0; w--) {
+      checkInterrupted(w);
+      int node = nodes[w];
+      for (int i = predecessorStarts[node]; i < predecessorStarts[node + 1]; i++) {
+        int v = preorder[predecessors[i]];
+        if (v == NO_NODE) {
+          continue;
+        }
+        int u = eval(v, ancestors, labels, semi, compressionStack);
+        if (semi[u] < semi[w]) {
+          semi[w] = semi[u];
+        }
+      }
+      ancestors[w] = parents[w];
+    }
+    labels = null;
+    ancestors = null;
+    compressionStack = null;
+
+    // Immediate dominators: the nearest common ancestor in the dominator tree of the parent and the semidominator.
+    int[] dominators = new int[reachableCount];
+    for (int w = 1; w < reachableCount; w++) {
+      int dominator = parents[w];
+      while (dominator > semi[w]) {
+        dominator = dominators[dominator];
+      }
+      dominators[w] = dominator;
+    }
+    semi = null;
+
+    int[] immediateDominators = new int[nodeCount];
+    Arrays.fill(immediateDominators, NO_NODE);
+    for (int w = 1; w < reachableCount; w++) {
+      immediateDominators[nodes[w]] = nodes[dominators[w]];
+    }
+
+    int[] depths = computeDepths(nodeCount, successorStarts, successors);
+
+    long[] retainedSizes = computeRetainedSizes(sizes, nodes, dominators, reachableCount);
+    return new DominatorTree(immediateDominators, depths, retainedSizes);
+  }
+
+  /**
+   * @return the immediate dominator of the node, or {@link #NO_NODE} for the root and unreachable nodes.
+   */
+  public int getImmediateDominator(int node) {
+    return myImmediateDominators[node];
+  }
+
+  /**
+   * @return the length of the shortest path from the root to the node, or {@link #UNREACHABLE_DEPTH}.
+   */
+  public int getDepth(int node) {
+    return myDepths[node];
+  }
+
+  /**
+   * @return the sum of the sizes of the nodes dominated by this node, including itself, or 0 if the node is unreachable.
+   */
+  public long getRetainedSize(int node) {
+    return myRetainedSizes[node];
+  }
+
+  public int getNodeCount() {
+    return myDepths.length;
+  }
+
+  private static int eval(int v, @NotNull int[] ancestors, @NotNull int[] labels, @NotNull int[] semi, @NotNull int[] stack) {
+    if (ancestors[v] == NO_NODE) {
+      return v;
+    }
+    // Iterative path compression, from the top of the path down to v.
+    int size = 0;
+    for (int w = v; ancestors[ancestors[w]] != NO_NODE; w = ancestors[w]) {
+      stack[size++] = w;
+    }
+    while (size > 0) {
+      int w = stack[--size];
+      int ancestor = ancestors[w];
+      if (semi[labels[ancestor]] < semi[labels[w]]) {
+        labels[w] = labels[ancestor];
+      }
+      ancestors[w] = ancestors[ancestor];
+    }
+    return labels[v];
+  }
+
+  @NotNull
+  private static int[] computeDepths(int nodeCount, @NotNull int[] successorStarts, @NotNull int[] successors) {
+    int[] depths = new int[nodeCount];
+    Arrays.fill(depths, UNREACHABLE_DEPTH);
+    if (nodeCount == 0) {
+      return depths;
+    }
+    int[] queue = new int[nodeCount];
+    int head = 0;
+    int tail = 0;
+    depths[0] = 0;
+    queue[tail++] = 0;
+    while (head < tail) {
+      checkInterrupted(head);
+      int v = queue[head++];
+      for (int i = successorStarts[v]; i < successorStarts[v + 1]; i++) {
+        int w = successors[i];
+        if (depths[w] == UNREACHABLE_DEPTH) {
+          depths[w] = depths[v] + 1;
+          queue[tail++] = w;
+        }
+      }
+    }
+    return depths;
+  }
+
+  /**
+   * Accumulates the sizes of the nodes into their dominators, from the deepest level of the dominator tree up, so all the nodes of a level
+   * are final before their sizes are added to the level above.
+   *
+   * @param nodes      the nodes, by preorder number.
+   * @param dominators the immediate dominator of each node, by preorder number.
+   */
+  @NotNull
+  private static long[] computeRetainedSizes(@NotNull long[] sizes, @NotNull int[] nodes, @NotNull int[] dominators, int reachableCount) {
+    // Group the nodes by level with a counting sort. Dominators come before the nodes they dominate in preorder.
+    int[] levels = new int[reachableCount];
+    int levelCount = reachableCount > 0 ? 1 : 0;
+    for (int w = 1; w < reachableCount; w++) {
+      levels[w] = levels[dominators[w]] + 1;
+      levelCount = Math.max(levelCount, levels[w] + 1);
+    }
+    int[] levelStarts = new int[levelCount + 1];
+    for (int w = 0; w < reachableCount; w++) {
+      levelStarts[levels[w] + 1]++;
+    }
+    for (int level = 0; level < levelCount; level++) {
+      levelStarts[level + 1] += levelStarts[level];
+    }
+    int[] positions = Arrays.copyOf(levelStarts, levelCount);
+    int[] byLevel = new int[reachableCount];
+    for (int w = 0; w < reachableCount; w++) {
+      byLevel[positions[levels[w]]++] = w;
+    }
+
+    AtomicLongArray retained = new AtomicLongArray(reachableCount);
+    for (int w = 0; w < reachableCount; w++) {
+      retained.set(w, sizes[nodes[w]]);
+    }
+    for (int level = levelCount - 1; level > 0; level--) {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new CancellationException();
+      }
+      int start = levelStarts[level];
+      int end = levelStarts[level + 1];
+      if (end - start >= PARALLEL_LEVEL_MIN_NODES) {
+        IntStream.range(start, end).parallel().forEach(i -> retained.addAndGet(dominators[byLevel[i]], retained.get(byLevel[i])));
+      }
+      else {
+        for (int i = start; i < end; i++) {
+          retained.addAndGet(dominators[byLevel[i]], retained.get(byLevel[i]));
+        }
+      }
+    }
+
+    long[] retainedSizes = new long[sizes.length];
+    for (int w = 0; w < reachableCount; w++) {
+      retainedSizes[nodes[w]] = retained.get(w);
+    }
+    return retainedSizes;
+  }
+
+  private static void checkInterrupted(int iteration) {
+    if (iteration % INTERRUPTION_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+      throw new CancellationException();
+    }
+  }
+}
@@ -21,24 +21,31 @@ import static com.android.tools.profilers.memory.adapters.CaptureObject.Classifi
 import static com.android.tools.profilers.memory.adapters.CaptureObject.ClassifierAttribute.RETAINED_SIZE;
 import static com.android.tools.profilers.memory.adapters.CaptureObject.ClassifierAttribute.SHALLOW_SIZE;
 import static com.android.tools.profilers.memory.adapters.ClassDb.JAVA_LANG_CLASS;
+import static com.android.tools.profilers.memory.adapters.MemoryObject.INVALID_VALUE;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.idea.transport.TransportBytesSource;
 import com.android.tools.perflib.heap.ClassObj;
 import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
+import com.android.tools.perflib.heap.io.HprofBuffer;
 import com.android.tools.perflib.heap.io.InMemoryBuffer;
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
 import com.android.tools.profiler.proto.Transport;
 import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.ProfilerClient;
 import com.android.tools.profilers.analytics.FeatureTracker;
+import com.android.tools.profilers.memory.ClassGrouping;
 import com.android.tools.profilers.memory.MemoryProfiler;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
 import com.android.tools.profilers.memory.adapters.classifiers.AllHeapSet;
+import com.android.tools.profilers.memory.adapters.classifiers.ClassSet;
+import com.android.tools.profilers.memory.adapters.classifiers.Classifier;
 import com.android.tools.profilers.memory.adapters.classifiers.ClassifierSet;
 import com.android.tools.profilers.memory.adapters.classifiers.HeapSet;
 import com.android.tools.profilers.memory.adapters.instancefilters.ActivityFragmentLeakInstanceFilter;
@@ -51,8 +58,15 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import gnu.trove.TLongObjectHashMap;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -61,10 +75,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -73,6 +89,8 @@ import org.jetbrains.annotations.Nullable;
 
 public class HeapDumpCaptureObject implements CaptureObject {
 
+  private static final int HPROF_WRITE_CHUNK_SIZE = 1024 * 1024;
+
   @NotNull
   private final ProfilerClient myClient;
 
@@ -85,8 +103,18 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   private final Map<Integer, HeapSet> myHeapSets = new HashMap<>();
 
+  /**
+   * The instances of each heap, by heap id, grouped by class. Their InstanceObjects are only created once the {@link ClassSet} holding them
+   * needs its instances, see {@link HeapDumpInstances}.
+   */
+  @NotNull
+  private final Map<Integer, List<HeapDumpInstances>> myInstancesByHeap = new HashMap<>();
+
+  /**
+   * The class objects of each heap, by heap id, which are few enough to be always created.
+   */
   @NotNull
-  private final TLongObjectHashMap<InstanceObject> myInstanceIndex = new TLongObjectHashMap<>();
+  private final Map<Integer, List<InstanceObject>> myClassObjectsByHeap = new HashMap<>();
 
   @NotNull
   private final ClassDb myClassDb = new ClassDb();
@@ -106,16 +134,52 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @NotNull private final IdeProfilerServices myIdeProfilerServices;
 
+  @Nullable private InstanceObject myJavaLangClassObject;
+
   private final ActivityFragmentLeakInstanceFilter myActivityFragmentLeakFilter;
 
   private final Set<CaptureObjectInstanceFilter> mySupportedInstanceFilters;
 
   private final Set<CaptureObjectInstanceFilter> myCurrentInstanceFilters = new HashSet<>();
 
+  // Incremented each time the heaps are asked to be refreshed, so older refreshes can stop.
+  private final AtomicInteger myLatestRefreshId = new AtomicInteger();
+
   private final ListeningExecutorService myExecutorService =
     MoreExecutors.listeningDecorator(
       Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("memory-heapdump-instancefilters").build()));
 
+  /**
+   * The hprof file backing the snapshot when it is loaded from a memory-mapped file, see
+   * {@link com.android.tools.profilers.FeatureConfig#isMappedHeapDumpLoadingEnabled()}.
+   */
+  @Nullable
+  private File myHprofFile;
+
+  /**
+   * Computes the dominators and retained sizes in the background after a memory-mapped load. Null if they were computed while loading.
+   */
+  @Nullable
+  private volatile ListenableFuture<Void> myRetainedSizeComputation;
+
+  /**
+   * Depths and retained sizes computed by {@link DominatorTree}, see
+   * {@link com.android.tools.profilers.FeatureConfig#isParallelHeapDominatorsEnabled()}. Null until they are ready, or if perflib computes
+   * them instead.
+   */
+  @Nullable
+  private volatile HeapDumpDominators myDominators;
+
+  /**
+   * Whether depths and retained sizes have been computed. Until then they read as {@link MemoryObject#INVALID_VALUE}.
+   */
+  private volatile boolean myHasRetainedSizes;
+
+  /**
+   * Fraction of the hprof written to {@link #myHprofFile}, or -1 when the progress of the current loading step is unknown.
+   */
+  private volatile double myLoadingProgress = -1;
+
   public HeapDumpCaptureObject(@NotNull ProfilerClient client,
                                @NotNull Common.Session session,
                                @NotNull HeapDumpInfo heapDumpInfo,
@@ -201,32 +265,37 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myClassDb;
   }
 
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @Override
   public boolean load(@Nullable Range queryRange, @Nullable Executor queryJoiner) {
-    Transport.BytesResponse response = myClient.getTransportClient().getBytes(Transport.BytesRequest.newBuilder()
-                                                                                .setStreamId(mySession.getStreamId())
-                                                                                .setId(Long.toString(myHeapDumpInfo.getStartTime()))
-                                                                                .build());
-
-    if (response.getContents() == ByteString.EMPTY) {
+    boolean isMappedLoading = myIdeProfilerServices.getFeatureConfig().isMappedHeapDumpLoadingEnabled();
+    boolean isParallelDominators = myIdeProfilerServices.getFeatureConfig().isParallelHeapDominatorsEnabled();
+    boolean isBackgroundDominators = isMappedLoading || isParallelDominators;
+    HprofBuffer buffer = isMappedLoading ? loadMappedBuffer() : loadInMemoryBuffer();
+    if (buffer == null) {
       myIsLoadingError = true;
       return false;
     }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getContents().asReadOnlyByteBuffer());
-
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
     Snapshot snapshot = Snapshot.createSnapshot(buffer,
                                                 myProguardMap != null ? myProguardMap : new ProguardMap(),
                                                 Collections.singletonList(nativeRegistryPostProcessor));
-    snapshot.computeDominators();
+    if (!isBackgroundDominators) {
+      snapshot.computeDominators();
+      myHasRetainedSizes = true;
+    }
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
     hasLoaded = true;
 
-    InstanceObject javaLangClassObject = snapshot.getHeaps().stream()
+    myJavaLangClassObject = snapshot.getHeaps().stream()
       .flatMap(h -> h.getClasses().stream().filter(obj -> JAVA_LANG_CLASS.equals(obj.getClassName())))
       .map(cl -> createClassObjectInstance(null, cl))
       .findAny().orElse(null);
+    snapshot.getHeaps().forEach(this::indexInstances);
 
     if (myIdeProfilerServices.getFeatureConfig().isSeparateHeapDumpUiEnabled()) {
       Map<Heap, HeapSet> heapSets = snapshot.getHeaps().stream()
@@ -234,60 +303,211 @@ public class HeapDumpCaptureObject implements CaptureObject {
                                   heap -> new HeapSet(this, heap.getName(), heap.getId())));
 
       AllHeapSet superHeap = new AllHeapSet(this, heapSets.values().toArray(new HeapSet[0]));
-      superHeap.clearClassifierSets(); // forces sub-classifier creation
       myHeapSets.put(superHeap.getId(), superHeap);
       heapSets.forEach((heap, heapSet) -> {
-        heap.getClasses().forEach(cl ->
-          addInstance(superHeap, cl.getId(), createClassObjectInstance(javaLangClassObject, cl)));
-
-        heap.forEachInstance(instance -> {
-          assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
-
-          ClassObj classObj = instance.getClassObj();
-          ClassDb.ClassEntry classEntry =
-            classObj.getSuperClassObj() != null ?
-            myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), classObj.getClassName()) :
-            myClassDb.registerClass(classObj.getId(), classObj.getClassName());
-          addInstance(superHeap, instance.getId(), new HeapDumpInstanceObject(this, instance, classEntry, null));
-          return true;
-        });
-
+        populateHeap(heapSet);
         if (!"default".equals(heap.getName()) || snapshot.getHeaps().size() == 1 || heap.getInstancesCount() > 0) {
           myHeapSets.put(heap.getId(), heapSet);
         }
       });
+      superHeap.setPartition(superHeap.createSubClassifier());
     } else {
       snapshot.getHeaps().forEach(heap -> {
         HeapSet heapSet = new HeapSet(this, heap.getName(), heap.getId());
-
-        heap.getClasses().forEach(cl ->
-          addInstance(heapSet, cl.getId(), createClassObjectInstance(javaLangClassObject, cl)));
-
-        heap.forEachInstance(instance -> {
-          assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
-
-          ClassObj classObj = instance.getClassObj();
-          ClassDb.ClassEntry classEntry =
-            classObj.getSuperClassObj() != null ?
-            myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), classObj.getClassName()) :
-            myClassDb.registerClass(classObj.getId(), classObj.getClassName());
-          addInstance(heapSet, instance.getId(), new HeapDumpInstanceObject(this, instance, classEntry, null));
-          return true;
-        });
-
+        populateHeap(heapSet);
         if (!"default".equals(heap.getName()) || snapshot.getHeaps().size() == 1 || heap.getInstancesCount() > 0) {
           myHeapSets.put(heap.getId(), heapSet);
         }
       });
     }
 
+    if (isBackgroundDominators) {
+      // The class list can be shown with shallow sizes already. Instance filters are queued on the same executor, so they run after the
+      // depths they rely on have been computed. Refreshing the heaps afterwards publishes the retained sizes to the classifier sets.
+      Executor joiner = queryJoiner != null ? queryJoiner : MoreExecutors.directExecutor();
+      myRetainedSizeComputation = submitFilteredRefresh(() -> {
+        if (isParallelDominators) {
+          myDominators = HeapDumpDominators.compute(snapshot);
+        }
+        else {
+          snapshot.computeDominators();
+        }
+        myHasRetainedSizes = true;
+        myInstancesByHeap.values().forEach(heapInstances -> heapInstances.forEach(HeapDumpInstances::computeRetainedSize));
+      }, joiner);
+    }
+
     return true;
   }
 
-  private void addInstance(HeapSet heapSet, long id, InstanceObject instObj) {
-    assert !myInstanceIndex.containsKey(id);
-    myInstanceIndex.put(id, instObj);
-    heapSet.addDeltaInstanceObject(instObj);
+  @NotNull
+  private Transport.BytesRequest getHprofRequest() {
+    return Transport.BytesRequest.newBuilder()
+      .setStreamId(mySession.getStreamId())
+      .setId(Long.toString(myHeapDumpInfo.getStartTime()))
+      .build();
+  }
+
+  @Nullable
+  private ByteString fetchHprofContents() {
+    Transport.BytesResponse response = myClient.getTransportClient().getBytes(getHprofRequest());
+    return response.getContents() == ByteString.EMPTY ? null : response.getContents();
+  }
+
+  @Nullable
+  private HprofBuffer loadInMemoryBuffer() {
+    ByteString contents = fetchHprofContents();
+    return contents == null ? null : new InMemoryBuffer(contents.asReadOnlyByteBuffer());
+  }
+
+  /**
+   * Writes the hprof to a temporary file and maps it, so the parsed snapshot reads the instances from the file instead of keeping the
+   * whole dump on the Java heap. Falls back to an in-memory buffer if the file cannot be written.
+   * <p>
+   * When the datastore keeps the hprof in a file (see {@link IdeProfilerServices#getTransportBytesSource()}), it is copied from that file
+   * without ever being held in memory. Otherwise the transport returns the hprof in a single response, and the received bytes are written
+   * out instead. Either way the copy goes in chunks of {@link #HPROF_WRITE_CHUNK_SIZE}, reporting {@link #getLoadingProgress()} as it goes.
+   */
+  @Nullable
+  private HprofBuffer loadMappedBuffer() {
+    TransportBytesSource bytesSource = myIdeProfilerServices.getTransportBytesSource();
+    FileChannel source = bytesSource != null ? bytesSource.openBytes(getHprofRequest()) : null;
+    if (source != null) {
+      try (FileChannel in = source) {
+        File file = FileUtil.createTempFile("heapdump", ".hprof", true);
+        myHprofFile = file;
+        long size = in.size();
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+          for (long offset = 0; offset < size; ) {
+            long transferred = in.transferTo(offset, Math.min(size - offset, HPROF_WRITE_CHUNK_SIZE), out);
+            if (transferred <= 0) {
+              throw new IOException("The heap dump was truncated while being copied");
+            }
+            offset += transferred;
+            myLoadingProgress = (double)offset / size;
+          }
+        }
+        return size > 0 ? new MemoryMappedFileBuffer(file) : null;
+      }
+      catch (IOException e) {
+        getLogger().warn("Unable to copy the heap dump from the datastore, fetching it instead", e);
+        if (myHprofFile != null) {
+          FileUtil.delete(myHprofFile);
+          myHprofFile = null;
+        }
+      }
+      finally {
+        myLoadingProgress = -1;
+      }
+    }
+
+    ByteString contents = fetchHprofContents();
+    if (contents == null) {
+      return null;
+    }
+    try {
+      File file = FileUtil.createTempFile("heapdump", ".hprof", true);
+      myHprofFile = file;
+      int size = contents.size();
+      try (OutputStream out = new FileOutputStream(file)) {
+        for (int offset = 0; offset < size; offset += HPROF_WRITE_CHUNK_SIZE) {
+          // Substrings share the bytes of the response, so no chunk is copied before it is written.
+          contents.substring(offset, Math.min(size, offset + HPROF_WRITE_CHUNK_SIZE)).writeTo(out);
+          myLoadingProgress = (double)Math.min(size, offset + HPROF_WRITE_CHUNK_SIZE) / size;
+        }
+      }
+      return new MemoryMappedFileBuffer(file);
+    }
+    catch (IOException e) {
+      getLogger().warn("Unable to map the heap dump, loading it in memory instead", e);
+      return new InMemoryBuffer(contents.asReadOnlyByteBuffer());
+    }
+    finally {
+      myLoadingProgress = -1;
+    }
+  }
+
+  /**
+   * @return the fraction of the hprof written to disk while loading from a memory-mapped file, or -1 if the progress of the current
+   * loading step is unknown.
+   */
+  @Override
+  public double getLoadingProgress() {
+    return myLoadingProgress;
+  }
+
+  @Override
+  public boolean hasRetainedSizes() {
+    return myHasRetainedSizes;
+  }
+
+  /**
+   * @return the background computation of the dominators and retained sizes if the capture was loaded from a memory-mapped file or with
+   * {@link DominatorTree}, or null if they were computed while loading. Retained sizes and depths read as
+   * {@link MemoryObject#INVALID_VALUE} until it completes.
+   */
+  @Nullable
+  public ListenableFuture<Void> getRetainedSizeComputation() {
+    return myRetainedSizeComputation;
+  }
+
+  /**
+   * @return the distance of the instance to the nearest GC root, from whichever of {@link DominatorTree} or perflib computed it.
+   */
+  int getDepth(@NotNull Instance instance) {
+    if (!myHasRetainedSizes) {
+      return INVALID_VALUE;
+    }
+    HeapDumpDominators dominators = myDominators;
+    return dominators != null ? dominators.getDepth(instance) : instance.getDistanceToGcRoot();
+  }
+
+  /**
+   * @return the retained size of the instance, from whichever of {@link DominatorTree} or perflib computed it.
+   */
+  long getRetainedSize(@NotNull Instance instance) {
+    if (!myHasRetainedSizes) {
+      return INVALID_VALUE;
+    }
+    HeapDumpDominators dominators = myDominators;
+    return dominators != null ? dominators.getRetainedSize(instance) : instance.getTotalRetainedSize();
+  }
+
+  /**
+   * Groups the instances of the heap by class, without creating their InstanceObjects, and creates those of its class objects.
+   */
+  private void indexInstances(@NotNull Heap heap) {
+    myClassObjectsByHeap.put(heap.getId(), heap.getClasses().stream()
+      .map(cl -> createClassObjectInstance(myJavaLangClassObject, cl))
+      .collect(Collectors.toList()));
+
+    Map<ClassObj, HeapDumpInstances> instancesByClass = new HashMap<>();
+    heap.forEachInstance(instance -> {
+      assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
+      instancesByClass.computeIfAbsent(instance.getClassObj(), classObj -> new HeapDumpInstances(registerClass(classObj))).add(instance);
+      return true;
+    });
+    myInstancesByHeap.put(heap.getId(), new ArrayList<>(instancesByClass.values()));
+  }
+
+  /**
+   * Replaces the content of the heap with all its instances, which are created when they are needed.
+   */
+  private void populateHeap(@NotNull HeapSet heapSet) {
+    heapSet.clearClassifierSets();
+    myClassObjectsByHeap.getOrDefault(heapSet.getId(), Collections.emptyList()).forEach(heapSet::addDeltaInstanceObject);
+    myInstancesByHeap.getOrDefault(heapSet.getId(), Collections.emptyList()).forEach(instances -> instances.addTo(heapSet));
+  }
+
+  private static long validOrZero(long value) {
+    return value == INVALID_VALUE ? 0L : value;
+  }
+
+  @NotNull
+  private ClassDb.ClassEntry registerClass(@NotNull ClassObj classObj) {
+    return classObj.getSuperClassObj() != null ?
+           myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), classObj.getClassName()) :
+           myClassDb.registerClass(classObj.getId(), classObj.getClassName());
   }
 
   @Override
@@ -303,6 +523,14 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Override
   public void unload() {
     myExecutorService.shutdownNow();
+    ListenableFuture<Void> retainedSizeComputation = myRetainedSizeComputation;
+    if (retainedSizeComputation != null) {
+      retainedSizeComputation.cancel(true);
+    }
+    if (myHprofFile != null) {
+      // The mapping is released when the snapshot is garbage collected; deleteOnExit covers platforms that cannot delete a mapped file.
+      FileUtil.delete(myHprofFile);
+    }
   }
 
   @NotNull
@@ -325,7 +553,14 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Nullable
   public InstanceObject findInstanceObject(@NotNull Instance instance) {
-    return hasLoaded ? myInstanceIndex.get(instance.getId()) : null;
+    if (!hasLoaded) {
+      return null;
+    }
+    // InstanceObjects are equal when they wrap the same instance, so the one created here can stand for the one held by the heap, if any.
+    if (instance instanceof ClassObj) {
+      return createClassObjectInstance(myJavaLangClassObject, (ClassObj)instance);
+    }
+    return instance.getClassObj() != null ? new HeapDumpInstanceObject(this, instance, registerClass(instance.getClassObj()), null) : null;
   }
 
   @NotNull
@@ -370,12 +605,12 @@ public class HeapDumpCaptureObject implements CaptureObject {
     assert mySupportedInstanceFilters.contains(filterToAdd);
 
     myCurrentInstanceFilters.add(filterToAdd);
-    return myExecutorService.submit(() -> {
+    return submitRefresh(() -> {
       // Run the analyzers on the currently existing InstanceObjects in the HeapSets.
       Set<InstanceObject> currentInstances =
         myHeapSets.values().stream().flatMap(HeapSet::getInstancesStream).collect(Collectors.toSet());
-      return refreshInstances(filterToAdd.filter(currentInstances), analyzeJoiner);
-    });
+      return filterToAdd.filter(currentInstances);
+    }, analyzeJoiner);
   }
 
   @Override
@@ -387,16 +622,9 @@ public class HeapDumpCaptureObject implements CaptureObject {
     }
 
     myCurrentInstanceFilters.remove(filterToRemove);
-    return myExecutorService.submit(() -> {
-      // Run the remaining analyzers on the full instance set, since we don't know that the instances that have been removed from the
-      // HeapSets using the filter that we are removing.
-      Set<InstanceObject> matchedInstances = getAllInstances();
-      for (CaptureObjectInstanceFilter filter : myCurrentInstanceFilters) {
-        matchedInstances = filter.filter(matchedInstances);
-      }
-
-      return refreshInstances(matchedInstances, analyzeJoiner);
-    });
+    // Run the remaining analyzers on the full instance set, since we don't know that the instances that have been removed from the
+    // HeapSets using the filter that we are removing.
+    return submitFilteredRefresh(() -> {}, analyzeJoiner);
   }
 
   @Override
@@ -404,29 +632,91 @@ public class HeapDumpCaptureObject implements CaptureObject {
                                                 @NotNull Executor analyzeJoiner) {
     myCurrentInstanceFilters.clear();
     myCurrentInstanceFilters.add(filter);
-    return myExecutorService.submit(() -> refreshInstances(filter.filter(getAllInstances()), analyzeJoiner));
+    return submitRefresh(() -> filter.filter(getAllInstances()), analyzeJoiner);
   }
 
   @Override
   public ListenableFuture<Void> removeAllFilters(@NotNull Executor analyzeJoiner) {
     myCurrentInstanceFilters.clear();
-    return myExecutorService.submit(() -> refreshInstances(getAllInstances(), analyzeJoiner));
+    return submitFilteredRefresh(() -> {}, analyzeJoiner);
   }
 
   private Set<InstanceObject> getAllInstances() {
-    Set<InstanceObject> allInstances = new HashSet<>(myInstanceIndex.size());
-    myInstanceIndex.forEachValue(allInstances::add);
+    Set<InstanceObject> allInstances = new HashSet<>();
+    myClassObjectsByHeap.values().forEach(allInstances::addAll);
+    myInstancesByHeap.values().forEach(heapInstances -> heapInstances.forEach(instances -> allInstances.addAll(instances.createInstances())));
     return allInstances;
   }
 
+  /**
+   * Queues the computation of the instances to show, then replaces the content of the heaps with them. A refresh that is still running when
+   * another one is submitted stops partitioning the instances and doesn't update the heaps.
+   */
+  private ListenableFuture<Void> submitRefresh(@NotNull Callable<Set<InstanceObject>> instancesComputation, @NotNull Executor joiner) {
+    int refreshId = myLatestRefreshId.incrementAndGet();
+    BooleanSupplier isCancelled = () -> myLatestRefreshId.get() != refreshId;
+    return myExecutorService.submit(() -> refreshInstances(instancesComputation.call(), joiner, isCancelled));
+  }
+
+  /**
+   * Queues {@code preparation}, then replaces the content of the heaps with the instances matching all the selected filters. Without
+   * filters, the heaps get all their instances back without creating them.
+   */
+  private ListenableFuture<Void> submitFilteredRefresh(@NotNull Runnable preparation, @NotNull Executor joiner) {
+    int refreshId = myLatestRefreshId.incrementAndGet();
+    BooleanSupplier isCancelled = () -> myLatestRefreshId.get() != refreshId;
+    return myExecutorService.submit(() -> {
+      preparation.run();
+      if (myCurrentInstanceFilters.isEmpty()) {
+        joiner.execute(() -> {
+          if (!isCancelled.getAsBoolean()) {
+            myHeapSets.values().stream().filter(heap -> !(heap instanceof AllHeapSet)).forEach(this::populateHeap);
+            myHeapSets.values().stream().filter(heap -> heap instanceof AllHeapSet)
+              .forEach(heap -> heap.setPartition(heap.createSubClassifier()));
+          }
+        });
+        return null;
+      }
+      Set<InstanceObject> matchedInstances = getAllInstances();
+      for (CaptureObjectInstanceFilter filter : myCurrentInstanceFilters) {
+        matchedInstances = filter.filter(matchedInstances);
+      }
+      return refreshInstances(matchedInstances, joiner, isCancelled);
+    });
+  }
+
   private Void refreshInstances(@NotNull Set<InstanceObject> instances,
-                                @NotNull Executor executor) {
+                                @NotNull Executor executor,
+                                @NotNull BooleanSupplier isCancelled) {
+    // Partition the instances of each heap on this thread, so that the joiner only has to swap the results in.
+    Map<Integer, List<InstanceObject>> instancesByHeap = instances.stream().collect(Collectors.groupingBy(InstanceObject::getHeapId));
+    List<HeapPartition> partitions = new ArrayList<>();
+    for (HeapSet heap : myHeapSets.values()) {
+      if (heap instanceof AllHeapSet) {
+        continue;
+      }
+      List<InstanceObject> heapInstances = instancesByHeap.getOrDefault(heap.getId(), Collections.emptyList());
+      ClassGrouping grouping = heap.getClassGrouping();
+      Classifier classifier = heap.createSubClassifier();
+      classifier.partition(new ArrayList<>(), new ArrayList<>(heapInstances), isCancelled);
+      partitions.add(new HeapPartition(heap, grouping, classifier, heapInstances));
+    }
+
     executor.execute(() -> {
-      myHeapSets.values().forEach(HeapSet::clearClassifierSets);
-      Consumer<InstanceObject> onInst = myHeapSets.values().stream().filter(heap -> heap instanceof AllHeapSet)
-        .map(h -> (Consumer<InstanceObject>)h::addDeltaInstanceObject).findAny()
-        .orElse((InstanceObject inst) -> myHeapSets.get(inst.getHeapId()).addDeltaInstanceObject(inst));
-      instances.forEach(onInst);
+      if (isCancelled.getAsBoolean()) {
+        return;
+      }
+      for (HeapPartition partition : partitions) {
+        if (partition.myHeap.getClassGrouping() == partition.myGrouping) {
+          partition.myHeap.setPartition(partition.myClassifier);
+        }
+        else {
+          // The grouping changed while partitioning, the heap partitions the instances again when needed.
+          partition.myHeap.clearClassifierSets();
+          partition.myInstances.forEach(partition.myHeap::addDeltaInstanceObject);
+        }
+      }
+      myHeapSets.values().stream().filter(heap -> heap instanceof AllHeapSet).forEach(heap -> heap.setPartition(heap.createSubClassifier()));
     });
     return null;
   }
@@ -439,4 +729,68 @@ public class HeapDumpCaptureObject implements CaptureObject {
                                                                                 .build());
     return MemoryProfilerStage.canSafelyLoadHprof(response.getSerializedSize());
   }
-}
\ No newline at end of file
+
+  /**
+   * The instances of one class in one heap. They are added to their {@link HeapSet} with their sizes summed up, and their InstanceObjects
+   * are only created once the {@link ClassSet} holding them needs its instances. See {@link ClassifierSet#addDeferredDeltaInstances}.
+   */
+  private final class HeapDumpInstances {
+    @NotNull private final ClassDb.ClassEntry myClassEntry;
+    @NotNull private final List<Instance> myInstances = new ArrayList<>();
+    private long myShallowSize = 0;
+    private long myNativeSize = 0;
+    private long myRetainedSize = 0;
+
+    private HeapDumpInstances(@NotNull ClassDb.ClassEntry classEntry) {
+      myClassEntry = classEntry;
+    }
+
+    private void add(@NotNull Instance instance) {
+      myInstances.add(instance);
+      myShallowSize += instance.getSize();
+      myNativeSize += validOrZero(instance.getNativeSize());
+      myRetainedSize += validOrZero(getRetainedSize(instance));
+    }
+
+    /**
+     * Sums up the retained sizes again, once they have been computed in the background.
+     */
+    private void computeRetainedSize() {
+      myRetainedSize = myInstances.stream().mapToLong(instance -> validOrZero(getRetainedSize(instance))).sum();
+    }
+
+    private void addTo(@NotNull HeapSet heap) {
+      if (!heap.addDeferredDeltaInstances(myClassEntry, myInstances.size(), myShallowSize, myNativeSize, myRetainedSize,
+                                          this::createInstances)) {
+        // The heap is not arranged by class, so the instances are needed to classify them.
+        createInstances().forEach(heap::addDeltaInstanceObject);
+      }
+    }
+
+    @NotNull
+    private List<InstanceObject> createInstances() {
+      List<InstanceObject> instances = new ArrayList<>(myInstances.size());
+      for (Instance instance : myInstances) {
+        instances.add(new HeapDumpInstanceObject(HeapDumpCaptureObject.this, instance, myClassEntry, null));
+      }
+      return instances;
+    }
+  }
+
+  private static final class HeapPartition {
+    @NotNull private final HeapSet myHeap;
+    @NotNull private final ClassGrouping myGrouping;
+    @NotNull private final Classifier myClassifier;
+    @NotNull private final List<InstanceObject> myInstances;
+
+    private HeapPartition(@NotNull HeapSet heap,
+                          @NotNull ClassGrouping grouping,
+                          @NotNull Classifier classifier,
+                          @NotNull List<InstanceObject> instances) {
+      myHeap = heap;
+      myGrouping = grouping;
+      myClassifier = classifier;
+      myInstances = instances;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.heap.Heap;
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.RootObj;
+import com.android.tools.perflib.heap.Snapshot;
+import gnu.trove.TLongIntHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Depths and retained sizes of the instances of a heap dump, computed by {@link DominatorTree} instead of perflib's
+ * {@link Snapshot#computeDominators()}.
+ * <p>
+ * The instances are copied into an int-indexed graph of their hard references, with node 0 standing for the GC roots. As in perflib, the
+ * instances referred to by GC roots have a depth of 0, and soft references don't retain anything.
+ */
+final class HeapDumpDominators {
+  // Node 0 is the root, so no instance maps to it and the default value of a missing key can be told apart.
+  @NotNull private final TLongIntHashMap myNodesById;
+  @NotNull private final DominatorTree myTree;
+
+  private HeapDumpDominators(@NotNull TLongIntHashMap nodesById, @NotNull DominatorTree tree) {
+    myNodesById = nodesById;
+    myTree = tree;
+  }
+
+  @NotNull
+  static HeapDumpDominators compute(@NotNull Snapshot snapshot) {
+    List<Instance> instances = new ArrayList<>();
+    // The root goes first.
+    instances.add(null);
+    TLongIntHashMap nodesById = new TLongIntHashMap();
+    for (Heap heap : snapshot.getHeaps()) {
+      heap.getClasses().forEach(classObj -> {
+        nodesById.put(classObj.getId(), instances.size());
+        instances.add(classObj);
+      });
+      heap.forEachInstance(instance -> {
+        nodesById.put(instance.getId(), instances.size());
+        instances.add(instance);
+        return true;
+      });
+    }
+    int nodeCount = instances.size();
+
+    // Count the predecessors of each node first, to lay them out in a single array.
+    int[] predecessorStarts = new int[nodeCount + 1];
+    for (RootObj root : snapshot.getGCRoots()) {
+      Instance referred = root.getReferredInstance();
+      int node = referred == null ? 0 : nodesById.get(referred.getId());
+      if (node != 0) {
+        predecessorStarts[node + 1]++;
+      }
+    }
+    long[] sizes = new long[nodeCount];
+    for (int node = 1; node < nodeCount; node++) {
+      Instance instance = instances.get(node);
+      sizes[node] = instance.getSize();
+      for (Instance reference : instance.getHardReverseReferences()) {
+        if (nodesById.get(reference.getId()) != 0) {
+          predecessorStarts[node + 1]++;
+        }
+      }
+    }
+    for (int node = 0; node < nodeCount; node++) {
+      predecessorStarts[node + 1] += predecessorStarts[node];
+    }
+
+    int[] predecessors = new int[predecessorStarts[nodeCount]];
+    int[] positions = new int[nodeCount];
+    System.arraycopy(predecessorStarts, 0, positions, 0, nodeCount);
+    for (RootObj root : snapshot.getGCRoots()) {
+      Instance referred = root.getReferredInstance();
+      int node = referred == null ? 0 : nodesById.get(referred.getId());
+      if (node != 0) {
+        predecessors[positions[node]++] = 0;
+      }
+    }
+    for (int node = 1; node < nodeCount; node++) {
+      for (Instance reference : instances.get(node).getHardReverseReferences()) {
+        int referrer = nodesById.get(reference.getId());
+        if (referrer != 0) {
+          predecessors[positions[node]++] = referrer;
+        }
+      }
+    }
+
+    DominatorTree tree = DominatorTree.compute(predecessorStarts, predecessors, sizes);
+    return new HeapDumpDominators(nodesById, tree);
+  }
+
+  /**
+   * @return the length of the shortest chain of hard references from a GC root to the instance, or {@link Integer#MAX_VALUE} if it is
+   * unreachable.
+   */
+  int getDepth(@NotNull Instance instance) {
+    int node = myNodesById.get(instance.getId());
+    if (node == 0) {
+      return instance.getDistanceToGcRoot();
+    }
+    int depth = myTree.getDepth(node);
+    return depth == DominatorTree.UNREACHABLE_DEPTH ? Integer.MAX_VALUE : depth - 1;
+  }
+
+  long getRetainedSize(@NotNull Instance instance) {
+    int node = myNodesById.get(instance.getId());
+    return node == 0 ? instance.getTotalRetainedSize() : myTree.getRetainedSize(node);
+  }
+}
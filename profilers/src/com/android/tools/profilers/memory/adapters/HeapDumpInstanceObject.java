@@ -33,9 +33,6 @@ import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.
 class HeapDumpInstanceObject implements InstanceObject {
   private static final String NAME_FORMATTER = "%s@%d (0x%x)";
   private static final int MAX_VALUE_TEXT_LENGTH = 1024;
-  private static final Comparator<Instance> DEPTH_THEN_ID_COMPARATOR =
-    // compare by id after depth to enforce more deterministic order
-    Comparator.comparingInt(Instance::getDistanceToGcRoot).thenComparingLong(Instance::getId);
   private static final String INVALID_STRING_VALUE = " ...<invalid string value>...";
   private static final Map<Type, ValueType> VALUE_TYPE_MAP = ImmutableMap.<Type, ValueObject.ValueType>builder()
     .put(Type.BOOLEAN, BOOLEAN)
@@ -152,7 +149,7 @@ class HeapDumpInstanceObject implements InstanceObject {
 
   @Override
   public int getDepth() {
-    return myInstance.getDistanceToGcRoot();
+    return myCaptureObject.getDepth(myInstance);
   }
 
   @Override
@@ -167,7 +164,7 @@ class HeapDumpInstanceObject implements InstanceObject {
 
   @Override
   public long getRetainedSize() {
-    return myInstance.getTotalRetainedSize();
+    return myCaptureObject.getRetainedSize(myInstance);
   }
 
   @Override
@@ -304,14 +301,18 @@ class HeapDumpInstanceObject implements InstanceObject {
   @VisibleForTesting
   @NotNull
   public List<ReferenceObject> extractReferences() {
+    // compare by id after depth to enforce more deterministic order
+    Comparator<Instance> depthThenIdComparator =
+      Comparator.comparingInt((Instance instance) -> myCaptureObject.getDepth(instance)).thenComparingLong(Instance::getId);
+
     // Sort hard referrers to appear first.
     List<Instance> sortedReferences = new ArrayList<>(myInstance.getHardReverseReferences());
-    sortedReferences.sort(DEPTH_THEN_ID_COMPARATOR);
+    sortedReferences.sort(depthThenIdComparator);
 
     // Sort soft referrers to appear second.
     if (myInstance.getSoftReverseReferences() != null) {
       List<Instance> sortedSoftReferences = new ArrayList<>(myInstance.getSoftReverseReferences());
-      sortedSoftReferences.sort(DEPTH_THEN_ID_COMPARATOR);
+      sortedSoftReferences.sort(depthThenIdComparator);
       sortedReferences.addAll(sortedSoftReferences);
     }
 
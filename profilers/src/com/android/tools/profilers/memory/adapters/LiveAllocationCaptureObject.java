@@ -54,6 +54,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TLongObjectHashMap;
 import java.io.IOException;
@@ -63,7 +65,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +76,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
@@ -96,7 +98,11 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
   @VisibleForTesting final ExecutorService myExecutorService;
   private final ClassDb myClassDb;
-  private final TIntObjectHashMap<LiveAllocationInstanceObject> myInstanceMap;
+  // Only accessed on myExecutorService, except when the InstanceObjects of snapshot allocations are created on the UI thread (see
+  // SnapshotAllocations), which is why the instances are created and the rows are added while holding its lock.
+  private final LiveAllocationTable myAllocationTable;
+  // Incremented, while holding the lock of myAllocationTable, every time the table is cleared and its rows start being reused.
+  private int myAllocationTableGeneration = 0;
   private final TIntObjectHashMap<Memory.AllocationStack> myCallstackMap;
   // Mapping from unsymbolized addresses to symbolized native frames
   @NotNull private final TLongObjectHashMap<NativeCallStack.NativeFrame> myNativeFrameMap;
@@ -135,7 +141,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
 
     myClassDb = new ClassDb();
-    myInstanceMap = new TIntObjectHashMap<>();
+    myAllocationTable = new LiveAllocationTable();
     myCallstackMap = new TIntObjectHashMap<>();
     myNativeFrameMap = new TLongObjectHashMap<>();
     myMethodIdMap = new TLongObjectHashMap<>();
@@ -216,7 +222,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   @Override
   public Collection<HeapSet> getHeapSets() {
     // Exclude DEFAULT_HEAP since it shouldn't show up in use in devices that support live allocation tracking.
-    if (myHeapSets.get(0).getInstancesCount() > 0) {
+    if (!myHeapSets.get(0).isEmpty()) {
       // But handle the unexpected, just in case....
       return myHeapSets;
     }
@@ -350,6 +356,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
         updateAllocationContexts(newEndTimeNs);
 
         // Snapshots data
+        List<SnapshotAllocations> snapshotAllocations = new ArrayList<>();
         List<InstanceObject> snapshotList = new ArrayList<>();
         List<InstanceObject> resetSnapshotList = new ArrayList<>();
         // Delta data
@@ -361,9 +368,12 @@ public class LiveAllocationCaptureObject implements CaptureObject {
         // Clear and recreate the instance/heap sets if previous range does not intersect with the new one
         boolean clear = myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs;
         if (clear) {
-          myInstanceMap.clear();
+          synchronized (myAllocationTable) {
+            myAllocationTable.clear();
+            myAllocationTableGeneration++;
+          }
           // If we are resetting, then first establish the object snapshot at the query range's start point.
-          queryJavaInstanceSnapshot(newStartTimeNs, snapshotList);
+          queryJavaInstanceSnapshot(newStartTimeNs, snapshotAllocations);
           queryJniReferencesSnapshot(newStartTimeNs, snapshotList);
 
           // Update the delta allocations and deallocations within the selection range on the snapshot.
@@ -436,6 +446,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
               }
             }
             if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isMemorySnapshotEnabled()) {
+              snapshotAllocations.forEach(allocations -> allocations.addTo(myHeapSets.get(allocations.myHeapId)));
               snapshotList.forEach(instance -> myHeapSets.get(instance.getHeapId()).addSnapshotInstanceObject(instance));
               resetSnapshotList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeSnapshotInstanceObject(instance));
             }
@@ -458,21 +469,46 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
   @NotNull
   private LiveAllocationInstanceObject getOrCreateInstanceObject(int tag, int classTag, int stackId, int threadId, long size, int heapId) {
-    LiveAllocationInstanceObject instance = myInstanceMap.get(tag);
+    synchronized (myAllocationTable) {
+      return getOrCreateInstanceObject(myAllocationTable.addRow(tag, classTag, stackId, threadId, size, heapId));
+    }
+  }
+
+  /**
+   * Creates the InstanceObject of an allocation from its row in {@link #myAllocationTable} the first time it is needed.
+   */
+  @NotNull
+  private LiveAllocationInstanceObject getOrCreateInstanceObject(int row) {
+    synchronized (myAllocationTable) {
+      return doGetOrCreateInstanceObject(row);
+    }
+  }
+
+  @NotNull
+  private LiveAllocationInstanceObject doGetOrCreateInstanceObject(int row) {
+    LiveAllocationInstanceObject instance = myAllocationTable.getInstance(row);
     if (instance == null) {
-      ClassDb.ClassEntry entry = myClassDb.getEntry(classTag);
+      ClassDb.ClassEntry entry = myClassDb.getEntry(myAllocationTable.getClassTag(row));
       AllocationStack callstack = null;
+      int stackId = myAllocationTable.getStackId(row);
       if (stackId != 0) {
         assert myCallstackMap.containsKey(stackId);
         callstack = myCallstackMap.get(stackId);
       }
       ThreadId thread = null;
+      int threadId = myAllocationTable.getThreadId(row);
       if (threadId != 0) {
         assert myThreadIdMap.containsKey(threadId);
         thread = myThreadIdMap.get(threadId);
       }
-      instance = new LiveAllocationInstanceObject(this, entry, thread, callstack, size, heapId);
-      myInstanceMap.put(tag, instance);
+      instance = new LiveAllocationInstanceObject(this, entry, thread, callstack, myAllocationTable.getSize(row),
+                                                  myAllocationTable.getHeapId(row));
+      // Only allocations alive at the snapshot time have their allocation time in the table.
+      long allocTime = myAllocationTable.getAllocTime(row);
+      if (allocTime != Long.MIN_VALUE) {
+        instance.setAllocationTime(allocTime);
+      }
+      myAllocationTable.setInstance(row, instance);
     }
 
     return instance;
@@ -480,11 +516,12 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
   @Nullable
   private JniReferenceInstanceObject getOrCreateJniRefObject(int tag, long refValue) {
-    LiveAllocationInstanceObject referencedObject = myInstanceMap.get(tag);
-    if (referencedObject == null) {
+    int row = myAllocationTable.getRow(tag);
+    if (row == LiveAllocationTable.NO_ROW) {
       // If a Java object can't be found by a given tag, nothing is known about the JNI reference and we can't track it.
       return null;
     }
+    LiveAllocationInstanceObject referencedObject = getOrCreateInstanceObject(row);
     JniReferenceInstanceObject result = referencedObject.getJniRefByValue(refValue);
     if (result == null) {
       result = new JniReferenceInstanceObject(this, referencedObject, tag, refValue);
@@ -494,35 +531,29 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   }
 
   /**
-   * Populates the input list with all instance objects that are alive at |snapshotTimeNs|.
+   * Populates the input list with all allocations that are alive at |snapshotTimeNs|, grouped by heap and class. Only the columns of the
+   * table are updated here, the InstanceObjects of the allocations are created once they are needed.
    */
-  private void queryJavaInstanceSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
-    // Retrieve all the event samples from the start of the session until the snapshot time.
-    long sessionStartNs = mySession.getStartTimestamp();
-    List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(sessionStartNs, snapshotTimeNs);
-    Map<Integer, LiveAllocationInstanceObject> liveInstanceMap = new LinkedHashMap<>();
+  private void queryJavaInstanceSnapshot(long snapshotTimeNs, @NotNull List<SnapshotAllocations> snapshotAllocations) {
+    List<Memory.BatchAllocationEvents> eventsList = getAllocationSnapshotEvents(snapshotTimeNs);
+    // Rows of the allocations in the order they were made.
+    TIntArrayList allocatedRows = new TIntArrayList();
     for (Memory.BatchAllocationEvents events : eventsList) {
       // Only consider events up to but excluding the snapshot time.
-      Iterator<AllocationEvent> itr = events.getEventsList().stream().filter(evt -> evt.getTimestamp() < snapshotTimeNs)
-        .sorted(Comparator.comparingLong(AllocationEvent::getTimestamp)).iterator();
-      while (itr.hasNext()) {
-        AllocationEvent event = itr.next();
-        LiveAllocationInstanceObject instance;
+      for (int index : getSortedEventIndices(events.getEventsList(), AllocationEvent::getTimestamp, Long.MIN_VALUE, snapshotTimeNs)) {
+        AllocationEvent event = events.getEvents(index);
         switch (event.getEventCase()) {
           case ALLOC_DATA:
-            // Allocation - create an InstanceObject. This might be removed later if there is a corresponding FREE_DATA event.
+            // Allocation - record it. This might be removed later if there is a corresponding FREE_DATA event.
             AllocationEvent.Allocation allocation = event.getAllocData();
-            instance = getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(), allocation.getStackId(),
-                                                 allocation.getThreadId(), allocation.getSize(), allocation.getHeapId());
-            instance.setAllocationTime(event.getTimestamp());
-            liveInstanceMap.put(allocation.getTag(), instance);
+            int row = myAllocationTable.addRow(allocation.getTag(), allocation.getClassTag(), allocation.getStackId(),
+                                               allocation.getThreadId(), allocation.getSize(), allocation.getHeapId());
+            myAllocationTable.setAllocTime(row, event.getTimestamp());
+            allocatedRows.add(row);
             break;
           case FREE_DATA:
-            // Deallocation - there should be a matching InstanceObject.
-            AllocationEvent.Deallocation deallocation = event.getFreeData();
-            liveInstanceMap.remove(deallocation.getTag());
-            // Don't keep deallocated objects around in the cache to avoid bloating memory.
-            myInstanceMap.remove(deallocation.getTag());
+            // Deallocation - don't keep deallocated objects around in the table to avoid bloating memory.
+            myAllocationTable.removeRow(event.getFreeData().getTag());
             break;
           case CLASS_DATA:
             // ignore CLASS_DATA as they are handled via context updates.
@@ -531,7 +562,47 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       }
     }
 
-    snapshotList.addAll(liveInstanceMap.values());
+    // Rows are reused after a deallocation, so walk them backwards to find the live allocations in the order they were last made.
+    TIntHashSet seenRows = new TIntHashSet();
+    TIntArrayList liveRows = new TIntArrayList();
+    for (int i = allocatedRows.size() - 1; i >= 0; i--) {
+      int row = allocatedRows.get(i);
+      if (seenRows.add(row) && myAllocationTable.isLive(row)) {
+        liveRows.add(row);
+      }
+    }
+
+    // Group the live allocations by heap and class, in the order of their first allocation like the sets they end up in.
+    Map<Long, SnapshotAllocations> allocationsByHeapAndClass = new LinkedHashMap<>();
+    for (int i = liveRows.size() - 1; i >= 0; i--) {
+      int row = liveRows.get(i);
+      int heapId = myAllocationTable.getHeapId(row);
+      int classTag = myAllocationTable.getClassTag(row);
+      SnapshotAllocations allocations = allocationsByHeapAndClass.computeIfAbsent(
+        ((long)heapId << 32) | (classTag & 0xFFFFFFFFL),
+        key -> new SnapshotAllocations(heapId, myClassDb.getEntry(classTag), myAllocationTableGeneration));
+      allocations.myRows.add(row);
+      allocations.myShallowSize += (int)myAllocationTable.getSize(row);
+      if (hasCallStackFrames(myAllocationTable.getStackId(row))) {
+        allocations.myInstancesWithStackInfoCount++;
+      }
+    }
+    snapshotAllocations.addAll(allocationsByHeapAndClass.values());
+  }
+
+  private boolean hasCallStackFrames(int stackId) {
+    if (stackId == 0) {
+      return false;
+    }
+    AllocationStack callstack = myCallstackMap.get(stackId);
+    switch (callstack.getFrameCase()) {
+      case FULL_STACK:
+        return callstack.getFullStack().getFramesCount() > 0;
+      case ENCODED_STACK:
+        return callstack.getEncodedStack().getFramesCount() > 0;
+      default:
+        return false;
+    }
   }
 
   private void queryJniReferencesSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
@@ -544,10 +615,9 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     Map<Long, JniReferenceInstanceObject> instanceMap = new LinkedHashMap<>();
     for (Memory.BatchJNIGlobalRefEvent events : eventsList) {
       // Only consider events up to but excluding the snapshot time.
-      Iterator<JNIGlobalReferenceEvent> itr = events.getEventsList().stream().filter(evt -> evt.getTimestamp() < snapshotTimeNs)
-        .sorted(Comparator.comparingLong(JNIGlobalReferenceEvent::getTimestamp)).iterator();
-      while (itr.hasNext()) {
-        JNIGlobalReferenceEvent event = itr.next();
+      for (int index : getSortedEventIndices(events.getEventsList(), JNIGlobalReferenceEvent::getTimestamp, Long.MIN_VALUE,
+                                             snapshotTimeNs)) {
+        JNIGlobalReferenceEvent event = events.getEvents(index);
 
         JniReferenceInstanceObject refObject;
         switch (event.getEventType()) {
@@ -575,8 +645,9 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           case DELETE_GLOBAL_REF:
             refObject = instanceMap.remove(event.getRefValue());
             // If the referencing instance object is still around, remove the added JNI ref.
-            if (refObject != null && myInstanceMap.containsKey(event.getObjectTag())) {
-              myInstanceMap.get(event.getObjectTag()).removeJniRef(refObject);
+            int row = myAllocationTable.getRow(event.getObjectTag());
+            if (refObject != null && row != LiveAllocationTable.NO_ROW && myAllocationTable.getInstance(row) != null) {
+              myAllocationTable.getInstance(row).removeJniRef(refObject);
             }
             break;
         }
@@ -610,13 +681,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(startTimeNs, endTimeNs);
     for (Memory.BatchAllocationEvents events : eventsList) {
       // Only consider events between the delta range [start time, end time)
-      Iterator<AllocationEvent> itr =
-        events.getEventsList().stream()
-          .filter(evt -> evt.getTimestamp() >= startTimeNs && evt.getTimestamp() < endTimeNs)
-          .sorted(Comparator.comparingLong(AllocationEvent::getTimestamp))
-          .iterator();
-      while (itr.hasNext()) {
-        AllocationEvent event = itr.next();
+      for (int index : getSortedEventIndices(events.getEventsList(), AllocationEvent::getTimestamp, startTimeNs, endTimeNs)) {
+        AllocationEvent event = events.getEvents(index);
         LiveAllocationInstanceObject instance;
         switch (event.getEventCase()) {
           case ALLOC_DATA:
@@ -630,8 +696,9 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           case FREE_DATA:
             // New deallocation - there should be a matching InstanceObject.
             AllocationEvent.Deallocation deallocation = event.getFreeData();
-            assert myInstanceMap.containsKey(deallocation.getTag());
-            instance = myInstanceMap.get(deallocation.getTag());
+            int row = myAllocationTable.getRow(deallocation.getTag());
+            assert row != LiveAllocationTable.NO_ROW;
+            instance = getOrCreateInstanceObject(row);
             instance.setDeallocTime(resetInstance ? Long.MAX_VALUE : event.getTimestamp());
             deallocationList.add(instance);
             break;
@@ -655,12 +722,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     List<Memory.BatchJNIGlobalRefEvent> eventsList = getJniRefEvents(startTimeNs, endTimeNs);
     for (BatchJNIGlobalRefEvent events : eventsList) {
       // Only consider events between the delta range [start time, end time)
-      Iterator<JNIGlobalReferenceEvent> itr =
-        events.getEventsList().stream().filter(evt -> evt.getTimestamp() >= startTimeNs && evt.getTimestamp() < endTimeNs)
-          .sorted(Comparator.comparingLong(JNIGlobalReferenceEvent::getTimestamp))
-          .iterator();
-      while (itr.hasNext()) {
-        JNIGlobalReferenceEvent event = itr.next();
+      for (int index : getSortedEventIndices(events.getEventsList(), JNIGlobalReferenceEvent::getTimestamp, startTimeNs, endTimeNs)) {
+        JNIGlobalReferenceEvent event = events.getEvents(index);
         JniReferenceInstanceObject refObject = getOrCreateJniRefObject(event.getObjectTag(), event.getRefValue());
         if (refObject == null) {
           // JNI reference object can't be constructed, most likely allocation for underlying java object was not
@@ -708,6 +771,45 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
+  /**
+   * @return the indices of the events with a timestamp within [startTimeNs, endTimeNs), in timestamp order. Events with the same timestamp
+   * keep their order. The events of a batch are usually sorted already, in which case no sorting happens.
+   */
+  @NotNull
+  private static <T> int[] getSortedEventIndices(@NotNull List<T> events,
+                                                 @NotNull ToLongFunction<T> timestampFunc,
+                                                 long startTimeNs,
+                                                 long endTimeNs) {
+    int[] indices = new int[events.size()];
+    long[] timestamps = new long[events.size()];
+    int count = 0;
+    boolean isSorted = true;
+    for (int i = 0; i < events.size(); i++) {
+      long timestamp = timestampFunc.applyAsLong(events.get(i));
+      if (timestamp >= startTimeNs && timestamp < endTimeNs) {
+        isSorted &= count == 0 || timestamps[count - 1] <= timestamp;
+        indices[count] = i;
+        timestamps[count] = timestamp;
+        count++;
+      }
+    }
+    if (isSorted) {
+      return count == indices.length ? indices : Arrays.copyOf(indices, count);
+    }
+
+    // Arrays.sort on objects is stable.
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingLong(i -> timestamps[i]));
+    int[] sortedIndices = new int[count];
+    for (int i = 0; i < count; i++) {
+      sortedIndices[i] = indices[order[i]];
+    }
+    return sortedIndices;
+  }
+
   @NotNull
   NativeCallStack resolveNativeBacktrace(@Nullable NativeBacktrace backtrace) {
     if (backtrace == null || backtrace.getAddressesCount() == 0) {
@@ -799,6 +901,26 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
+  /**
+   * @return the event samples needed to know which objects are alive at |snapshotTimeNs|. On the legacy pipeline, asking for the live
+   * objects only lets the datastore start from the latest heap state checkpoint before the snapshot time instead of the start of the
+   * session.
+   */
+  @NotNull
+  private List<Memory.BatchAllocationEvents> getAllocationSnapshotEvents(long snapshotTimeNs) {
+    if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
+      // Retrieve all the event samples from the start of the session until the snapshot time.
+      return getAllocationEvents(mySession.getStartTimestamp(), snapshotTimeNs);
+    }
+    AllocationEventsResponse response = getClient().getAllocationEvents(AllocationSnapshotRequest.newBuilder()
+                                                                          .setSession(mySession)
+                                                                          .setStartTime(mySession.getStartTimestamp())
+                                                                          .setEndTime(snapshotTimeNs)
+                                                                          .setLiveObjectsOnly(true)
+                                                                          .build());
+    return getEventsAndUpdateSeenTimestamp(response.getEventsList(), Memory.BatchAllocationEvents::getTimestamp);
+  }
+
   @NotNull
   private List<Memory.BatchJNIGlobalRefEvent> getJniRefEvents(long startTimeNs, long endTimeNs) {
     if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
@@ -843,4 +965,47 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
     return eventList;
   }
+
+  /**
+   * Allocations of one class in one heap that are alive at the snapshot time. They are added to their {@link HeapSet} with their counts
+   * aggregated from the columns of {@link #myAllocationTable}, and their InstanceObjects are only created, on the UI thread, once the
+   * {@link ClassSet} holding them needs its instances. See {@link ClassifierSet#addDeferredSnapshotInstances}.
+   */
+  private final class SnapshotAllocations {
+    private final int myHeapId;
+    @NotNull private final ClassDb.ClassEntry myClassEntry;
+    private final int myTableGeneration;
+    @NotNull private final TIntArrayList myRows = new TIntArrayList();
+    private long myShallowSize = 0;
+    private int myInstancesWithStackInfoCount = 0;
+
+    private SnapshotAllocations(int heapId, @NotNull ClassDb.ClassEntry classEntry, int tableGeneration) {
+      myHeapId = heapId;
+      myClassEntry = classEntry;
+      myTableGeneration = tableGeneration;
+    }
+
+    private void addTo(@NotNull HeapSet heap) {
+      if (!heap.addDeferredSnapshotInstances(myClassEntry, myRows.size(), myShallowSize, myInstancesWithStackInfoCount,
+                                             this::createInstances)) {
+        // The heap is not arranged by class, so the instances are needed to classify them.
+        createInstances().forEach(heap::addSnapshotInstanceObject);
+      }
+    }
+
+    @NotNull
+    private List<InstanceObject> createInstances() {
+      synchronized (myAllocationTable) {
+        if (myTableGeneration != myAllocationTableGeneration) {
+          // The rows have been reused since. The heaps holding these allocations are about to be cleared as well.
+          return Collections.emptyList();
+        }
+        List<InstanceObject> instances = new ArrayList<>(myRows.size());
+        for (int i = 0; i < myRows.size(); i++) {
+          instances.add(doGetOrCreateInstanceObject(myRows.get(i)));
+        }
+        return instances;
+      }
+    }
+  }
 }
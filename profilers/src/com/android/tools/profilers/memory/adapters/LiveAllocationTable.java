@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import gnu.trove.TIntIntHashMap;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Allocations tracked by a {@link LiveAllocationCaptureObject}, stored as primitive columns with one row per allocation tag.
+ * <p>
+ * Recording an allocation event only writes to the columns. The {@link LiveAllocationInstanceObject} of a row is created by
+ * {@link LiveAllocationCaptureObject} when the allocation becomes visible in the selection, so the allocations that are freed before the
+ * selection starts never turn into objects. The rows of freed allocations are reused.
+ */
+final class LiveAllocationTable {
+  static final int NO_ROW = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // Maps tags to their row + 1, as TIntIntHashMap returns 0 for missing keys.
+  @NotNull private final TIntIntHashMap myRowByTag = new TIntIntHashMap();
+
+  private int[] myTags = new int[INITIAL_CAPACITY];
+  private int[] myClassTags = new int[INITIAL_CAPACITY];
+  private int[] myStackIds = new int[INITIAL_CAPACITY];
+  private int[] myThreadIds = new int[INITIAL_CAPACITY];
+  private int[] myHeapIds = new int[INITIAL_CAPACITY];
+  private long[] mySizes = new long[INITIAL_CAPACITY];
+  private long[] myAllocTimes = new long[INITIAL_CAPACITY];
+  private LiveAllocationInstanceObject[] myInstances = new LiveAllocationInstanceObject[INITIAL_CAPACITY];
+
+  // Number of rows ever used, including the free ones.
+  private int myRowCount;
+  private int[] myFreeRows = new int[INITIAL_CAPACITY];
+  private int myFreeRowCount;
+
+  /**
+   * Records an allocation, unless its tag is already in the table.
+   *
+   * @return the row of the allocation.
+   */
+  int addRow(int tag, int classTag, int stackId, int threadId, long size, int heapId) {
+    int row = getRow(tag);
+    if (row != NO_ROW) {
+      return row;
+    }
+
+    if (myFreeRowCount > 0) {
+      row = myFreeRows[--myFreeRowCount];
+    }
+    else {
+      if (myRowCount == myTags.length) {
+        grow();
+      }
+      row = myRowCount++;
+    }
+    myTags[row] = tag;
+    myClassTags[row] = classTag;
+    myStackIds[row] = stackId;
+    myThreadIds[row] = threadId;
+    myHeapIds[row] = heapId;
+    mySizes[row] = size;
+    myAllocTimes[row] = Long.MIN_VALUE;
+    myInstances[row] = null;
+    myRowByTag.put(tag, row + 1);
+    return row;
+  }
+
+  /**
+   * @return the row of the allocation with the given tag, or {@link #NO_ROW} if there is none.
+   */
+  int getRow(int tag) {
+    return myRowByTag.get(tag) - 1;
+  }
+
+  /**
+   * @return whether the row holds an allocation, as opposed to being free.
+   */
+  boolean isLive(int row) {
+    return row < myRowCount && getRow(myTags[row]) == row;
+  }
+
+  /**
+   * Forgets the allocation with the given tag and makes its row available for reuse.
+   */
+  void removeRow(int tag) {
+    int row = getRow(tag);
+    if (row == NO_ROW) {
+      return;
+    }
+    myRowByTag.remove(tag);
+    // Don't keep the instance alive through the table.
+    myInstances[row] = null;
+    if (myFreeRowCount == myFreeRows.length) {
+      myFreeRows = Arrays.copyOf(myFreeRows, myFreeRowCount * 2);
+    }
+    myFreeRows[myFreeRowCount++] = row;
+  }
+
+  void clear() {
+    myRowByTag.clear();
+    Arrays.fill(myInstances, 0, myRowCount, null);
+    myRowCount = 0;
+    myFreeRowCount = 0;
+  }
+
+  /**
+   * @return the number of allocations in the table.
+   */
+  int size() {
+    return myRowByTag.size();
+  }
+
+  int getTag(int row) {
+    return myTags[row];
+  }
+
+  int getClassTag(int row) {
+    return myClassTags[row];
+  }
+
+  int getStackId(int row) {
+    return myStackIds[row];
+  }
+
+  int getThreadId(int row) {
+    return myThreadIds[row];
+  }
+
+  int getHeapId(int row) {
+    return myHeapIds[row];
+  }
+
+  long getSize(int row) {
+    return mySizes[row];
+  }
+
+  long getAllocTime(int row) {
+    return myAllocTimes[row];
+  }
+
+  void setAllocTime(int row, long allocTime) {
+    myAllocTimes[row] = allocTime;
+  }
+
+  @Nullable
+  LiveAllocationInstanceObject getInstance(int row) {
+    return myInstances[row];
+  }
+
+  void setInstance(int row, @NotNull LiveAllocationInstanceObject instance) {
+    myInstances[row] = instance;
+  }
+
+  private void grow() {
+    int capacity = myTags.length * 2;
+    myTags = Arrays.copyOf(myTags, capacity);
+    myClassTags = Arrays.copyOf(myClassTags, capacity);
+    myStackIds = Arrays.copyOf(myStackIds, capacity);
+    myThreadIds = Arrays.copyOf(myThreadIds, capacity);
+    myHeapIds = Arrays.copyOf(myHeapIds, capacity);
+    mySizes = Arrays.copyOf(mySizes, capacity);
+    myAllocTimes = Arrays.copyOf(myAllocTimes, capacity);
+    myInstances = Arrays.copyOf(myInstances, capacity);
+  }
+}
@@ -156,7 +156,7 @@ public final class NativeAllocationSampleCaptureObject implements CaptureObject
     try {
       trace = FileUtil.createTempFile(String.format(Locale.US, "heap_trace_%d", myStartTimeNs), "." + getExportableExtension(), true);
       try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(response.getContents().toByteArray());
+        response.getContents().writeTo(out);
         out.flush();
       }
     }
@@ -77,10 +77,26 @@ public class ClassSet extends ClassifierSet {
   private static final class ClassClassifier extends Classifier {
     @NotNull private final Map<ClassDb.ClassEntry, ClassSet> myClassMap = new LinkedHashMap<>();
 
+    @NotNull
+    @Override
+    protected Classifier createPartialClassifier() {
+      return new ClassClassifier();
+    }
+
     @Nullable
     @Override
     public ClassifierSet getClassifierSet(@NotNull InstanceObject instance, boolean createIfAbsent) {
-      ClassDb.ClassEntry classEntry = instance.getClassEntry();
+      return getClassSet(instance.getClassEntry(), createIfAbsent);
+    }
+
+    @NotNull
+    @Override
+    public ClassifierSet getClassifierSetOfClass(@NotNull ClassDb.ClassEntry classEntry) {
+      return getClassSet(classEntry, true);
+    }
+
+    @Nullable
+    private ClassSet getClassSet(@NotNull ClassDb.ClassEntry classEntry, boolean createIfAbsent) {
       ClassSet classSet = myClassMap.get(classEntry);
       if (classSet == null && createIfAbsent) {
         classSet = new ClassSet(classEntry);
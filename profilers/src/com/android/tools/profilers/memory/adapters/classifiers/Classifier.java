@@ -15,10 +15,18 @@
  */
 package com.android.tools.profilers.memory.adapters.classifiers;
 
+import com.android.tools.profilers.memory.adapters.ClassDb;
 import com.android.tools.profilers.memory.adapters.InstanceObject;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -67,6 +75,17 @@ public abstract class Classifier {
   @Nullable
   public abstract ClassifierSet getClassifierSet(@NotNull InstanceObject instance, boolean createIfAbsent);
 
+  /**
+   * Retrieve the next-level ClassifierSet that all instances of {@code classEntry} belong to, creating it if none exists. This is only
+   * supported by classifiers that classify instances by their class alone.
+   *
+   * @return the ClassifierSet, or null if this classifier needs the instances themselves to classify them.
+   */
+  @Nullable
+  public ClassifierSet getClassifierSetOfClass(@NotNull ClassDb.ClassEntry classEntry) {
+    return null;
+  }
+
   /**
    * Gets a {@link List} of the child ClassifierSets.
    */
@@ -76,32 +95,129 @@ public abstract class Classifier {
   @NotNull
   protected abstract List<ClassifierSet> getAllClassifierSets();
 
+  /**
+   * Classifiers with at least this many instances to partition, and that support it, partition them on multiple threads.
+   */
+  static final int PARALLEL_PARTITION_MIN_INSTANCES = 50000;
+
+  /**
+   * Number of instances partitioned by each task when partitioning on multiple threads.
+   */
+  static final int PARALLEL_PARTITION_CHUNK_SIZE = 16384;
+
+  /**
+   * Creates an empty classifier that classifies instances into the same {@link ClassifierSet}s as this one would, so that it can partition
+   * a part of the instances on another thread before being merged back. A classifier that supports this must only depend on the
+   * classified instances, not on state shared with other classifiers.
+   *
+   * @return the new classifier, or null if this classifier can only partition instances on a single thread.
+   */
+  @Nullable
+  protected Classifier createPartialClassifier() {
+    return null;
+  }
+
   /**
    * Partitions {@link InstanceObject}s in {@code snapshotInstances} and {@code myDeltaInstances} according to the current
    * {@link ClassifierSet}'s strategy. This will consume the instances from the input.
    */
   public final void partition(@NotNull Collection<InstanceObject> snapshotInstances, @NotNull Collection<InstanceObject> deltaInstances) {
+    partition(snapshotInstances, deltaInstances, () -> false);
+  }
+
+  /**
+   * Same as {@link #partition(Collection, Collection)}, but can be stopped. Large inputs are split into chunks which are partitioned by
+   * separate classifiers on the fork/join pool, then the child sets of the partial classifiers are merged into the ones of this classifier,
+   * also in parallel. The result is the same as partitioning on a single thread, including the order of the child sets and instances.
+   *
+   * @param isCancelled checked between chunks. This classifier must be discarded when the partition is cancelled.
+   * @throws CancellationException if {@code isCancelled} returned true before the partition completed.
+   */
+  public final void partition(@NotNull Collection<InstanceObject> snapshotInstances,
+                              @NotNull Collection<InstanceObject> deltaInstances,
+                              @NotNull BooleanSupplier isCancelled) {
     if (isTerminalClassifier()) {
       return;
     }
 
-    snapshotInstances.forEach(instance -> getClassifierSet(instance, true).addSnapshotInstanceObject(instance));
-    deltaInstances.forEach(instance -> {
-      if (instance.hasTimeData()) {
-        // Note - we only add the instance allocation to our delta set if it is not already accounted for in the baseline snapshot.
-        // Otherwise we would be double counting allocations.
-        if (instance.hasAllocTime() && !snapshotInstances.contains(instance)) {
-          getClassifierSet(instance, true).addDeltaInstanceObject(instance);
+    int instanceCount = snapshotInstances.size() + deltaInstances.size();
+    if (instanceCount >= PARALLEL_PARTITION_MIN_INSTANCES && createPartialClassifier() != null) {
+      partitionInParallel(new ArrayList<>(snapshotInstances), new ArrayList<>(deltaInstances), snapshotInstances, isCancelled);
+    }
+    else {
+      if (isCancelled.getAsBoolean()) {
+        throw new CancellationException();
+      }
+      snapshotInstances.forEach(this::addSnapshotInstance);
+      deltaInstances.forEach(instance -> addDeltaInstance(instance, snapshotInstances));
+    }
+    snapshotInstances.clear();
+    deltaInstances.clear();
+  }
+
+  private void partitionInParallel(@NotNull List<InstanceObject> snapshotInstances,
+                                   @NotNull List<InstanceObject> deltaInstances,
+                                   @NotNull Collection<InstanceObject> snapshotLookup,
+                                   @NotNull BooleanSupplier isCancelled) {
+    // Snapshot instances are partitioned before the delta ones, as they would be on a single thread.
+    int snapshotCount = snapshotInstances.size();
+    int instanceCount = snapshotCount + deltaInstances.size();
+    int chunkCount = (instanceCount + PARALLEL_PARTITION_CHUNK_SIZE - 1) / PARALLEL_PARTITION_CHUNK_SIZE;
+    List<Classifier> partials = IntStream.range(0, chunkCount).parallel().mapToObj(chunk -> {
+      if (isCancelled.getAsBoolean()) {
+        throw new CancellationException();
+      }
+      Classifier partial = createPartialClassifier();
+      assert partial != null;
+      int end = Math.min(instanceCount, (chunk + 1) * PARALLEL_PARTITION_CHUNK_SIZE);
+      for (int i = chunk * PARALLEL_PARTITION_CHUNK_SIZE; i < end; i++) {
+        if (i < snapshotCount) {
+          partial.addSnapshotInstance(snapshotInstances.get(i));
         }
-        if (instance.hasDeallocTime()) {
-          getClassifierSet(instance, true).freeDeltaInstanceObject(instance);
+        else {
+          partial.addDeltaInstance(deltaInstances.get(i - snapshotCount), snapshotLookup);
         }
       }
-      else {
-        getClassifierSet(instance, true).addDeltaInstanceObject(instance);
+      return partial;
+    }).collect(Collectors.toList());
+
+    // Match the child sets of the partial classifiers to the ones of this classifier in chunk order, which keeps the order in which the
+    // child sets are first created. Each child set has at least one instance that identifies where it belongs.
+    Map<ClassifierSet, List<ClassifierSet>> partialSets = new LinkedHashMap<>();
+    for (Classifier partial : partials) {
+      for (ClassifierSet partialSet : partial.getAllClassifierSets()) {
+        ClassifierSet set = getClassifierSet(partialSet.getAnyInstance(), true);
+        assert set != null;
+        partialSets.computeIfAbsent(set, key -> new ArrayList<>()).add(partialSet);
+      }
+    }
+
+    // Child sets are independent of each other, so they can be filled in parallel.
+    partialSets.entrySet().parallelStream().forEach(entry -> {
+      if (isCancelled.getAsBoolean()) {
+        throw new CancellationException();
       }
+      entry.getValue().forEach(entry.getKey()::mergePartialSet);
     });
-    snapshotInstances.clear();
-    deltaInstances.clear();
   }
-}
\ No newline at end of file
+
+  private void addSnapshotInstance(@NotNull InstanceObject instance) {
+    getClassifierSet(instance, true).addSnapshotInstanceObject(instance);
+  }
+
+  private void addDeltaInstance(@NotNull InstanceObject instance, @NotNull Collection<InstanceObject> snapshotInstances) {
+    if (instance.hasTimeData()) {
+      // Note - we only add the instance allocation to our delta set if it is not already accounted for in the baseline snapshot.
+      // Otherwise we would be double counting allocations.
+      if (instance.hasAllocTime() && !snapshotInstances.contains(instance)) {
+        getClassifierSet(instance, true).addDeltaInstanceObject(instance);
+      }
+      if (instance.hasDeallocTime()) {
+        getClassifierSet(instance, true).freeDeltaInstanceObject(instance);
+      }
+    }
+    else {
+      getClassifierSet(instance, true).addDeltaInstanceObject(instance);
+    }
+  }
+}
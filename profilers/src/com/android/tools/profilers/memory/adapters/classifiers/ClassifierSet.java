@@ -17,6 +17,7 @@ package com.android.tools.profilers.memory.adapters.classifiers;
 
 import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.profilers.CachedFunction;
+import com.android.tools.profilers.memory.adapters.ClassDb;
 import com.android.tools.profilers.memory.adapters.InstanceObject;
 import com.android.tools.profilers.memory.adapters.MemoryObject;
 import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObjectInstanceFilter;
@@ -51,6 +52,11 @@ public abstract class ClassifierSet implements MemoryObject {
   // Note that instances here can also appear in the set of snapshot instances (e.g. when a instance is allocated before the selection
   // and deallocation within the selection).
   @NotNull protected final Set<InstanceObject> myDeltaInstances = new LinkedHashSet<>(0);
+  // Snapshot instances that are already counted by this set, but are only created once they are needed.
+  // See addDeferredSnapshotInstances.
+  @NotNull private final List<Supplier<List<InstanceObject>>> myDeferredSnapshotInstances = new ArrayList<>(0);
+  // Delta instances that are already counted by this set, but are only created once they are needed. See addDeferredDeltaInstances.
+  @NotNull private final List<Supplier<List<InstanceObject>>> myDeferredDeltaInstances = new ArrayList<>(0);
 
   // Lazily create the Classifier, as it is configurable and isn't necessary until nodes under this node needs to be classified.
   @Nullable protected Classifier myClassifier = null;
@@ -172,6 +178,85 @@ public abstract class ClassifierSet implements MemoryObject {
     changeSnapshotInstanceObject(instanceObject, false, Set::remove);
   }
 
+  /**
+   * Adds {@code count} instances of {@code classEntry} to the baseline snapshot without creating them. Only the "total" values are updated,
+   * and {@code instances} is called the first time the instances of the set that holds them are needed, which must return them in a list
+   * of that size. This is only supported when this set, and the descendants they are classified into, classify instances by class.
+   *
+   * @return false if the instances have not been added, because they can't be classified without creating them.
+   */
+  public boolean addDeferredSnapshotInstances(@NotNull ClassDb.ClassEntry classEntry,
+                                              int count,
+                                              long shallowSize,
+                                              int instancesWithStackInfoCount,
+                                              @NotNull Supplier<List<InstanceObject>> instances) {
+    if (myClassifier != null && !myClassifier.isTerminalClassifier()) {
+      ClassifierSet classifierSet = myClassifier.getClassifierSetOfClass(classEntry);
+      if (classifierSet == null ||
+          !classifierSet.addDeferredSnapshotInstances(classEntry, count, shallowSize, instancesWithStackInfoCount, instances)) {
+        return false;
+      }
+    }
+    else {
+      myDeferredSnapshotInstances.add(instances);
+    }
+
+    mySnapshotObjectCount += count;
+    myTotalShallowSize += shallowSize;
+    myInstancesWithStackInfoCount += instancesWithStackInfoCount;
+    myInstanceFilterMatchCounter.invalidate();
+    myNeedsRefiltering = true;
+    return true;
+  }
+
+  /**
+   * Adds {@code count} delta allocations of {@code classEntry} without creating their instances, like
+   * {@link #addDeferredSnapshotInstances} does for the baseline snapshot. The instances must not have an allocation call stack.
+   *
+   * @return false if the instances have not been added, because they can't be classified without creating them.
+   */
+  public boolean addDeferredDeltaInstances(@NotNull ClassDb.ClassEntry classEntry,
+                                           int count,
+                                           long shallowSize,
+                                           long nativeSize,
+                                           long retainedSize,
+                                           @NotNull Supplier<List<InstanceObject>> instances) {
+    if (myClassifier != null && !myClassifier.isTerminalClassifier()) {
+      ClassifierSet classifierSet = myClassifier.getClassifierSetOfClass(classEntry);
+      if (classifierSet == null ||
+          !classifierSet.addDeferredDeltaInstances(classEntry, count, shallowSize, nativeSize, retainedSize, instances)) {
+        return false;
+      }
+    }
+    else {
+      myDeferredDeltaInstances.add(instances);
+    }
+
+    myDeltaAllocations += count;
+    myDeltaAllocationsSize += shallowSize;
+    myTotalNativeSize += nativeSize;
+    myTotalShallowSize += shallowSize;
+    myTotalRetainedSize += retainedSize;
+    myInstanceFilterMatchCounter.invalidate();
+    myNeedsRefiltering = true;
+    return true;
+  }
+
+  /**
+   * Creates the instances added by {@link #addDeferredSnapshotInstances} and {@link #addDeferredDeltaInstances} to this set, not its
+   * descendants, if it has not been done yet.
+   */
+  private void createDeferredInstances() {
+    if (!myDeferredSnapshotInstances.isEmpty()) {
+      myDeferredSnapshotInstances.forEach(instances -> mySnapshotInstances.addAll(instances.get()));
+      myDeferredSnapshotInstances.clear();
+    }
+    if (!myDeferredDeltaInstances.isEmpty()) {
+      myDeferredDeltaInstances.forEach(instances -> myDeltaInstances.addAll(instances.get()));
+      myDeferredDeltaInstances.clear();
+    }
+  }
+
   private void changeSnapshotInstanceObject(@NotNull InstanceObject instanceObject,
                                             boolean isAdding,
                                             BiConsumer<Set<InstanceObject>, InstanceObject> handler) {
@@ -181,6 +266,7 @@ public abstract class ClassifierSet implements MemoryObject {
       classifierSet.changeSnapshotInstanceObject(instanceObject, isAdding, handler);
     }
     else {
+      createDeferredInstances();
       assert isAdding == !mySnapshotInstances.contains(instanceObject);
       handler.accept(mySnapshotInstances, instanceObject);
     }
@@ -235,7 +321,7 @@ public abstract class ClassifierSet implements MemoryObject {
       assert classifierSet != null;
       instanceChanged = classifierSet.changeDeltaInstanceInformation(instanceObject, isAllocation, isAdding, handler);
     }
-    else if ((isAdding == !myDeltaInstances.contains(instanceObject)) &&
+    else if ((isAdding == !getDeltaInstances().contains(instanceObject)) &&
              (isAdding || !instanceObject.hasTimeData())) {
       handler.accept(myDeltaInstances, instanceObject);
       instanceChanged = true;
@@ -271,7 +357,9 @@ public abstract class ClassifierSet implements MemoryObject {
 
   public void clearClassifierSets() {
     mySnapshotInstances.clear();
+    myDeferredSnapshotInstances.clear();
     myDeltaInstances.clear();
+    myDeferredDeltaInstances.clear();
     myClassifier = createSubClassifier();
     mySnapshotObjectCount = 0;
     myDeltaAllocations = 0;
@@ -285,6 +373,55 @@ public abstract class ClassifierSet implements MemoryObject {
     myFilterMatchCount = 0;
   }
 
+  /**
+   * Replaces the content of this set with instances already partitioned by {@code classifier}, which must come from
+   * {@link #createSubClassifier()}. This lets the partition happen on another thread, while the set is only updated on the thread that owns
+   * it.
+   */
+  public void setPartition(@NotNull Classifier classifier) {
+    clearClassifierSets();
+    myClassifier = classifier;
+    classifier.getAllClassifierSets().forEach(this::addCounts);
+    myInstanceFilterMatchCounter.invalidate();
+    myNeedsRefiltering = true;
+  }
+
+  /**
+   * Moves the instances of a set built by a partial classifier (see {@link Classifier#createPartialClassifier()}) into this one, which
+   * holds the instances of the same category. Neither set can be partitioned yet.
+   */
+  void mergePartialSet(@NotNull ClassifierSet partialSet) {
+    assert myClassifier == null && partialSet.myClassifier == null;
+    createDeferredInstances();
+    partialSet.createDeferredInstances();
+    mySnapshotInstances.addAll(partialSet.mySnapshotInstances);
+    myDeltaInstances.addAll(partialSet.myDeltaInstances);
+    addCounts(partialSet);
+    myInstanceFilterMatchCounter.invalidate();
+    myNeedsRefiltering = true;
+  }
+
+  private void addCounts(@NotNull ClassifierSet set) {
+    mySnapshotObjectCount += set.mySnapshotObjectCount;
+    myDeltaAllocations += set.myDeltaAllocations;
+    myDeltaDeallocations += set.myDeltaDeallocations;
+    myDeltaAllocationsSize += set.myDeltaAllocationsSize;
+    myDeltaDeallocationsSize += set.myDeltaDeallocationsSize;
+    myTotalNativeSize += set.myTotalNativeSize;
+    myTotalShallowSize += set.myTotalShallowSize;
+    myTotalRetainedSize += set.myTotalRetainedSize;
+    myInstancesWithStackInfoCount += set.myInstancesWithStackInfoCount;
+  }
+
+  /**
+   * @return one of the instances directly held by this set, which must have one.
+   */
+  @NotNull
+  InstanceObject getAnyInstance() {
+    createDeferredInstances();
+    return mySnapshotInstances.isEmpty() ? myDeltaInstances.iterator().next() : mySnapshotInstances.iterator().next();
+  }
+
   public int getInstancesCount() {
     return (int)getInstancesStream().count();
   }
@@ -294,7 +431,7 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @NotNull
   public Stream<InstanceObject> getInstancesStream() {
-    return getStreamOf(me -> Stream.concat(me.mySnapshotInstances.stream(), me.myDeltaInstances.stream()).distinct());
+    return getStreamOf(me -> Stream.concat(me.getSnapshotInstances().stream(), me.getDeltaInstances().stream()).distinct());
   }
 
   /**
@@ -303,7 +440,7 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @NotNull
   protected Stream<InstanceObject> getDeltaInstanceStream() {
-    return getStreamOf(me -> me.myDeltaInstances.stream());
+    return getStreamOf(me -> me.getDeltaInstances().stream());
   }
 
   /**
@@ -312,7 +449,25 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @NotNull
   protected Stream<InstanceObject> getSnapshotInstanceStream() {
-    return getStreamOf(me -> me.mySnapshotInstances.stream());
+    return getStreamOf(me -> me.getSnapshotInstances().stream());
+  }
+
+  /**
+   * @return the snapshot instances directly held by this set, after creating the deferred ones.
+   */
+  @NotNull
+  private Set<InstanceObject> getSnapshotInstances() {
+    createDeferredInstances();
+    return mySnapshotInstances;
+  }
+
+  /**
+   * @return the delta instances directly held by this set, after creating the deferred ones.
+   */
+  @NotNull
+  private Set<InstanceObject> getDeltaInstances() {
+    createDeferredInstances();
+    return myDeltaInstances;
   }
 
   public Stream<InstanceObject> getFilterMatches() {
@@ -346,6 +501,7 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @Nullable
   public ClassifierSet findContainingClassifierSet(@NotNull InstanceObject target) {
+    createDeferredInstances();
     boolean instancesContainsTarget =
       Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).anyMatch(target::equals);
     if (instancesContainsTarget && myClassifier != null) {
@@ -410,6 +566,7 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   protected void ensurePartition() {
     if (myClassifier == null) {
+      createDeferredInstances();
       myClassifier = createSubClassifier();
       myClassifier.partition(mySnapshotInstances, myDeltaInstances);
     }
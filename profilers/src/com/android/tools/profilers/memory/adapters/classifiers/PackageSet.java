@@ -62,6 +62,12 @@ public class PackageSet extends ClassifierSet {
       myPackageNameIndex = packageNameIndex;
     }
 
+    @NotNull
+    @Override
+    protected Classifier createPartialClassifier() {
+      return new PackageClassifier(myCaptureObject, myPackageNameIndex);
+    }
+
     @Nullable
     @Override
     public ClassifierSet getClassifierSet(@NotNull InstanceObject instance, boolean createIfAbsent) {
@@ -49,6 +49,10 @@ public class NetworkUsage extends LineChartModel {
                                             createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_SENT),
                                             dataRange);
 
+    boolean incrementalFetch = profilers.getIdeServices().getFeatureConfig().isIncrementalSeriesFetchEnabled();
+    myRxSeries.setIncrementalFetch(incrementalFetch);
+    myTxSeries.setIncrementalFetch(incrementalFetch);
+
     add(myRxSeries);
     add(myTxSeries);
   }
@@ -16,6 +16,8 @@
 package com.android.tools.profilers;
 
 import com.android.sdklib.AndroidVersion;
+import com.android.tools.idea.transport.TransportBytesSource;
+import com.android.tools.idea.transport.poller.TransportEventSource;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.cpu.FakeTracePreProcessor;
@@ -72,6 +74,8 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
 
   private final FeatureTracker myFakeFeatureTracker = new FakeFeatureTracker();
   private NativeFrameSymbolizer myFakeSymbolizer = (abi, nativeFrame) -> nativeFrame;
+  @Nullable private TransportEventSource myTransportEventSource;
+  @Nullable private TransportBytesSource myTransportBytesSource;
   private final CodeNavigator myFakeNavigationService = new FakeCodeNavigator(myFakeFeatureTracker);
   private final TracePreProcessor myFakeTracePreProcessor = new FakeTracePreProcessor();
 
@@ -80,6 +84,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myEnergyProfilerEnabled = false;
 
+  /**
+   * Toggle for fetching only new data in live monitor series.
+   */
+  private boolean myIncrementalSeriesFetchEnabled = false;
+
   /**
    * JNI references alloc/dealloc events are tracked and shown.
    */
@@ -90,6 +99,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myLiveTrackingEnabled = false;
 
+  /**
+   * Toggle for loading heap dumps from a memory-mapped file.
+   */
+  private boolean myMappedHeapDumpLoadingEnabled = false;
+
   /**
    * Toggle for faking memory snapshot support in tests.
    */
@@ -100,6 +114,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myNativeProfilingConfigurationPreferred = false;
 
+  /**
+   * Toggle for computing heap dump dominators with {@link com.android.tools.profilers.memory.adapters.DominatorTree}.
+   */
+  private boolean myParallelHeapDominatorsEnabled = false;
+
   /**
    * Whether long trace files should be parsed.
    */
@@ -273,6 +292,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return myEnergyProfilerEnabled;
       }
 
+      @Override
+      public boolean isIncrementalSeriesFetchEnabled() {
+        return myIncrementalSeriesFetchEnabled;
+      }
+
       @Override
       public boolean isJniReferenceTrackingEnabled() { return myIsJniReferenceTrackingEnabled; }
 
@@ -289,11 +313,21 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
       @Override
       public boolean isNativeMemorySampleEnabled() { return myNativeMemorySampleEnabled; }
 
+      @Override
+      public boolean isMappedHeapDumpLoadingEnabled() {
+        return myMappedHeapDumpLoadingEnabled;
+      }
+
       @Override
       public boolean isMemorySnapshotEnabled() {
         return myMemorySnapshotEnabled;
       }
 
+      @Override
+      public boolean isParallelHeapDominatorsEnabled() {
+        return myParallelHeapDominatorsEnabled;
+      }
+
       @Override
       public boolean isPerformanceMonitoringEnabled() {
         return false;
@@ -414,6 +448,32 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     return new FakeTraceProcessorService();
   }
 
+  @Nullable
+  @Override
+  public TransportEventSource getTransportEventSource() {
+    return myTransportEventSource;
+  }
+
+  /**
+   * Makes the {@link StudioProfilers} created afterwards use a pushing poller. By default they poll on every update.
+   */
+  public void setTransportEventSource(@Nullable TransportEventSource eventSource) {
+    myTransportEventSource = eventSource;
+  }
+
+  @Nullable
+  @Override
+  public TransportBytesSource getTransportBytesSource() {
+    return myTransportBytesSource;
+  }
+
+  /**
+   * Makes the profilers read large bytes from the files of the given source when it has them, instead of fetching them.
+   */
+  public void setTransportBytesSource(@Nullable TransportBytesSource bytesSource) {
+    myTransportBytesSource = bytesSource;
+  }
+
   @Nullable
   public Notification getNotification() {
     return myNotification;
@@ -427,6 +487,10 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     myEnergyProfilerEnabled = enabled;
   }
 
+  public void enableIncrementalSeriesFetch(boolean enabled) {
+    myIncrementalSeriesFetchEnabled = enabled;
+  }
+
   public void enableJniReferenceTracking(boolean enabled) { myIsJniReferenceTrackingEnabled = enabled; }
 
   public void enableLiveAllocationTracking(boolean enabled) {
@@ -453,6 +517,14 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     myLiveAllocationsSamplingEnabled = enabled;
   }
 
+  public void enableMappedHeapDumpLoading(boolean enabled) {
+    myMappedHeapDumpLoadingEnabled = enabled;
+  }
+
+  public void enableParallelHeapDominators(boolean enabled) {
+    myParallelHeapDominatorsEnabled = enabled;
+  }
+
   public void enableNativeMemorySampling(boolean enabled) {
     myNativeMemorySampleEnabled = enabled;
   }
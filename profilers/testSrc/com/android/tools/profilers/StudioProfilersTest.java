@@ -28,6 +28,8 @@ import com.android.tools.adtui.model.FakeTimer;
 import com.android.tools.adtui.model.StreamingTimeline;
 import com.android.tools.idea.transport.faketransport.FakeGrpcServer;
 import com.android.tools.idea.transport.faketransport.FakeTransportService;
+import com.android.tools.idea.transport.poller.TransportEventListener;
+import com.android.tools.idea.transport.poller.TransportEventSource;
 import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Common.AgentData;
@@ -41,6 +43,10 @@ import com.android.tools.profilers.network.NetworkProfilerStage;
 import com.google.common.collect.ImmutableList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Assume;
@@ -1552,6 +1558,37 @@ public final class StudioProfilersTest {
     assertThat(profilers.getSessionsManager().getSelectedSession().getSessionId()).isEqualTo(finishedSession.getSessionId());
   }
 
+  @Test
+  public void testTransportPollerIsWokenUpByPushedEvents() throws Exception {
+    List<TransportEventSource.Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    myIdeProfilerServices.setTransportEventSource((filter, subscriber) -> {
+      subscribers.add(subscriber);
+      return () -> subscribers.remove(subscriber);
+    });
+    StudioProfilers profilers = new StudioProfilers(myProfilerClient, myIdeProfilerServices, myTimer);
+
+    Common.Event storedEvent = Common.Event.newBuilder().setKind(Common.Event.Kind.ECHO).setTimestamp(1).build();
+    myTransportService.addEventToStream(FakeTransportService.FAKE_DEVICE_ID, storedEvent);
+    BlockingQueue<Common.Event> receivedEvents = new LinkedBlockingQueue<>();
+    profilers.getTransportPoller().registerListener(new TransportEventListener(Common.Event.Kind.ECHO,
+                                                                               myIdeProfilerServices.getMainExecutor(),
+                                                                               event -> true,
+                                                                               () -> FakeTransportService.FAKE_DEVICE_ID,
+                                                                               null,
+                                                                               event -> {
+                                                                                 receivedEvents.add(event);
+                                                                                 return false;
+                                                                               }));
+    // Neither the catch up with the stored events nor the pushed events need the updater to tick.
+    assertThat(receivedEvents.poll(5, TimeUnit.SECONDS)).isEqualTo(storedEvent);
+    Common.Event pushedEvent = storedEvent.toBuilder().setTimestamp(2).build();
+    subscribers.forEach(subscriber -> subscriber.onEvent(FakeTransportService.FAKE_DEVICE_ID, pushedEvent));
+    assertThat(receivedEvents.poll(5, TimeUnit.SECONDS)).isEqualTo(pushedEvent);
+
+    profilers.stop();
+    assertThat(subscribers).isEmpty();
+  }
+
   private static Common.Device createDevice(int featureLevel, @NotNull String serial, @NotNull Common.Device.State state) {
     return Common.Device.newBuilder()
       .setDeviceId(serial.hashCode())
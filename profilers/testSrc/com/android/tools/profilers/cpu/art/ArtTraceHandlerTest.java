@@ -19,6 +19,7 @@ import com.android.tools.perflib.vmtrace.VmTraceParser;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -26,6 +27,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
@@ -97,6 +101,44 @@ public class ArtTraceHandlerTest {
     }
   }
 
+  @Test
+  public void parallelTreesMatchSequentialTrees() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Map<Integer, CaptureNode> sequentialTrees = parseTreesByThreadId("valid_trace.trace", MoreExecutors.directExecutor());
+      Map<Integer, CaptureNode> parallelTrees = parseTreesByThreadId("valid_trace.trace", executor);
+      assertTrue(sequentialTrees.size() > 1);
+      assertEquals(sequentialTrees.keySet(), parallelTrees.keySet());
+      for (Map.Entry<Integer, CaptureNode> entry : sequentialTrees.entrySet()) {
+        assertSameTree(entry.getValue(), parallelTrees.get(entry.getKey()));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Map<Integer, CaptureNode> parseTreesByThreadId(String traceName, Executor executor) throws IOException {
+    ArtTraceHandler handler = new ArtTraceHandler(executor);
+    new VmTraceParser(CpuProfilerTestUtils.getTraceFile(traceName), handler).parse();
+    Map<Integer, CaptureNode> trees = new HashMap<>();
+    handler.getThreadsGraph().forEach((thread, tree) -> trees.put(thread.getId(), tree));
+    return trees;
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertEquals(expected.getData().getFullName(), actual.getData().getFullName());
+    assertEquals(expected.getStartGlobal(), actual.getStartGlobal());
+    assertEquals(expected.getEndGlobal(), actual.getEndGlobal());
+    assertEquals(expected.getStartThread(), actual.getStartThread());
+    assertEquals(expected.getEndThread(), actual.getEndThread());
+    assertEquals(expected.getDepth(), actual.getDepth());
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildAt(i), actual.getChildAt(i));
+    }
+  }
+
   private static CaptureNode parseCaptureNode() throws IOException {
     ArtTraceHandler handler = new ArtTraceHandler();
     VmTraceParser parser = new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler);
@@ -336,6 +336,42 @@ public class BottomUpNodeTest {
     traverseAndCheck(root, expectedNodes);
   }
 
+  /**
+   * The structure of the tree, for i in [0..50):
+   * main [0..1000]
+   *     -> A [20i..20i+10]
+   *         -> B [20i+2..20i+5]
+   *         -> A [20i+5..20i+8]
+   *
+   * The A node of the bottom-up tree merges enough nodes for its totals to be read from interval sums.
+   */
+  @Test
+  public void testManyRecursiveNodes() {
+    CaptureNode root = newNode("main", 0, 1000);
+    for (int i = 0; i < 50; i++) {
+      CaptureNode childA = newNode("A", 20 * i, 20 * i + 10);
+      addChildren(childA, newNode("B", 20 * i + 2, 20 * i + 5), newNode("A", 20 * i + 5, 20 * i + 8));
+      root.addChild(childA);
+    }
+
+    BottomUpNode node = new BottomUpNode(root);
+    BottomUpNode nodeA = node.getChildren().stream().filter(n -> n.getId().equals("A")).findAny().orElseThrow(AssertionError::new);
+    assertTrue(nodeA.getNodes().size() >= CpuTreeNode.INTERVAL_SUMS_MIN_NODES);
+
+    nodeA.update(new Range(0, 1000));
+    assertEquals(500, nodeA.getGlobalTotal(), EPS);
+    assertEquals(150, nodeA.getGlobalChildrenTotal(), EPS);
+
+    // Cuts through the sixth outer A: [100..105] of it is in range, along with its child B but not its child A.
+    nodeA.update(new Range(0, 105));
+    assertEquals(55, nodeA.getGlobalTotal(), EPS);
+    assertEquals(18, nodeA.getGlobalChildrenTotal(), EPS);
+
+    nodeA.update(new Range(1000, 2000));
+    assertEquals(0, nodeA.getGlobalTotal(), EPS);
+    assertEquals(0, nodeA.getGlobalChildrenTotal(), EPS);
+  }
+
   private static void traverseAndCheck(CaptureNode root, List<ExpectedNode> expectedNodes) {
     List<BottomUpNode> traverseOrder = new ArrayList<>();
     traverse(new BottomUpNode(root), traverseOrder);
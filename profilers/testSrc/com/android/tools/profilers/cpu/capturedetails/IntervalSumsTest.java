@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class IntervalSumsTest {
+  private static final double EPS = 1e-9;
+
+  @Test
+  public void lengthsAreClampedToTheRange() {
+    // [0..10], [5..8] nested in it, and [20..30].
+    IntervalSums sums = new IntervalSums(new long[]{0, 5, 20}, new long[]{10, 8, 30});
+    assertThat(sums.size()).isEqualTo(3);
+    assertThat(sums.getIntersectionLength(0, 30)).isWithin(EPS).of(23);
+    assertThat(sums.getIntersectionLength(-100, 100)).isWithin(EPS).of(23);
+    assertThat(sums.getIntersectionLength(6, 25)).isWithin(EPS).of(4 + 2 + 5);
+    assertThat(sums.getIntersectionLength(6.5, 7.5)).isWithin(EPS).of(2);
+    assertThat(sums.getIntersectionLength(12, 18)).isWithin(EPS).of(0);
+    assertThat(sums.getIntersectionLength(10, 10)).isWithin(EPS).of(0);
+  }
+
+  @Test
+  public void overlapsExcludesTouchingIntervals() {
+    IntervalSums sums = new IntervalSums(new long[]{0, 20}, new long[]{10, 30});
+    assertThat(sums.overlaps(9, 11)).isTrue();
+    assertThat(sums.overlaps(12, 18)).isFalse();
+    assertThat(sums.overlaps(10, 20)).isFalse();
+    assertThat(sums.overlaps(-5, 0)).isFalse();
+    assertThat(sums.overlaps(29.5, 40)).isTrue();
+    assertThat(sums.overlaps(-5, 50)).isTrue();
+  }
+
+  @Test
+  public void intervalsEndingBeforeTheyStartAreIgnored() {
+    IntervalSums sums = new IntervalSums(new long[]{0, 15}, new long[]{10, 0});
+    assertThat(sums.size()).isEqualTo(1);
+    assertThat(sums.getIntersectionLength(0, 20)).isWithin(EPS).of(10);
+    assertThat(sums.overlaps(12, 18)).isFalse();
+  }
+
+  @Test
+  public void absoluteTimestampsDoNotOverflow() {
+    // Summing 100000 absolute timestamps of this size would overflow a long.
+    long base = 1_000_000_000_000_000L;
+    int count = 100000;
+    long[] starts = new long[count];
+    long[] ends = new long[count];
+    for (int i = 0; i < count; i++) {
+      starts[i] = base + 10L * i;
+      ends[i] = starts[i] + 5;
+    }
+    IntervalSums sums = new IntervalSums(starts, ends);
+    assertThat(sums.getIntersectionLength(base, base + 10L * count)).isWithin(EPS).of(5 * count);
+  }
+}
@@ -24,6 +24,7 @@ import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TopDownNodeTest {
@@ -188,6 +189,36 @@ public class TopDownNodeTest {
     return node;
   }
 
+  @Test
+  public void testManyMergedNodes() {
+    CaptureNode root = newNode("main", 0, 1000);
+    for (int i = 0; i < 50; i++) {
+      CaptureNode child = newNode("A", 20 * i, 20 * i + 10);
+      child.addChild(newNode("B", 20 * i + 2, 20 * i + 5));
+      root.addChild(child);
+    }
+
+    // The 50 A nodes are merged into a single node, with enough nodes for its totals to be read from interval sums.
+    TopDownNode topDownA = new TopDownNode(root).getChildren().get(0);
+    assertEquals(50, topDownA.getNodes().size());
+    assertTrue(topDownA.getNodes().size() >= CpuTreeNode.INTERVAL_SUMS_MIN_NODES);
+
+    topDownA.update(new Range(0, 1000));
+    assertEquals(500, topDownA.getGlobalTotal(), 0);
+    assertEquals(450, topDownA.getThreadTotal(), 0);
+    assertEquals(150, topDownA.getGlobalChildrenTotal(), 0);
+    assertEquals(350, topDownA.getSelf(), 0);
+
+    topDownA.update(new Range(0, 103));
+    assertEquals(53, topDownA.getGlobalTotal(), 0);
+    assertEquals(48, topDownA.getThreadTotal(), 0);
+    assertEquals(16, topDownA.getGlobalChildrenTotal(), 0);
+    assertTrue(topDownA.inRange(new Range(0, 103)));
+    assertTrue(topDownA.inRange(new Range(985, 1000)));
+    assertFalse(topDownA.inRange(new Range(990, 1000)));
+    assertFalse(topDownA.inRange(new Range(12, 18)));
+  }
+
   private static void checkChildrenIds(TopDownNode node, String ...ids) {
     assertEquals(ids.length, node.getChildren().size());
     for (int i = 0; i < ids.length; ++i) {
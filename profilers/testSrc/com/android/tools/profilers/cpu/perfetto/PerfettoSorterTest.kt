@@ -16,7 +16,7 @@
 package com.android.tools.profilers.cpu.perfetto
 
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
-import com.android.tools.profilers.cpu.atrace.PerfettoPacketDBSorter
+import com.android.tools.profilers.cpu.atrace.PerfettoPacketSorter
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import perfetto.protos.PerfettoTrace
@@ -26,7 +26,7 @@ class PerfettoSorterTest {
 
   @Test
   fun formattedLinesAreReturnedOnNext() {
-    val sorter = PerfettoPacketDBSorter()
+    val sorter = PerfettoPacketSorter()
     sorter.addLine(0, "Some line")
     assertThat(sorter.hasNext()).isFalse()
     sorter.resetForIterator()
@@ -36,7 +36,7 @@ class PerfettoSorterTest {
 
   @Test
   fun hasNextCanBeCalledMultipleTimes() {
-    val sorter = PerfettoPacketDBSorter()
+    val sorter = PerfettoPacketSorter()
     sorter.addLine(0, "Some Line")
     assertThat(sorter.hasNext()).isFalse()
     sorter.resetForIterator()
@@ -45,4 +45,49 @@ class PerfettoSorterTest {
     assertThat(sorter.hasNext()).isTrue()
     assertThat(sorter.next()).isEqualTo("Some Line")
   }
+
+  @Test
+  fun linesAreSortedAcrossCpus() {
+    val sorter = PerfettoPacketSorter()
+    sorter.addLine(1, 20, "cpu1 20")
+    sorter.addLine(0, 10, "cpu0 10")
+    sorter.addLine(0, 30, "cpu0 30")
+    sorter.addLine(1, 5, "cpu1 5")
+    sorter.addLine(0, 25, "cpu0 25")
+    sorter.resetForIterator()
+    assertThat(sorter.asSequence().toList()).containsExactly("cpu1 5", "cpu0 10", "cpu1 20", "cpu0 25", "cpu0 30").inOrder()
+    sorter.close()
+    assertThat(sorter.hasNext()).isFalse()
+  }
+
+  @Test
+  fun linesSpilledToDiskAreMerged() {
+    // A budget small enough to spill a run every few lines.
+    val sorter = PerfettoPacketSorter(512)
+    val expected = mutableListOf<String>()
+    for (i in 0 until 1000) {
+      val cpu = i % 4
+      // Each CPU is mostly sorted, with a few late events.
+      val timestamp = if (i % 50 == 0) i - 30L else i.toLong()
+      val line = "cpu$cpu ${"%05d".format(timestamp)} $i"
+      sorter.addLine(cpu, timestamp, line)
+      expected.add(line)
+    }
+    sorter.resetForIterator()
+    val lines = sorter.asSequence().toList()
+    assertThat(lines).containsExactlyElementsIn(expected)
+    assertThat(lines.map { it.split(" ")[1] }).isOrdered()
+    sorter.close()
+  }
+
+  @Test
+  fun linesWithSameTimestampKeepTheirOrderWithinCpu() {
+    val sorter = PerfettoPacketSorter(256)
+    for (i in 0 until 100) {
+      sorter.addLine(0, 7, "line $i")
+    }
+    sorter.resetForIterator()
+    assertThat(sorter.asSequence().toList()).containsExactlyElementsIn((0 until 100).map { "line $it" }).inOrder()
+    sorter.close()
+  }
 }
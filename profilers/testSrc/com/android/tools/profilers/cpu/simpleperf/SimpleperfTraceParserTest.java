@@ -34,8 +34,13 @@ import com.intellij.openapi.util.io.FileUtil;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
@@ -154,7 +159,7 @@ public class SimpleperfTraceParserTest {
 
     int mainThread = 7056;
     SimpleperfReport.Sample mainFirstSample =
-      myParser.mySamples.stream().filter((sample -> sample.getThreadId() == mainThread)).findFirst().orElse(null);
+      readSamples(trace).stream().filter((sample -> sample.getThreadId() == mainThread)).findFirst().orElse(null);
     assertNotNull(mainFirstSample);
 
     CaptureNode mainThreadTree = capture.getCaptureNode(mainFirstSample.getThreadId());
@@ -216,13 +221,61 @@ public class SimpleperfTraceParserTest {
   @Test
   public void rangeShouldBeFromFirstToLastTimestamp() throws IOException {
     CpuCapture capture = myParser.parse(myTraceFile, 0);
-    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(0).getTime());
-    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(myParser.mySamples.size() - 1).getTime());
+    List<SimpleperfReport.Sample> samples = readSamples(myTraceFile);
+    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(samples.get(0).getTime());
+    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(samples.get(samples.size() - 1).getTime());
     Range expected = new Range(startTimeUs, endTimeUs);
     assertEquals(expected.getMin(), capture.getRange().getMin(), 0);
     assertEquals(expected.getMax(), capture.getRange().getMax(), 0);
   }
 
+  @Test
+  public void parallelParsingShouldProduceSameTrees() throws Exception {
+    CpuCapture sequential = myParser.parse(myTraceFile, 0);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      CpuCapture parallel = new SimpleperfTraceParser(executor).parse(myTraceFile, 0);
+      assertEquals(sequential.getThreads().size(), parallel.getThreads().size());
+      for (CpuThreadInfo thread : sequential.getThreads()) {
+        assertSameTree(sequential.getCaptureNode(thread.getId()), parallel.getCaptureNode(thread.getId()));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertNotNull(actual);
+    assertEquals(expected.getData().getFullName(), actual.getData().getFullName());
+    assertEquals(expected.getStart(), actual.getStart());
+    assertEquals(expected.getEnd(), actual.getEnd());
+    assertEquals(expected.getDepth(), actual.getDepth());
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildAt(i), actual.getChildAt(i));
+    }
+  }
+
+  /**
+   * Reads the samples of a trace file in the order they were recorded, as the parser doesn't keep them.
+   */
+  private static List<SimpleperfReport.Sample> readSamples(File trace) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(trace.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    // Skip the magic number and the version.
+    buffer.position("SIMPLEPERF".length() + 2);
+    List<SimpleperfReport.Sample> samples = new ArrayList<>();
+    for (int recordSize = buffer.getInt(); recordSize != 0; recordSize = buffer.getInt()) {
+      byte[] recordBytes = new byte[recordSize];
+      buffer.get(recordBytes);
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      if (record.hasSample()) {
+        samples.add(record.getSample());
+      }
+    }
+    return samples;
+  }
+
   /**
    * Checks that a {@link CaptureNode} tree starts with "__start_thread -> __pthread_start", then verifies the node just after then.
    */
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CancellationException;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class DominatorTreeTest {
+
+  @Test
+  public void diamondIsDominatedByItsTop() {
+    // 0 -> 1 -> {2, 3} -> 4
+    DominatorTree tree = compute(new long[]{0, 1, 2, 4, 8}, new int[][]{{0, 1}, {1, 2}, {1, 3}, {2, 4}, {3, 4}});
+    assertThat(tree.getImmediateDominator(0)).isEqualTo(DominatorTree.NO_NODE);
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(1);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(1);
+    assertThat(tree.getImmediateDominator(4)).isEqualTo(1);
+
+    assertThat(tree.getDepth(4)).isEqualTo(3);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(15);
+    assertThat(tree.getRetainedSize(2)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(4)).isEqualTo(8);
+  }
+
+  @Test
+  public void shortcutLowersDepthAndDominator() {
+    // 0 -> 1 -> 2 -> 3, and 0 -> 3
+    DominatorTree tree = compute(new long[]{0, 1, 1, 1}, new int[][]{{0, 1}, {1, 2}, {2, 3}, {0, 3}});
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(0);
+    assertThat(tree.getDepth(3)).isEqualTo(1);
+    assertThat(tree.getDepth(2)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(0)).isEqualTo(3);
+  }
+
+  @Test
+  public void cycleIsDominatedByItsEntry() {
+    // 0 -> 1 -> 2 -> 3 -> 1
+    DominatorTree tree = compute(new long[]{0, 1, 2, 4}, new int[][]{{0, 1}, {1, 2}, {2, 3}, {3, 1}});
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(1);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(7);
+    assertThat(tree.getRetainedSize(3)).isEqualTo(4);
+  }
+
+  @Test
+  public void unreachableNodesRetainNothing() {
+    // 0 -> 1, and 2 -> 1 with 2 unreachable
+    DominatorTree tree = compute(new long[]{0, 1, 2}, new int[][]{{0, 1}, {2, 1}});
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(DominatorTree.NO_NODE);
+    assertThat(tree.getDepth(2)).isEqualTo(DominatorTree.UNREACHABLE_DEPTH);
+    assertThat(tree.getRetainedSize(2)).isEqualTo(0);
+    assertThat(tree.getRetainedSize(0)).isEqualTo(1);
+  }
+
+  @Test
+  public void wideLevelsAccumulateInParallel() {
+    // The root holds enough leaves for their level to be accumulated on multiple threads.
+    int leafCount = 10000;
+    long[] sizes = new long[leafCount + 1];
+    int[][] edges = new int[leafCount][];
+    for (int leaf = 1; leaf <= leafCount; leaf++) {
+      sizes[leaf] = leaf;
+      edges[leaf - 1] = new int[]{0, leaf};
+    }
+    DominatorTree tree = compute(sizes, edges);
+    assertThat(tree.getNodeCount()).isEqualTo(leafCount + 1);
+    assertThat(tree.getRetainedSize(0)).isEqualTo((long)leafCount * (leafCount + 1) / 2);
+  }
+
+  @Test(expected = CancellationException.class)
+  public void interruptionCancels() {
+    Thread.currentThread().interrupt();
+    try {
+      compute(new long[]{0, 1}, new int[][]{{0, 1}});
+    }
+    finally {
+      // Clear the interrupted flag for the next tests.
+      Thread.interrupted();
+    }
+  }
+
+  /**
+   * @param edges pairs of {from, to} nodes.
+   */
+  @NotNull
+  private static DominatorTree compute(@NotNull long[] sizes, @NotNull int[][] edges) {
+    int[] predecessorStarts = new int[sizes.length + 1];
+    for (int[] edge : edges) {
+      predecessorStarts[edge[1] + 1]++;
+    }
+    for (int node = 0; node < sizes.length; node++) {
+      predecessorStarts[node + 1] += predecessorStarts[node];
+    }
+    int[] predecessors = new int[edges.length];
+    int[] positions = predecessorStarts.clone();
+    for (int[] edge : edges) {
+      predecessors[positions[edge[1]]++] = edge[0];
+    }
+    return DominatorTree.compute(predecessorStarts, predecessors, sizes);
+  }
+}
@@ -45,8 +45,12 @@ import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObject
 import com.google.common.truth.Truth;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -184,6 +188,118 @@ public class HeapDumpCaptureObjectTest {
     assertNotNull(defaultHeap);
   }
 
+  @Test
+  public void testMappedLoadingComputesRetainedSizesInBackground() throws Exception {
+    myIdeProfilerServices.enableMappedHeapDumpLoading(true);
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getChannel()), ProfilersTestData.SESSION_DATA, dumpInfo,
+                                null,
+                                myIdeProfilerServices.getFeatureTracker(),
+                                myStage.getStudioProfilers().getIdeServices());
+
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(3), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+    assertNotNull(capture.getRetainedSizeComputation());
+
+    // The class list is available right away, the depths are set once the background computation is done.
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+    capture.getRetainedSizeComputation().get();
+    assertTrue(capture.hasRetainedSizes());
+    assertEquals(-1, capture.getLoadingProgress(), 0);
+
+    Classifier classClassifier = ClassSet.createDefaultClassifier();
+    classClassifier.partition(
+      Collections.emptyList(), testHeap.getInstancesStream().collect(HashSet::new, HashSet::add, HashSet::addAll));
+    InstanceObject instance0 = findChildClassSetWithName(classClassifier, "Class0").getInstancesStream().findFirst().orElse(null);
+    InstanceObject instance1 = findChildClassSetWithName(classClassifier, "Class1").getInstancesStream().findFirst().orElse(null);
+    verifyInstance(instance0, "Class0@1 (0x1)", 0, 1, 0);
+    verifyInstance(instance1, "Class1@2 (0x2)", 1, 0, 1);
+    capture.unload();
+  }
+
+  @Test
+  public void testMappedLoadingCopiesTheDatastoreFile() throws Exception {
+    myIdeProfilerServices.enableMappedHeapDumpLoading(true);
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getChannel()), ProfilersTestData.SESSION_DATA, dumpInfo,
+                                null,
+                                myIdeProfilerServices.getFeatureTracker(),
+                                myStage.getStudioProfilers().getIdeServices());
+
+    // The hprof is only in the file of the bytes source, the transport would return no bytes for it.
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    File hprof = File.createTempFile("HeapDumpCaptureObjectTest", ".hprof");
+    hprof.deleteOnExit();
+    Files.write(hprof.toPath(), ByteString.copyFrom(snapshotBuilder.getByteBuffer()).toByteArray());
+    myIdeProfilerServices.setTransportBytesSource(request -> {
+      assertEquals("3", request.getId());
+      try {
+        return FileChannel.open(hprof.toPath(), StandardOpenOption.READ);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+    capture.getRetainedSizeComputation().get();
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+    assertEquals(-1, capture.getLoadingProgress(), 0);
+    capture.unload();
+  }
+
+  @Test
+  public void testParallelDominatorsComputeRetainedSizesInBackground() throws Exception {
+    myIdeProfilerServices.enableParallelHeapDominators(true);
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getChannel()), ProfilersTestData.SESSION_DATA, dumpInfo,
+                                null,
+                                myIdeProfilerServices.getFeatureTracker(),
+                                myStage.getStudioProfilers().getIdeServices());
+
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(3), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+    assertNotNull(capture.getRetainedSizeComputation());
+
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+    capture.getRetainedSizeComputation().get();
+    assertTrue(capture.hasRetainedSizes());
+
+    Classifier classClassifier = ClassSet.createDefaultClassifier();
+    classClassifier.partition(
+      Collections.emptyList(), testHeap.getInstancesStream().collect(HashSet::new, HashSet::add, HashSet::addAll));
+    InstanceObject instance0 = findChildClassSetWithName(classClassifier, "Class0").getInstancesStream().findFirst().orElse(null);
+    InstanceObject instance1 = findChildClassSetWithName(classClassifier, "Class1").getInstancesStream().findFirst().orElse(null);
+    verifyInstance(instance0, "Class0@1 (0x1)", 0, 1, 0);
+    verifyInstance(instance1, "Class1@2 (0x2)", 1, 0, 1);
+    // Instance 1 retains instance 2.
+    assertEquals(instance0.getShallowSize() + instance1.getShallowSize(), instance0.getRetainedSize());
+    assertEquals(instance1.getShallowSize(), instance1.getRetainedSize());
+  }
+
   @Test
   public void testLoadingFailure() throws Exception {
     HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
@@ -204,6 +320,17 @@ public class HeapDumpCaptureObjectTest {
 
   @Test
   public void testHeapDumpActivityLeak() throws Exception {
+    checkActivityLeakFilter();
+  }
+
+  @Test
+  public void testHeapDumpActivityLeakWithParallelDominators() throws Exception {
+    // The leak filter relies on the depths computed in the background.
+    myIdeProfilerServices.enableParallelHeapDominators(true);
+    checkActivityLeakFilter();
+  }
+
+  private void checkActivityLeakFilter() throws Exception {
     HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(0).setEndTime(1).build();
     HeapDumpCaptureObject capture =
       new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getChannel()), ProfilersTestData.SESSION_DATA,
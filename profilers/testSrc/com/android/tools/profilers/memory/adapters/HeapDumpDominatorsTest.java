@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.android.testutils.TestUtils;
+import com.android.tools.perflib.heap.Heap;
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.Snapshot;
+import com.android.tools.perflib.heap.SnapshotBuilder;
+import com.android.tools.perflib.heap.io.InMemoryBuffer;
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer;
+import com.android.tools.proguard.ProguardMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class HeapDumpDominatorsTest {
+  @Test
+  public void matchesPerflibOnSimpleSnapshot() {
+    // 1 holds a reference to 2, and 1 is the only root.
+    byte[] bytes = new SnapshotBuilder(2, 0, 0).addReferences(1, 2).addRoot(1).getByteBuffer();
+    assertMatchesPerflib(Snapshot.createSnapshot(new InMemoryBuffer(ByteBuffer.wrap(bytes)), new ProguardMap(), Collections.emptyList()));
+  }
+
+  @Test
+  public void matchesPerflibOnAppHeapDump() throws IOException {
+    File hprof = TestUtils.getWorkspaceFile("tools/adt/idea/profilers/testData/hprofs/displayingbitmaps_leakedActivity.hprof");
+    assertMatchesPerflib(Snapshot.createSnapshot(new MemoryMappedFileBuffer(hprof), new ProguardMap(), Collections.emptyList()));
+  }
+
+  /**
+   * Checks that {@link HeapDumpDominators} gives every instance of the snapshot the same depth and retained size as
+   * {@link Snapshot#computeDominators()}.
+   */
+  private static void assertMatchesPerflib(@NotNull Snapshot snapshot) {
+    HeapDumpDominators dominators = HeapDumpDominators.compute(snapshot);
+    snapshot.computeDominators();
+
+    List<Instance> instances = new ArrayList<>();
+    for (Heap heap : snapshot.getHeaps()) {
+      instances.addAll(heap.getClasses());
+      heap.forEachInstance(instance -> {
+        instances.add(instance);
+        return true;
+      });
+    }
+    assertThat(instances).isNotEmpty();
+
+    for (Instance instance : instances) {
+      assertWithMessage("Depth of %s", instance).that(dominators.getDepth(instance)).isEqualTo(instance.getDistanceToGcRoot());
+      if (instance.getDistanceToGcRoot() != Integer.MAX_VALUE) {
+        assertWithMessage("Retained size of %s", instance)
+          .that(dominators.getRetainedSize(instance))
+          .isEqualTo(instance.getTotalRetainedSize());
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class LiveAllocationTableTest {
+
+  @Test
+  public void rowsHoldAllocationColumns() {
+    LiveAllocationTable table = new LiveAllocationTable();
+    int row = table.addRow(7, 1, 2, 3, 64, 3);
+    assertThat(table.getRow(7)).isEqualTo(row);
+    assertThat(table.getTag(row)).isEqualTo(7);
+    assertThat(table.getClassTag(row)).isEqualTo(1);
+    assertThat(table.getStackId(row)).isEqualTo(2);
+    assertThat(table.getThreadId(row)).isEqualTo(3);
+    assertThat(table.getSize(row)).isEqualTo(64);
+    assertThat(table.getHeapId(row)).isEqualTo(3);
+    assertThat(table.getAllocTime(row)).isEqualTo(Long.MIN_VALUE);
+    assertThat(table.getInstance(row)).isNull();
+
+    // Adding a tag twice keeps the first allocation.
+    assertThat(table.addRow(7, 5, 5, 5, 5, 0)).isEqualTo(row);
+    assertThat(table.getClassTag(row)).isEqualTo(1);
+    assertThat(table.size()).isEqualTo(1);
+    assertThat(table.getRow(8)).isEqualTo(LiveAllocationTable.NO_ROW);
+  }
+
+  @Test
+  public void freedRowsAreReused() {
+    LiveAllocationTable table = new LiveAllocationTable();
+    int row0 = table.addRow(0, 1, 0, 0, 8, 0);
+    int row1 = table.addRow(1, 1, 0, 0, 8, 0);
+    table.removeRow(0);
+    assertThat(table.getRow(0)).isEqualTo(LiveAllocationTable.NO_ROW);
+    assertThat(table.isLive(row0)).isFalse();
+    assertThat(table.isLive(row1)).isTrue();
+
+    int row2 = table.addRow(2, 1, 0, 0, 16, 0);
+    assertThat(row2).isEqualTo(row0);
+    assertThat(table.isLive(row2)).isTrue();
+    assertThat(table.getSize(row2)).isEqualTo(16);
+    assertThat(table.size()).isEqualTo(2);
+
+    // Removing a missing tag is a no-op.
+    table.removeRow(0);
+    assertThat(table.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void tableGrows() {
+    LiveAllocationTable table = new LiveAllocationTable();
+    for (int tag = 0; tag < 5000; tag++) {
+      table.setAllocTime(table.addRow(tag, tag, 0, 0, tag, 0), tag * 10L);
+    }
+    assertThat(table.size()).isEqualTo(5000);
+    for (int tag = 0; tag < 5000; tag++) {
+      int row = table.getRow(tag);
+      assertThat(table.getClassTag(row)).isEqualTo(tag);
+      assertThat(table.getAllocTime(row)).isEqualTo(tag * 10L);
+    }
+
+    table.clear();
+    assertThat(table.size()).isEqualTo(0);
+    assertThat(table.getRow(10)).isEqualTo(LiveAllocationTable.NO_ROW);
+    assertThat(table.isLive(0)).isFalse();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.classifiers
+
+import com.android.tools.profilers.memory.ClassGrouping
+import com.android.tools.profilers.memory.adapters.FakeCaptureObject
+import com.android.tools.profilers.memory.adapters.FakeInstanceObject
+import com.android.tools.profilers.memory.adapters.InstanceObject
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.util.concurrent.CancellationException
+import java.util.stream.Collectors
+
+class ClassifierTest {
+  private val capture = FakeCaptureObject.Builder().build()
+  private val classNames = listOf("com.foo.Bar", "com.foo.Baz", "com.qux.Bar", "java.lang.String", "int[]")
+  // Enough instances to be partitioned on multiple threads.
+  private val instances = (0 until Classifier.PARALLEL_PARTITION_MIN_INSTANCES + 1000).map {
+    val classId = (it * 7 % classNames.size).toLong()
+    FakeInstanceObject.Builder(capture, classId, classNames[classId.toInt()]).setShallowSize(it % 13).build()
+  }
+
+  @Test
+  fun `parallel partition matches serial partition`() {
+    for (grouping in listOf(ClassGrouping.ARRANGE_BY_CLASS, ClassGrouping.ARRANGE_BY_PACKAGE)) {
+      val serial = HeapSet(capture, "serial", 0)
+      serial.setClassGrouping(grouping)
+      serial.clearClassifierSets()
+      instances.forEach { serial.addDeltaInstanceObject(it) }
+
+      val parallel = HeapSet(capture, "parallel", 0)
+      parallel.setClassGrouping(grouping)
+      val classifier = parallel.createSubClassifier()
+      classifier.partition(mutableListOf(), instances.toMutableList<InstanceObject>())
+      parallel.setPartition(classifier)
+
+      assertSameSets(serial, parallel)
+    }
+  }
+
+  @Test(expected = CancellationException::class)
+  fun `cancelled partition throws`() {
+    HeapSet(capture, "heap", 0).createSubClassifier().partition(mutableListOf(), instances.toMutableList<InstanceObject>()) { true }
+  }
+
+  private fun assertSameSets(expected: ClassifierSet, actual: ClassifierSet) {
+    assertThat(actual.totalObjectCount).isEqualTo(expected.totalObjectCount)
+    assertThat(actual.deltaAllocationCount).isEqualTo(expected.deltaAllocationCount)
+    assertThat(actual.totalShallowSize).isEqualTo(expected.totalShallowSize)
+    assertThat(actual.allocationSize).isEqualTo(expected.allocationSize)
+    assertThat(actual.instancesStream.collect(Collectors.toList()))
+      .containsExactlyElementsIn(expected.instancesStream.collect(Collectors.toList())).inOrder()
+    val expectedChildren = expected.childrenClassifierSets
+    val actualChildren = actual.childrenClassifierSets
+    assertThat(actualChildren.map(ClassifierSet::getName)).containsExactlyElementsIn(expectedChildren.map(ClassifierSet::getName)).inOrder()
+    expectedChildren.zip(actualChildren).forEach { (e, a) -> assertSameSets(e, a) }
+  }
+}
@@ -15,10 +15,12 @@
  */
 package com.android.tools.profilers.memory.adapters.classifiers
 
+import com.android.tools.profilers.memory.ClassGrouping
 import com.android.tools.profilers.memory.adapters.FakeCaptureObject
 import com.android.tools.profilers.memory.adapters.FakeInstanceObject
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
+import java.util.stream.Collectors
 
 class HeapSetTest {
   @Test
@@ -32,4 +34,59 @@ class HeapSetTest {
     h.removeAddedDeltaInstanceObject(inst1)
     assertThat(h.totalRemainingSize).isEqualTo(inst2.shallowSize)
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `deferred snapshot instances are counted before being created`() {
+    val capture = FakeCaptureObject.Builder().build()
+    val inst1 = FakeInstanceObject.Builder(capture, 1, "obj").setShallowSize(4).build()
+    val inst2 = FakeInstanceObject.Builder(capture, 1, "obj").setShallowSize(8).build()
+    val h = HeapSet(capture, "Fake", 42)
+    h.clearClassifierSets()
+    var createCount = 0
+    assertThat(h.addDeferredSnapshotInstances(inst1.classEntry, 2, 12, 0) { createCount++; listOf(inst1, inst2) }).isTrue()
+    assertThat(h.totalObjectCount).isEqualTo(2)
+    assertThat(h.totalShallowSize).isEqualTo(12)
+    val classSet = h.childrenClassifierSets.single()
+    assertThat(classSet.totalObjectCount).isEqualTo(2)
+    assertThat(createCount).isEqualTo(0)
+
+    h.removeSnapshotInstanceObject(inst1)
+    assertThat(createCount).isEqualTo(1)
+    assertThat(classSet.instancesStream.collect(Collectors.toList())).containsExactly(inst2)
+    assertThat(h.totalObjectCount).isEqualTo(1)
+    assertThat(h.totalShallowSize).isEqualTo(8)
+  }
+
+  @Test
+  fun `deferred delta instances are counted before being created`() {
+    val capture = FakeCaptureObject.Builder().build()
+    val inst1 = FakeInstanceObject.Builder(capture, 1, "obj").setShallowSize(4).build()
+    val inst2 = FakeInstanceObject.Builder(capture, 1, "obj").setShallowSize(8).build()
+    val h = HeapSet(capture, "Fake", 42)
+    h.clearClassifierSets()
+    var createCount = 0
+    assertThat(h.addDeferredDeltaInstances(inst1.classEntry, 2, 12, 0, 0) { createCount++; listOf(inst1, inst2) }).isTrue()
+    assertThat(h.deltaAllocationCount).isEqualTo(2)
+    assertThat(h.totalShallowSize).isEqualTo(12)
+    val classSet = h.childrenClassifierSets.single()
+    assertThat(classSet.deltaAllocationCount).isEqualTo(2)
+    assertThat(createCount).isEqualTo(0)
+
+    h.removeAddedDeltaInstanceObject(inst1)
+    assertThat(createCount).isEqualTo(1)
+    assertThat(classSet.instancesStream.collect(Collectors.toList())).containsExactly(inst2)
+    assertThat(h.deltaAllocationCount).isEqualTo(1)
+    assertThat(h.totalShallowSize).isEqualTo(8)
+  }
+
+  @Test
+  fun `snapshot instances cannot be deferred when not arranged by class`() {
+    val capture = FakeCaptureObject.Builder().build()
+    val inst = FakeInstanceObject.Builder(capture, 1, "obj").setShallowSize(4).build()
+    val h = HeapSet(capture, "Fake", 42)
+    h.classGrouping = ClassGrouping.ARRANGE_BY_PACKAGE
+    h.clearClassifierSets()
+    assertThat(h.addDeferredSnapshotInstances(inst.classEntry, 1, 4, 0) { listOf(inst) }).isFalse()
+    assertThat(h.isEmpty).isTrue()
+  }
+}
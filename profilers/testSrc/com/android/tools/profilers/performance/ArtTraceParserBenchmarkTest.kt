@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils
+import com.android.tools.profilers.cpu.art.ArtTraceParser
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.MoreExecutors
+import org.junit.After
+import org.junit.Test
+import java.time.Instant
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Compares the time it takes to parse the sample ART traces when the call trees of the threads are built on the calling thread, against
+ * building them in parallel on a thread pool.
+ */
+class ArtTraceParserBenchmarkTest {
+  companion object {
+    private val TRACES = listOf("basic.trace", "valid_trace.trace")
+    private const val WARM_UP_COUNT = 5
+    private const val SAMPLE_COUNT = 20
+  }
+
+  private val benchmark = Benchmark.Builder("ART Trace Parse Timings (Nanos)").setProject("Android Studio Profilers").build()
+  private val pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())
+
+  @After
+  fun tearDown() {
+    pool.shutdownNow()
+  }
+
+  @Test
+  fun runBenchmark() {
+    for (trace in TRACES) {
+      measureParse("$trace-Sequential", trace, MoreExecutors.directExecutor())
+      measureParse("$trace-Parallel", trace, pool)
+    }
+  }
+
+  private fun measureParse(name: String, trace: String, executor: Executor) {
+    val file = CpuProfilerTestUtils.getTraceFile(trace)
+    val metric = Metric(name)
+    repeat(WARM_UP_COUNT + SAMPLE_COUNT) { iteration ->
+      val startTime = System.nanoTime()
+      val capture = ArtTraceParser(executor).parse(file, 0)
+      val elapsed = System.nanoTime() - startTime
+      assertThat(capture.threads).isNotEmpty()
+      if (iteration >= WARM_UP_COUNT) {
+        metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}
@@ -74,6 +74,7 @@ import com.android.resources.ResourceVisibility;
 import com.android.utils.SdkUtils;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -82,6 +83,8 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.collect.Tables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.containers.ContainerUtil;
@@ -109,16 +112,36 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 import org.kxml2.io.KXmlParser;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 public abstract class RepositoryLoader<T extends LoadableResourceRepository> implements FileFilter {
   private static final Logger LOG = Logger.getInstance(RepositoryLoader.class);
+  /** The maximum number of threads parsing the XML files of a repository, including the thread loading the repository. */
+  private static final int MAX_PARSING_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  /** The minimum number of XML files per thread for parsing to be worth spreading over multiple threads. */
+  private static final int MIN_FILES_PER_PARSING_THREAD = 8;
+  /**
+   * The helper threads used by {@link #parseXmlFiles}. The executor is shared by all loaders, so that loading many repositories
+   * at the same time doesn't create more than {@link #MAX_PARSING_THREADS} - 1 extra threads.
+   */
+  private static final ExecutorService ourParsingExecutor = createParsingExecutor();
+  /** The number of threads {@link #parseXmlFiles} actually uses at most. Differs from {@link #MAX_PARSING_THREADS} only in tests. */
+  private static volatile int ourParsingThreadLimit = MAX_PARSING_THREADS;
   /** The set of attribute formats that is used when no formats are explicitly specified and the attribute is not a flag or enum. */
   private final Set<AttributeFormat> DEFAULT_ATTR_FORMATS = Sets.immutableEnumSet(
       AttributeFormat.BOOLEAN,
@@ -140,9 +163,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   /** Cache of FolderConfiguration instances, keyed by qualifier strings (see {@link FolderConfiguration#getQualifierString()}). */
   @NotNull protected final Map<String, FolderConfiguration> myFolderConfigCache = new HashMap<>();
   @NotNull private final Map<FolderConfiguration, RepositoryConfiguration> myConfigCache = new HashMap<>();
-  @NotNull private final ValueResourceXmlParser myParser = new ValueResourceXmlParser();
-  @NotNull private final XmlTextExtractor myTextExtractor = new XmlTextExtractor();
-  @NotNull private final ResourceUrlParser myUrlParser = new ResourceUrlParser();
+  @NotNull private final ResourceFileParser myFileParser = new ResourceFileParser();
   // Used to keep track of resources defined in the current value resource file.
   @NotNull private final Table<ResourceType, String, BasicValueResourceItemBase> myValueFileResources =
       Tables.newCustomTable(new EnumMap<>(ResourceType.class), () -> new LinkedHashMap<>());
@@ -192,12 +213,13 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
       loadPublicResourceNames();
       boolean shouldParseResourceIds = !loadIdsFromRTxt();
 
+      List<PathString> resourceFiles = new ArrayList<>();
       zipFile.stream().forEach(zipEntry -> {
         if (!zipEntry.isDirectory()) {
-          PathString path = new PathString(zipEntry.getName());
-          loadResourceFile(path, repository, shouldParseResourceIds);
+          resourceFiles.add(new PathString(zipEntry.getName()));
         }
       });
+      loadResourceFiles(resourceFiles, repository, shouldParseResourceIds);
     }
     catch (Exception e) {
       LOG.error("Failed to load resources from " + myResourceDirectoryOrFile.toString(), e);
@@ -222,9 +244,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
                                          ImmutableList.of(myResourceDirectoryOrFile) :
                                          ContainerUtil.map(myResourceFilesAndFolders, PathString::toPath);
       List<PathString> resourceFiles = findResourceFiles(sourceFilesAndFolders);
-      for (PathString file : resourceFiles) {
-        loadResourceFile(file, repository, shouldParseResourceIds);
-      }
+      loadResourceFiles(resourceFiles, repository, shouldParseResourceIds);
     }
     catch (Exception e) {
       LOG.error("Failed to load resources from " + myResourceDirectoryOrFile.toString(), e);
@@ -234,14 +254,62 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   }
 
   protected final void loadResourceFile(@NotNull PathString file, @NotNull T repository, boolean shouldParseResourceIds) {
-    String folderName = file.getParentFileName();
-    if (folderName != null) {
-      FolderInfo folderInfo = FolderInfo.create(folderName, myFolderConfigCache);
-      if (folderInfo != null) {
+    FolderInfo folderInfo = getFolderInfo(file);
+    if (folderInfo != null) {
+      RepositoryConfiguration configuration = getConfiguration(repository, folderInfo.configuration);
+      loadResourceFile(file, folderInfo, configuration, shouldParseResourceIds);
+    }
+  }
+
+  /**
+   * Loads the given resource files. The XML files are parsed first, concurrently if there are many of them. Then the resources
+   * are added to the repository in the order of the files, so that the result doesn't depend on the order the files were parsed in.
+   */
+  private void loadResourceFiles(@NotNull List<PathString> files, @NotNull T repository, boolean shouldParseResourceIds) {
+    long startTime = System.nanoTime();
+    List<XmlResourceFile> xmlFiles = new ArrayList<>();
+    // The parsed XML file for each of the files, or null if the file doesn't need to be parsed.
+    List<XmlResourceFile> xmlFileByIndex = new ArrayList<>(files.size());
+    for (PathString file : files) {
+      XmlResourceFile xmlFile = null;
+      FolderInfo folderInfo = getFolderInfo(file);
+      if (folderInfo != null && isXmlFile(file) &&
+          (folderInfo.resourceType == null || shouldParseResourceIds && folderInfo.isIdGenerating)) {
         RepositoryConfiguration configuration = getConfiguration(repository, folderInfo.configuration);
-        loadResourceFile(file, folderInfo, configuration, shouldParseResourceIds);
+        xmlFile = new XmlResourceFile(file, configuration, folderInfo.resourceType != null);
+        xmlFiles.add(xmlFile);
       }
+      xmlFileByIndex.add(xmlFile);
     }
+
+    parseXmlFiles(xmlFiles);
+    long parsedTime = System.nanoTime();
+
+    for (int i = 0; i < files.size(); i++) {
+      PathString file = files.get(i);
+      XmlResourceFile xmlFile = xmlFileByIndex.get(i);
+      if (xmlFile != null) {
+        addParsedResources(xmlFile);
+      }
+      FolderInfo folderInfo = getFolderInfo(file);
+      if (folderInfo != null && folderInfo.resourceType != null) {
+        RepositoryConfiguration configuration = getConfiguration(repository, folderInfo.configuration);
+        BasicFileResourceItem item = createFileResourceItem(file, folderInfo.resourceType, configuration);
+        addResourceItem(item);
+      }
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Loaded %d resource files from %s in %d ms, parsing %d XML files took %d ms", files.size(),
+                              myResourceDirectoryOrFile, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), xmlFiles.size(),
+                              TimeUnit.NANOSECONDS.toMillis(parsedTime - startTime)));
+    }
+  }
+
+  @Nullable
+  private FolderInfo getFolderInfo(@NotNull PathString file) {
+    String folderName = file.getParentFileName();
+    return folderName == null ? null : FolderInfo.create(folderName, myFolderConfigCache);
   }
 
   protected void finishLoading(@NotNull T repository) {
@@ -464,45 +532,9 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   protected abstract void addResourceItem(@NotNull BasicResourceItem item, @NotNull T repository);
 
   protected final void parseValueResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration) {
-    try (InputStream stream = getInputStream(file)) {
-      ResourceSourceFile sourceFile = createResourceSourceFile(file, configuration);
-      myParser.setInput(stream, null);
-
-      int event;
-      do {
-        event = myParser.nextToken();
-        int depth = myParser.getDepth();
-        if (event == XmlPullParser.START_TAG) {
-          if (myParser.getPrefix() != null) {
-            continue;
-          }
-          String tagName = myParser.getName();
-          assert depth <= 2; // Deeper tags should be consumed by the createResourceItem method.
-          if (depth == 1) {
-            if (!tagName.equals(TAG_RESOURCES)) {
-              break;
-            }
-          }
-          else if (depth > 1) {
-            ResourceType resourceType = getResourceType(tagName, file);
-            if (resourceType != null && resourceType != ResourceType.PUBLIC) {
-              String resourceName = myParser.getAttributeValue(null, ATTR_NAME);
-              if (resourceName != null) {
-                validateResourceName(resourceName, resourceType, file);
-                BasicValueResourceItemBase item = createResourceItem(resourceType, resourceName, sourceFile);
-                addValueResourceItem(item);
-              }
-            }
-          }
-        }
-      } while (event != XmlPullParser.END_DOCUMENT);
-    }
-    // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
-    catch (IOException | XmlPullParserException | XmlSyntaxException | RuntimeException e) {
-      handleParsingError(file, e);
-    }
-
-    addValueFileResources();
+    XmlResourceFile xmlFile = new XmlResourceFile(file, configuration, false);
+    myFileParser.parse(xmlFile);
+    addParsedResources(xmlFile);
   }
 
   @NotNull
@@ -536,30 +568,83 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   }
 
   protected final void parseIdGeneratingResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration) {
-    try (InputStream stream = getInputStream(file)) {
-      ResourceSourceFile sourceFile = createResourceSourceFile(file, configuration);
-      XmlPullParser parser = new KXmlParser();
-      parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-      parser.setInput(stream, null);
+    XmlResourceFile xmlFile = new XmlResourceFile(file, configuration, true);
+    myFileParser.parse(xmlFile);
+    addParsedResources(xmlFile);
+  }
 
-      int event;
-      do {
-        event = parser.nextToken();
-        if (event == XmlPullParser.START_TAG) {
-          int numAttributes = parser.getAttributeCount();
-          for (int i = 0; i < numAttributes; i++) {
-            String idValue = parser.getAttributeValue(i);
-            if (idValue.startsWith(NEW_ID_PREFIX) && idValue.length() > NEW_ID_PREFIX.length()) {
-              String resourceName = idValue.substring(NEW_ID_PREFIX.length());
-              addIdResourceItem(resourceName, sourceFile);
-            }
-          }
+  /**
+   * Parses the given XML files without adding their resources to the repository. When there are enough files, they are parsed
+   * concurrently by the calling thread and up to {@link #MAX_PARSING_THREADS} - 1 helper threads. Afterwards the resources of each
+   * file have to be added to the repository by calling {@link #addParsedResources}.
+   */
+  protected final void parseXmlFiles(@NotNull List<XmlResourceFile> xmlFiles) {
+    int helperCount = Math.min(ourParsingThreadLimit, xmlFiles.size() / MIN_FILES_PER_PARSING_THREAD) - 1;
+    if (helperCount <= 0) {
+      for (XmlResourceFile xmlFile : xmlFiles) {
+        myFileParser.parse(xmlFile);
+      }
+      return;
+    }
+
+    // Files are handed out one at a time, so that a few large files don't leave the other threads idle.
+    AtomicInteger nextFile = new AtomicInteger();
+    Runnable parsingTask = () -> {
+      ResourceFileParser parser = new ResourceFileParser();
+      int i;
+      while ((i = nextFile.getAndIncrement()) < xmlFiles.size()) {
+        parser.parse(xmlFiles.get(i));
+      }
+    };
+    List<Future<?>> helpers = new ArrayList<>(helperCount);
+    for (int i = 0; i < helperCount; i++) {
+      helpers.add(ourParsingExecutor.submit(parsingTask));
+    }
+    // The calling thread parses too, so that loading makes progress even when the helper threads are busy with other repositories.
+    parsingTask.run();
+
+    for (Future<?> helper : helpers) {
+      if (!helper.cancel(false)) { // A helper that hasn't started yet has nothing left to do.
+        try {
+          Uninterruptibles.getUninterruptibly(helper);
         }
-      } while (event != XmlPullParser.END_DOCUMENT);
+        catch (ExecutionException e) {
+          Throwables.throwIfUnchecked(e.getCause());
+          throw new RuntimeException(e.getCause());
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the maximum number of threads parsing the XML files of a repository. A limit of 1 makes {@link #parseXmlFiles} parse
+   * sequentially on the calling thread, a limit above 1 makes it use helper threads even on a single-processor machine.
+   * Returns the previous limit.
+   */
+  @TestOnly
+  public static int setParsingThreadLimit(int limit) {
+    int previousLimit = ourParsingThreadLimit;
+    ourParsingThreadLimit = Math.max(1, limit);
+    return previousLimit;
+  }
+
+  /**
+   * Adds the resources of a file parsed by {@link #parseXmlFiles} to the repository, or reports the parsing error.
+   */
+  protected final void addParsedResources(@NotNull XmlResourceFile xmlFile) {
+    for (BasicValueResourceItemBase item : xmlFile.valueResources) {
+      addValueResourceItem(item);
+    }
+    for (BasicAttrResourceItem attr : xmlFile.attrCandidates) {
+      addAttr(attr, myAttrCandidates);
+    }
+    if (xmlFile.sourceFile != null) {
+      for (String id : xmlFile.ids) {
+        addIdResourceItem(id, xmlFile.sourceFile);
+      }
     }
-    // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
-    catch (IOException | XmlPullParserException | RuntimeException e) {
-      handleParsingError(file, e);
+    if (xmlFile.parsingError != null) {
+      handleParsingError(xmlFile.file, xmlFile.parsingError);
     }
 
     addValueFileResources();
@@ -621,249 +706,6 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
            new BasicDensityBasedFileResourceItem(type, name, configuration, visibility, relativePath, density);
   }
 
-  @NotNull
-  private BasicValueResourceItemBase createResourceItem(
-      @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    switch (type) {
-      case ARRAY:
-        return createArrayItem(name, sourceFile);
-
-      case ATTR:
-        return createAttrItem(name, sourceFile);
-
-      case PLURALS:
-        return createPluralsItem(name, sourceFile);
-
-      case STRING:
-        return createStringItem(type, name, sourceFile, true);
-
-      case STYLE:
-        return createStyleItem(name, sourceFile);
-
-      case STYLEABLE:
-        return createStyleableItem(name, sourceFile);
-
-      case ANIMATOR:
-      case DRAWABLE:
-      case INTERPOLATOR:
-      case LAYOUT:
-      case MENU:
-      case MIPMAP:
-      case TRANSITION:
-        return createFileReferenceItem(type, name, sourceFile);
-
-      default:
-        return createStringItem(type, name, sourceFile, false);
-    }
-  }
-
-  @NotNull
-  private BasicArrayResourceItem createArrayItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    String indexValue = myParser.getAttributeValue(TOOLS_URI, ATTR_INDEX);
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    List<String> values = new ArrayList<>();
-    forSubTags(TAG_ITEM, () -> {
-      String text = myTextExtractor.extractText(myParser, false);
-      values.add(text);
-    });
-    int index = 0;
-    if (indexValue != null) {
-      try {
-        index = Integer.parseUnsignedInt(indexValue);
-      }
-      catch (NumberFormatException e) {
-        throw new XmlSyntaxException(
-            "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is not a valid number.",
-            myParser, getDisplayName(sourceFile));
-      }
-      if (index >= values.size()) {
-        throw new XmlSyntaxException(
-            "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is out of bounds.",
-            myParser, getDisplayName(sourceFile));
-      }
-    }
-    ResourceVisibility visibility = getVisibility(ResourceType.ARRAY, name);
-    BasicArrayResourceItem item = new BasicArrayResourceItem(name, sourceFile, visibility, values, index);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicAttrResourceItem createAttrItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    ResourceNamespace attrNamespace;
-    myUrlParser.parseResourceUrl(name);
-    if (myUrlParser.hasNamespacePrefix(ANDROID_NS_NAME)) {
-      attrNamespace = ResourceNamespace.ANDROID;
-    } else {
-      String prefix = myUrlParser.getNamespacePrefix();
-      attrNamespace = ResourceNamespace.fromNamespacePrefix(prefix, myNamespace, myParser.getNamespaceResolver());
-      if (attrNamespace == null) {
-        throw new XmlSyntaxException("Undefined prefix of attr resource name \"" + name + "\"", myParser, getDisplayName(sourceFile));
-      }
-    }
-    name = myUrlParser.getName();
-
-    String description = myParser.getLastComment();
-    String groupName = myParser.getAttrGroupComment();
-    String formatString = myParser.getAttributeValue(null, ATTR_FORMAT);
-    Set<AttributeFormat> formats =
-      StringUtil.isEmpty(formatString) ? EnumSet.noneOf(AttributeFormat.class) : AttributeFormat.parse(formatString);
-
-    // The average number of enum or flag values is 7 for Android framework, so start with small maps.
-    Map<String, Integer> valueMap = Maps.newHashMapWithExpectedSize(8);
-    Map<String, String> descriptionMap = Maps.newHashMapWithExpectedSize(8);
-    forSubTags(null, () -> {
-      if (myParser.getPrefix() == null) {
-        String tagName = myParser.getName();
-        AttributeFormat format =
-            tagName.equals(TAG_ENUM) ? AttributeFormat.ENUM : tagName.equals(TAG_FLAG) ? AttributeFormat.FLAGS : null;
-        if (format != null) {
-          formats.add(format);
-          String valueName = myParser.getAttributeValue(null, ATTR_NAME);
-          if (valueName != null) {
-            String valueDescription = myParser.getLastComment();
-            if (valueDescription != null) {
-              descriptionMap.put(valueName, valueDescription);
-            }
-            String value = myParser.getAttributeValue(null, ATTR_VALUE);
-            Integer numericValue = null;
-            if (value != null) {
-              try {
-                // Integer.decode/parseInt can't deal with hex value > 0x7FFFFFFF so we use Long.decode instead.
-                numericValue = Long.decode(value).intValue();
-              }
-              catch (NumberFormatException ignored) {
-              }
-            }
-            valueMap.put(valueName, numericValue);
-          }
-        }
-      }
-    });
-
-    BasicAttrResourceItem item;
-    if (attrNamespace.equals(myNamespace)) {
-      ResourceVisibility visibility = getVisibility(ResourceType.ATTR, name);
-      item = new BasicAttrResourceItem(name, sourceFile, visibility, description, groupName, formats, valueMap, descriptionMap);
-    }
-    else {
-      item = new BasicForeignAttrResourceItem(attrNamespace, name, sourceFile, description, groupName, formats, valueMap, descriptionMap);
-    }
-
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicPluralsResourceItem createPluralsItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    String defaultQuantity = myParser.getAttributeValue(TOOLS_URI, ATTR_QUANTITY);
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    EnumMap<Arity, String> values = new EnumMap<>(Arity.class);
-    forSubTags(TAG_ITEM, () -> {
-      String quantityValue = myParser.getAttributeValue(null, ATTR_QUANTITY);
-      if (quantityValue != null) {
-        Arity quantity = Arity.getEnum(quantityValue);
-        if (quantity != null) {
-          String text = myTextExtractor.extractText(myParser, false);
-          values.put(quantity, text);
-        }
-      }
-    });
-    Arity defaultArity = null;
-    if (defaultQuantity != null) {
-      defaultArity = Arity.getEnum(defaultQuantity);
-      if (defaultArity == null || !values.containsKey(defaultArity)) {
-        throw new XmlSyntaxException(
-            "Invalid value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_QUANTITY + " attribute.", myParser,
-            getDisplayName(sourceFile));
-      }
-    }
-    ResourceVisibility visibility = getVisibility(ResourceType.PLURALS, name);
-    BasicPluralsResourceItem item = new BasicPluralsResourceItem(name, sourceFile, visibility, values, defaultArity);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicValueResourceItem createStringItem(
-      @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile, boolean withRowXml)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    String text = type == ResourceType.ID ? null : myTextExtractor.extractText(myParser, withRowXml);
-    String rawXml = type == ResourceType.ID ? null : myTextExtractor.getRawXml();
-    assert withRowXml || rawXml == null; // Text extractor doesn't extract raw XML unless asked to do it.
-    ResourceVisibility visibility = getVisibility(type, name);
-    BasicValueResourceItem item = rawXml == null ?
-                                  new BasicValueResourceItem(type, name, sourceFile, visibility, text) :
-                                  new BasicTextValueResourceItem(type, name, sourceFile, visibility, text, rawXml);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicStyleResourceItem createStyleItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    String parentStyle = myParser.getAttributeValue(null, ATTR_PARENT);
-    if (parentStyle != null && !parentStyle.isEmpty()) {
-      myUrlParser.parseResourceUrl(parentStyle);
-      parentStyle = myUrlParser.getQualifiedName();
-    }
-    List<StyleItemResourceValue> styleItems = new ArrayList<>();
-    forSubTags(TAG_ITEM, () -> {
-      ResourceNamespace.Resolver itemNamespaceResolver = myParser.getNamespaceResolver();
-      String itemName = myParser.getAttributeValue(null, ATTR_NAME);
-      if (itemName != null) {
-        String text = myTextExtractor.extractText(myParser, false);
-        StyleItemResourceValueImpl styleItem =
-            new StyleItemResourceValueImpl(myNamespace, itemName, text, sourceFile.getRepository().getLibraryName());
-        styleItem.setNamespaceResolver(itemNamespaceResolver);
-        styleItems.add(styleItem);
-      }
-    });
-    ResourceVisibility visibility = getVisibility(ResourceType.STYLE, name);
-    BasicStyleResourceItem item = new BasicStyleResourceItem(name, sourceFile, visibility, parentStyle, styleItems);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicStyleableResourceItem createStyleableItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    List<AttrResourceValue> attrs = new ArrayList<>();
-    forSubTags(TAG_ATTR, () -> {
-      String attrName = myParser.getAttributeValue(null, ATTR_NAME);
-      if (attrName != null) {
-        try {
-          BasicAttrResourceItem attr = createAttrItem(attrName, sourceFile);
-          // Mimic behavior of AAPT2 and put an attr reference inside a styleable resource.
-          attrs.add(attr.getFormats().isEmpty() ? attr : attr.createReference());
-
-          // Don't create top-level attr resources in a foreign namespace, or for attr references in the res-auto namespace.
-          // The second condition is determined by the fact that the attr in the res-auto namespace may have an explicit definition
-          // outside of this resource repository.
-          if (attr.getNamespace().equals(myNamespace) && (myNamespace != ResourceNamespace.RES_AUTO || !attr.getFormats().isEmpty())) {
-            addAttr(attr, myAttrCandidates);
-          }
-        }
-        catch (XmlSyntaxException e) {
-          LOG.error(e);
-        }
-      }
-    });
-    // AAPT2 treats all styleable resources as public.
-    // See https://android.googlesource.com/platform/frameworks/base/+/master/tools/aapt2/ResourceParser.cpp#1539
-    BasicStyleableResourceItem item = new BasicStyleableResourceItem(name, sourceFile, ResourceVisibility.PUBLIC, attrs);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
   private static void addAttr(@NotNull BasicAttrResourceItem attr, @NotNull ListMultimap<String, BasicAttrResourceItem> map) {
     List<BasicAttrResourceItem> attrs = map.get(attr.getName());
     int i = findResourceWithSameNameAndConfiguration(attr, attrs);
@@ -989,72 +831,6 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return -1;
   }
 
-  @NotNull
-  private BasicValueResourceItem createFileReferenceItem(
-      @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    String text = myTextExtractor.extractText(myParser, false).trim();
-    if (!text.isEmpty() && !text.startsWith(PREFIX_RESOURCE_REF) && !text.startsWith(PREFIX_THEME_REF)) {
-      text = text.replace('/', File.separatorChar);
-    }
-    ResourceVisibility visibility = getVisibility(type, name);
-    BasicValueResourceItem item = new BasicValueResourceItem(type, name, sourceFile, visibility, text);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @Nullable
-  private ResourceType getResourceType(@NotNull String tagName, @NotNull PathString file) throws XmlSyntaxException {
-    ResourceType type = ResourceType.fromXmlTagName(tagName);
-
-    if (type == null) {
-      if (TAG_EAT_COMMENT.equals(tagName) || TAG_SKIP.equals(tagName)) {
-        return null;
-      }
-
-      if (tagName.equals(TAG_ITEM)) {
-        String typeAttr = myParser.getAttributeValue(null, ATTR_TYPE);
-        if (typeAttr != null) {
-          type = ResourceType.fromClassName(typeAttr);
-          if (type != null) {
-            return type;
-          }
-
-          throw new XmlSyntaxException("Invalid type attribute \"" + typeAttr + "\"", myParser, getDisplayName(file));
-        }
-      }
-
-      throw new XmlSyntaxException("Invalid tag name \"" + tagName + "\"", myParser, getDisplayName(file));
-    }
-
-    return type;
-  }
-
-  /**
-   * If {@code tagName} is null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag.
-   * If {@code tagName} is not null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag
-   * which name doesn't have a prefix and matches {@code tagName}.
-   */
-  private void forSubTags(@Nullable String tagName, @NotNull XmlTagVisitor subtagVisitor) throws IOException, XmlPullParserException {
-    int elementDepth = myParser.getDepth();
-    int event;
-    do {
-      event = myParser.nextToken();
-      if (event == XmlPullParser.START_TAG && (tagName == null || tagName.equals(myParser.getName()) && myParser.getPrefix() == null)) {
-        subtagVisitor.visitTag();
-      }
-    } while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || myParser.getDepth() > elementDepth));
-  }
-
-  private void validateResourceName(@NotNull String resourceName, @NotNull ResourceType resourceType, @NotNull PathString file)
-      throws XmlSyntaxException {
-    String error = ValueResourceNameValidator.getErrorText(resourceName, resourceType);
-    if (error != null) {
-      throw new XmlSyntaxException(error, myParser, getDisplayName(file));
-    }
-  }
-
   @NotNull
   private String getDisplayName(@NotNull PathString file) {
     return file.isAbsolute() ? file.getNativePath() : file.getPortablePath() + " in " + myResourceDirectoryOrFile.toString();
@@ -1094,6 +870,16 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return file.subpath(1, file.getNameCount()).getPortablePath();
   }
 
+  @NotNull
+  private static ExecutorService createParsingExecutor() {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("RepositoryLoader-%d").setDaemon(true).build();
+    int threadCount = Math.max(1, MAX_PARSING_THREADS - 1);
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), threadFactory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   private static boolean isZipArchive(@NotNull Path resourceDirectoryOrFile) {
     String filename = resourceDirectoryOrFile.getFileName().toString();
     return SdkUtils.endsWithIgnoreCase(filename, DOT_AAR) ||
@@ -1106,6 +892,435 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return fileName.replace(File.separatorChar, '/');
   }
 
+  /**
+   * Parses XML resource files without changing the state of the loader. Different instances of this class may parse different files
+   * concurrently.
+   */
+  private final class ResourceFileParser {
+    @NotNull private final ValueResourceXmlParser myParser = new ValueResourceXmlParser();
+    @NotNull private final XmlTextExtractor myTextExtractor = new XmlTextExtractor();
+    @NotNull private final ResourceUrlParser myUrlParser = new ResourceUrlParser();
+    /** The file being parsed. */
+    private XmlResourceFile myFile;
+
+    void parse(@NotNull XmlResourceFile xmlFile) {
+      myFile = xmlFile;
+      try {
+        if (xmlFile.isIdGenerating) {
+          parseIdGeneratingResourceFile(xmlFile);
+        }
+        else {
+          parseValueResourceFile(xmlFile);
+        }
+      }
+      finally {
+        myFile = null;
+      }
+    }
+
+    private void parseValueResourceFile(@NotNull XmlResourceFile xmlFile) {
+      PathString file = xmlFile.file;
+      try (InputStream stream = getInputStream(file)) {
+        ResourceSourceFile sourceFile = createResourceSourceFile(file, xmlFile.configuration);
+        xmlFile.sourceFile = sourceFile;
+        myParser.setInput(stream, null);
+
+        int event;
+        do {
+          event = myParser.nextToken();
+          int depth = myParser.getDepth();
+          if (event == XmlPullParser.START_TAG) {
+            if (myParser.getPrefix() != null) {
+              continue;
+            }
+            String tagName = myParser.getName();
+            assert depth <= 2; // Deeper tags should be consumed by the createResourceItem method.
+            if (depth == 1) {
+              if (!tagName.equals(TAG_RESOURCES)) {
+                break;
+              }
+            }
+            else if (depth > 1) {
+              ResourceType resourceType = getResourceType(tagName, file);
+              if (resourceType != null && resourceType != ResourceType.PUBLIC) {
+                String resourceName = myParser.getAttributeValue(null, ATTR_NAME);
+                if (resourceName != null) {
+                  validateResourceName(resourceName, resourceType, file);
+                  BasicValueResourceItemBase item = createResourceItem(resourceType, resourceName, sourceFile);
+                  xmlFile.valueResources.add(item);
+                }
+              }
+            }
+          }
+        } while (event != XmlPullParser.END_DOCUMENT);
+      }
+      // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
+      catch (IOException | XmlPullParserException | XmlSyntaxException | RuntimeException e) {
+        xmlFile.parsingError = e;
+      }
+    }
+
+    private void parseIdGeneratingResourceFile(@NotNull XmlResourceFile xmlFile) {
+      PathString file = xmlFile.file;
+      try (InputStream stream = getInputStream(file)) {
+        xmlFile.sourceFile = createResourceSourceFile(file, xmlFile.configuration);
+        XmlPullParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(stream, null);
+
+        int event;
+        do {
+          event = parser.nextToken();
+          if (event == XmlPullParser.START_TAG) {
+            int numAttributes = parser.getAttributeCount();
+            for (int i = 0; i < numAttributes; i++) {
+              String idValue = parser.getAttributeValue(i);
+              if (idValue.startsWith(NEW_ID_PREFIX) && idValue.length() > NEW_ID_PREFIX.length()) {
+                xmlFile.ids.add(idValue.substring(NEW_ID_PREFIX.length()));
+              }
+            }
+          }
+        } while (event != XmlPullParser.END_DOCUMENT);
+      }
+      // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
+      catch (IOException | XmlPullParserException | RuntimeException e) {
+        xmlFile.parsingError = e;
+      }
+    }
+
+    @NotNull
+    private BasicValueResourceItemBase createResourceItem(
+        @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      switch (type) {
+        case ARRAY:
+          return createArrayItem(name, sourceFile);
+
+        case ATTR:
+          return createAttrItem(name, sourceFile);
+
+        case PLURALS:
+          return createPluralsItem(name, sourceFile);
+
+        case STRING:
+          return createStringItem(type, name, sourceFile, true);
+
+        case STYLE:
+          return createStyleItem(name, sourceFile);
+
+        case STYLEABLE:
+          return createStyleableItem(name, sourceFile);
+
+        case ANIMATOR:
+        case DRAWABLE:
+        case INTERPOLATOR:
+        case LAYOUT:
+        case MENU:
+        case MIPMAP:
+        case TRANSITION:
+          return createFileReferenceItem(type, name, sourceFile);
+
+        default:
+          return createStringItem(type, name, sourceFile, false);
+      }
+    }
+
+    @NotNull
+    private BasicArrayResourceItem createArrayItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      String indexValue = myParser.getAttributeValue(TOOLS_URI, ATTR_INDEX);
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      List<String> values = new ArrayList<>();
+      forSubTags(TAG_ITEM, () -> {
+        String text = myTextExtractor.extractText(myParser, false);
+        values.add(text);
+      });
+      int index = 0;
+      if (indexValue != null) {
+        try {
+          index = Integer.parseUnsignedInt(indexValue);
+        }
+        catch (NumberFormatException e) {
+          throw new XmlSyntaxException(
+              "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is not a valid number.",
+              myParser, getDisplayName(sourceFile));
+        }
+        if (index >= values.size()) {
+          throw new XmlSyntaxException(
+              "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is out of bounds.",
+              myParser, getDisplayName(sourceFile));
+        }
+      }
+      ResourceVisibility visibility = getVisibility(ResourceType.ARRAY, name);
+      BasicArrayResourceItem item = new BasicArrayResourceItem(name, sourceFile, visibility, values, index);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicAttrResourceItem createAttrItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      ResourceNamespace attrNamespace;
+      myUrlParser.parseResourceUrl(name);
+      if (myUrlParser.hasNamespacePrefix(ANDROID_NS_NAME)) {
+        attrNamespace = ResourceNamespace.ANDROID;
+      } else {
+        String prefix = myUrlParser.getNamespacePrefix();
+        attrNamespace = ResourceNamespace.fromNamespacePrefix(prefix, myNamespace, myParser.getNamespaceResolver());
+        if (attrNamespace == null) {
+          throw new XmlSyntaxException("Undefined prefix of attr resource name \"" + name + "\"", myParser, getDisplayName(sourceFile));
+        }
+      }
+      name = myUrlParser.getName();
+
+      String description = myParser.getLastComment();
+      String groupName = myParser.getAttrGroupComment();
+      String formatString = myParser.getAttributeValue(null, ATTR_FORMAT);
+      Set<AttributeFormat> formats =
+        StringUtil.isEmpty(formatString) ? EnumSet.noneOf(AttributeFormat.class) : AttributeFormat.parse(formatString);
+
+      // The average number of enum or flag values is 7 for Android framework, so start with small maps.
+      Map<String, Integer> valueMap = Maps.newHashMapWithExpectedSize(8);
+      Map<String, String> descriptionMap = Maps.newHashMapWithExpectedSize(8);
+      forSubTags(null, () -> {
+        if (myParser.getPrefix() == null) {
+          String tagName = myParser.getName();
+          AttributeFormat format =
+              tagName.equals(TAG_ENUM) ? AttributeFormat.ENUM : tagName.equals(TAG_FLAG) ? AttributeFormat.FLAGS : null;
+          if (format != null) {
+            formats.add(format);
+            String valueName = myParser.getAttributeValue(null, ATTR_NAME);
+            if (valueName != null) {
+              String valueDescription = myParser.getLastComment();
+              if (valueDescription != null) {
+                descriptionMap.put(valueName, valueDescription);
+              }
+              String value = myParser.getAttributeValue(null, ATTR_VALUE);
+              Integer numericValue = null;
+              if (value != null) {
+                try {
+                  // Integer.decode/parseInt can't deal with hex value > 0x7FFFFFFF so we use Long.decode instead.
+                  numericValue = Long.decode(value).intValue();
+                }
+                catch (NumberFormatException ignored) {
+                }
+              }
+              valueMap.put(valueName, numericValue);
+            }
+          }
+        }
+      });
+
+      BasicAttrResourceItem item;
+      if (attrNamespace.equals(myNamespace)) {
+        ResourceVisibility visibility = getVisibility(ResourceType.ATTR, name);
+        item = new BasicAttrResourceItem(name, sourceFile, visibility, description, groupName, formats, valueMap, descriptionMap);
+      }
+      else {
+        item = new BasicForeignAttrResourceItem(attrNamespace, name, sourceFile, description, groupName, formats, valueMap, descriptionMap);
+      }
+
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicPluralsResourceItem createPluralsItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      String defaultQuantity = myParser.getAttributeValue(TOOLS_URI, ATTR_QUANTITY);
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      EnumMap<Arity, String> values = new EnumMap<>(Arity.class);
+      forSubTags(TAG_ITEM, () -> {
+        String quantityValue = myParser.getAttributeValue(null, ATTR_QUANTITY);
+        if (quantityValue != null) {
+          Arity quantity = Arity.getEnum(quantityValue);
+          if (quantity != null) {
+            String text = myTextExtractor.extractText(myParser, false);
+            values.put(quantity, text);
+          }
+        }
+      });
+      Arity defaultArity = null;
+      if (defaultQuantity != null) {
+        defaultArity = Arity.getEnum(defaultQuantity);
+        if (defaultArity == null || !values.containsKey(defaultArity)) {
+          throw new XmlSyntaxException(
+              "Invalid value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_QUANTITY + " attribute.", myParser,
+              getDisplayName(sourceFile));
+        }
+      }
+      ResourceVisibility visibility = getVisibility(ResourceType.PLURALS, name);
+      BasicPluralsResourceItem item = new BasicPluralsResourceItem(name, sourceFile, visibility, values, defaultArity);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicValueResourceItem createStringItem(
+        @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile, boolean withRowXml)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      String text = type == ResourceType.ID ? null : myTextExtractor.extractText(myParser, withRowXml);
+      String rawXml = type == ResourceType.ID ? null : myTextExtractor.getRawXml();
+      assert withRowXml || rawXml == null; // Text extractor doesn't extract raw XML unless asked to do it.
+      ResourceVisibility visibility = getVisibility(type, name);
+      BasicValueResourceItem item = rawXml == null ?
+                                    new BasicValueResourceItem(type, name, sourceFile, visibility, text) :
+                                    new BasicTextValueResourceItem(type, name, sourceFile, visibility, text, rawXml);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicStyleResourceItem createStyleItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      String parentStyle = myParser.getAttributeValue(null, ATTR_PARENT);
+      if (parentStyle != null && !parentStyle.isEmpty()) {
+        myUrlParser.parseResourceUrl(parentStyle);
+        parentStyle = myUrlParser.getQualifiedName();
+      }
+      List<StyleItemResourceValue> styleItems = new ArrayList<>();
+      forSubTags(TAG_ITEM, () -> {
+        ResourceNamespace.Resolver itemNamespaceResolver = myParser.getNamespaceResolver();
+        String itemName = myParser.getAttributeValue(null, ATTR_NAME);
+        if (itemName != null) {
+          String text = myTextExtractor.extractText(myParser, false);
+          StyleItemResourceValueImpl styleItem =
+              new StyleItemResourceValueImpl(myNamespace, itemName, text, sourceFile.getRepository().getLibraryName());
+          styleItem.setNamespaceResolver(itemNamespaceResolver);
+          styleItems.add(styleItem);
+        }
+      });
+      ResourceVisibility visibility = getVisibility(ResourceType.STYLE, name);
+      BasicStyleResourceItem item = new BasicStyleResourceItem(name, sourceFile, visibility, parentStyle, styleItems);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicStyleableResourceItem createStyleableItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      List<AttrResourceValue> attrs = new ArrayList<>();
+      forSubTags(TAG_ATTR, () -> {
+        String attrName = myParser.getAttributeValue(null, ATTR_NAME);
+        if (attrName != null) {
+          try {
+            BasicAttrResourceItem attr = createAttrItem(attrName, sourceFile);
+            // Mimic behavior of AAPT2 and put an attr reference inside a styleable resource.
+            attrs.add(attr.getFormats().isEmpty() ? attr : attr.createReference());
+
+            // Don't create top-level attr resources in a foreign namespace, or for attr references in the res-auto namespace.
+            // The second condition is determined by the fact that the attr in the res-auto namespace may have an explicit definition
+            // outside of this resource repository.
+            if (attr.getNamespace().equals(myNamespace) && (myNamespace != ResourceNamespace.RES_AUTO || !attr.getFormats().isEmpty())) {
+              myFile.attrCandidates.add(attr);
+            }
+          }
+          catch (XmlSyntaxException e) {
+            LOG.error(e);
+          }
+        }
+      });
+      // AAPT2 treats all styleable resources as public.
+      // See https://android.googlesource.com/platform/frameworks/base/+/master/tools/aapt2/ResourceParser.cpp#1539
+      BasicStyleableResourceItem item = new BasicStyleableResourceItem(name, sourceFile, ResourceVisibility.PUBLIC, attrs);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicValueResourceItem createFileReferenceItem(
+        @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      String text = myTextExtractor.extractText(myParser, false).trim();
+      if (!text.isEmpty() && !text.startsWith(PREFIX_RESOURCE_REF) && !text.startsWith(PREFIX_THEME_REF)) {
+        text = text.replace('/', File.separatorChar);
+      }
+      ResourceVisibility visibility = getVisibility(type, name);
+      BasicValueResourceItem item = new BasicValueResourceItem(type, name, sourceFile, visibility, text);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @Nullable
+    private ResourceType getResourceType(@NotNull String tagName, @NotNull PathString file) throws XmlSyntaxException {
+      ResourceType type = ResourceType.fromXmlTagName(tagName);
+
+      if (type == null) {
+        if (TAG_EAT_COMMENT.equals(tagName) || TAG_SKIP.equals(tagName)) {
+          return null;
+        }
+
+        if (tagName.equals(TAG_ITEM)) {
+          String typeAttr = myParser.getAttributeValue(null, ATTR_TYPE);
+          if (typeAttr != null) {
+            type = ResourceType.fromClassName(typeAttr);
+            if (type != null) {
+              return type;
+            }
+
+            throw new XmlSyntaxException("Invalid type attribute \"" + typeAttr + "\"", myParser, getDisplayName(file));
+          }
+        }
+
+        throw new XmlSyntaxException("Invalid tag name \"" + tagName + "\"", myParser, getDisplayName(file));
+      }
+
+      return type;
+    }
+
+    /**
+     * If {@code tagName} is null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag.
+     * If {@code tagName} is not null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag
+     * which name doesn't have a prefix and matches {@code tagName}.
+     */
+    private void forSubTags(@Nullable String tagName, @NotNull XmlTagVisitor subtagVisitor) throws IOException, XmlPullParserException {
+      int elementDepth = myParser.getDepth();
+      int event;
+      do {
+        event = myParser.nextToken();
+        if (event == XmlPullParser.START_TAG && (tagName == null || tagName.equals(myParser.getName()) && myParser.getPrefix() == null)) {
+          subtagVisitor.visitTag();
+        }
+      } while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || myParser.getDepth() > elementDepth));
+    }
+
+    private void validateResourceName(@NotNull String resourceName, @NotNull ResourceType resourceType, @NotNull PathString file)
+        throws XmlSyntaxException {
+      String error = ValueResourceNameValidator.getErrorText(resourceName, resourceType);
+      if (error != null) {
+        throw new XmlSyntaxException(error, myParser, getDisplayName(file));
+      }
+    }
+  }
+
+  /**
+   * A value resource file, or an XML file in an ID-generating folder, together with the results of parsing it. Parsing a file and adding
+   * its resources to the repository are separate steps, so that {@link #parseXmlFiles} can parse multiple files concurrently while
+   * {@link #addParsedResources} adds their resources in a deterministic order.
+   */
+  protected static final class XmlResourceFile {
+    @NotNull private final PathString file;
+    @NotNull private final RepositoryConfiguration configuration;
+    private final boolean isIdGenerating;
+    // The results of parsing.
+    @Nullable private ResourceSourceFile sourceFile;
+    @NotNull private final List<BasicValueResourceItemBase> valueResources = new ArrayList<>();
+    @NotNull private final List<BasicAttrResourceItem> attrCandidates = new ArrayList<>();
+    @NotNull private final List<String> ids = new ArrayList<>();
+    @Nullable private Exception parsingError;
+
+    public XmlResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration, boolean isIdGenerating) {
+      this.file = file;
+      this.configuration = configuration;
+      this.isIdGenerating = isIdGenerating;
+    }
+  }
+
   private interface XmlTagVisitor {
     /** Is called when the parser is positioned at a {@link XmlPullParser#START_TAG}. */
     void visitTag() throws IOException, XmlPullParserException;
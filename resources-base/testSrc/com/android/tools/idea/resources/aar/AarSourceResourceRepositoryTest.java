@@ -18,6 +18,7 @@ package com.android.tools.idea.resources.aar;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.intellij.testFramework.UsefulTestCase.assertSameElements;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.android.ide.common.rendering.api.AttrResourceValue;
 import com.android.ide.common.rendering.api.AttributeFormat;
@@ -29,10 +30,12 @@ import com.android.ide.common.rendering.api.StyleableResourceValue;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.resources.ResourceType;
 import com.android.tools.idea.res.ResourcesTestsUtil;
+import com.android.tools.idea.resources.base.RepositoryLoader;
 import com.android.utils.PathUtils;
 import com.intellij.util.containers.ContainerUtil;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -228,4 +231,59 @@ public class AarSourceResourceRepositoryTest {
     AarSourceResourceRepository repository = ResourcesTestsUtil.getTestAarRepositoryFromExplodedAar();
     assertThat(repository.getPackageName()).isEqualTo(ResourcesTestsUtil.AAR_PACKAGE_NAME);
   }
+
+  @Test
+  public void testConcurrentLoadingMatchesSequentialLoading() throws Exception {
+    Path resDir = myTempDir.resolve("concurrent_lib").resolve("res");
+    Files.createDirectories(resDir.resolve("values"));
+    Files.createDirectories(resDir.resolve("layout"));
+    for (int i = 0; i < 24; i++) {
+      // Every file redefines "duplicate" and "shared_id", so the result depends on the order the resources are added in.
+      Files.write(resDir.resolve("values/values" + i + ".xml"),
+                  ("<resources>\n" +
+                   "  <string name=\"string" + i + "\">String " + i + "</string>\n" +
+                   "  <string name=\"duplicate\">Duplicate " + i + "</string>\n" +
+                   "  <item type=\"id\" name=\"shared_id\"/>\n" +
+                   "</resources>\n").getBytes(UTF_8));
+      Files.write(resDir.resolve("layout/layout" + i + ".xml"),
+                  ("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                   "    android:id=\"@+id/shared_id\">\n" +
+                   "  <TextView android:id=\"@+id/text" + i + "\"/>\n" +
+                   "</LinearLayout>\n").getBytes(UTF_8));
+    }
+    Files.write(resDir.resolve("values/malformed.xml"),
+                "<resources>\n  <string name=\"malformed\">Malformed</resources>\n".getBytes(UTF_8));
+
+    int previousLimit = RepositoryLoader.setParsingThreadLimit(1);
+    List<String> sequentialResources;
+    List<String> concurrentResources;
+    try {
+      sequentialResources = describeResources(AarSourceResourceRepository.create(resDir, "concurrent_lib"));
+      RepositoryLoader.setParsingThreadLimit(4);
+      concurrentResources = describeResources(AarSourceResourceRepository.create(resDir, "concurrent_lib"));
+    }
+    finally {
+      RepositoryLoader.setParsingThreadLimit(previousLimit);
+    }
+
+    assertThat(concurrentResources).containsExactlyElementsIn(sequentialResources).inOrder();
+    assertThat(sequentialResources).contains("string/string23 values/values23.xml String 23");
+    assertThat(ContainerUtil.exists(sequentialResources, resource -> resource.startsWith("id/text23 layout/layout23.xml "))).isTrue();
+  }
+
+  /**
+   * Returns a description of every resource of the given repository, in the order the repository returns them.
+   */
+  @NotNull
+  private static List<String> describeResources(@NotNull AarSourceResourceRepository repository) {
+    List<String> result = new ArrayList<>();
+    for (ResourceType type : ResourceType.values()) {
+      for (ResourceItem item : repository.getResources(ResourceNamespace.RES_AUTO, type).values()) {
+        ResourceValue value = item.getResourceValue();
+        String source = item.getSource() == null ? null : item.getSource().getParentFileName() + "/" + item.getSource().getFileName();
+        result.add(type.getName() + "/" + item.getName() + " " + source + " " + (value == null ? null : value.getValue()));
+      }
+    }
+    return result;
+  }
 }
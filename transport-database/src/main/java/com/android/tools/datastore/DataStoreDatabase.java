@@ -15,7 +15,9 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DataStoreWriteQueue;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
@@ -39,6 +41,17 @@ public class DataStoreDatabase {
 
   private final Connection myConnection;
 
+  /**
+   * Commits the connection periodically and, for tables that opt in, applies their inserts in batches. Null if the connection failed to
+   * open.
+   */
+  @Nullable private final DataStoreWriteQueue myWriteQueue;
+
+  /**
+   * Whether the connection was opened on a {@link Characteristic#DURABLE} database left by a previous run.
+   */
+  private final boolean myIsResumed;
+
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
    */
@@ -52,8 +65,22 @@ public class DataStoreDatabase {
                            @NotNull Characteristic characteristic,
                            @NotNull LogService logService,
                            @NotNull Consumer<Throwable> noPiiExceptionHandler) {
+    this(dbPath, characteristic, logService, noPiiExceptionHandler, false);
+  }
+
+  /**
+   * @param resumeExisting if true, a {@link Characteristic#DURABLE} database file left by a previous run is kept and upgraded to the
+   *                       current {@link DataStoreSchema#VERSION}, so the sessions it contains are available again. Files that cannot
+   *                       be upgraded are discarded.
+   */
+  public DataStoreDatabase(@NotNull String dbPath,
+                           @NotNull Characteristic characteristic,
+                           @NotNull LogService logService,
+                           @NotNull Consumer<Throwable> noPiiExceptionHandler,
+                           boolean resumeExisting) {
     myLogService = logService;
     Connection connection = null;
+    boolean isResumed = false;
     try {
       // For older versions of the JDBC we need to force load the sqlite.JDBC driver to trigger static initializer's and register
       // the JDBC driver with the java DriverMangaer.
@@ -65,27 +92,31 @@ public class DataStoreDatabase {
           break;
         case DURABLE:
           File dbFile = new File(dbPath);
-          // Due to an incompatible update in SQLite we do not support loading SQL files from previous versions of studio.
-          // As a intermediate measure we delete the file until we support loading existing databases.
-          // TODO: Investigate removing this when we add a feature to restore sessions from prior Studio runs.
-          if (dbFile.exists()) {
-            dbFile.delete();
+          if (dbFile.exists() && resumeExisting) {
+            connection = openExisting(dbFile);
+            isResumed = connection != null;
           }
+          // Files written by a different schema version, or when not resuming, are deleted and a fresh database is created instead.
+          if (connection == null) {
+            if (dbFile.exists()) {
+              dbFile.delete();
+            }
 
-          File parent = dbFile.getParentFile();
-          if (parent != null) {
-            if (!parent.mkdirs() && !parent.exists()) {
-              getLogger().error("Unable to create parent directory");
+            File parent = dbFile.getParentFile();
+            if (parent != null) {
+              if (!parent.mkdirs() && !parent.exists()) {
+                getLogger().error("Unable to create parent directory");
+              }
             }
+            connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+            DataStoreSchema.writeVersion(connection, DataStoreSchema.VERSION);
           }
-          connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
           break;
         default:
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization. The transaction is committed periodically by the write queue.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -97,10 +128,47 @@ public class DataStoreDatabase {
       // b/72102095.
       noPiiExceptionHandler.accept(e);
     }
+    myIsResumed = isResumed;
     myConnection = connection;
+    myWriteQueue = connection != null ? new DataStoreWriteQueue(connection) : null;
+  }
+
+  /**
+   * Opens a database file written by a previous run and upgrades it to the current schema.
+   *
+   * @return the open connection, or null if the file is not a database this version of Studio can load.
+   */
+  @Nullable
+  private Connection openExisting(@NotNull File dbFile) {
+    Connection connection = null;
+    try {
+      connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+      connection.setAutoCommit(false);
+      if (DataStoreSchema.upgrade(connection)) {
+        connection.commit();
+        return connection;
+      }
+      getLogger().info("Discarding datastore written by an incompatible version: " + dbFile.getName());
+    }
+    catch (SQLException e) {
+      // The file is corrupt or not a database.
+      getLogger().warn(e);
+    }
+
+    if (connection != null) {
+      try {
+        connection.close();
+      }
+      catch (SQLException ignored) {
+      }
+    }
+    return null;
   }
 
   public void disconnect() {
+    if (myWriteQueue != null) {
+      myWriteQueue.shutdown();
+    }
     try {
       myConnection.commit();
     }
@@ -122,4 +190,16 @@ public class DataStoreDatabase {
   public Connection getConnection() {
     return myConnection;
   }
+
+  /**
+   * @return true if this database contains data from a previous run, e.g. sessions captured before Studio was restarted.
+   */
+  public boolean isResumed() {
+    return myIsResumed;
+  }
+
+  @Nullable
+  public DataStoreWriteQueue getWriteQueue() {
+    return myWriteQueue;
+  }
 }
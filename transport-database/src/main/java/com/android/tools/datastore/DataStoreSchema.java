@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Versioning of the on-disk datastore format. The version is stored in the SQLite file header (PRAGMA user_version), so it can be
+ * checked before any table is touched.
+ * <p>
+ * Every change to a table layout of a {@link DataStoreDatabase.Characteristic#DURABLE} database must bump {@link #VERSION} and register
+ * a {@link Migration} from the previous version, otherwise databases written by a previous version of Studio are discarded on load.
+ */
+public final class DataStoreSchema {
+  /**
+   * Current version of the datastore schema. Version 0 is reserved for files that were written before the schema was versioned.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Migrations keyed by the version they upgrade from. Each one upgrades a database to the next version.
+   */
+  @NotNull private static final Map<Integer, Migration> MIGRATIONS = ImmutableMap.of();
+
+  public interface Migration {
+    void apply(@NotNull Connection connection) throws SQLException;
+  }
+
+  private DataStoreSchema() {
+  }
+
+  public static int readVersion(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+      return result.next() ? result.getInt(1) : 0;
+    }
+  }
+
+  public static void writeVersion(@NotNull Connection connection, int version) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA user_version = " + version);
+    }
+  }
+
+  /**
+   * Brings an existing database up to {@link #VERSION}.
+   *
+   * @return true if the database is now at the current version, false if it cannot be loaded by this version of Studio and should be
+   * discarded.
+   */
+  public static boolean upgrade(@NotNull Connection connection) throws SQLException {
+    return upgrade(connection, MIGRATIONS, VERSION);
+  }
+
+  @VisibleForTesting
+  static boolean upgrade(@NotNull Connection connection, @NotNull Map<Integer, Migration> migrations, int targetVersion)
+    throws SQLException {
+    int version = readVersion(connection);
+    if (version <= 0 || version > targetVersion) {
+      return false;
+    }
+    for (; version < targetVersion; version++) {
+      Migration migration = migrations.get(version);
+      if (migration == null) {
+        return false;
+      }
+      migration.apply(connection);
+      writeVersion(connection, version + 1);
+    }
+    return true;
+  }
+}
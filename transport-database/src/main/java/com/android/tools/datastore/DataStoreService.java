@@ -16,10 +16,17 @@
 package com.android.tools.datastore;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.DURABLE;
+import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFORMANT;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_BYTES_FILE_STORE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_RESUME_SESSIONS;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_SEGMENTED_EVENT_STORE;
 import static com.android.tools.idea.flags.StudioFlags.PROFILER_UNIFIED_PIPELINE;
 
 import com.android.tools.analytics.UsageTracker;
+import com.android.tools.datastore.database.BytesFileStore;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.DataStoreWriteQueue;
+import com.android.tools.datastore.database.SegmentedEventsTable;
 import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.service.CpuService;
 import com.android.tools.datastore.service.EnergyService;
@@ -49,6 +56,8 @@ import io.grpc.ServerInterceptors;
 import io.grpc.inprocess.InProcessServerBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -85,6 +94,10 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
 
   public static class BackingNamespace {
     public static final BackingNamespace DEFAULT_SHARED_NAMESPACE = new BackingNamespace("default.sql", DURABLE);
+    /**
+     * Namespace of the unified events when they are kept in memory by the {@link SegmentedEventsTable}.
+     */
+    public static final BackingNamespace PERFORMANT_EVENTS_NAMESPACE = new BackingNamespace("events.sql", PERFORMANT);
 
     @NotNull public final String myNamespace;
     @NotNull public final DataStoreDatabase.Characteristic myCharacteristic;
@@ -196,9 +209,16 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   public void createPollers() {
     // TODO b/73538507 shared between all services to support inserting file content into generic byte cache (e.g. importing hprof)
     // We should be able to keep this inside TransportService after legacy pipeline removal.
-    UnifiedEventsTable unifiedTable = new UnifiedEventsTable();
-    myTransportService = new TransportService(this, unifiedTable, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
+    BytesFileStore bytesFileStore =
+      PROFILER_BYTES_FILE_STORE.get() ? new BytesFileStore(Paths.get(myDatastoreDirectory, "bytes"), myLogService) : null;
+    BackingNamespace eventsNamespace = getEventsNamespace();
+    UnifiedEventsTable unifiedTable = createUnifiedEventsTable(eventsNamespace.myCharacteristic, bytesFileStore);
+    myTransportService = new TransportService(this, eventsNamespace, unifiedTable, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
     registerService(myTransportService);
+    if (bytesFileStore != null && !myDatabases.get(eventsNamespace).isResumed()) {
+      // Files of a previous run are only referred to by its database.
+      bytesFileStore.clear();
+    }
     registerService(new ProfilerService(this, myLogService));
     registerService(new EventService(this, myFetchExecutor));
     registerService(new CpuService(this, myFetchExecutor, myLogService));
@@ -207,12 +227,48 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     registerService(new EnergyService(this, myFetchExecutor, myLogService));
   }
 
+  /**
+   * Returns the namespace the unified events are stored in. When the segmented event store is enabled, the events are kept in memory in
+   * a {@link DataStoreDatabase.Characteristic#PERFORMANT} namespace, unless the sessions of previous runs are restored, which requires
+   * the {@link DataStoreDatabase.Characteristic#DURABLE} shared namespace.
+   */
+  @NotNull
+  private BackingNamespace getEventsNamespace() {
+    if (!PROFILER_SEGMENTED_EVENT_STORE.get()) {
+      return BackingNamespace.DEFAULT_SHARED_NAMESPACE;
+    }
+    if (PROFILER_RESUME_SESSIONS.get()) {
+      getLogger().warn("The segmented event store can't keep sessions across restarts, storing events in the durable database instead");
+      return BackingNamespace.DEFAULT_SHARED_NAMESPACE;
+    }
+    return BackingNamespace.PERFORMANT_EVENTS_NAMESPACE;
+  }
+
+  /**
+   * Creates the events table backend suited for the given {@link DataStoreDatabase.Characteristic}. {@link
+   * DataStoreDatabase.Characteristic#PERFORMANT} stores use the in-memory {@link SegmentedEventsTable}, while {@link
+   * DataStoreDatabase.Characteristic#DURABLE} stores keep every event in SQL. Either way large bytes go to the given store, if any.
+   */
+  @VisibleForTesting
+  @NotNull
+  static UnifiedEventsTable createUnifiedEventsTable(@NotNull DataStoreDatabase.Characteristic characteristic,
+                                                     @Nullable BytesFileStore bytesFileStore) {
+    switch (characteristic) {
+      case PERFORMANT:
+        return new SegmentedEventsTable(bytesFileStore);
+      case DURABLE:
+        return new UnifiedEventsTable(bytesFileStore);
+      default:
+        throw new RuntimeException("Characteristic not handled!");
+    }
+  }
+
   @VisibleForTesting
   @NotNull
   public DataStoreDatabase createDatabase(@NotNull String dbPath,
                                           @NotNull DataStoreDatabase.Characteristic characteristic,
                                           Consumer<Throwable> noPiiExceptionHandler) {
-    return new DataStoreDatabase(dbPath, characteristic, myLogService, noPiiExceptionHandler);
+    return new DataStoreDatabase(dbPath, characteristic, myLogService, noPiiExceptionHandler, PROFILER_RESUME_SESSIONS.get());
   }
 
   /**
@@ -227,7 +283,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       assert !namespace.myNamespace.isEmpty();
       DataStoreDatabase db = myDatabases.computeIfAbsent(namespace, backingNamespace -> createDatabase(
         myDatastoreDirectory + backingNamespace.myNamespace, backingNamespace.myCharacteristic, myNoPiiExceptionHandler));
-      service.setBackingStore(namespace, db.getConnection());
+      service.setBackingStore(namespace, db);
     });
 
     // Build server and start listening for RPC calls for the registered service
@@ -253,6 +309,30 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     }
   }
 
+  /**
+   * Registers an in-process subscriber for the unified pipeline events matching the filter, so it can be notified of new events as they
+   * arrive instead of polling {@link TransportServiceGrpc.TransportServiceBlockingStub#getEventGroups(Transport.GetEventGroupsRequest)}.
+   *
+   * @return the subscription, to be closed when the subscriber is no longer interested.
+   */
+  @NotNull
+  public UnifiedEventsTable.Subscription subscribeToEvents(@NotNull Transport.GetEventGroupsRequest filter,
+                                                           @NotNull UnifiedEventsTable.EventSubscriber subscriber) {
+    return myTransportService.subscribeToEvents(filter, subscriber);
+  }
+
+  /**
+   * Opens the bytes of a stream for in-process readers that want to read them from their file, e.g. to map or stream them, instead of
+   * receiving them in a {@link Transport.BytesResponse}. Only bytes that have already been fetched from the device and are large enough to
+   * be kept in a file can be opened.
+   *
+   * @return the channel, to be closed by the caller, or null if the bytes are not available as a file.
+   */
+  @Nullable
+  public FileChannel openBytes(@NotNull Transport.BytesRequest request) {
+    return myTransportService.openBytes(request);
+  }
+
   /**
    * Disconnect from the specified channel.
    */
@@ -396,6 +476,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       // Cast to int. Unlikely we'll ever have more than 2 billion seconds (e.g. ~60 years) here...
       dbStats.setAgeSec((int)TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - myStartTime));
       collectReport(dbStats);
+      logWriteQueueStats();
 
       AndroidStudioEvent.Builder event = AndroidStudioEvent
         .newBuilder()
@@ -405,6 +486,15 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       UsageTracker.log(event);
     }
 
+    private void logWriteQueueStats() {
+      myDatabases.forEach((namespace, db) -> {
+        DataStoreWriteQueue writeQueue = db.getWriteQueue();
+        if (writeQueue != null) {
+          getLogger().info(String.format("Write queue stats for %s: %s", namespace.myNamespace, writeQueue.getStats()));
+        }
+      });
+    }
+
     private void collectReport(AndroidProfilerDbStats.Builder dbStats) {
       try {
         File dbFile = new File(myDatastoreDirectory, BackingNamespace.DEFAULT_SHARED_NAMESPACE.myNamespace);
@@ -43,4 +43,12 @@ public interface ServicePassThrough {
    * @param connection {@link Connection} to the backing store
    */
   void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection);
+
+  /**
+   * Same as {@link #setBackingStore(DataStoreService.BackingNamespace, Connection)}, for services that also want access to the
+   * {@link DataStoreDatabase}, e.g. to route their inserts through its {@link DataStoreDatabase#getWriteQueue()}.
+   */
+  default void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
+    setBackingStore(namespace, database.getConnection());
+  }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.LogService;
+import com.android.tools.idea.protobuf.ByteString;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Content-addressed store for large byte artifacts (heap dumps, CPU traces, ...), so they live in their own files instead of as BLOBs in
+ * the database, where every read and write has to copy the whole artifact onto the heap.
+ * <p>
+ * Each artifact is stored once, in a file named after the SHA-256 hash of its contents, so identical artifacts fetched for different
+ * streams or ids share a file. Files are written under a temporary name and moved into place, so a file with a hash name is always
+ * complete. Readers get a {@link FileChannel} or a read-only mapping of the file, which can be wrapped in a {@link ByteString} without
+ * copying.
+ * <p>
+ * Failing to access the files is not a database error, so the store logs I/O errors itself and callers fall back to the database.
+ */
+public class BytesFileStore {
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  @NotNull private final Path myDirectory;
+  @NotNull private final LogService myLogService;
+
+  public BytesFileStore(@NotNull Path directory, @NotNull LogService logService) {
+    myDirectory = directory;
+    myLogService = logService;
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(BytesFileStore.class);
+  }
+
+  @NotNull
+  public Path getDirectory() {
+    return myDirectory;
+  }
+
+  /**
+   * Stores the contents, unless an artifact with the same contents is already stored.
+   *
+   * @return the hash the contents can be read back with, or null if they could not be stored.
+   */
+  @Nullable
+  public String write(@NotNull ByteString contents) {
+    try {
+      return doWrite(contents);
+    }
+    catch (IOException ex) {
+      getLogger().warn("Failed to store bytes in " + myDirectory + ": " + ex);
+      return null;
+    }
+  }
+
+  @NotNull
+  private String doWrite(@NotNull ByteString contents) throws IOException {
+    String hash = hash(contents);
+    Path file = getFile(hash);
+    if (Files.exists(file)) {
+      return hash;
+    }
+
+    Files.createDirectories(myDirectory);
+    Path tempFile = Files.createTempFile(myDirectory, hash, TEMP_FILE_SUFFIX);
+    try {
+      try (OutputStream out = Files.newOutputStream(tempFile)) {
+        contents.writeTo(out);
+      }
+      try {
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException ex) {
+        // Another thread stored the same contents in the meantime. Depending on the platform this is reported as a
+        // FileAlreadyExistsException or, e.g. on Windows, as an AccessDeniedException.
+        if (!Files.exists(file)) {
+          throw ex;
+        }
+      }
+    }
+    finally {
+      Files.deleteIfExists(tempFile);
+    }
+    return hash;
+  }
+
+  /**
+   * @return a channel to read the artifact with the given hash, to be closed by the caller, or null if there is no such artifact or it
+   * cannot be read.
+   */
+  @Nullable
+  public FileChannel open(@NotNull String hash) {
+    Path file = getFile(hash);
+    try {
+      return Files.exists(file) ? FileChannel.open(file, StandardOpenOption.READ) : null;
+    }
+    catch (IOException ex) {
+      getLogger().warn("Failed to open " + file + ": " + ex);
+      return null;
+    }
+  }
+
+  /**
+   * @return a read-only mapping of the artifact with the given hash, or null if there is no such artifact or it cannot be read. The
+   * mapping stays valid after this returns, until it is garbage collected.
+   */
+  @Nullable
+  public MappedByteBuffer map(@NotNull String hash) {
+    try (FileChannel channel = open(hash)) {
+      return channel == null ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    catch (IOException ex) {
+      getLogger().warn("Failed to map " + getFile(hash) + ": " + ex);
+      return null;
+    }
+  }
+
+  /**
+   * Deletes the artifact with the given hash. Callers make sure nothing refers to it anymore.
+   */
+  public void delete(@NotNull String hash) {
+    Path file = getFile(hash);
+    try {
+      Files.deleteIfExists(file);
+    }
+    catch (IOException ex) {
+      // E.g. on Windows a file cannot be deleted while it is still mapped. It is deleted with the rest when the database is not resumed.
+      getLogger().warn("Failed to delete " + file + ": " + ex);
+    }
+  }
+
+  /**
+   * Deletes every stored artifact, e.g. when the database that refers to them is not resumed.
+   */
+  public void clear() {
+    if (!Files.isDirectory(myDirectory)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(myDirectory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+    catch (IOException ex) {
+      getLogger().warn("Failed to clear " + myDirectory + ": " + ex);
+    }
+  }
+
+  @NotNull
+  private Path getFile(@NotNull String hash) {
+    return myDirectory.resolve(hash);
+  }
+
+  @NotNull
+  private static String hash(@NotNull ByteString contents) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    // Goes over the buffers backing the ByteString, so large contents are not copied.
+    for (ByteBuffer buffer : contents.asReadOnlyByteBufferList()) {
+      digest.update(buffer);
+    }
+    byte[] bytes = digest.digest();
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(hex);
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.datastore.database;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.util.*;
@@ -30,6 +31,7 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = ConcurrentHashMap.newKeySet();
 
   private Connection myConnection;
+  @Nullable private DataStoreWriteQueue myWriteQueue;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
   // Cache custom queries we have a limited number and we call the same query multiple times.
@@ -48,6 +50,14 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Routes writes issued through {@link #executeDeferred(Enum, Object...)} to the given write-behind queue. If no queue is set those
+   * writes are executed immediately on the calling thread.
+   */
+  public void setWriteQueue(@Nullable DataStoreWriteQueue writeQueue) {
+    myWriteQueue = writeQueue;
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -99,10 +109,13 @@ public abstract class DataStoreTable<T extends Enum> {
     return myStatementMap.get();
   }
 
+  /**
+   * Creates the table if it does not exist yet. Existing tables are kept, as they either belong to a database resumed from a previous
+   * run, whose layout is guaranteed by {@link com.android.tools.datastore.DataStoreSchema}, or were created earlier on this connection.
+   */
   protected void createTable(@NotNull String table, String... columns) throws SQLException {
-    myConnection.createStatement().execute(String.format("DROP TABLE IF EXISTS %s ", table));
     StringBuilder statement = new StringBuilder();
-    statement.append(String.format("CREATE TABLE %s", table));
+    statement.append(String.format("CREATE TABLE IF NOT EXISTS %s", table));
     executeUniqueStatement(statement, columns);
   }
 
@@ -137,10 +150,12 @@ public abstract class DataStoreTable<T extends Enum> {
    * @param batchParams a list of objects to be put into the database.
    * @param paramConverter a callback that converts each object to an array of data. The array of data will be applied to the input params
    *                       of the specified statement.
+   * @return the update count of each element, or null if the batch was not executed.
    */
-  protected <K> void executeBatch(@NotNull T statement, @NotNull List<K> batchParams, @NotNull Function<K, Object[]> paramConverter) {
+  @Nullable
+  protected <K> int[] executeBatch(@NotNull T statement, @NotNull List<K> batchParams, @NotNull Function<K, Object[]> paramConverter) {
     if (isClosed()) {
-      return;
+      return null;
     }
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
@@ -158,26 +173,73 @@ public abstract class DataStoreTable<T extends Enum> {
           throw new SQLException(String.format("Failed to insert batch element %d with result %d", i, results[i]));
         }
       }
+      return results;
     }
     catch (SQLException ex) {
       onError(ex);
     }
+    return null;
   }
 
-  protected void execute(@NotNull T statement, Object... params) {
+  /**
+   * @return the number of rows changed by the statement, 0 if it failed.
+   */
+  protected int execute(@NotNull T statement, Object... params) {
     if (isClosed()) {
-      return;
+      return 0;
     }
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
       stmt.execute();
+      int updateCount = stmt.getUpdateCount();
       // Clear parameters on exit so cached statements don't keep potentially large objects in memory.
       // Example: Inserting a payload into the database.
       stmt.clearParameters();
+      return Math.max(updateCount, 0);
     }
     catch (SQLException ex) {
       onError(ex);
+      return 0;
+    }
+  }
+
+  /**
+   * Same as {@link #execute(Enum, Object...)}, but the write may be applied later by the {@link DataStoreWriteQueue} set on this table,
+   * batched with other writes of the same statement. Deferred writes are executed in the order they were issued.
+   */
+  protected void executeDeferred(@NotNull T statement, Object... params) {
+    DataStoreWriteQueue writeQueue = myWriteQueue;
+    if (writeQueue == null || isClosed()) {
+      execute(statement, params);
+      return;
+    }
+    writeQueue.enqueue(this, statement, params, null);
+  }
+
+  /**
+   * Same as {@link #executeDeferred(Enum, Object...)}, but runs {@code onInserted} once the write has actually changed a row and the
+   * change has been committed. Nothing is run for a write that was ignored, e.g. a duplicate dropped by "INSERT OR IGNORE".
+   */
+  protected void executeDeferredInsert(@NotNull T statement, @NotNull Runnable onInserted, Object... params) {
+    DataStoreWriteQueue writeQueue = myWriteQueue;
+    if (writeQueue == null || isClosed()) {
+      if (execute(statement, params) > 0) {
+        onInserted.run();
+      }
+      return;
+    }
+    writeQueue.enqueue(this, statement, params, onInserted);
+  }
+
+  /**
+   * Blocks until the writes issued through {@link #executeDeferred(Enum, Object...)} so far have been applied. Queries call this so they
+   * never miss a write that has already returned.
+   */
+  protected void awaitDeferredWrites() {
+    DataStoreWriteQueue writeQueue = myWriteQueue;
+    if (writeQueue != null) {
+      writeQueue.awaitPendingWrites();
     }
   }
 
@@ -185,6 +247,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    awaitDeferredWrites();
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
     return stmt.executeQuery();
@@ -194,6 +257,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    awaitDeferredWrites();
     if (myCustomQueryCache.get() == null) {
       myCustomQueryCache.set(new HashMap<>());
     }
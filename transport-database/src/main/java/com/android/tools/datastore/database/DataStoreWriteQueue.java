@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Write-behind pipeline for a single database {@link Connection}. Inserts are put into a bounded queue by the pollers and a dedicated
+ * writer thread drains them, grouping consecutive writes of the same statement into {@link DataStoreTable#executeBatch} calls.
+ * <p>
+ * Since the connection does not auto-commit, the writer is also responsible for committing the database transaction, which happens
+ * whenever {@link #getCommitRowThreshold()} rows have been written or {@link #getCommitIntervalMs()} has elapsed, whichever comes
+ * first. The time based commit also covers statements executed directly on the connection, outside of this queue.
+ * <p>
+ * Producers block when the queue is full, which applies back pressure to the pollers instead of growing without bound.
+ * <p>
+ * Reads must not miss writes that were already queued, so tables call {@link #awaitPendingWrites()} before querying. Since the queue
+ * shares the connection of the readers, executed writes are visible to them even before they are committed.
+ * <p>
+ * Writes may carry an insert callback, which is run once the write has changed a row. Since the callbacks let other threads know about
+ * the row, the transaction is committed before they run. The callbacks run in order on their own thread, so that they can queue writes
+ * or call {@link #flush()} without waiting on the writer thread that would have to drain the queue for them.
+ */
+public class DataStoreWriteQueue {
+  public static final int DEFAULT_CAPACITY = 8192;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+  public static final int DEFAULT_COMMIT_ROW_THRESHOLD = 4096;
+  public static final long DEFAULT_COMMIT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+
+  @NotNull private final Connection myConnection;
+  @NotNull private final BlockingQueue<PendingWrite<?>> myQueue;
+  private final int myMaxBatchSize;
+  private final int myCommitRowThreshold;
+  private final long myCommitIntervalMs;
+  @NotNull private final Thread myWriterThread;
+  @NotNull private final ExecutorService myCallbackExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "DataStoreWriteCallbacks");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private volatile boolean myIsRunning = true;
+  /**
+   * Number of threads queuing a write or a marker. Incremented before {@link #myIsRunning} is checked, so the writer thread keeps draining
+   * after {@link #shutdown()} until the threads that saw it running have queued their writes. No lock is held while a producer blocks on
+   * a full queue.
+   */
+  @NotNull private final AtomicInteger myActiveProducerCount = new AtomicInteger();
+  /** Number of writes queued but not executed yet. */
+  @NotNull private final AtomicLong myPendingWriteCount = new AtomicLong();
+
+  @NotNull private final AtomicInteger myMaxQueueDepth = new AtomicInteger();
+  @NotNull private final AtomicLong myBatchCount = new AtomicLong();
+  @NotNull private final AtomicLong myRowCount = new AtomicLong();
+  @NotNull private final AtomicInteger myMaxBatchSizeSeen = new AtomicInteger();
+  @NotNull private final AtomicLong myCommitCount = new AtomicLong();
+  @NotNull private final AtomicLong myTotalCommitNs = new AtomicLong();
+  @NotNull private final AtomicLong myMaxCommitNs = new AtomicLong();
+
+  public DataStoreWriteQueue(@NotNull Connection connection) {
+    this(connection, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_COMMIT_ROW_THRESHOLD, DEFAULT_COMMIT_INTERVAL_MS);
+  }
+
+  @VisibleForTesting
+  public DataStoreWriteQueue(@NotNull Connection connection,
+                             int capacity,
+                             int maxBatchSize,
+                             int commitRowThreshold,
+                             long commitIntervalMs) {
+    myConnection = connection;
+    myQueue = new LinkedBlockingQueue<>(capacity);
+    myMaxBatchSize = maxBatchSize;
+    myCommitRowThreshold = commitRowThreshold;
+    myCommitIntervalMs = commitIntervalMs;
+    myWriterThread = new Thread(this::drainLoop, "DataStoreWriter");
+    myWriterThread.setDaemon(true);
+    myWriterThread.start();
+  }
+
+  public int getCommitRowThreshold() {
+    return myCommitRowThreshold;
+  }
+
+  public long getCommitIntervalMs() {
+    return myCommitIntervalMs;
+  }
+
+  /**
+   * Queues a write of {@code statement} with the given parameters. Blocks if the queue is full, and keeps waiting if the calling thread
+   * is interrupted meanwhile so the write is never lost. Writes submitted after {@link #shutdown()} are executed directly on the calling
+   * thread.
+   *
+   * @param onInserted if not null, run once the write has changed a row and has been committed.
+   */
+  <T extends Enum> void enqueue(@NotNull DataStoreTable<T> table,
+                                @NotNull T statement,
+                                @NotNull Object[] params,
+                                @Nullable Runnable onInserted) {
+    if (tryQueue(new PendingWrite<>(table, statement, params, onInserted, null, true))) {
+      myMaxQueueDepth.accumulateAndGet(myQueue.size(), Math::max);
+      return;
+    }
+    if (table.execute(statement, params) > 0 && onInserted != null) {
+      onInserted.run();
+    }
+  }
+
+  /**
+   * Queues the given write or marker, blocking while the queue is full, unless the queue has been shut down.
+   *
+   * @return false if the queue has been shut down and nothing was queued.
+   */
+  private boolean tryQueue(@NotNull PendingWrite<?> write) {
+    myActiveProducerCount.incrementAndGet();
+    try {
+      if (!myIsRunning) {
+        return false;
+      }
+      if (write.myFlushLatch == null) {
+        myPendingWriteCount.incrementAndGet();
+      }
+      putUninterruptibly(write);
+      return true;
+    }
+    finally {
+      myActiveProducerCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Blocks until every write queued before this call has been executed and committed. Must not be called from the writer thread, which
+   * would wait for itself.
+   */
+  public void flush() {
+    awaitMarker(true);
+  }
+
+  /**
+   * Blocks until every write queued before this call has been executed, so it is visible to queries on the same connection. Unlike
+   * {@link #flush()} this does not force a commit, and returns immediately when there are no pending writes.
+   */
+  public void awaitPendingWrites() {
+    if (myPendingWriteCount.get() == 0 || Thread.currentThread() == myWriterThread) {
+      return;
+    }
+    awaitMarker(false);
+  }
+
+  private void awaitMarker(boolean commit) {
+    if (Thread.currentThread() == myWriterThread) {
+      throw new IllegalStateException("The writer thread can't wait for the writes it has to execute");
+    }
+    CountDownLatch latch = new CountDownLatch(1);
+    if (!tryQueue(new PendingWrite<>(null, null, null, null, latch, commit))) {
+      return;
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void putUninterruptibly(@NotNull PendingWrite<?> write) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        myQueue.put(write);
+        break;
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops the writer thread once all queued writes have been executed and committed, and waits for their insert callbacks.
+   */
+  public void shutdown() {
+    myIsRunning = false;
+    try {
+      myWriterThread.join();
+      myCallbackExecutor.shutdown();
+      myCallbackExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @NotNull
+  public Stats getStats() {
+    long batches = myBatchCount.get();
+    long commits = myCommitCount.get();
+    return new Stats(myQueue.size(),
+                     myMaxQueueDepth.get(),
+                     batches,
+                     batches == 0 ? 0 : myRowCount.get() / batches,
+                     myMaxBatchSizeSeen.get(),
+                     commits,
+                     commits == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myTotalCommitNs.get() / commits),
+                     TimeUnit.NANOSECONDS.toMillis(myMaxCommitNs.get()));
+  }
+
+  private void drainLoop() {
+    List<PendingWrite<?>> drained = new ArrayList<>(myMaxBatchSize);
+    long lastCommitNs = System.nanoTime();
+    int uncommittedRows = 0;
+    while (myIsRunning || myActiveProducerCount.get() > 0 || !myQueue.isEmpty()) {
+      PendingWrite<?> first;
+      try {
+        first = myQueue.poll(Math.min(myCommitIntervalMs, 100), TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        break;
+      }
+
+      List<CountDownLatch> flushRequests = new ArrayList<>();
+      List<CountDownLatch> barriers = new ArrayList<>();
+      List<Runnable> insertCallbacks = new ArrayList<>();
+      if (first != null) {
+        drained.add(first);
+        myQueue.drainTo(drained, myMaxBatchSize - 1);
+        uncommittedRows += writeDrained(drained, flushRequests, barriers, insertCallbacks);
+        drained.clear();
+      }
+      barriers.forEach(CountDownLatch::countDown);
+
+      if (!flushRequests.isEmpty() ||
+          !insertCallbacks.isEmpty() ||
+          uncommittedRows >= myCommitRowThreshold ||
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastCommitNs) >= myCommitIntervalMs) {
+        commit();
+        lastCommitNs = System.nanoTime();
+        uncommittedRows = 0;
+      }
+      flushRequests.forEach(CountDownLatch::countDown);
+      if (!insertCallbacks.isEmpty()) {
+        myCallbackExecutor.execute(() -> runInsertCallbacks(insertCallbacks));
+      }
+    }
+    commit();
+  }
+
+  private static void runInsertCallbacks(@NotNull List<Runnable> callbacks) {
+    for (Runnable callback : callbacks) {
+      try {
+        callback.run();
+      }
+      catch (RuntimeException e) {
+        // A failing callback must not prevent the following ones from running.
+        DataStoreTable.onError(e);
+      }
+    }
+  }
+
+  /**
+   * Executes the drained writes in order, batching each run of consecutive writes that share a table and statement.
+   *
+   * @return the number of rows written.
+   */
+  private int writeDrained(@NotNull List<PendingWrite<?>> drained,
+                           @NotNull List<CountDownLatch> flushRequests,
+                           @NotNull List<CountDownLatch> barriers,
+                           @NotNull List<Runnable> insertCallbacks) {
+    int rows = 0;
+    int runStart = 0;
+    for (int i = 1; i <= drained.size(); i++) {
+      if (i < drained.size() && drained.get(i).isSameStatement(drained.get(runStart))) {
+        continue;
+      }
+      PendingWrite<?> head = drained.get(runStart);
+      if (head.myFlushLatch != null) {
+        (head.myCommit ? flushRequests : barriers).add(head.myFlushLatch);
+      }
+      else {
+        List<PendingWrite<?>> run = drained.subList(runStart, i);
+        try {
+          writeRun(run, insertCallbacks);
+        }
+        finally {
+          myPendingWriteCount.addAndGet(-run.size());
+        }
+        rows += run.size();
+      }
+      runStart = i;
+    }
+    return rows;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Enum> void writeRun(@NotNull List<PendingWrite<?>> run, @NotNull List<Runnable> insertCallbacks) {
+    PendingWrite<T> head = (PendingWrite<T>)run.get(0);
+    if (run.size() == 1) {
+      if (head.myTable.execute(head.myStatement, head.myParams) > 0 && head.myOnInserted != null) {
+        insertCallbacks.add(head.myOnInserted);
+      }
+    }
+    else {
+      int[] results = head.myTable.executeBatch(head.myStatement, run, write -> write.myParams);
+      for (int i = 0; results != null && i < results.length; i++) {
+        Runnable onInserted = run.get(i).myOnInserted;
+        if (onInserted != null && (results[i] > 0 || results[i] == Statement.SUCCESS_NO_INFO)) {
+          insertCallbacks.add(onInserted);
+        }
+      }
+    }
+    myBatchCount.incrementAndGet();
+    myRowCount.addAndGet(run.size());
+    myMaxBatchSizeSeen.accumulateAndGet(run.size(), Math::max);
+  }
+
+  private void commit() {
+    try {
+      if (myConnection.isClosed()) {
+        return;
+      }
+      long start = System.nanoTime();
+      myConnection.commit();
+      long elapsed = System.nanoTime() - start;
+      myCommitCount.incrementAndGet();
+      myTotalCommitNs.addAndGet(elapsed);
+      myMaxCommitNs.accumulateAndGet(elapsed, Math::max);
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+    }
+  }
+
+  private static final class PendingWrite<T extends Enum> {
+    private final DataStoreTable<T> myTable;
+    private final T myStatement;
+    private final Object[] myParams;
+    @Nullable private final Runnable myOnInserted;
+    /**
+     * Non-null for the markers inserted by {@link #flush()} and {@link #awaitPendingWrites()}.
+     */
+    private final CountDownLatch myFlushLatch;
+    /**
+     * Whether the transaction should be committed before the marker latch is released.
+     */
+    private final boolean myCommit;
+
+    PendingWrite(DataStoreTable<T> table,
+                 T statement,
+                 Object[] params,
+                 @Nullable Runnable onInserted,
+                 CountDownLatch flushLatch,
+                 boolean commit) {
+      myTable = table;
+      myStatement = statement;
+      myParams = params;
+      myOnInserted = onInserted;
+      myFlushLatch = flushLatch;
+      myCommit = commit;
+    }
+
+    boolean isSameStatement(@NotNull PendingWrite<?> other) {
+      return myFlushLatch == null && other.myFlushLatch == null && myTable == other.myTable && myStatement == other.myStatement;
+    }
+  }
+
+  /**
+   * Point-in-time metrics of the queue, reported periodically by the {@link com.android.tools.datastore.DataStoreService}.
+   */
+  public static final class Stats {
+    public final int queueDepth;
+    public final int maxQueueDepth;
+    public final long batchCount;
+    public final long averageBatchSize;
+    public final int maxBatchSize;
+    public final long commitCount;
+    public final long averageCommitLatencyMs;
+    public final long maxCommitLatencyMs;
+
+    Stats(int queueDepth,
+          int maxQueueDepth,
+          long batchCount,
+          long averageBatchSize,
+          int maxBatchSize,
+          long commitCount,
+          long averageCommitLatencyMs,
+          long maxCommitLatencyMs) {
+      this.queueDepth = queueDepth;
+      this.maxQueueDepth = maxQueueDepth;
+      this.batchCount = batchCount;
+      this.averageBatchSize = averageBatchSize;
+      this.maxBatchSize = maxBatchSize;
+      this.commitCount = commitCount;
+      this.averageCommitLatencyMs = averageCommitLatencyMs;
+      this.maxCommitLatencyMs = maxCommitLatencyMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("queue depth %d (max %d), %d batches (avg size %d, max %d), %d commits (avg %dms, max %dms)",
+                           queueDepth, maxQueueDepth, batchCount, averageBatchSize, maxBatchSize, commitCount, averageCommitLatencyMs,
+                           maxCommitLatencyMs);
+    }
+  }
+}
@@ -15,11 +15,14 @@
  */
 package com.android.tools.datastore.database;
 
+import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.DELETE_ALLOC_CHECKPOINTS;
+import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.INSERT_ALLOC_CHECKPOINT;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.INSERT_ALLOC_CONTEXTS;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.INSERT_ALLOC_EVENTS;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.INSERT_JNI_REF;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.INSERT_OR_REPLACE_ALLOCATION_SAMPLING_RATE_EVENT;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.QUERY_ALLOCATION_SAMPLING_RATE_EVENTS_BY_TIME;
+import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.QUERY_ALLOC_CHECKPOINT;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.QUERY_ALLOC_CONTEXTS;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.QUERY_ALLOC_EVENTS;
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.QUERY_JNI_EVENTS;
@@ -33,16 +36,37 @@ import com.android.tools.profiler.proto.Memory.BatchJNIGlobalRefEvent;
 import com.android.tools.profiler.proto.Memory.JNIGlobalReferenceEvent;
 import com.android.tools.profiler.proto.Memory.NativeBacktrace;
 import com.android.tools.profiler.proto.MemoryProfiler.AllocationSamplingRateEvent;
+import com.google.common.annotations.VisibleForTesting;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocationTable.MemoryStatements> {
+  /**
+   * Minimum number of allocation events between two checkpoints. A checkpoint is also not written before as many events as there were
+   * live allocations in the previous one have been inserted since, so the cost of writing checkpoints stays proportional to the number of
+   * events.
+   */
+  public static final int DEFAULT_MIN_CHECKPOINT_INTERVAL_EVENTS = 50000;
+
+  /**
+   * Allocation events can be reported in a batch whose timestamp is after theirs. Snapshot queries include the batches up to this long
+   * after the snapshot time.
+   */
+  public static final long SNAPSHOT_QUERY_BUFFER_NS = TimeUnit.SECONDS.toNanos(5);
+
   @NotNull private final LogService myLogService;
+  private final int myMinCheckpointIntervalEvents;
+  // Only holds a few counters per session, the live allocations are never kept in memory.
+  @NotNull private final Map<Long, CheckpointState> myCheckpointStates = new HashMap<>();
 
   public enum MemoryStatements {
     INSERT_ALLOC_CONTEXTS("INSERT OR IGNORE INTO Memory_AllocationContexts (Session, Timestamp, Data) VALUES (?, ?, ?)"),
@@ -51,6 +75,11 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       "SELECT Data FROM Memory_AllocationContexts WHERE Session = ? AND Timestamp > ? AND Timestamp <= ? ORDER BY Timestamp ASC"),
     QUERY_ALLOC_EVENTS(
       "SELECT Data FROM Memory_AllocationEvents WHERE Session = ? AND Timestamp > ? AND Timestamp <= ? ORDER BY Timestamp ASC"),
+    INSERT_ALLOC_CHECKPOINT(
+      "INSERT OR IGNORE INTO Memory_AllocationCheckpoints (Session, Timestamp, LastBatchTimestamp, Data) VALUES (?, ?, ?, ?)"),
+    QUERY_ALLOC_CHECKPOINT(
+      "SELECT LastBatchTimestamp, Data FROM Memory_AllocationCheckpoints WHERE Session = ? AND Timestamp < ? ORDER BY Timestamp DESC LIMIT 1"),
+    DELETE_ALLOC_CHECKPOINTS("DELETE FROM Memory_AllocationCheckpoints WHERE Session = ?"),
 
     INSERT_JNI_REF("INSERT OR IGNORE INTO Memory_JniGlobalReferences (Session, Timestamp, Data) VALUES (?, ?, ?)"),
     QUERY_JNI_EVENTS(
@@ -80,7 +109,13 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public MemoryLiveAllocationTable(@NotNull LogService logService) {
+    this(logService, DEFAULT_MIN_CHECKPOINT_INTERVAL_EVENTS);
+  }
+
+  @VisibleForTesting
+  public MemoryLiveAllocationTable(@NotNull LogService logService, int minCheckpointIntervalEvents) {
     myLogService = logService;
+    myMinCheckpointIntervalEvents = minCheckpointIntervalEvents;
   }
 
   @Override
@@ -92,6 +127,9 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
                   "PRIMARY KEY(Session, Timestamp)");
       createTable("Memory_AllocationEvents", "Session INTEGER NOT NULL", "Timestamp INTEGER", "Data BLOB",
                   "PRIMARY KEY(Session, Timestamp)");
+      // Heap state snapshots, written every so often while allocation events are inserted.
+      createTable("Memory_AllocationCheckpoints", "Session INTEGER NOT NULL", "Timestamp INTEGER", "LastBatchTimestamp INTEGER",
+                  "Data BLOB", "PRIMARY KEY(Session, Timestamp)");
       createTable("Memory_JniGlobalReferences", "Session INTEGER NOT NULL", "Timestamp INTEGER", "Data BLOB",
                   "PRIMARY KEY(Session, Timestamp)");
       createTable("Memory_AllocationSamplingRateEvent", "Session INTEGER NOT NULL", "Timestamp INTEGER", "Data BLOB",
@@ -128,6 +166,32 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     return results;
   }
 
+  /**
+   * Returns the allocation events needed to know which allocations are alive at |snapshotTime|: the latest checkpoint taken before
+   * |snapshotTime|, as a batch of ALLOC_DATA events of the allocations alive at that point, followed by the event batches inserted after
+   * it. Without a checkpoint, all the event batches since the beginning of the session are returned.
+   * <p>
+   * As with {@link #getAllocationEvents(Common.Session, long, long)}, the result can contain events at or after |snapshotTime|, which
+   * callers should skip.
+   */
+  @NotNull
+  public List<Memory.BatchAllocationEvents> getAllocationSnapshotEvents(@NotNull Common.Session session, long snapshotTime) {
+    List<Memory.BatchAllocationEvents> results = new ArrayList<>();
+    long eventsStartTime = Long.MIN_VALUE;
+    try {
+      ResultSet resultSet = executeQuery(QUERY_ALLOC_CHECKPOINT, session.getSessionId(), snapshotTime);
+      if (resultSet.next()) {
+        eventsStartTime = resultSet.getLong(1);
+        results.add(Memory.BatchAllocationEvents.newBuilder().mergeFrom(resultSet.getBytes(2)).build());
+      }
+    }
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      onError(ex);
+    }
+    results.addAll(getAllocationEvents(session, eventsStartTime, snapshotTime + SNAPSHOT_QUERY_BUFFER_NS));
+    return results;
+  }
+
   @NotNull
   public List<Memory.BatchAllocationContexts> getAllocationContexts(Common.Session session, long startTime, long endTime) {
     List<Memory.BatchAllocationContexts> results = new ArrayList<>();
@@ -184,7 +248,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void insertJniReferenceData(@NotNull Common.Session session, @NotNull Memory.BatchJNIGlobalRefEvent sample) {
-    execute(INSERT_JNI_REF, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
+    executeDeferred(INSERT_JNI_REF, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
   }
 
   public void insertAllocationContexts(Common.Session session, Memory.BatchAllocationContexts sample) {
@@ -197,15 +261,91 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       .map(klass -> klass.toBuilder().setClassName(jniToJavaName(klass.getClassName())).build())
       .collect(Collectors.toList());
     convertedSampleBuilder.addAllClasses(convertedClasses);
-    execute(INSERT_ALLOC_CONTEXTS, session.getSessionId(), sample.getTimestamp(), convertedSampleBuilder.build().toByteArray());
+    executeDeferred(INSERT_ALLOC_CONTEXTS, session.getSessionId(), sample.getTimestamp(), convertedSampleBuilder.build().toByteArray());
   }
 
   public void insertAllocationEvents(Common.Session session, Memory.BatchAllocationEvents sample) {
-    execute(INSERT_ALLOC_EVENTS, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
+    executeDeferred(INSERT_ALLOC_EVENTS, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
+    updateCheckpoints(session, sample);
+  }
+
+  private void updateCheckpoints(@NotNull Common.Session session, @NotNull Memory.BatchAllocationEvents sample) {
+    synchronized (myCheckpointStates) {
+      CheckpointState state = myCheckpointStates.computeIfAbsent(session.getSessionId(), id -> new CheckpointState());
+      if (state.myIsDisabled || sample.getTimestamp() == state.myLastBatchTimestamp) {
+        // Either checkpoints are off for the session, or the batch is a duplicate, which the table ignores too.
+        return;
+      }
+      if (sample.getTimestamp() < state.myLastBatchTimestamp) {
+        // Snapshot queries only look for events in the batches after a checkpoint, so the existing checkpoints would miss this batch.
+        getLogger().info("Allocation events inserted out of order, allocation checkpoints are disabled for the session.");
+        executeDeferred(DELETE_ALLOC_CHECKPOINTS, session.getSessionId());
+        state.myIsDisabled = true;
+        return;
+      }
+      state.myLastBatchTimestamp = sample.getTimestamp();
+      state.myEventsSinceCheckpoint += sample.getEventsCount();
+      if (state.myEventsSinceCheckpoint >= Math.max(myMinCheckpointIntervalEvents, state.myCheckpointAllocationCount)) {
+        state.myCheckpointAllocationCount = writeCheckpoint(session);
+        state.myEventsSinceCheckpoint = 0;
+      }
+    }
+  }
+
+  /**
+   * Writes a checkpoint of the allocations alive after all the event batches inserted so far, by applying the batches inserted after the
+   * latest checkpoint to it. Nothing is kept in memory between checkpoints.
+   *
+   * @return the number of allocations in the new checkpoint.
+   */
+  private int writeCheckpoint(@NotNull Common.Session session) {
+    // The allocations alive after the applied batches, in the order they were made.
+    Map<Integer, Memory.AllocationEvent> liveAllocations = new LinkedHashMap<>();
+    long lastBatchTimestamp = Long.MIN_VALUE;
+    // All the events in a checkpoint happened at or before its timestamp.
+    long checkpointTimestamp = Long.MIN_VALUE;
+    try {
+      ResultSet resultSet = executeQuery(QUERY_ALLOC_CHECKPOINT, session.getSessionId(), Long.MAX_VALUE);
+      if (resultSet.next()) {
+        lastBatchTimestamp = resultSet.getLong(1);
+        Memory.BatchAllocationEvents checkpoint = Memory.BatchAllocationEvents.newBuilder().mergeFrom(resultSet.getBytes(2)).build();
+        checkpointTimestamp = checkpoint.getTimestamp();
+        checkpoint.getEventsList().forEach(event -> liveAllocations.put(event.getAllocData().getTag(), event));
+      }
+    }
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      onError(ex);
+      return 0;
+    }
+
+    for (Memory.BatchAllocationEvents sample : getAllocationEvents(session, lastBatchTimestamp, Long.MAX_VALUE)) {
+      lastBatchTimestamp = sample.getTimestamp();
+      checkpointTimestamp = Math.max(checkpointTimestamp, sample.getTimestamp());
+      for (Memory.AllocationEvent event : sample.getEventsList()) {
+        checkpointTimestamp = Math.max(checkpointTimestamp, event.getTimestamp());
+        switch (event.getEventCase()) {
+          case ALLOC_DATA:
+            liveAllocations.putIfAbsent(event.getAllocData().getTag(), event);
+            break;
+          case FREE_DATA:
+            liveAllocations.remove(event.getFreeData().getTag());
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
+    Memory.BatchAllocationEvents checkpoint = Memory.BatchAllocationEvents.newBuilder()
+      .setTimestamp(checkpointTimestamp)
+      .addAllEvents(liveAllocations.values())
+      .build();
+    executeDeferred(INSERT_ALLOC_CHECKPOINT, session.getSessionId(), checkpointTimestamp, lastBatchTimestamp, checkpoint.toByteArray());
+    return liveAllocations.size();
   }
 
   public void insertOrReplaceAllocationSamplingRateEvent(@NotNull Common.Session session, @NotNull AllocationSamplingRateEvent event) {
-    execute(INSERT_OR_REPLACE_ALLOCATION_SAMPLING_RATE_EVENT, session.getSessionId(), event.getTimestamp(), event.toByteArray());
+    executeDeferred(INSERT_OR_REPLACE_ALLOCATION_SAMPLING_RATE_EVENT, session.getSessionId(), event.getTimestamp(), event.toByteArray());
   }
 
   @NotNull
@@ -286,4 +426,14 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
     return javaName;
   }
+
+  /**
+   * What is needed to decide when to write the next checkpoint of a session. The checkpoints themselves are built from the stored batches.
+   */
+  private static final class CheckpointState {
+    private boolean myIsDisabled = false;
+    private long myLastBatchTimestamp = Long.MIN_VALUE;
+    private int myEventsSinceCheckpoint = 0;
+    private int myCheckpointAllocationCount = 0;
+  }
 }
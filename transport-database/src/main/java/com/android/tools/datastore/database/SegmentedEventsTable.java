@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An in-memory alternative to the SQL backed {@link UnifiedEventsTable}. Events are appended into partitions keyed by
+ * (stream id, {@link Event.Kind}), and each partition keeps a group id index pointing at a per-group timeline sorted by timestamp.
+ * This turns {@link #queryUnifiedEventGroups(GetEventGroupsRequest)} into a lookup of the matching partitions plus a binary search
+ * into each group's timeline, instead of three SQL queries that re-parse every stored event on each poll.
+ * <p>
+ * Bytes are still stored in the SQL [BytesTable] and {@link BytesFileStore} inherited from {@link UnifiedEventsTable}.
+ */
+public class SegmentedEventsTable extends UnifiedEventsTable {
+  /**
+   * Partitions keyed by stream id then by {@link Event.Kind#getNumber()}. The outer map is sorted so results are returned in a
+   * stable stream order, mirroring the index order of the SQL implementation.
+   */
+  private final TreeMap<Long, Map<Integer, EventPartition>> myPartitions = new TreeMap<>();
+  /**
+   * The largest command id inserted for each stream. Kept up to date on insert so {@link #queryMaxCommandId()} does not visit every event.
+   * Deleting events does not lower it, so command ids of deleted events are not handed out again.
+   */
+  private final Map<Long, Integer> myMaxCommandIds = new HashMap<>();
+  private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+
+  public SegmentedEventsTable() {
+    this(null);
+  }
+
+  public SegmentedEventsTable(@Nullable BytesFileStore bytesFileStore) {
+    super(bytesFileStore);
+  }
+
+  @Override
+  public void insertUnifiedEvent(long streamId, @NotNull Event event) {
+    boolean inserted;
+    myLock.writeLock().lock();
+    try {
+      inserted = myPartitions.computeIfAbsent(streamId, id -> new HashMap<>())
+        .computeIfAbsent(event.getKind().getNumber(), kind -> new EventPartition())
+        .insert(event);
+      if (inserted) {
+        myMaxCommandIds.merge(streamId, event.getCommandId(), Math::max);
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+    if (inserted) {
+      notifySubscribers(streamId, event);
+    }
+  }
+
+  @Override
+  public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    myLock.writeLock().lock();
+    try {
+      Map<Integer, EventPartition> kinds = myPartitions.get(streamId);
+      EventPartition partition = kinds == null ? null : kinds.get(kind.getNumber());
+      if (partition != null) {
+        partition.delete(pid, groupId, fromTimestamp, toTimestamp);
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+    if (kind == Event.Kind.SESSION) {
+      deleteSessionBytesFiles(streamId, querySessionGroupIds(streamId, pid, fromTimestamp, toTimestamp));
+    }
+  }
+
+  @NotNull
+  @Override
+  protected Collection<Long> querySessionGroupIds(long streamId, int pid, long fromTimestamp, long toTimestamp) {
+    myLock.readLock().lock();
+    try {
+      Set<Long> groupIds = new HashSet<>();
+      Map<Integer, EventPartition> kinds = myPartitions.get(streamId);
+      if (kinds != null) {
+        for (EventPartition partition : kinds.values()) {
+          for (GroupTimeline timeline : partition.myGroups.values()) {
+            if (timeline.hasEvents(pid, fromTimestamp, toTimestamp)) {
+              groupIds.add(timeline.myGroupId);
+            }
+          }
+        }
+      }
+      return groupIds;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  @VisibleForTesting
+  @Override
+  public List<Event> queryUnifiedEvents() {
+    myLock.readLock().lock();
+    try {
+      List<Event> events = new ArrayList<>();
+      for (Map<Integer, EventPartition> kinds : myPartitions.values()) {
+        for (EventPartition partition : kinds.values()) {
+          partition.collectAll(events);
+        }
+      }
+      return events;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long queryMaxTimestamp(long streamId, int pid) {
+    myLock.readLock().lock();
+    try {
+      long max = 0;
+      Map<Integer, EventPartition> kinds = myPartitions.get(streamId);
+      if (kinds != null) {
+        for (EventPartition partition : kinds.values()) {
+          for (GroupTimeline timeline : partition.myGroups.values()) {
+            for (int i = timeline.mySize - 1; i >= 0; i--) {
+              if (timeline.myEvents[i].getPid() == pid) {
+                max = Math.max(max, timeline.myTimestamps[i]);
+                break;
+              }
+            }
+          }
+        }
+      }
+      return max;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int queryMaxCommandId() {
+    myLock.readLock().lock();
+    try {
+      int max = 0;
+      for (int commandId : myMaxCommandIds.values()) {
+        max = Math.max(max, commandId);
+      }
+      return max;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Follows the same before / in / after range semantics as {@link UnifiedEventsTable#queryUnifiedEventGroups(GetEventGroupsRequest)}.
+   * Groups are keyed only by group id, so events of the same group id coming from different streams end up in the same group.
+   */
+  @Override
+  public List<EventGroup> queryUnifiedEventGroups(@NotNull GetEventGroupsRequest request) {
+    long fromTimestamp = request.getFromTimestamp() > 0 ? request.getFromTimestamp() : Long.MIN_VALUE;
+    boolean hasToTimestamp = request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE;
+    long toTimestamp = hasToTimestamp ? request.getToTimestamp() : Long.MAX_VALUE;
+
+    myLock.readLock().lock();
+    try {
+      List<EventPartition> partitions = new ArrayList<>();
+      for (Map.Entry<Long, Map<Integer, EventPartition>> entry : myPartitions.entrySet()) {
+        if (request.getStreamId() != 0 && entry.getKey() != request.getStreamId()) {
+          continue;
+        }
+        EventPartition partition = entry.getValue().get(request.getKind().getNumber());
+        if (partition != null) {
+          partitions.add(partition);
+        }
+      }
+
+      // Before range: the latest matching event of each group that precedes the range, unless it ended the group.
+      Map<Long, Event> beforeEvents = new HashMap<>();
+      if (request.getFromTimestamp() > 0) {
+        for (EventPartition partition : partitions) {
+          partition.forEachGroup(request.getGroupId(), timeline -> {
+            Event candidate = timeline.findLastBefore(fromTimestamp, request);
+            if (candidate != null) {
+              beforeEvents.merge(timeline.myGroupId, candidate, (a, b) -> b.getTimestamp() >= a.getTimestamp() ? b : a);
+            }
+          });
+        }
+      }
+
+      Map<Long, EventGroup.Builder> builderGroups = new LinkedHashMap<>();
+      beforeEvents.forEach((groupId, event) -> {
+        if (!event.getIsEnded()) {
+          builderGroups.computeIfAbsent(groupId, EventGroup.newBuilder()::setGroupId).addEvents(event);
+        }
+      });
+
+      for (EventPartition partition : partitions) {
+        partition.forEachGroup(request.getGroupId(), timeline -> timeline.collectRange(fromTimestamp, toTimestamp, request, builderGroups));
+      }
+
+      // After range: the first matching event of each group following the range, only for groups that already have data.
+      if (hasToTimestamp) {
+        Map<Long, Event> afterEvents = new HashMap<>();
+        for (EventPartition partition : partitions) {
+          partition.forEachGroup(request.getGroupId(), timeline -> {
+            if (builderGroups.containsKey(timeline.myGroupId)) {
+              Event candidate = timeline.findFirstAfter(toTimestamp, request);
+              if (candidate != null) {
+                afterEvents.merge(timeline.myGroupId, candidate, (a, b) -> b.getTimestamp() < a.getTimestamp() ? b : a);
+              }
+            }
+          });
+        }
+        afterEvents.forEach((groupId, event) -> builderGroups.get(groupId).addEvents(event));
+      }
+
+      return builderGroups.values().stream().map(EventGroup.Builder::build).collect(Collectors.toList());
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  private static boolean matches(@NotNull Event event, @NotNull GetEventGroupsRequest request) {
+    return (request.getPid() == 0 || event.getPid() == request.getPid()) &&
+           (request.getCommandId() == 0 || event.getCommandId() == request.getCommandId());
+  }
+
+  /**
+   * All events of a single (stream, kind) pair, indexed by group id.
+   */
+  private static final class EventPartition {
+    private final Map<Long, GroupTimeline> myGroups = new LinkedHashMap<>();
+
+    /**
+     * @return false if the event was dropped as a duplicate.
+     */
+    boolean insert(@NotNull Event event) {
+      return myGroups.computeIfAbsent(event.getGroupId(), GroupTimeline::new).insert(event);
+    }
+
+    void delete(int pid, long groupId, long fromTimestamp, long toTimestamp) {
+      GroupTimeline timeline = myGroups.get(groupId);
+      if (timeline != null) {
+        timeline.delete(pid, fromTimestamp, toTimestamp);
+        if (timeline.mySize == 0) {
+          myGroups.remove(groupId);
+        }
+      }
+    }
+
+    void forEachGroup(long groupId, @NotNull Consumer<GroupTimeline> consumer) {
+      if (groupId != 0) {
+        GroupTimeline timeline = myGroups.get(groupId);
+        if (timeline != null) {
+          consumer.accept(timeline);
+        }
+      }
+      else {
+        myGroups.values().forEach(consumer);
+      }
+    }
+
+    void collectAll(@NotNull List<Event> events) {
+      for (GroupTimeline timeline : myGroups.values()) {
+        events.addAll(Arrays.asList(timeline.myEvents).subList(0, timeline.mySize));
+      }
+    }
+  }
+
+  /**
+   * The events of a single group sorted by timestamp, backed by a primitive timestamp column that is binary searched. Events
+   * sharing a timestamp keep their insertion order. Events mostly arrive in order, so insertion is almost always an append.
+   */
+  private static final class GroupTimeline {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final long myGroupId;
+    private long[] myTimestamps = new long[INITIAL_CAPACITY];
+    private Event[] myEvents = new Event[INITIAL_CAPACITY];
+    private int mySize;
+
+    GroupTimeline(long groupId) {
+      myGroupId = groupId;
+    }
+
+    boolean insert(@NotNull Event event) {
+      long timestamp = event.getTimestamp();
+      int index = upperBound(timestamp);
+      // Since no data should be updated after it has been inserted we drop duplicates, same as "INSERT OR IGNORE" in SQL.
+      for (int i = index - 1; i >= 0 && myTimestamps[i] == timestamp; i--) {
+        if (myEvents[i].getPid() == event.getPid() && myEvents[i].getIsEnded() == event.getIsEnded()) {
+          return false;
+        }
+      }
+
+      if (mySize == myTimestamps.length) {
+        int capacity = mySize * 2;
+        myTimestamps = Arrays.copyOf(myTimestamps, capacity);
+        myEvents = Arrays.copyOf(myEvents, capacity);
+      }
+      if (index < mySize) {
+        System.arraycopy(myTimestamps, index, myTimestamps, index + 1, mySize - index);
+        System.arraycopy(myEvents, index, myEvents, index + 1, mySize - index);
+      }
+      myTimestamps[index] = timestamp;
+      myEvents[index] = event;
+      mySize++;
+      return true;
+    }
+
+    void delete(int pid, long fromTimestamp, long toTimestamp) {
+      int start = lowerBound(fromTimestamp);
+      int end = upperBound(toTimestamp);
+      int write = start;
+      for (int read = start; read < end; read++) {
+        if (myEvents[read].getPid() != pid) {
+          myTimestamps[write] = myTimestamps[read];
+          myEvents[write] = myEvents[read];
+          write++;
+        }
+      }
+      if (write == end) {
+        return;
+      }
+      System.arraycopy(myTimestamps, end, myTimestamps, write, mySize - end);
+      System.arraycopy(myEvents, end, myEvents, write, mySize - end);
+      int newSize = write + mySize - end;
+      Arrays.fill(myEvents, newSize, mySize, null);
+      mySize = newSize;
+    }
+
+    boolean hasEvents(int pid, long fromTimestamp, long toTimestamp) {
+      for (int i = lowerBound(fromTimestamp), end = upperBound(toTimestamp); i < end; i++) {
+        if (myEvents[i].getPid() == pid) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Nullable
+    Event findLastBefore(long timestamp, @NotNull GetEventGroupsRequest request) {
+      for (int i = lowerBound(timestamp) - 1; i >= 0; i--) {
+        if (matches(myEvents[i], request)) {
+          return myEvents[i];
+        }
+      }
+      return null;
+    }
+
+    @Nullable
+    Event findFirstAfter(long timestamp, @NotNull GetEventGroupsRequest request) {
+      for (int i = upperBound(timestamp); i < mySize; i++) {
+        if (matches(myEvents[i], request)) {
+          return myEvents[i];
+        }
+      }
+      return null;
+    }
+
+    void collectRange(long fromTimestamp,
+                      long toTimestamp,
+                      @NotNull GetEventGroupsRequest request,
+                      @NotNull Map<Long, EventGroup.Builder> builderGroups) {
+      EventGroup.Builder group = null;
+      for (int i = lowerBound(fromTimestamp), end = upperBound(toTimestamp); i < end; i++) {
+        if (matches(myEvents[i], request)) {
+          if (group == null) {
+            group = builderGroups.computeIfAbsent(myGroupId, EventGroup.newBuilder()::setGroupId);
+          }
+          group.addEvents(myEvents[i]);
+        }
+      }
+    }
+
+    /**
+     * @return the index of the first event with a timestamp greater than or equal to the given timestamp.
+     */
+    private int lowerBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the first event with a timestamp strictly greater than the given timestamp.
+     */
+    private int upperBound(long timestamp) {
+      // Fast path for in-order appends.
+      if (mySize == 0 || myTimestamps[mySize - 1] <= timestamp) {
+        return mySize;
+      }
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
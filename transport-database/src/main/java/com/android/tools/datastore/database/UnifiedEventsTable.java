@@ -16,6 +16,7 @@
 package com.android.tools.datastore.database;
 
 import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
+import com.android.tools.idea.protobuf.UnsafeByteOperations;
 import com.android.tools.profiler.proto.Common.Event;
 import com.android.tools.profiler.proto.Transport.BytesRequest;
 import com.android.tools.profiler.proto.Transport.BytesResponse;
@@ -23,18 +24,47 @@ import com.android.tools.profiler.proto.Transport.EventGroup;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicates;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statements> {
+  /**
+   * Receives the events inserted into the table that match a {@link Subscription}.
+   */
+  public interface EventSubscriber {
+    /**
+     * Called on the thread that stored the event, or on the insert callback thread of the database's write queue. Implementations should
+     * hand off any real work, since the following notifications wait for them.
+     */
+    void onEventInserted(long streamId, @NotNull Event event);
+  }
+
+  /**
+   * Bytes at least this large are kept in the {@link BytesFileStore} of the table, if it has one, instead of the BytesTable.
+   */
+  public static final int BYTES_FILE_MIN_SIZE = 1024 * 1024;
+
+  // Subscriptions by Event.Kind number, so an insert only looks at the subscriptions of its kind.
+  private final Map<Integer, List<Subscription>> mySubscriptions = new ConcurrentHashMap<>();
+  @Nullable private final BytesFileStore myBytesFileStore;
+
   public enum Statements {
     // Since no data should be updated after it has been inserted we drop any duplicated request from the poller.
     INSERT_EVENT(
@@ -45,8 +75,16 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
       "WHERE StreamId = ? AND ProcessId = ? And GroupId = ? And Kind = ? AND Timestamp >= ? AND Timestamp <= ?"),
     // Only used for test.
     QUERY_EVENTS("SELECT Data FROM [UnifiedEventsTable]"),
+    QUERY_MAX_TIMESTAMP("SELECT MAX(Timestamp) FROM [UnifiedEventsTable] WHERE StreamId = ? AND ProcessId = ?"),
+    QUERY_MAX_COMMAND_ID("SELECT MAX(CommandId) FROM [UnifiedEventsTable]"),
     INSERT_BYTES("INSERT OR IGNORE INTO [BytesTable] (StreamId, Id, Data) VALUES (?, ?, ?)"),
-    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ?");
+    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ?"),
+    INSERT_BYTES_FILE("INSERT OR IGNORE INTO [BytesFileTable] (StreamId, Id, Hash) VALUES (?, ?, ?)"),
+    GET_BYTES_FILE("SELECT Hash FROM [BytesFileTable] WHERE StreamId = ? AND Id = ?"),
+    DELETE_BYTES_FILE("DELETE FROM [BytesFileTable] WHERE StreamId = ? AND Id = ?"),
+    QUERY_BYTES_FILE_HASH_USED("SELECT 1 FROM [BytesFileTable] WHERE Hash = ? LIMIT 1"),
+    QUERY_SESSION_GROUP_IDS(
+      "SELECT DISTINCT GroupId FROM [UnifiedEventsTable] WHERE StreamId = ? AND ProcessId = ? AND Timestamp >= ? AND Timestamp <= ?");
 
     @NotNull private final String mySqlStatement;
 
@@ -60,6 +98,17 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  public UnifiedEventsTable() {
+    this(null);
+  }
+
+  /**
+   * @param bytesFileStore where to keep large bytes, or null to keep all bytes in the database.
+   */
+  public UnifiedEventsTable(@Nullable BytesFileStore bytesFileStore) {
+    myBytesFileStore = bytesFileStore;
+  }
+
   @Override
   public void prepareStatements() {
     try {
@@ -86,8 +135,10 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
                   "IsEnded INTEGER NOT NULL", // Optional filter, required for all data.
                   "Data BLOB");
       createTable("BytesTable", "StreamId INTEGER NOT NULL", "Id STRING NOT NULL", "Data BLOB");
+      createTable("BytesFileTable", "StreamId INTEGER NOT NULL", "Id STRING NOT NULL", "Hash STRING NOT NULL");
       createUniqueIndex("UnifiedEventsTable", "Kind", "StreamId", "ProcessId", "GroupId", "Timestamp", "IsEnded");
       createUniqueIndex("BytesTable", "StreamId", "Id");
+      createUniqueIndex("BytesFileTable", "StreamId", "Id");
     }
     catch (SQLException ex) {
       onError(ex);
@@ -95,19 +146,118 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertUnifiedEvent(long streamId, @NotNull Event event) {
-    execute(Statements.INSERT_EVENT,
-            streamId,
-            event.getPid(),
-            event.getGroupId(),
-            event.getKind().getNumber(),
-            event.getCommandId(),
-            event.getTimestamp(),
-            event.getIsEnded() ? 1 : 0,
-            event.toByteArray());
+    Object[] params = {streamId,
+                       event.getPid(),
+                       event.getGroupId(),
+                       event.getKind().getNumber(),
+                       event.getCommandId(),
+                       event.getTimestamp(),
+                       event.getIsEnded() ? 1 : 0,
+                       event.toByteArray()};
+    if (hasSubscribers(event.getKind())) {
+      // A subscription added after this point catches up with a query, which waits for this write anyway.
+      executeDeferredInsert(Statements.INSERT_EVENT, () -> notifySubscribers(streamId, event), params);
+    }
+    else {
+      executeDeferred(Statements.INSERT_EVENT, params);
+    }
+  }
+
+  /**
+   * Registers a subscriber for the events inserted from now on that match the filter. The filter matches on
+   * {@link GetEventGroupsRequest#getKind()}, and on {@link GetEventGroupsRequest#getStreamId()}, {@link GetEventGroupsRequest#getPid()},
+   * {@link GetEventGroupsRequest#getGroupId()} and {@link GetEventGroupsRequest#getCommandId()} when they are set. Timestamps are ignored.
+   * <p>
+   * Events are pushed once they are stored and visible to {@link #queryUnifiedEventGroups(GetEventGroupsRequest)}. Duplicates that the
+   * table ignores are not pushed.
+   *
+   * @return the subscription, to be closed when the subscriber is no longer interested.
+   */
+  @NotNull
+  public Subscription subscribe(@NotNull GetEventGroupsRequest filter, @NotNull EventSubscriber subscriber) {
+    Subscription subscription = new Subscription(filter, subscriber);
+    mySubscriptions.computeIfAbsent(filter.getKind().getNumber(), kind -> new CopyOnWriteArrayList<>()).add(subscription);
+    return subscription;
+  }
+
+  protected boolean hasSubscribers(@NotNull Event.Kind kind) {
+    List<Subscription> subscriptions = mySubscriptions.get(kind.getNumber());
+    return subscriptions != null && !subscriptions.isEmpty();
+  }
+
+  /**
+   * Pushes a newly inserted event to the matching subscribers. Subclasses that override {@link #insertUnifiedEvent(long, Event)} are
+   * expected to call this once the event is stored, and only if it was not a duplicate.
+   */
+  protected void notifySubscribers(long streamId, @NotNull Event event) {
+    List<Subscription> subscriptions = mySubscriptions.get(event.getKind().getNumber());
+    if (subscriptions == null) {
+      return;
+    }
+    for (Subscription subscription : subscriptions) {
+      if (subscription.matches(streamId, event)) {
+        subscription.mySubscriber.onEventInserted(streamId, event);
+      }
+    }
   }
 
   public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    // Apply the queued inserts first so the delete covers them, then delete synchronously so readers never see the deleted events.
+    awaitDeferredWrites();
     execute(Statements.DELETE_EVENTS, streamId, pid, groupId, kind.getNumber(), fromTimestamp, toTimestamp);
+    if (kind == Event.Kind.SESSION) {
+      deleteSessionBytesFiles(streamId, querySessionGroupIds(streamId, pid, fromTimestamp, toTimestamp));
+    }
+  }
+
+  /**
+   * @return the group ids of the events a process stored in the given time range, i.e. during one of its sessions.
+   */
+  @NotNull
+  protected Collection<Long> querySessionGroupIds(long streamId, int pid, long fromTimestamp, long toTimestamp) {
+    List<Long> groupIds = new ArrayList<>();
+    try {
+      ResultSet results = executeQuery(Statements.QUERY_SESSION_GROUP_IDS, streamId, pid, fromTimestamp, toTimestamp);
+      while (results.next()) {
+        groupIds.add(results.getLong(1));
+      }
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+    return groupIds;
+  }
+
+  /**
+   * Deletes the files of the bytes fetched for a deleted session. Bytes are identified by the group id of the event that refers to them,
+   * e.g. the trace id of a CPU trace or the start time of a heap dump, so these are the bytes whose id is one of the group ids of the
+   * session's events. A file is only deleted once no other bytes share it.
+   */
+  protected void deleteSessionBytesFiles(long streamId, @NotNull Collection<Long> groupIds) {
+    if (myBytesFileStore == null || groupIds.isEmpty()) {
+      return;
+    }
+    synchronized (myBytesFileStore) {
+      try {
+        Set<String> hashes = new HashSet<>();
+        for (long groupId : groupIds) {
+          String id = Long.toString(groupId);
+          String hash = queryBytesFileHash(streamId, id);
+          if (hash != null) {
+            execute(Statements.DELETE_BYTES_FILE, streamId, id);
+            hashes.add(hash);
+          }
+        }
+        for (String hash : hashes) {
+          if (!executeQuery(Statements.QUERY_BYTES_FILE_HASH_USED, hash).next()) {
+            myBytesFileStore.delete(hash);
+          }
+        }
+      }
+      catch (SQLException ex) {
+        onError(ex);
+      }
+    }
   }
 
   @VisibleForTesting
@@ -115,6 +265,38 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     return queryUnifiedEvents(Statements.QUERY_EVENTS);
   }
 
+  /**
+   * @return the timestamp of the latest event stored for the given stream and process, or 0 if there is none.
+   */
+  public long queryMaxTimestamp(long streamId, int pid) {
+    try {
+      ResultSet results = executeQuery(Statements.QUERY_MAX_TIMESTAMP, streamId, pid);
+      if (results.next()) {
+        return results.getLong(1);
+      }
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+    return 0;
+  }
+
+  /**
+   * @return the largest {@link Event#getCommandId()} stored, or 0 if there is none.
+   */
+  public int queryMaxCommandId() {
+    try {
+      ResultSet results = executeQuery(Statements.QUERY_MAX_COMMAND_ID);
+      if (results.next()) {
+        return results.getInt(1);
+      }
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+    return 0;
+  }
+
   /**
    * Queries for set of events then groups them by {@link Event#getGroupId()}
    * <p>
@@ -240,10 +422,29 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     return builderGroups.values().stream().map(EventGroup.Builder::build).collect(Collectors.toList());
   }
 
+  /**
+   * Stores the bytes of a stream. Contents of at least {@link #BYTES_FILE_MIN_SIZE} bytes go to the {@link BytesFileStore} if there is one,
+   * and only their hash is stored in the database.
+   */
   public void insertBytes(long streamId, @NotNull String id, @NotNull BytesResponse response) {
+    if (myBytesFileStore != null && response.getContents().size() >= BYTES_FILE_MIN_SIZE) {
+      // Written under the lock so a session being deleted cannot delete a file that is about to be referred to again.
+      synchronized (myBytesFileStore) {
+        String hash = myBytesFileStore.write(response.getContents());
+        if (hash != null) {
+          execute(Statements.INSERT_BYTES_FILE, streamId, id, hash);
+          return;
+        }
+      }
+      // The store logged why it failed, keep the bytes in the database instead.
+    }
     execute(Statements.INSERT_BYTES, streamId, id, response.toByteArray());
   }
 
+  /**
+   * @return the stored bytes, or null if there are none. Bytes kept in the {@link BytesFileStore} are returned as a read-only mapping of
+   * their file instead of being read onto the heap.
+   */
   @Nullable
   public BytesResponse getBytes(@NotNull BytesRequest request) {
     try {
@@ -251,14 +452,44 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
       if (results.next()) {
         return BytesResponse.parseFrom(results.getBytes(1));
       }
+      String hash = queryBytesFileHash(request.getStreamId(), request.getId());
+      MappedByteBuffer buffer = hash == null || myBytesFileStore == null ? null : myBytesFileStore.map(hash);
+      if (buffer != null) {
+        return BytesResponse.newBuilder().setContents(UnsafeByteOperations.unsafeWrap(buffer)).build();
+      }
     }
-    catch (InvalidProtocolBufferException | SQLException ex) {
+    catch (IOException | SQLException ex) {
       onError(ex);
     }
 
     return null;
   }
 
+  /**
+   * @return a channel to read the stored bytes from, to be closed by the caller, or null if the bytes are not kept in the
+   * {@link BytesFileStore}. Use {@link #getBytes(BytesRequest)} for those.
+   */
+  @Nullable
+  public FileChannel openBytes(@NotNull BytesRequest request) {
+    try {
+      String hash = queryBytesFileHash(request.getStreamId(), request.getId());
+      return hash == null || myBytesFileStore == null ? null : myBytesFileStore.open(hash);
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+    return null;
+  }
+
+  /**
+   * @return the hash of the bytes in the {@link BytesFileStore}, or null if they are not kept there.
+   */
+  @Nullable
+  private String queryBytesFileHash(long streamId, @NotNull String id) throws SQLException {
+    ResultSet results = executeQuery(Statements.GET_BYTES_FILE, streamId, id);
+    return results.next() ? results.getString(1) : null;
+  }
+
   /**
    * Executes the sql statement and passes each event through the filter. If the filter returns true, the event is added
    * to the hashmap. Otherwise it is ignored.
@@ -301,4 +532,35 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
     return records;
   }
+
+  /**
+   * A subscriber registered with {@link #subscribe(GetEventGroupsRequest, EventSubscriber)}.
+   */
+  public final class Subscription implements AutoCloseable {
+    @NotNull private final GetEventGroupsRequest myFilter;
+    @NotNull private final EventSubscriber mySubscriber;
+
+    private Subscription(@NotNull GetEventGroupsRequest filter, @NotNull EventSubscriber subscriber) {
+      myFilter = filter;
+      mySubscriber = subscriber;
+    }
+
+    private boolean matches(long streamId, @NotNull Event event) {
+      return (myFilter.getStreamId() == 0 || myFilter.getStreamId() == streamId) &&
+             (myFilter.getPid() == 0 || myFilter.getPid() == event.getPid()) &&
+             (myFilter.getGroupId() == 0 || myFilter.getGroupId() == event.getGroupId()) &&
+             (myFilter.getCommandId() == 0 || myFilter.getCommandId() == event.getCommandId());
+    }
+
+    /**
+     * Stops pushing events to the subscriber. Closing a subscription more than once is harmless.
+     */
+    @Override
+    public void close() {
+      List<Subscription> subscriptions = mySubscriptions.get(myFilter.getKind().getNumber());
+      if (subscriptions != null) {
+        subscriptions.remove(this);
+      }
+    }
+  }
 }
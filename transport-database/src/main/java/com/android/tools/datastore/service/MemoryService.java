@@ -17,6 +17,7 @@ package com.android.tools.datastore.service;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFORMANT;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DataStoreService.BackingNamespace;
 import com.android.tools.datastore.LogService;
@@ -27,6 +28,7 @@ import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.poller.MemoryDataPoller;
 import com.android.tools.datastore.poller.MemoryJvmtiDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Memory;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
@@ -222,8 +224,13 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
   @Override
   public void getAllocationEvents(AllocationSnapshotRequest request,
                                   StreamObserver<MemoryProfiler.AllocationEventsResponse> responseObserver) {
+    // A request for the live objects only needs the heap state at its end time, which can be served from the latest checkpoint.
+    List<Memory.BatchAllocationEvents> events = request.getLiveObjectsOnly() ?
+                                                myAllocationsTable.getAllocationSnapshotEvents(request.getSession(), request.getEndTime()) :
+                                                myAllocationsTable.getAllocationEvents(request.getSession(), request.getStartTime(),
+                                                                                       request.getEndTime());
     MemoryProfiler.AllocationEventsResponse response = MemoryProfiler.AllocationEventsResponse.newBuilder()
-      .addAllEvents(myAllocationsTable.getAllocationEvents(request.getSession(), request.getStartTime(), request.getEndTime()))
+      .addAllEvents(events)
       .build();
     responseObserver.onNext(response);
     responseObserver.onCompleted();
@@ -289,4 +296,13 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
       myAllocationsTable.initialize(connection);
     }
   }
+
+  @Override
+  public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull DataStoreDatabase database) {
+    setBackingStore(namespace, database.getConnection());
+    if (namespace.equals(LIVE_ALLOCATION_NAMESPACE) && StudioFlags.PROFILER_DATASTORE_WRITE_BEHIND.get()) {
+      // Allocation tracking produces bursts of small inserts, batch them on the database's writer thread.
+      myAllocationsTable.setWriteQueue(database.getWriteQueue());
+    }
+  }
 }
\ No newline at end of file
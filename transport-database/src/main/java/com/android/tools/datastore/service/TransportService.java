@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
@@ -50,7 +51,9 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import io.grpc.Channel;
 import io.grpc.stub.StreamObserver;
+import java.nio.channels.FileChannel;
 import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -58,6 +61,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Datastore layer of the unified event rpc pipeline, responsible for forwarding commands to the device and handling generic event
@@ -68,6 +72,8 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   private final Map<Channel, DeviceProcessPoller> myLegacyPollers = Maps.newHashMap();
   private final Consumer<Runnable> myFetchExecutor;
   @NotNull private final UnifiedEventsTable myTable;
+  /** The namespace of {@link #myTable}, whose characteristic matches the table's backend. */
+  @NotNull private final DataStoreService.BackingNamespace myEventsNamespace;
   @NotNull private final DeviceProcessTable myLegacyTable;
   @NotNull private final DataStoreService myService;
   private final boolean myLegacyPipelineForProfilers;
@@ -86,7 +92,16 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
                           @NotNull UnifiedEventsTable unifiedTable,
                           Consumer<Runnable> fetchExecutor,
                           boolean legacyPipelineForProfilers) {
+    this(service, DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE, unifiedTable, fetchExecutor, legacyPipelineForProfilers);
+  }
+
+  public TransportService(@NotNull DataStoreService service,
+                          @NotNull DataStoreService.BackingNamespace eventsNamespace,
+                          @NotNull UnifiedEventsTable unifiedTable,
+                          Consumer<Runnable> fetchExecutor,
+                          boolean legacyPipelineForProfilers) {
     myService = service;
+    myEventsNamespace = eventsNamespace;
     myFetchExecutor = fetchExecutor;
     myTable = unifiedTable;
     myLegacyTable = new DeviceProcessTable();
@@ -96,19 +111,94 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   @NotNull
   @Override
   public List<DataStoreService.BackingNamespace> getBackingNamespaces() {
-    return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
+    if (myEventsNamespace.equals(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE)) {
+      return Collections.singletonList(myEventsNamespace);
+    }
+    return Arrays.asList(myEventsNamespace, DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
   }
 
   @Override
   public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
-    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myTable.initialize(connection);
+    assert namespace.equals(myEventsNamespace) || namespace.equals(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
+    if (namespace.equals(myEventsNamespace)) {
+      myTable.initialize(connection);
+    }
 
-    if (myLegacyPipelineForProfilers) {
+    if (myLegacyPipelineForProfilers && namespace.equals(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE)) {
       myLegacyTable.initialize(connection);
     }
   }
 
+  @Override
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
+    setBackingStore(namespace, database.getConnection());
+    if (!namespace.equals(myEventsNamespace)) {
+      return;
+    }
+    if (StudioFlags.PROFILER_DATASTORE_WRITE_BEHIND.get()) {
+      myTable.setWriteQueue(database.getWriteQueue());
+    }
+    if (database.isResumed()) {
+      restorePreviousRun();
+    }
+  }
+
+  /**
+   * Prepares the events of a database resumed from a previous run to be read by the profilers. Streams, processes and sessions that were
+   * still ongoing when Studio exited are ended at their last known event, so dead devices and processes are not listed as alive and
+   * sessions are listed as completed. Command ids continue from the largest one already stored so new commands cannot be matched with
+   * events of the previous run. The events of each session are only read when the session gets selected.
+   */
+  private void restorePreviousRun() {
+    myNextCommandId.set(myTable.queryMaxCommandId());
+
+    GetEventGroupsRequest streamsRequest = GetEventGroupsRequest.newBuilder()
+      .setKind(Event.Kind.STREAM)
+      .setStreamId(DataStoreService.DATASTORE_RESERVED_STREAM_ID)
+      .build();
+    for (EventGroup streamGroup : myTable.queryUnifiedEventGroups(streamsRequest)) {
+      // Stream groups are identified by the id of their stream.
+      long streamId = streamGroup.getGroupId();
+      // A stream ends after its last device-wide event and after all its processes.
+      long streamEndTimestamp = myTable.queryMaxTimestamp(streamId, 0);
+      GetEventGroupsRequest processesRequest = GetEventGroupsRequest.newBuilder().setKind(Event.Kind.PROCESS).setStreamId(streamId).build();
+      for (EventGroup processGroup : myTable.queryUnifiedEventGroups(processesRequest)) {
+        streamEndTimestamp = Math.max(streamEndTimestamp, endGroupIfOngoing(streamId, processGroup, 0));
+      }
+      endGroupIfOngoing(DataStoreService.DATASTORE_RESERVED_STREAM_ID, streamGroup, streamEndTimestamp);
+    }
+
+    GetEventGroupsRequest sessionsRequest = GetEventGroupsRequest.newBuilder().setKind(Event.Kind.SESSION).build();
+    for (EventGroup group : myTable.queryUnifiedEventGroups(sessionsRequest)) {
+      Event startEvent = group.getEvents(0);
+      endGroupIfOngoing(startEvent.getSession().getSessionStarted().getStreamId(), group, 0);
+    }
+  }
+
+  /**
+   * Ends the given group of a previous run if it is still ongoing, at the latest of its last event, the last event stored for its process
+   * and {@code minEndTimestamp}.
+   *
+   * @return the timestamp at which the group ended.
+   */
+  private long endGroupIfOngoing(long streamId, @NotNull EventGroup group, long minEndTimestamp) {
+    Event lastEvent = group.getEvents(group.getEventsCount() - 1);
+    if (lastEvent.getIsEnded()) {
+      return lastEvent.getTimestamp();
+    }
+    Event startEvent = group.getEvents(0);
+    long endTimestamp = Math.max(Math.max(lastEvent.getTimestamp(), minEndTimestamp),
+                                 myTable.queryMaxTimestamp(streamId, startEvent.getPid()));
+    myTable.insertUnifiedEvent(streamId, Event.newBuilder()
+      .setKind(startEvent.getKind())
+      .setGroupId(group.getGroupId())
+      .setPid(startEvent.getPid())
+      .setIsEnded(true)
+      .setTimestamp(endTimestamp)
+      .build());
+    return endTimestamp;
+  }
+
   /**
    * Connects the datastore layer to a channel. By default ths starts the {@link UnifiedEventsDataPoller} for the transport pipeline which
    * streams Events into the database. If the profiler is using the legacy pipeline ({@link StudioFlags#PROFILER_UNIFIED_PIPELINE} flag),
@@ -230,6 +320,15 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onCompleted();
   }
 
+  /**
+   * @return a channel to read the bytes from, or null if they are not kept in a file.
+   * @see UnifiedEventsTable#openBytes(BytesRequest)
+   */
+  @Nullable
+  public FileChannel openBytes(@NotNull BytesRequest request) {
+    return myTable.openBytes(request);
+  }
+
   @Override
   public void execute(ExecuteRequest request, StreamObserver<ExecuteResponse> responseObserver) {
     // TODO (b/114751407): Send stream id 0 to all streams.
@@ -256,6 +355,16 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onCompleted();
   }
 
+  /**
+   * Pushes the events matching the filter to the subscriber as they are inserted, see
+   * {@link UnifiedEventsTable#subscribe(GetEventGroupsRequest, UnifiedEventsTable.EventSubscriber)}.
+   */
+  @NotNull
+  public UnifiedEventsTable.Subscription subscribeToEvents(@NotNull GetEventGroupsRequest filter,
+                                                           @NotNull UnifiedEventsTable.EventSubscriber subscriber) {
+    return myTable.subscribe(filter, subscriber);
+  }
+
   @Override
   public void deleteEvents(Transport.DeleteEventsRequest request, StreamObserver<Transport.DeleteEventsResponse> responseObserver) {
     myTable.deleteEvents(request.getStreamId(),
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.sql.Connection
+import java.sql.DriverManager
+
+class DataStoreSchemaTest {
+  private lateinit var connection: Connection
+
+  @Before
+  fun setUp() {
+    Class.forName("org.sqlite.JDBC")
+    connection = DriverManager.getConnection("jdbc:sqlite::memory:")
+  }
+
+  @After
+  fun tearDown() {
+    connection.close()
+  }
+
+  @Test
+  fun unversionedDatabaseIsNotUpgraded() {
+    assertThat(DataStoreSchema.readVersion(connection)).isEqualTo(0)
+    assertThat(DataStoreSchema.upgrade(connection)).isFalse()
+  }
+
+  @Test
+  fun currentVersionNeedsNoMigration() {
+    DataStoreSchema.writeVersion(connection, DataStoreSchema.VERSION)
+    assertThat(DataStoreSchema.upgrade(connection)).isTrue()
+  }
+
+  @Test
+  fun migrationsAreAppliedInOrder() {
+    DataStoreSchema.writeVersion(connection, 1)
+    connection.createStatement().execute("CREATE TABLE Test (Value INTEGER)")
+    val migrations = mapOf<Int, DataStoreSchema.Migration>(
+      1 to DataStoreSchema.Migration { it.createStatement().execute("ALTER TABLE Test ADD COLUMN Name STRING") },
+      2 to DataStoreSchema.Migration { it.createStatement().execute("INSERT INTO Test (Value, Name) VALUES (1, 'one')") })
+
+    assertThat(DataStoreSchema.upgrade(connection, migrations, 3)).isTrue()
+    assertThat(DataStoreSchema.readVersion(connection)).isEqualTo(3)
+    val result = connection.createStatement().executeQuery("SELECT Name FROM Test")
+    assertThat(result.next()).isTrue()
+    assertThat(result.getString(1)).isEqualTo("one")
+  }
+
+  @Test
+  fun missingMigrationFailsUpgrade() {
+    DataStoreSchema.writeVersion(connection, 1)
+    assertThat(DataStoreSchema.upgrade(connection, mapOf(), 2)).isFalse()
+  }
+}
@@ -14,6 +14,7 @@
 package com.android.tools.datastore.database
 
 import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.DataStoreSchema
 import com.android.tools.datastore.FakeLogService
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
@@ -45,6 +46,51 @@ class DataStoreDatabaseTest {
     assertThat(myDatabaseFile.exists()).isTrue()
   }
 
+  @Test
+  fun testDatabaseResumesFileWithCurrentSchema() {
+    myDatabaseFile.delete()
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    assertThat(db.isResumed).isFalse()
+    db.connection.createStatement().execute("CREATE TABLE Test (Value INTEGER)")
+    db.connection.createStatement().execute("INSERT INTO Test (Value) VALUES (42)")
+    db.disconnect()
+
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService(), {}, true)
+    assertThat(db.isResumed).isTrue()
+    assertThat(DataStoreSchema.readVersion(db.connection)).isEqualTo(DataStoreSchema.VERSION)
+    val result = db.connection.createStatement().executeQuery("SELECT Value FROM Test")
+    assertThat(result.next()).isTrue()
+    assertThat(result.getInt(1)).isEqualTo(42)
+    db.disconnect()
+  }
+
+  @Test
+  fun testDatabaseDiscardsFileWithUnknownSchema() {
+    myDatabaseFile.delete()
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    DataStoreSchema.writeVersion(db.connection, DataStoreSchema.VERSION + 1)
+    db.connection.createStatement().execute("CREATE TABLE Test (Value INTEGER)")
+    db.disconnect()
+
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService(), {}, true)
+    assertThat(db.isResumed).isFalse()
+    assertThat(DataStoreSchema.readVersion(db.connection)).isEqualTo(DataStoreSchema.VERSION)
+    val result = db.connection.createStatement().executeQuery("SELECT name FROM sqlite_master WHERE type='table'")
+    assertThat(result.next()).isFalse()
+    db.disconnect()
+  }
+
+  @Test
+  fun testDatabaseDiscardsCorruptFileWhenResuming() {
+    val outputStream = BufferedOutputStream(FileOutputStream(myDatabaseFile))
+    outputStream.write(ByteArray(1024) { 1 })
+    outputStream.close()
+    val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService(), {}, true)
+    assertThat(db.isResumed).isFalse()
+    assertThat(db.connection.isClosed).isFalse()
+    db.disconnect()
+  }
+
   @Test
   fun testConnectionIsOpen() {
     // Verify persistent database
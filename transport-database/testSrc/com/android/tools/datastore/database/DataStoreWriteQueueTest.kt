@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.sql.DriverManager
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class DataStoreWriteQueueTest {
+  private lateinit var dbFile: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var writeQueue: DataStoreWriteQueue
+  private lateinit var table: UnifiedEventsTable
+
+  @Before
+  fun before() {
+    dbFile = File.createTempFile("DataStoreWriteQueueTest", "mysql")
+    dbFile.deleteOnExit()
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    // Use a long commit interval so only the row threshold and flushes trigger commits.
+    writeQueue = DataStoreWriteQueue(database.connection, 64, 16, 50, TimeUnit.HOURS.toMillis(1))
+    table = UnifiedEventsTable()
+    table.initialize(database.connection)
+    table.setWriteQueue(writeQueue)
+  }
+
+  @After
+  fun after() {
+    writeQueue.shutdown()
+    database.disconnect()
+  }
+
+  @Test
+  fun flushAppliesQueuedWrites() {
+    val events = (1L..200L).map { sessionEvent(it) }
+    events.forEach { table.insertUnifiedEvent(1, it) }
+    writeQueue.flush()
+
+    assertThat(table.queryUnifiedEvents()).containsExactlyElementsIn(events)
+    val stats = writeQueue.stats
+    assertThat(stats.queueDepth).isEqualTo(0)
+    assertThat(stats.maxQueueDepth).isAtMost(64)
+    assertThat(stats.maxBatchSize).isAtMost(16)
+    assertThat(stats.averageBatchSize).isAtLeast(1)
+    assertThat(stats.commitCount).isAtLeast(1)
+  }
+
+  @Test
+  fun writesAreAppliedInOrder() {
+    val event = sessionEvent(1)
+    table.insertUnifiedEvent(1, event)
+    table.deleteEvents(1, event.pid, event.groupId, event.kind, event.timestamp, event.timestamp)
+    writeQueue.flush()
+    assertThat(table.queryUnifiedEvents()).isEmpty()
+  }
+
+  @Test
+  fun queriesSeeQueuedWrites() {
+    val events = (1L..200L).map { sessionEvent(it) }
+    events.forEach { table.insertUnifiedEvent(1, it) }
+    assertThat(table.queryUnifiedEvents()).containsExactlyElementsIn(events)
+  }
+
+  @Test
+  fun deletesAreVisibleImmediately() {
+    val event = sessionEvent(1)
+    table.insertUnifiedEvent(1, event)
+    table.deleteEvents(1, event.pid, event.groupId, event.kind, event.timestamp, event.timestamp)
+    assertThat(table.queryUnifiedEvents()).isEmpty()
+  }
+
+  @Test
+  fun interruptedWritesAreNotDropped() {
+    val event = sessionEvent(1)
+    Thread.currentThread().interrupt()
+    table.insertUnifiedEvent(1, event)
+    writeQueue.flush()
+    // The interrupt is kept for the caller to handle.
+    assertThat(Thread.interrupted()).isTrue()
+    assertThat(table.queryUnifiedEvents()).containsExactly(event)
+  }
+
+  @Test
+  fun writesAfterShutdownAreAppliedDirectly() {
+    writeQueue.shutdown()
+    val event = sessionEvent(1)
+    table.insertUnifiedEvent(1, event)
+    assertThat(table.queryUnifiedEvents()).containsExactly(event)
+  }
+
+  @Test
+  fun subscribersAreNotifiedOfCommittedInsertsOnly() {
+    val received = Collections.synchronizedList(mutableListOf<Common.Event>())
+    val committed = Collections.synchronizedList(mutableListOf<Boolean>())
+    val latch = CountDownLatch(3)
+    // A second connection only sees committed rows.
+    DriverManager.getConnection("jdbc:sqlite:${dbFile.absolutePath}").use { reader ->
+      table.subscribe(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build(),
+                      UnifiedEventsTable.EventSubscriber { _, event ->
+                        reader.prepareStatement("SELECT COUNT(*) FROM UnifiedEventsTable WHERE Timestamp = ?").use {
+                          it.setLong(1, event.timestamp)
+                          committed.add(it.executeQuery().getInt(1) == 1)
+                        }
+                        received.add(event)
+                        latch.countDown()
+                      })
+      val events = (1L..3L).map { sessionEvent(it) }
+      events.forEach {
+        table.insertUnifiedEvent(1, it)
+        table.insertUnifiedEvent(1, it.toBuilder().setCommandId(100).build())
+      }
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue()
+      writeQueue.flush()
+
+      assertThat(received).containsExactlyElementsIn(events)
+      assertThat(committed).containsExactly(true, true, true)
+    }
+  }
+
+  @Test
+  fun subscribersCanWriteAndFlushWhileTheQueueIsFull() {
+    val latch = CountDownLatch(200)
+    table.subscribe(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build(),
+                    UnifiedEventsTable.EventSubscriber { streamId, event ->
+                      // Twice as many writes as the queue can hold are queued from the callbacks.
+                      table.insertUnifiedEvent(streamId, event.toBuilder().setKind(Common.Event.Kind.PROCESS).build())
+                      writeQueue.flush()
+                      latch.countDown()
+                    })
+    (1L..200L).forEach { table.insertUnifiedEvent(1, sessionEvent(it)) }
+
+    assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue()
+    writeQueue.flush()
+    assertThat(table.queryUnifiedEvents()).hasSize(400)
+  }
+
+  private fun sessionEvent(timestamp: Long): Common.Event {
+    return Common.Event.newBuilder()
+      .setKind(Common.Event.Kind.SESSION)
+      .setPid(1)
+      .setGroupId(1)
+      .setTimestamp(timestamp)
+      .build()
+  }
+}
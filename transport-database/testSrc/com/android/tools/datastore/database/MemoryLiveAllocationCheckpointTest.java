@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.datastore.FakeLogService;
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.Memory.AllocationEvent;
+import com.android.tools.profiler.proto.Memory.BatchAllocationEvents;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+/**
+ * Tests the heap state checkpoints of {@link MemoryLiveAllocationTable}, written far more often than by default.
+ */
+public class MemoryLiveAllocationCheckpointTest extends DatabaseTest<MemoryLiveAllocationTable> {
+  private static final Common.Session VALID_SESSION = Common.Session.newBuilder().setSessionId(1L).setStreamId(1234).setPid(1).build();
+  private static final Common.Session INVALID_SESSION = Common.Session.newBuilder().setSessionId(-1L).setStreamId(4321).setPid(-1).build();
+  private static final int CLASS1 = 1000;
+  private static final int MIN_CHECKPOINT_INTERVAL_EVENTS = 4;
+
+  @Override
+  @NotNull
+  protected List<Consumer<MemoryLiveAllocationTable>> getTableQueryMethodsForVerification() {
+    return MemoryLiveAllocationTableTest.getQueryMethodsForVerification();
+  }
+
+  @Override
+  @NotNull
+  protected MemoryLiveAllocationTable createTable() {
+    return new MemoryLiveAllocationTable(new FakeLogService(), MIN_CHECKPOINT_INTERVAL_EVENTS);
+  }
+
+  @Test
+  public void testSnapshotEventsStartFromLatestCheckpoint() {
+    // Each batch allocates an object and frees the one allocated in the previous batch. As only one object is alive at a time, a
+    // checkpoint is written once four events have been inserted since the previous one: after the 3rd and the 5th batches.
+    List<BatchAllocationEvents> batches = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      BatchAllocationEvents.Builder batch = BatchAllocationEvents.newBuilder().setTimestamp(i * 10 + 5);
+      batch.addEvents(AllocationEvent.newBuilder().setAllocData(AllocationEvent.Allocation.newBuilder().setTag(i).setClassTag(CLASS1))
+                        .setTimestamp(i * 10));
+      if (i > 0) {
+        batch.addEvents(AllocationEvent.newBuilder().setFreeData(AllocationEvent.Deallocation.newBuilder().setTag(i - 1))
+                          .setTimestamp(i * 10 + 1));
+      }
+      batches.add(batch.build());
+      getTable().insertAllocationEvents(VALID_SESSION, batch.build());
+    }
+
+    // No checkpoint was written before the snapshot time, all the batches are returned.
+    assertThat(getTable().getAllocationSnapshotEvents(VALID_SESSION, 25)).containsExactlyElementsIn(batches).inOrder();
+
+    // The first checkpoint holds the only allocation alive at that point, and is followed by the later batches.
+    List<BatchAllocationEvents> snapshot = getTable().getAllocationSnapshotEvents(VALID_SESSION, 40);
+    assertThat(snapshot).hasSize(4);
+    assertThat(snapshot.get(0).getTimestamp()).isEqualTo(25);
+    assertThat(snapshot.get(0).getEventsList()).containsExactly(batches.get(2).getEvents(0));
+    assertThat(snapshot.subList(1, 4)).containsExactlyElementsIn(batches.subList(3, 6)).inOrder();
+
+    snapshot = getTable().getAllocationSnapshotEvents(VALID_SESSION, 50);
+    assertThat(snapshot).hasSize(2);
+    assertThat(snapshot.get(0).getTimestamp()).isEqualTo(45);
+    assertThat(snapshot.get(0).getEventsList()).containsExactly(batches.get(4).getEvents(0));
+    assertThat(snapshot.get(1)).isEqualTo(batches.get(5));
+
+    // Checkpoints are per session.
+    assertThat(getTable().getAllocationSnapshotEvents(INVALID_SESSION, Long.MAX_VALUE - MemoryLiveAllocationTable.SNAPSHOT_QUERY_BUFFER_NS))
+      .isEmpty();
+  }
+
+  @Test
+  public void testOutOfOrderEventsDropCheckpoints() {
+    for (int i = 0; i < 4; i++) {
+      getTable().insertAllocationEvents(VALID_SESSION, BatchAllocationEvents.newBuilder().setTimestamp(i * 10 + 5).addEvents(
+        AllocationEvent.newBuilder().setAllocData(AllocationEvent.Allocation.newBuilder().setTag(i)).setTimestamp(i * 10)).build());
+    }
+    assertThat(getTable().getAllocationSnapshotEvents(VALID_SESSION, 100)).hasSize(1);
+
+    // A batch older than the latest checkpoint would not be part of the snapshot, so the checkpoints are dropped.
+    BatchAllocationEvents late = BatchAllocationEvents.newBuilder().setTimestamp(1).addEvents(
+      AllocationEvent.newBuilder().setAllocData(AllocationEvent.Allocation.newBuilder().setTag(100)).setTimestamp(1)).build();
+    getTable().insertAllocationEvents(VALID_SESSION, late);
+    List<BatchAllocationEvents> snapshot = getTable().getAllocationSnapshotEvents(VALID_SESSION, 100);
+    assertThat(snapshot).hasSize(5);
+    assertThat(snapshot.get(0)).isEqualTo(late);
+  }
+
+  @Test
+  public void testCheckpointsAreBuiltOnTopOfEachOther() {
+    // Allocate two objects per batch and free one of them in the next batch, so the live allocations accumulate over the checkpoints.
+    for (int i = 0; i < 8; i++) {
+      BatchAllocationEvents.Builder batch = BatchAllocationEvents.newBuilder().setTimestamp(i * 10 + 5);
+      for (int tag = 2 * i; tag <= 2 * i + 1; tag++) {
+        batch.addEvents(AllocationEvent.newBuilder().setAllocData(AllocationEvent.Allocation.newBuilder().setTag(tag).setClassTag(CLASS1))
+                          .setTimestamp(i * 10));
+      }
+      if (i > 0) {
+        batch.addEvents(AllocationEvent.newBuilder().setFreeData(AllocationEvent.Deallocation.newBuilder().setTag(2 * i - 1))
+                          .setTimestamp(i * 10 + 1));
+      }
+      getTable().insertAllocationEvents(VALID_SESSION, batch.build());
+    }
+
+    List<BatchAllocationEvents> snapshot = getTable().getAllocationSnapshotEvents(VALID_SESSION, 1000);
+    List<Integer> liveTags = new ArrayList<>();
+    for (BatchAllocationEvents batch : snapshot) {
+      for (AllocationEvent event : batch.getEventsList()) {
+        if (event.hasAllocData()) {
+          liveTags.add(event.getAllocData().getTag());
+        }
+        else {
+          liveTags.remove(Integer.valueOf(event.getFreeData().getTag()));
+        }
+      }
+    }
+    // The latest checkpoint, which includes the previous ones, and the batches after it give the same heap as replaying all the batches.
+    assertThat(snapshot.size()).isLessThan(8);
+    assertThat(liveTags).containsExactly(0, 2, 4, 6, 8, 10, 12, 14, 15).inOrder();
+  }
+}
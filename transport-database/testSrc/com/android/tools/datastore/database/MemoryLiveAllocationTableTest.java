@@ -70,6 +70,11 @@ public class MemoryLiveAllocationTableTest extends DatabaseTest<MemoryLiveAlloca
   @Override
   @NotNull
   protected List<Consumer<MemoryLiveAllocationTable>> getTableQueryMethodsForVerification() {
+    return getQueryMethodsForVerification();
+  }
+
+  @NotNull
+  static List<Consumer<MemoryLiveAllocationTable>> getQueryMethodsForVerification() {
     List<Consumer<MemoryLiveAllocationTable>> methodCalls = new ArrayList<>();
     Common.Session session = Common.Session.getDefaultInstance();
     methodCalls.add((table) -> {
@@ -89,6 +94,7 @@ public class MemoryLiveAllocationTableTest extends DatabaseTest<MemoryLiveAlloca
     });
     methodCalls.add((table) -> table.getAllocationContexts(session, 0, 0));
     methodCalls.add((table) -> table.getAllocationEvents(session, 0, 0));
+    methodCalls.add((table) -> table.getAllocationSnapshotEvents(session, 0));
     methodCalls.add((table) -> table.getJniReferenceEvents(session, 0, 0));
     methodCalls.add((table) -> table.insertOrReplaceAllocationSamplingRateEvent(session, AllocationSamplingRateEvent.getDefaultInstance()));
     methodCalls.add((table) -> table.getAllocationSamplingRateEvents(session.getSessionId(), 0, 0));
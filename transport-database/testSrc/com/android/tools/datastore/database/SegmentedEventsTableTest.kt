@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class SegmentedEventsTableTest {
+  private lateinit var dbFile: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var sqlTable: UnifiedEventsTable
+  private lateinit var segmentedTable: SegmentedEventsTable
+
+  // Same fixture as UnifiedEventsTableTest, spread across two streams.
+  private val events = listOf(eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 4, 1),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 4, 2),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 4, 3),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 4, 4),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 2, 1, 5, 5),
+                              eventBuilder(Common.Event.Kind.SESSION, true, 2, 1, 5, 6),
+                              eventBuilder(Common.Event.Kind.PROCESS, true, 2, 1, -1, 10),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 1, 2, 6, 7),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 2, 2, 7, 8),
+                              eventBuilder(Common.Event.Kind.SESSION, true, 2, 2, 7, 9),
+                              eventBuilder(Common.Event.Kind.SESSION, false, 3, 3, -1, 1),
+                              eventBuilder(Common.Event.Kind.SESSION, true, 3, 3, -1, 3))
+
+  @Before
+  fun before() {
+    dbFile = File.createTempFile("SegmentedEventsTableTest", "mysql")
+    dbFile.deleteOnExit()
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    sqlTable = UnifiedEventsTable()
+    sqlTable.initialize(database.connection)
+    segmentedTable = SegmentedEventsTable()
+    segmentedTable.initialize(database.connection)
+    events.forEachIndexed { index, event ->
+      val streamId = if (index % 2 == 0) 1L else 2L
+      sqlTable.insertUnifiedEvent(streamId, event)
+      segmentedTable.insertUnifiedEvent(streamId, event)
+    }
+  }
+
+  @After
+  fun after() {
+    database.disconnect()
+  }
+
+  @Test
+  fun insertDuplicatedDataIsIgnored() {
+    val received = mutableListOf<Common.Event>()
+    segmentedTable.subscribe(GetEventGroupsRequest.newBuilder().setKind(events[0].kind).build(),
+                             UnifiedEventsTable.EventSubscriber { _, event -> received.add(event) })
+    val updated = events[0].toBuilder().setCommandId(100).build()
+    segmentedTable.insertUnifiedEvent(1, updated)
+    assertThat(segmentedTable.queryUnifiedEvents()).containsExactlyElementsIn(events)
+    assertThat(received).isEmpty()
+  }
+
+  @Test
+  fun deleteEvents() {
+    segmentedTable.deleteEvents(1, 1, 1, Common.Event.Kind.SESSION, 1, 3)
+    sqlTable.deleteEvents(1, 1, 1, Common.Event.Kind.SESSION, 1, 3)
+    assertThat(segmentedTable.queryUnifiedEvents()).containsExactlyElementsIn(sqlTable.queryUnifiedEvents())
+    assertThat(segmentedTable.queryUnifiedEvents()).doesNotContain(events[0])
+  }
+
+  @Test
+  fun maxCommandIdMatchesSqlImplementation() {
+    assertThat(segmentedTable.queryMaxCommandId()).isEqualTo(sqlTable.queryMaxCommandId())
+    // Ignored duplicates don't count.
+    segmentedTable.insertUnifiedEvent(1, events[0].toBuilder().setCommandId(100).build())
+    assertThat(segmentedTable.queryMaxCommandId()).isEqualTo(7)
+    segmentedTable.insertUnifiedEvent(2, eventBuilder(Common.Event.Kind.SESSION, false, 1, 4, 20, 11))
+    assertThat(segmentedTable.queryMaxCommandId()).isEqualTo(20)
+  }
+
+  @Test
+  fun outOfOrderEventsAreSortedByTimestamp() {
+    val table = SegmentedEventsTable()
+    for (timestamp in listOf(3L, 1L, 4L, 2L)) {
+      table.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 4, timestamp))
+    }
+    val groups = table.queryUnifiedEventGroups(
+      GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(2).setToTimestamp(2).build())
+    assertThat(groups).hasSize(1)
+    // 1 and 3 are the -1 and +1 events around the range.
+    assertThat(groups[0].eventsList.map { it.timestamp }).containsExactly(1L, 2L, 3L).inOrder()
+  }
+
+  @Test
+  fun queriesMatchSqlImplementation() {
+    val kinds = listOf(Common.Event.Kind.NONE, Common.Event.Kind.SESSION, Common.Event.Kind.PROCESS)
+    val timestamps = listOf(0L, 1L, 3L, 4L, 6L, 8L, Long.MAX_VALUE)
+    for (kind in kinds) {
+      for (streamId in 0L..2L) {
+        for (pid in 0..2) {
+          for (groupId in 0L..2L) {
+            for (from in timestamps) {
+              for (to in timestamps) {
+                val request = GetEventGroupsRequest.newBuilder()
+                  .setKind(kind)
+                  .setStreamId(streamId)
+                  .setPid(pid)
+                  .setGroupId(groupId)
+                  .setFromTimestamp(from)
+                  .setToTimestamp(to)
+                  .build()
+                val expected = sqlTable.queryUnifiedEventGroups(request).associate { it.groupId to it.eventsList.toSet() }
+                val actual = segmentedTable.queryUnifiedEventGroups(request).associate { it.groupId to it.eventsList.toSet() }
+                assertWithMessage(request.toString()).that(actual).isEqualTo(expected)
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private fun eventBuilder(kind: Common.Event.Kind,
+                           isEnded: Boolean,
+                           pid: Int,
+                           groupId: Long,
+                           commandId: Int,
+                           timestamp: Long): Common.Event {
+    return Common.Event.newBuilder()
+      .setKind(kind)
+      .setIsEnded(isEnded)
+      .setPid(pid)
+      .setGroupId(groupId)
+      .setCommandId(commandId)
+      .setTimestamp(timestamp)
+      .build()
+  }
+}
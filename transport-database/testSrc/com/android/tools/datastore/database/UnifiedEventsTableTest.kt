@@ -15,12 +15,16 @@
  */
 package com.android.tools.datastore.database
 
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.idea.protobuf.ByteString
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Transport.BytesRequest
 import com.android.tools.profiler.proto.Transport.BytesResponse
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
 import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import java.util.function.Consumer
 
 class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
@@ -53,8 +57,13 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
                              eventBuilder(Common.Event.Kind.SESSION, false, 3, 3, -1, 1),
                              eventBuilder(Common.Event.Kind.SESSION, true, 3, 3, -1, 3))
 
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val bytesFileStore by lazy { BytesFileStore(temporaryFolder.newFolder("bytes").toPath(), FakeLogService()) }
+
   override fun createTable(): UnifiedEventsTable {
-    return UnifiedEventsTable()
+    return UnifiedEventsTable(bytesFileStore)
   }
 
   override fun getTableQueryMethodsForVerification(): List<Consumer<UnifiedEventsTable>> {
@@ -68,8 +77,82 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
             10).build())
       }),
       (Consumer { it.queryUnifiedEvents() }),
+      (Consumer { it.queryMaxTimestamp(1, 1) }),
+      (Consumer { it.queryMaxCommandId() }),
       (Consumer { assertThat(it.getBytes(BytesRequest.getDefaultInstance())).isEqualTo(null) }),
-      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }))
+      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }),
+      (Consumer { assertThat(it.openBytes(BytesRequest.getDefaultInstance())).isNull() }),
+      (Consumer {
+        // Subscribing does not touch the database, so go through an insert that notifies the subscriber.
+        val subscription = it.subscribe(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build(),
+                                        UnifiedEventsTable.EventSubscriber { _, _ -> })
+        it.insertUnifiedEvent(1, events[0])
+        subscription.close()
+      }))
+  }
+
+  @Test
+  fun largeBytesAreStoredInFiles() {
+    val contents = ByteString.copyFrom(ByteArray(UnifiedEventsTable.BYTES_FILE_MIN_SIZE) { it.toByte() })
+    table.insertBytes(1, "large", BytesResponse.newBuilder().setContents(contents).build())
+    table.insertBytes(2, "copy", BytesResponse.newBuilder().setContents(contents).build())
+    table.insertBytes(1, "small", BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("small")).build())
+    // Identical contents share a file, and small contents stay in the database.
+    assertThat(bytesFileStore.directory.toFile().listFiles()).hasLength(1)
+
+    val large = BytesRequest.newBuilder().setStreamId(1).setId("large").build()
+    assertThat(table.getBytes(large)!!.contents).isEqualTo(contents)
+    assertThat(table.getBytes(BytesRequest.newBuilder().setStreamId(2).setId("copy").build())!!.contents).isEqualTo(contents)
+    table.openBytes(large)!!.use { assertThat(it.size()).isEqualTo(contents.size().toLong()) }
+
+    val small = BytesRequest.newBuilder().setStreamId(1).setId("small").build()
+    assertThat(table.getBytes(small)!!.contents.toStringUtf8()).isEqualTo("small")
+    assertThat(table.openBytes(small)).isNull()
+  }
+
+  @Test
+  fun bytesAreKeptInDatabaseWhenFilesCannotBeWritten() {
+    var errorThrown = false
+    val callback = DataStoreTable.DataStoreTableErrorCallback { errorThrown = true }
+    DataStoreTable.addDataStoreErrorCallback(callback)
+    try {
+      // Nothing can be written once the directory of the store is a file.
+      val directory = bytesFileStore.directory.toFile()
+      assertThat(directory.delete()).isTrue()
+      assertThat(directory.createNewFile()).isTrue()
+
+      val contents = ByteString.copyFrom(ByteArray(UnifiedEventsTable.BYTES_FILE_MIN_SIZE) { it.toByte() })
+      table.insertBytes(1, "large", BytesResponse.newBuilder().setContents(contents).build())
+      val request = BytesRequest.newBuilder().setStreamId(1).setId("large").build()
+      assertThat(table.getBytes(request)!!.contents).isEqualTo(contents)
+      assertThat(table.openBytes(request)).isNull()
+      assertThat(errorThrown).isFalse()
+    }
+    finally {
+      DataStoreTable.removeDataStoreErrorCallback(callback)
+    }
+  }
+
+  @Test
+  fun sessionBytesFilesAreDeletedWithTheSession() {
+    val session = eventBuilder(Common.Event.Kind.SESSION, false, 1, 10, -1, 1)
+    table.insertUnifiedEvent(1, session)
+    table.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.MEMORY_HEAP_DUMP, false, 1, 5, -1, 5))
+    table.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.MEMORY_HEAP_DUMP, false, 1, 6, -1, 6))
+    val shared = ByteString.copyFrom(ByteArray(UnifiedEventsTable.BYTES_FILE_MIN_SIZE) { it.toByte() })
+    val unique = ByteString.copyFrom(ByteArray(UnifiedEventsTable.BYTES_FILE_MIN_SIZE) { (it + 1).toByte() })
+    table.insertBytes(1, "5", BytesResponse.newBuilder().setContents(shared).build())
+    table.insertBytes(1, "6", BytesResponse.newBuilder().setContents(unique).build())
+    // Another stream refers to the same file as the first heap dump.
+    table.insertBytes(2, "5", BytesResponse.newBuilder().setContents(shared).build())
+    assertThat(bytesFileStore.directory.toFile().listFiles()).hasLength(2)
+
+    table.deleteEvents(1, 1, 10, Common.Event.Kind.SESSION, 0, 10)
+
+    assertThat(table.getBytes(BytesRequest.newBuilder().setStreamId(1).setId("5").build())).isNull()
+    assertThat(table.getBytes(BytesRequest.newBuilder().setStreamId(1).setId("6").build())).isNull()
+    assertThat(table.getBytes(BytesRequest.newBuilder().setStreamId(2).setId("5").build())!!.contents).isEqualTo(shared)
+    assertThat(bytesFileStore.directory.toFile().listFiles()).hasLength(1)
   }
 
   private fun insertData(count: Int, incrementGroupId: Boolean): List<Common.Event> {
@@ -110,6 +193,27 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     assertThat(eventResult).containsExactlyElementsIn(listOf(event))
   }
 
+  @Test
+  fun subscribersReceiveMatchingEvents() {
+    val received = mutableListOf<Common.Event>()
+    val subscription = table.subscribe(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setStreamId(1).setPid(2).build(),
+                                       UnifiedEventsTable.EventSubscriber { _, event -> received.add(event) })
+    val matching = eventBuilder(Common.Event.Kind.SESSION, false, 2, 1, 0, 1)
+    table.insertUnifiedEvent(1, matching)
+    table.insertUnifiedEvent(2, eventBuilder(Common.Event.Kind.SESSION, false, 2, 1, 0, 2))
+    table.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.SESSION, false, 3, 1, 0, 3))
+    table.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.PROCESS, false, 2, 1, 0, 4))
+    assertThat(received).containsExactly(matching)
+
+    // Duplicates are ignored by the table, so they are not pushed either.
+    table.insertUnifiedEvent(1, matching.toBuilder().setCommandId(100).build())
+    assertThat(received).containsExactly(matching)
+
+    subscription.close()
+    table.insertUnifiedEvent(1, eventBuilder(Common.Event.Kind.SESSION, false, 2, 1, 0, 5))
+    assertThat(received).containsExactly(matching)
+  }
+
   @Test
   fun deleteEvents() {
     val eventCount = 5
@@ -131,6 +235,25 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     assertThat(eventResult).containsExactlyElementsIn(events)
   }
 
+  @Test
+  fun queryMaxTimestamp() {
+    for (event in events) {
+      table.insertUnifiedEvent(1, event)
+    }
+    assertThat(table.queryMaxTimestamp(1, 1)).isEqualTo(7)
+    assertThat(table.queryMaxTimestamp(1, 2)).isEqualTo(10)
+    assertThat(table.queryMaxTimestamp(2, 1)).isEqualTo(0)
+  }
+
+  @Test
+  fun queryMaxCommandId() {
+    assertThat(table.queryMaxCommandId()).isEqualTo(0)
+    for (event in events) {
+      table.insertUnifiedEvent(1, event)
+    }
+    assertThat(table.queryMaxCommandId()).isEqualTo(7)
+  }
+
   @Test
   fun filterNoKind() {
     insertData(5, true)
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.service
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.DataStoreService
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import org.mockito.Mockito.mock
+import java.io.File
+
+class TransportServiceRestoreTest {
+
+  private val myDatabaseFile = File.createTempFile("restoredb", "sql")
+
+  @After
+  fun tearDown() {
+    myDatabaseFile.delete()
+  }
+
+  @Test
+  fun ongoingGroupsOfPreviousRunAreEnded() {
+    myDatabaseFile.delete()
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    val previousRun = UnifiedEventsTable()
+    previousRun.initialize(db.connection)
+    previousRun.insertUnifiedEvent(DataStoreService.DATASTORE_RESERVED_STREAM_ID, event(Common.Event.Kind.STREAM, STREAM_ID, 0, 10))
+    previousRun.insertUnifiedEvent(STREAM_ID, event(Common.Event.Kind.PROCESS, PID.toLong(), PID, 20))
+    previousRun.insertUnifiedEvent(STREAM_ID, event(Common.Event.Kind.PROCESS, PID.toLong(), PID, 30, true))
+    previousRun.insertUnifiedEvent(STREAM_ID, event(Common.Event.Kind.PROCESS, OTHER_PID.toLong(), OTHER_PID, 40))
+    previousRun.insertUnifiedEvent(STREAM_ID, event(Common.Event.Kind.ECHO, 1, OTHER_PID, 50))
+    db.disconnect()
+
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService(), {}, true)
+    assertThat(db.isResumed).isTrue()
+    val table = UnifiedEventsTable()
+    val service = TransportService(mock(DataStoreService::class.java), table, Runnable::run, false)
+    service.setBackingStore(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE, db)
+
+    val processes = table.queryUnifiedEventGroups(
+      GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.PROCESS).setStreamId(STREAM_ID).build()).associateBy { it.groupId }
+    // Already ended groups are left alone.
+    assertThat(processes.getValue(PID.toLong()).eventsCount).isEqualTo(2)
+    val otherProcess = processes.getValue(OTHER_PID.toLong())
+    assertThat(otherProcess.eventsCount).isEqualTo(2)
+    assertThat(otherProcess.getEvents(1).isEnded).isTrue()
+    assertThat(otherProcess.getEvents(1).timestamp).isEqualTo(50)
+
+    val streams = table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder()
+                                                  .setKind(Common.Event.Kind.STREAM)
+                                                  .setStreamId(DataStoreService.DATASTORE_RESERVED_STREAM_ID)
+                                                  .build())
+    assertThat(streams).hasSize(1)
+    assertThat(streams[0].eventsCount).isEqualTo(2)
+    assertThat(streams[0].getEvents(1).isEnded).isTrue()
+    assertThat(streams[0].getEvents(1).timestamp).isEqualTo(50)
+    db.disconnect()
+  }
+
+  private fun event(kind: Common.Event.Kind, groupId: Long, pid: Int, timestamp: Long, ended: Boolean = false): Common.Event {
+    return Common.Event.newBuilder().setKind(kind).setGroupId(groupId).setPid(pid).setTimestamp(timestamp).setIsEnded(ended).build()
+  }
+
+  companion object {
+    private const val STREAM_ID = 1234L
+    private const val PID = 10
+    private const val OTHER_PID = 20
+  }
+}